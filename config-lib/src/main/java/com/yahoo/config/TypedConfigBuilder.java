@@ -0,0 +1,42 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.config;
+
+/**
+ * A config builder whose fields can be set by name without reflection. This is implemented by the
+ * builders generated from config definitions, and is used to apply config payloads to builders.
+ * <p>
+ * Values are passed as they are found in payloads: Leaf values as strings (which are converted
+ * to the type of the field), paths as file references, and structs as the builders returned
+ * from {@link #__createBuilder}.
+ *
+ * @author agent
+ */
+public interface TypedConfigBuilder extends ConfigBuilder {
+
+    /** Returns whether the field with the given name is a map */
+    boolean __isMap(String name);
+
+    /** Returns whether the field with the given name contains paths */
+    boolean __isPath(String name);
+
+    /**
+     * Returns a new builder of the struct type of the given field, which may be a struct, or an array or map of structs,
+     * or null if this has no such field
+     */
+    TypedConfigBuilder __createBuilder(String name);
+
+    /**
+     * Sets the value of the given field, or adds it if the field is an array
+     *
+     * @return false if this has no field with this name which is not a map
+     */
+    boolean __set(String name, Object value);
+
+    /**
+     * Puts the given value in the given map field
+     *
+     * @return false if this has no map field with this name
+     */
+    boolean __put(String name, String key, Object value);
+
+}
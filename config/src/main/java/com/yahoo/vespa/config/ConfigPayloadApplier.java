@@ -4,6 +4,7 @@ package com.yahoo.vespa.config;
 import com.yahoo.config.ConfigBuilder;
 import com.yahoo.config.ConfigInstance;
 import com.yahoo.config.FileReference;
+import com.yahoo.config.TypedConfigBuilder;
 import com.yahoo.log.LogLevel;
 import com.yahoo.yolean.Exceptions;
 import com.yahoo.slime.ArrayTraverser;
@@ -20,10 +21,13 @@ import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
  * A utility class that can be used to apply a payload to a config builder.
+ * Fields are set through the {@link TypedConfigBuilder} methods of builders which are generated by
+ * a configgen version having them, and by reflection otherwise.
  *
  * TODO: This can be refactored a lot, since many of the reflection methods are duplicated
  *
@@ -44,7 +48,7 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
     public ConfigPayloadApplier(T builder, ConfigTransformer.PathAcquirer pathAcquirer) {
         this.rootBuilder = builder;
         this.pathAcquirer = pathAcquirer;
-        debug("rootBuilder=" + rootBuilder);
+        debug(() -> "rootBuilder=" + rootBuilder);
     }
 
     public void applyPayload(ConfigPayload payload) {
@@ -79,7 +83,7 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
     }
 
     private void handleARRAY(Inspector inspector) {
-        trace("Array");
+        trace(() -> "Array");
         inspector.traverse(new ArrayTraverser() {
             @Override
             public void entry(int idx, Inspector inspector) {
@@ -90,8 +94,8 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
 
     private void handleArrayEntry(int idx, Inspector inspector) {
         try {
-            trace("entry, idx=" + idx);
-            trace("top of stack=" + stack.peek().toString());
+            trace(() -> "entry, idx=" + idx);
+            trace(() -> "top of stack=" + stack.peek().toString());
             String name = stack.peek().nameStack().peek();
             if (inspector.type().equals(Type.OBJECT)) {
                 stack.push(createBuilder(stack.peek(), name));
@@ -106,7 +110,7 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
     }
 
     private void handleOBJECT(Inspector inspector) {
-        trace("Object");
+        trace(() -> "Object");
         printStack();
 
         inspector.traverse(new ObjectTraverser() {
@@ -116,13 +120,13 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
             }
         });
 
-        trace("Should pop a builder from stack");
+        trace(() -> "Should pop a builder from stack");
         NamedBuilder builder = stack.pop();
         printStack();
 
         // Need to set e.g struct(Struct.Builder) here
         if (!stack.empty()) {
-            trace("builder= " + builder);
+            trace(() -> "builder= " + builder);
             try {
                 invokeSetter(stack.peek().builder, builder.peekName(), builder.builder);
             } catch (Exception e) {
@@ -134,7 +138,7 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
 
     private void handleObjectEntry(String name, Inspector inspector) {
         try {
-            trace("field, name=" + name);
+            trace(() -> "field, name=" + name);
             NamedBuilder parentBuilder = stack.peek();
             if (inspector.type().equals(Type.OBJECT)) {
                 if (isMapField(parentBuilder, name)) {
@@ -147,7 +151,7 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
                 }
             } else if (inspector.type().equals(Type.ARRAY)) {
                 for (int i = 0; i < inspector.children(); i++) {
-                    trace("Pushing " + name);
+                    trace(() -> "Pushing " + name);
                     parentBuilder.nameStack().push(name);
                 }
             } else {  // leaf
@@ -212,6 +216,8 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
 
     private boolean isMapField(NamedBuilder parentBuilder, String name) {
         ConfigBuilder builder = parentBuilder.builder();
+        if (builder instanceof TypedConfigBuilder)
+            return ((TypedConfigBuilder)builder).__isMap(name);
         try {
             Field f = builder.getClass().getField(name);
             return f.getType().getName().equals("java.util.Map");
@@ -222,21 +228,29 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
 
     NamedBuilder createBuilder(NamedBuilder parentBuilder, String name) {
         Object builder = parentBuilder.builder();
-        Object newBuilder = getBuilderForStruct(findBuilderName(name), name, builder.getClass().getDeclaringClass());
-        trace("New builder for " + name + "=" + newBuilder);
-        trace("Pushing builder for " + name + "=" + newBuilder + " onto stack");
+        Object newBuilder;
+        if (builder instanceof TypedConfigBuilder) {
+            newBuilder = ((TypedConfigBuilder)builder).__createBuilder(name);
+            if (newBuilder == null)
+                throw new RuntimeException("could not find class representing '" + printCurrentConfigName() + "'");
+        }
+        else {
+            newBuilder = getBuilderForStruct(findBuilderName(name), name, builder.getClass().getDeclaringClass());
+        }
+        trace(() -> "New builder for " + name + "=" + newBuilder);
+        trace(() -> "Pushing builder for " + name + "=" + newBuilder + " onto stack");
         return new NamedBuilder((ConfigBuilder) newBuilder, name);
     }
 
     private void handleLeafValue(Inspector value) {
-        trace("String ");
+        trace(() -> "String ");
         printStack();
         NamedBuilder peek = stack.peek();
-        trace("popping name stack");
+        trace(() -> "popping name stack");
         String name = peek.nameStack().pop();
         printStack();
         ConfigBuilder builder = peek.builder();
-        trace("name=" + name + ",builder=" + builder + ",value=" + value.toString());
+        trace(() -> "name=" + name + ",builder=" + builder + ",value=" + value.toString());
         setValueForLeafNode(builder, name, value);
     }
 
@@ -263,11 +277,21 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
         return newFileReference(path.toString());
     }
 
-    private FileReference newFileReference(String fileReference) {
+    private static final Constructor<FileReference> fileReferenceConstructor = fileReferenceConstructor();
+
+    private static Constructor<FileReference> fileReferenceConstructor() {
         try {
             Constructor<FileReference> constructor = FileReference.class.getDeclaredConstructor(String.class);
             constructor.setAccessible(true);
-            return constructor.newInstance(fileReference);
+            return constructor;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Could not find the FileReference constructor", e);
+        }
+    }
+
+    private FileReference newFileReference(String fileReference) {
+        try {
+            return fileReferenceConstructor.newInstance(fileReference);
         } catch (Exception e) {
             throw new RuntimeException("Failed invoking FileReference constructor.", e);
         }
@@ -292,11 +316,15 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
         }
         Method method = builder.getClass().getDeclaredMethod(methodName, parameterTypes);
         method.setAccessible(true);
-        trace("method=" + method + ",params=" + params);
+        trace(() -> "method=" + method + ",params=" + params);
         return method;
     }
 
     private void invokeSetter(Object builder, String methodName, Object ... params) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        if (builder instanceof TypedConfigBuilder) {
+            invokeTypedSetter((TypedConfigBuilder)builder, methodName, params);
+            return;
+        }
         // TODO: Does not work for native types.
         String key = methodCacheKey(builder, methodName, params);
         Method method = methodCache.get(key);
@@ -307,6 +335,19 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
         method.invoke(builder, params);
     }
 
+    /** Sets a field of a generated builder, failing like the reflection lookup of the setter if there is no such field */
+    private void invokeTypedSetter(TypedConfigBuilder builder, String fieldName, Object ... params) throws NoSuchMethodException {
+        boolean found;
+        try {
+            found = params.length == 1 ? builder.__set(fieldName, params[0])
+                                       : builder.__put(fieldName, (String)params[0], params[1]);
+        } catch (ClassCastException e) { // the field exists but holds another kind of value
+            found = false;
+        }
+        if ( ! found)
+            throw new NoSuchMethodException(builder.getClass().getName() + "." + fieldName);
+    }
+
     private Object getValueFromInspector(Inspector inspector) {
         switch (inspector.type()) {
             case STRING:
@@ -332,6 +373,8 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
      */
     private Set<String> pathFieldSet = new HashSet<>();
     private boolean isPathField(Object builder, String methodName) {
+        if (builder instanceof TypedConfigBuilder)
+            return ((TypedConfigBuilder)builder).__isPath(methodName);
         String key = pathFieldKey(builder, methodName);
         if (pathFieldSet.contains(key)) {
             return true;
@@ -374,7 +417,7 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
 
     private Constructor<?> lookupBuilderForStruct(String builderName, String name, Class<?> currentClass) {
         final String currentClassName = currentClass.getName();
-        trace("builderName=" + builderName + ", name=" + name + ",current class=" + currentClassName);
+        trace(() -> "builderName=" + builderName + ", name=" + name + ",current class=" + currentClassName);
         Class<?> structClass = findClass(currentClass, currentClassName + "$" + builderName);
         Class<?> structBuilderClass = findClass(structClass, currentClassName + "$" + builderName + "$Builder");
         try {
@@ -393,7 +436,7 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
     private Class<?> findClass(Class<?> clazz, String name) {
         for (Class<?> cls : clazz.getDeclaredClasses()) {
             if (cls.getName().equals(name)) {
-                trace("Found class " + cls.getName());
+                trace(() -> "Found class " + cls.getName());
                 return cls;
             }
         }
@@ -437,20 +480,20 @@ public class ConfigPayloadApplier<T extends ConfigInstance.Builder> {
         return sb.toString();
     }
 
-    private void debug(String message) {
+    private void debug(Supplier<String> message) {
         if (log.isLoggable(LogLevel.DEBUG)) {
-            log.log(LogLevel.DEBUG, message);
+            log.log(LogLevel.DEBUG, message.get());
         }
     }
 
-    private void trace(String message) {
+    private void trace(Supplier<String> message) {
         if (log.isLoggable(LogLevel.SPAM)) {
-            log.log(LogLevel.SPAM, message);
+            log.log(LogLevel.SPAM, message.get());
         }
     }
 
     private void printStack() {
-        trace("stack=" + stack.toString());
+        trace(() -> "stack=" + stack.toString());
     }
 
     /**
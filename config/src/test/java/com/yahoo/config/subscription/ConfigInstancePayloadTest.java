@@ -16,8 +16,11 @@ import java.util.List;
 
 import static com.yahoo.foo.FunctionTestConfig.*;
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -146,6 +149,28 @@ public class ConfigInstancePayloadTest {
         }
     }
 
+    @Test
+    public void generated_builders_set_fields_by_name() {
+        FunctionTestConfig.Builder builder = new FunctionTestConfig.Builder();
+        assertTrue(builder.__isMap("intMap"));
+        assertFalse(builder.__isMap("int_val"));
+        assertTrue(builder.__isPath("pathVal"));
+        assertTrue(builder.__isPath("pathMap"));
+        assertFalse(builder.__isPath("fileVal"));
+        assertTrue(builder.__createBuilder("basicStruct") instanceof BasicStruct.Builder);
+        assertTrue(builder.__createBuilder("myStructMap") instanceof MyStructMap.Builder);
+        assertNull(builder.__createBuilder("int_val"));
+
+        assertTrue(builder.__set("int_val", "7"));
+        assertTrue(builder.__set("stringarr", "first"));
+        assertTrue(builder.__put("intMap", "one", "1"));
+        assertFalse(builder.__set("intMap", "1"));
+        assertFalse(builder.__put("int_val", "one", "1"));
+        assertFalse(builder.__set("nonexisting", "value"));
+        assertThat(builder.intMap.get("one"), is(1));
+        assertThat(builder.stringarr, is(Arrays.asList("first")));
+    }
+
     @Test
     public void function_test_payload_is_correctly_deserialized() {
         FunctionTestConfig orig = createVariableAccessConfigWithBuilder();
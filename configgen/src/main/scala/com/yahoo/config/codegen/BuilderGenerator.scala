@@ -19,7 +19,8 @@ object BuilderGenerator {
           node.getChildren.map(getBuilderFieldDefinition).mkString("\n") + "\n\n" +
           getBuilderConstructors(node, nodeClass(node)) + "\n\n" +
           getOverrideMethod(node) + "\n\n" +
-          getBuilderSetters(node) + "\n" +
+          getBuilderSetters(node) + "\n\n" +
+          getTypedSetters(node) + "\n" +
           getSpecialRootBuilderCode(node)
       ) +
       "}"
@@ -27,8 +28,8 @@ object BuilderGenerator {
 
   private def getDeclaration(node: InnerCNode) = {
     def getInterfaces =
-      if (node.getParent == null) "implements ConfigInstance.Builder"
-      else "implements ConfigBuilder"
+      if (node.getParent == null) "implements ConfigInstance.Builder, TypedConfigBuilder"
+      else "implements TypedConfigBuilder"
 
     "public static class Builder " + getInterfaces + " {"
   }
@@ -236,6 +237,72 @@ object BuilderGenerator {
     } ).mkString("\n\n")
   }
 
+  /** Returns the TypedConfigBuilder methods, which set fields by name by calling the setters of this builder */
+  private def getTypedSetters(node: InnerCNode): String = {
+    val children = node.getChildren.toSeq
+    val name = InternalPrefix + "name"
+    val key = InternalPrefix + "key"
+    val value = InternalPrefix + "value"
+
+    def nameSwitch(cases: Seq[(String, String)], default: String): String = {
+      if (cases.isEmpty) default
+      else
+        "switch (" + name + ") {\n" +
+          indentCode(Indentation,
+            cases.map { case (field, statement) => "case \"" + field + "\": " + statement }.mkString("\n") + "\n" +
+              "default: " + default) +
+          "\n}"
+    }
+
+    def valueType(child: CNode) = child match {
+      case inner: InnerCNode => builderType(inner)
+      case path: PathLeaf => "FileReference"
+      case leaf => "String" // non-string leaves have private setters converting from strings
+    }
+
+    def fieldCases(fields: Seq[CNode], statement: CNode => String) = fields.map(child => (child.getName, statement(child)))
+
+    val maps = children.filter(_.isMap)
+    val paths = children.collect { case path: PathLeaf => path }
+    val structs = children.collect { case inner: InnerCNode => inner }
+    val nonMaps = children.filterNot(_.isMap)
+
+    def isMap = nameSwitch(fieldCases(maps, _ => "return true;"), "return false;")
+    def isPath = nameSwitch(fieldCases(paths, _ => "return true;"), "return false;")
+    def createBuilder = nameSwitch(fieldCases(structs, child => "return new " + builderType(child) + "();"), "return null;")
+    def set = nameSwitch(fieldCases(nonMaps, child =>
+      child.getName + "((" + valueType(child) + ")" + value + "); return true;"), "return false;")
+    def put = nameSwitch(fieldCases(maps, child =>
+      child.getName + "(" + key + ", (" + valueType(child) + ")" + value + "); return true;"), "return false;")
+
+    <code>
+      |@java.lang.Override
+      |public final boolean __isMap(String {name}) {{
+      |{indentCode(Indentation, isMap)}
+      |}}
+      |
+      |@java.lang.Override
+      |public final boolean __isPath(String {name}) {{
+      |{indentCode(Indentation, isPath)}
+      |}}
+      |
+      |@java.lang.Override
+      |public final TypedConfigBuilder __createBuilder(String {name}) {{
+      |{indentCode(Indentation, createBuilder)}
+      |}}
+      |
+      |@java.lang.Override
+      |public final boolean __set(String {name}, Object {value}) {{
+      |{indentCode(Indentation, set)}
+      |}}
+      |
+      |@java.lang.Override
+      |public final boolean __put(String {name}, String {key}, Object {value}) {{
+      |{indentCode(Indentation, put)}
+      |}}
+    </code>.text.stripMargin.trim
+  }
+
   private def getBuilderConstructors(node: CNode, className: String): String = {
     def setBuilderValueFromConfig(child: CNode) = {
       val name = child.getName
@@ -5,6 +5,7 @@ import com.google.inject.Inject;
 import com.yahoo.cloud.config.ConfigserverConfig;
 import com.yahoo.component.Version;
 import com.yahoo.component.Vtag;
+import com.yahoo.concurrent.DaemonThreadFactory;
 import com.yahoo.config.application.api.ApplicationFile;
 import com.yahoo.config.application.api.ApplicationMetaData;
 import com.yahoo.config.application.api.DeployLogger;
@@ -45,10 +46,13 @@ import java.io.File;
 import java.net.URI;
 import java.time.Clock;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
@@ -356,24 +360,42 @@ public class ApplicationRepository implements com.yahoo.config.provision.Deploye
         return session.getSessionId();
     }
 
+    /**
+     * Redeploys all active applications, using at most numParallelTenantLoaders threads.
+     * A failure to activate an application is logged, while a failure to create its session is thrown
+     * when all applications are done.
+     */
     void redeployAllApplications(Deployer deployer) throws InterruptedException {
-        ExecutorService deploymentExecutor = Executors.newFixedThreadPool(configserverConfig.numParallelTenantLoaders());
+        ExecutorService deploymentExecutor = Executors.newFixedThreadPool(configserverConfig.numParallelTenantLoaders(),
+                                                                          new DaemonThreadFactory("redeploy-apps-"));
+        List<Future<?>> redeployments = new ArrayList<>();
         tenants.getAllTenants().forEach(tenant -> listApplicationIds(tenant)
-                .forEach(applicationId -> redeployApplication(applicationId, deployer, deploymentExecutor)));
+                .forEach(applicationId -> redeployments.add(deploymentExecutor.submit(() -> redeployApplication(applicationId, deployer)))));
         deploymentExecutor.shutdown();
-        deploymentExecutor.awaitTermination(365, TimeUnit.DAYS); // Timeout should never happen
+        try {
+            for (Future<?> redeployment : redeployments)
+                redeployment.get();
+        }
+        catch (ExecutionException e) {
+            deploymentExecutor.awaitTermination(365, TimeUnit.DAYS); // Timeout should never happen
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
     }
 
-    private void redeployApplication(ApplicationId applicationId, Deployer deployer, ExecutorService deploymentExecutor) {
+    private void redeployApplication(ApplicationId applicationId, Deployer deployer) {
         log.log(LogLevel.DEBUG, () -> "Redeploying " + applicationId);
+        long start = System.currentTimeMillis();
         deployer.deployFromLocalActive(applicationId, Duration.ofMinutes(30))
-                .ifPresent(deployment -> deploymentExecutor.execute(() -> {
+                .ifPresent(deployment -> {
                     try {
                         deployment.activate();
+                        log.log(LogLevel.INFO, "Redeployed " + applicationId + " in " +
+                                               (System.currentTimeMillis() - start) + " ms");
                     } catch (RuntimeException e) {
                         log.log(LogLevel.ERROR, "Redeploying " + applicationId + " failed", e);
                     }
-                }));
+                });
     }
 
     public ApplicationFile getApplicationFileFromSession(TenantName tenantName, long sessionId, String path, LocalSession.Mode mode) {
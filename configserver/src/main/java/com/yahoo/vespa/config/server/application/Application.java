@@ -24,8 +24,15 @@ import com.yahoo.vespa.config.server.modelfactory.ModelResult;
 import com.yahoo.vespa.config.server.monitoring.MetricUpdater;
 import com.yahoo.vespa.config.util.ConfigUtils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A Vespa application for a specific version of Vespa. It holds data and metadata associated with
@@ -142,6 +149,71 @@ public class Application implements ModelResult {
         return configResponse;
     }
 
+    /**
+     * Resolves all configs produced by the model of this which have a config definition in the cache,
+     * and puts them in the cache, such that config requests for this are served from the cache
+     * from the start. Configs are resolved in parallel by the given executor, and this returns when all are done.
+     * No more configs are put in the cache once the total payload size of those put exceeds the given max bytes.
+     *
+     * @return the number of configs put in the cache
+     */
+    public int pregenerateConfigs(ConfigResponseFactory responseFactory, ExecutorService executor, long maxBytes) {
+        AtomicInteger pregenerated = new AtomicInteger();
+        pregenerateConfigs(responseFactory, executor, maxBytes, pregenerated, new AtomicLong());
+        return pregenerated.get();
+    }
+
+    /**
+     * Pregenerates configs as part of an activation which may also pregenerate those of other versions
+     * of this application, where the given counts of configs and bytes are shared by all the versions
+     */
+    void pregenerateConfigs(ConfigResponseFactory responseFactory, ExecutorService executor, long maxBytes,
+                            AtomicInteger pregenerated, AtomicLong bytes) {
+        long start = System.currentTimeMillis();
+        metricUpdater.setPregeneratedConfigs(pregenerated.get()); // reset, or continue the count of this activation
+        List<Future<?>> tasks = new ArrayList<>();
+        for (ConfigKey<?> configKey : model.allConfigsProduced())
+            tasks.add(executor.submit(() -> pregenerateConfig(configKey, responseFactory, maxBytes, pregenerated, bytes)));
+
+        try {
+            for (Future<?> task : tasks)
+                task.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Future<?> task : tasks)
+                task.cancel(false);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Unexpected exception pregenerating configs of " + this, e.getCause());
+        }
+        metricUpdater.setCacheConfigElems(cache.configElems());
+        metricUpdater.setCacheChecksumElems(cache.checkSumElems());
+        log.log(LogLevel.DEBUG, Tenants.logPre(getId()) + "Pregenerated " + pregenerated.get() + " configs (" +
+                                bytes.get() + " bytes) after " + tasks.size() + " configs of version " + vespaVersion +
+                                " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private void pregenerateConfig(ConfigKey<?> configKey, ConfigResponseFactory responseFactory, long maxBytes,
+                                   AtomicInteger pregenerated, AtomicLong bytes) {
+        if (bytes.get() >= maxBytes) return;
+        ConfigDefinition def = cache.getDef(new ConfigDefinitionKey(configKey.getName(), configKey.getNamespace()));
+        if (def == null) return;
+        try {
+            ConfigPayload payload = model.getConfig(configKey, def);
+            if (payload == null) return;
+            ConfigResponse configResponse = responseFactory.createResponse(payload, def.getCNode(), appGeneration);
+            if (bytes.addAndGet(configResponse.getPayload().getByteLength()) > maxBytes) return;
+            cache.put(new ConfigCacheKey(configKey, def.getCNode().getMd5()), configResponse, configResponse.getConfigMd5());
+            metricUpdater.setPregeneratedConfigs(pregenerated.incrementAndGet());
+        }
+        catch (RuntimeException e) { // it will fail in the same way when requested
+            if (logDebug()) {
+                debug("Could not pregenerate config " + configKey + ": " + e.getMessage());
+            }
+        }
+    }
+
     private boolean logDebug() {
         return log.isLoggable(LogLevel.DEBUG);
     }
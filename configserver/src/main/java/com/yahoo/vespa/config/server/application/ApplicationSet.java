@@ -3,9 +3,13 @@ package com.yahoo.vespa.config.server.application;
 import com.yahoo.config.model.api.HostInfo;
 import com.yahoo.config.provision.ApplicationId;
 import com.yahoo.config.provision.Version;
+import com.yahoo.vespa.config.server.rpc.ConfigResponseFactory;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -75,6 +79,20 @@ public final class ApplicationSet {
         }
     }
 
+    /**
+     * Resolves and caches the configs of all the applications in this, using the given executor.
+     * The given max bytes bounds the total payload size of the configs of all the applications.
+     *
+     * @see Application#pregenerateConfigs
+     */
+    public void pregenerateConfigs(ConfigResponseFactory responseFactory, ExecutorService executor, long maxBytes) {
+        AtomicInteger pregenerated = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        for (Application application : applications.values()) {
+            application.pregenerateConfigs(responseFactory, executor, maxBytes, pregenerated, bytes);
+        }
+    }
+
     public long getApplicationGeneration() {
         return generation;
     }
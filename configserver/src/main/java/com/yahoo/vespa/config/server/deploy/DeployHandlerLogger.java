@@ -32,7 +32,7 @@ public class DeployHandlerLogger implements DeployLogger {
     }
 
     @Override
-    public void log(Level level, String message) {
+    public synchronized void log(Level level, String message) { // synchronized as models may be built in parallel
         if ((level == LogLevel.FINE ||
              level == LogLevel.DEBUG ||
              level == LogLevel.SPAM) &&
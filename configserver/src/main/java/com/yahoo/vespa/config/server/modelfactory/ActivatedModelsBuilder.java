@@ -54,7 +54,8 @@ public class ActivatedModelsBuilder extends ModelsBuilder<Application> {
 
     public ActivatedModelsBuilder(TenantName tenant, long appGeneration, SessionZooKeeperClient zkClient, GlobalComponentRegistry globalComponentRegistry) {
         super(globalComponentRegistry.getModelFactoryRegistry(), 
-              globalComponentRegistry.getHostProvisioner().isPresent());
+              globalComponentRegistry.getHostProvisioner().isPresent(),
+              globalComponentRegistry.getConfigserverConfig().numParallelModelBuilds());
         this.tenant = tenant;
         this.appGeneration = appGeneration;
         this.zkClient = zkClient;
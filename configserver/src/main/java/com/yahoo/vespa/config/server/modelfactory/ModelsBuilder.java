@@ -2,11 +2,13 @@
 package com.yahoo.vespa.config.server.modelfactory;
 
 import com.yahoo.cloud.config.ConfigserverConfig;
+import com.yahoo.concurrent.DaemonThreadFactory;
 import com.yahoo.config.application.api.ApplicationPackage;
 import com.yahoo.config.model.api.HostProvisioner;
 import com.yahoo.config.model.api.ModelContext;
 import com.yahoo.config.model.api.ModelFactory;
 import com.yahoo.config.provision.ApplicationId;
+import com.yahoo.config.provision.HostSpec;
 import com.yahoo.config.provision.OutOfCapacityException;
 import com.yahoo.config.provision.AllocatedHosts;
 import com.yahoo.config.provision.Rotation;
@@ -22,9 +24,15 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -32,6 +40,8 @@ import java.util.stream.Collectors;
 /**
  * Responsible for building the right versions of application models for a given tenant and application generation.
  * Actual model building is implemented by subclasses because it differs in the prepare and activate phases.
+ * The older minor versions of a major version are built in parallel once the newest is built,
+ * unless building may provision hosts.
  *
  * @author bratseth
  */
@@ -44,16 +54,27 @@ public abstract class ModelsBuilder<MODELRESULT extends ModelResult> {
     /** True if we are running in hosted mode */
     private final boolean hosted;
 
-    protected ModelsBuilder(ModelFactoryRegistry modelFactoryRegistry, boolean hosted) {
+    /** The max number of model versions to build in parallel */
+    private final int maxParallelBuilds;
+
+    /**
+     * @param maxParallelBuilds the max number of model versions to build in parallel. This must be 1 if building
+     *                          a model may provision hosts, since each model must then see the hosts provisioned
+     *                          by the models built before it
+     */
+    protected ModelsBuilder(ModelFactoryRegistry modelFactoryRegistry, boolean hosted, int maxParallelBuilds) {
         this.modelFactoryRegistry = modelFactoryRegistry;
         this.hosted = hosted;
+        this.maxParallelBuilds = maxParallelBuilds;
     }
 
     /**
      * Builds all applicable model versions
      * 
-     * @param allocatedHosts the newest version (major and minor) (which is loaded first) decides the allocated hosts
-     *                       and assigns to this SettableOptional such that it can be used after this method returns
+     * @param allocatedHosts the newest version (major and minor) (which is loaded first) decides the allocated hosts,
+     *                       older versions add the hosts of any clusters only they specify,
+     *                       and the result is assigned to this SettableOptional such that it can be used after this
+     *                       method returns
      */
     public List<MODELRESULT> buildModels(ApplicationId applicationId, 
                                          com.yahoo.component.Version wantedNodeVespaVersion, 
@@ -111,13 +132,13 @@ public abstract class ModelsBuilder<MODELRESULT extends ModelResult> {
                                                 Instant now) {
         Version latest = findLatest(versions);
         // load latest application version
-        MODELRESULT latestModelVersion = buildModelVersion(modelFactoryRegistry.getFactory(latest), 
-                                                           applicationPackage, 
-                                                           applicationId, 
-                                                           wantedNodeVespaVersion, 
-                                                           allocatedHosts.asOptional(),
-                                                           now);
-        allocatedHosts.set(latestModelVersion.getModel().allocatedHosts()); // Update with additional clusters allocated
+        MODELRESULT latestModelVersion = timedBuildModelVersion(latest,
+                                                                applicationPackage,
+                                                                applicationId,
+                                                                wantedNodeVespaVersion,
+                                                                allocatedHosts.asOptional(),
+                                                                now);
+        addAllocatedHosts(latestModelVersion, allocatedHosts);
         
         if (latestModelVersion.getModel().skipOldConfigModels(now))
             return Collections.singletonList(latestModelVersion);
@@ -126,26 +147,110 @@ public abstract class ModelsBuilder<MODELRESULT extends ModelResult> {
         List<MODELRESULT> allApplicationVersions = new ArrayList<>();
         allApplicationVersions.add(latestModelVersion);
 
-        // TODO: We use the allocated hosts from the newest version when building older model versions.
-        // This is correct except for the case where an old model specifies a cluster which the new version
-        // does not. In that case we really want to extend the set of allocated hosts to include those of that
-        // cluster as well. To do that, create a new provisioner which uses static provisioning for known
-        // clusters and the node repository provisioner as fallback.
-        for (Version version : versions) {
-            if (version.equals(latest)) continue; // already loaded
-
-            MODELRESULT modelVersion = buildModelVersion(modelFactoryRegistry.getFactory(version),
-                                                         applicationPackage,
-                                                         applicationId,
-                                                         wantedNodeVespaVersion,
-                                                         allocatedHosts.asOptional(),
-                                                         now);
-            allocatedHosts.set(modelVersion.getModel().allocatedHosts()); // Update with additional clusters allocated
-            allApplicationVersions.add(modelVersion);
+        // Older model versions are built with the hosts allocated by the newer ones, and add the hosts of any
+        // clusters only they specify. When built in parallel they can only use those of the latest version,
+        // which is sufficient as they are then built by static provisioning, which cannot allocate new hosts.
+        List<Version> olderVersions = versions.stream()
+                                              .filter(version -> ! version.equals(latest))
+                                              .sorted(Comparator.reverseOrder())
+                                              .collect(Collectors.toList());
+        if (maxParallelBuilds < 2) {
+            for (Version version : olderVersions) {
+                MODELRESULT modelVersion = timedBuildModelVersion(version,
+                                                                  applicationPackage,
+                                                                  applicationId,
+                                                                  wantedNodeVespaVersion,
+                                                                  allocatedHosts.asOptional(),
+                                                                  now);
+                addAllocatedHosts(modelVersion, allocatedHosts);
+                allApplicationVersions.add(modelVersion);
+            }
+        }
+        else {
+            Optional<AllocatedHosts> latestAllocatedHosts = allocatedHosts.asOptional();
+            for (MODELRESULT modelVersion : buildInParallel(olderVersions, version -> timedBuildModelVersion(version,
+                                                                                                            applicationPackage,
+                                                                                                            applicationId,
+                                                                                                            wantedNodeVespaVersion,
+                                                                                                            latestAllocatedHosts,
+                                                                                                            now))) {
+                addAllocatedHosts(modelVersion, allocatedHosts);
+                allApplicationVersions.add(modelVersion);
+            }
         }
         return allApplicationVersions;
     }
 
+    /** Adds the hosts allocated by the given model to the given allocated hosts, keeping those already present */
+    private void addAllocatedHosts(MODELRESULT modelVersion, SettableOptional<AllocatedHosts> allocatedHosts) {
+        AllocatedHosts modelHosts = modelVersion.getModel().allocatedHosts();
+        if ( ! allocatedHosts.isPresent()) {
+            allocatedHosts.set(modelHosts);
+            return;
+        }
+        Set<HostSpec> hosts = new LinkedHashSet<>(allocatedHosts.get().getHosts());
+        hosts.addAll(modelHosts.getHosts());
+        allocatedHosts.set(AllocatedHosts.withHosts(hosts));
+    }
+
+    private MODELRESULT timedBuildModelVersion(Version version, ApplicationPackage applicationPackage,
+                                               ApplicationId applicationId,
+                                               com.yahoo.component.Version wantedNodeVespaVersion,
+                                               Optional<AllocatedHosts> allocatedHosts,
+                                               Instant now) {
+        long start = System.currentTimeMillis();
+        MODELRESULT result = buildModelVersion(modelFactoryRegistry.getFactory(version),
+                                               applicationPackage,
+                                               applicationId,
+                                               wantedNodeVespaVersion,
+                                               allocatedHosts,
+                                               now);
+        log.log(Level.INFO, applicationId + ": Built model version " + version + " in " +
+                            (System.currentTimeMillis() - start) + " ms");
+        return result;
+    }
+
+    /**
+     * Builds a model of each of the given versions, using at most maxParallelBuilds threads.
+     * If any build fails, the exception of the first failing version in the given order is thrown,
+     * as when building them in order.
+     *
+     * @return the models in the same order as the given versions
+     */
+    private List<MODELRESULT> buildInParallel(List<Version> versions, Function<Version, MODELRESULT> builder) {
+        if (versions.size() < 2)
+            return versions.stream().map(builder).collect(Collectors.toList());
+
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(versions.size(), maxParallelBuilds),
+                                                                new DaemonThreadFactory("model-builder-"));
+        try {
+            List<Future<MODELRESULT>> builds = new ArrayList<>();
+            for (Version version : versions) {
+                builds.add(executor.submit(() -> {
+                    Thread.currentThread().setContextClassLoader(contextClassLoader);
+                    return builder.apply(version);
+                }));
+            }
+            List<MODELRESULT> models = new ArrayList<>();
+            for (Future<MODELRESULT> build : builds)
+                models.add(build.get());
+            return models;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while building models", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+            if (e.getCause() instanceof Error) throw (Error)e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
     private Set<Version> filterByMajorVersion(int majorVersion, Set<Version> versions) {
         Set<Version> filteredVersions = versions.stream().filter(v -> v.getMajor() == majorVersion).collect(Collectors.toSet());
         if (filteredVersions.isEmpty())
@@ -61,8 +61,11 @@ public class PreparedModelsBuilder extends ModelsBuilder<PreparedModelsBuilder.P
                                  DeployLogger logger,
                                  PrepareParams params,
                                  Optional<ApplicationSet> currentActiveApplicationSet,
-                                 ModelContext.Properties properties) {
-        super(modelFactoryRegistry, properties.hostedVespa());
+                                 ModelContext.Properties properties,
+                                 int maxParallelBuilds) {
+        // Build sequentially when hosts may be provisioned, as provisioning of the models must not interleave
+        super(modelFactoryRegistry, properties.hostedVespa(),
+              hostProvisionerProvider.getHostProvisioner().isPresent() ? 1 : maxParallelBuilds);
         this.permanentApplicationPackage = permanentApplicationPackage;
         this.configDefinitionRepo = configDefinitionRepo;
 
@@ -31,6 +31,7 @@ public class MetricUpdater {
     private static final String METRIC_APPLICATIONS = getMetricName("applications");
     private static final String METRIC_CACHE_CONFIG_ELEMENTS = getMetricName("cacheConfigElems");
     private static final String METRIC_CACHE_CONFIG_CHECKSUMS = getMetricName("cacheChecksumElems");
+    private static final String METRIC_PREGENERATED_CONFIGS = getMetricName("pregeneratedConfigs");
     private static final String METRIC_DELAYED_RESPONSES = getMetricName("delayedResponses");
     private static final String METRIC_RPCSERVER_WORK_QUEUE_SIZE = getMetricName("rpcServerWorkQueueSize");
 
@@ -76,6 +77,15 @@ public class MetricUpdater {
         staticMetrics.put(METRIC_CACHE_CONFIG_CHECKSUMS, elems);
     }
 
+    /**
+     * Sets the number of configs pregenerated so far on the last activation
+     *
+     * @param configs number of configs
+     */
+    public void setPregeneratedConfigs(long configs) {
+        staticMetrics.put(METRIC_PREGENERATED_CONFIGS, configs);
+    }
+
     /**
      * Sets the number of outstanding responses (unchanged config in long poll)
      *
@@ -158,7 +158,8 @@ public class SessionPreparer {
                                                                    logger,
                                                                    params,
                                                                    currentActiveApplicationSet,
-                                                                   properties);
+                                                                   properties,
+                                                                   configserverConfig.numParallelModelBuilds());
         }
 
         void checkTimeout(String step) {
@@ -153,7 +153,9 @@ public class TenantBuilder {
                                                                  tenant,
                                                                  Collections.singletonList(componentRegistry.getReloadListener()),
                                                                  ConfigResponseFactoryFactory.createFactory(componentRegistry.getConfigserverConfig()),
-                                                                 componentRegistry.getHostRegistries());
+                                                                 componentRegistry.getHostRegistries(),
+                                                                 componentRegistry.getConfigserverConfig().numConfigPregenerationThreads(),
+                                                                 componentRegistry.getConfigserverConfig().maxConfigPregenerationBytes());
             if (hostValidator == null) {
                 this.hostValidator = impl;
             }
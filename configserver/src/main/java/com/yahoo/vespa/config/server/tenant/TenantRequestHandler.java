@@ -3,7 +3,12 @@ package com.yahoo.vespa.config.server.tenant;
 
 import java.time.Clock;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import com.yahoo.concurrent.DaemonThreadFactory;
 import com.yahoo.config.provision.Version;
 import com.yahoo.log.LogLevel;
 import com.yahoo.vespa.config.*;
@@ -46,17 +51,50 @@ public class TenantRequestHandler implements RequestHandler, ReloadHandler, Host
     private final MetricUpdater tenantMetricUpdater;
     private final Clock clock = Clock.systemUTC();
 
+    /** Executor of config pregeneration on activation, or null if configs are not pregenerated */
+    private final ExecutorService pregenerationExecutor;
+    private final long maxPregenerationBytes;
+
+    /** Creates a request handler which does not pregenerate configs on activation */
     public TenantRequestHandler(Metrics metrics,
                                 TenantName tenant,
                                 List<ReloadListener> reloadListeners,
                                 ConfigResponseFactory responseFactory,
                                 HostRegistries hostRegistries) {
+        this(metrics, tenant, reloadListeners, responseFactory, hostRegistries, 0, 0);
+    }
+
+    /**
+     * Creates a request handler
+     *
+     * @param pregenerationThreads the number of threads used to generate all configs of an application
+     *                             when it is activated, before it is used to serve requests, or 0 to not do this
+     * @param maxPregenerationBytes the max total payload size of the configs pregenerated for an application
+     */
+    public TenantRequestHandler(Metrics metrics,
+                                TenantName tenant,
+                                List<ReloadListener> reloadListeners,
+                                ConfigResponseFactory responseFactory,
+                                HostRegistries hostRegistries,
+                                int pregenerationThreads,
+                                long maxPregenerationBytes) {
         this.metrics = metrics;
         this.tenant = tenant;
         this.reloadListeners = reloadListeners;
         this.responseFactory = responseFactory;
         tenantMetricUpdater = metrics.getOrCreateMetricUpdater(Metrics.createDimensions(tenant));
         hostRegistry = hostRegistries.createApplicationHostRegistry(tenant);
+        this.pregenerationExecutor = pregenerationThreads > 0 ? createPregenerationExecutor(pregenerationThreads) : null;
+        this.maxPregenerationBytes = maxPregenerationBytes;
+    }
+
+    /** Returns an executor whose threads are stopped when idle, as activations are rare */
+    private ExecutorService createPregenerationExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<>(),
+                                                             new DaemonThreadFactory("config-pregeneration-" + tenant + "-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     /**
@@ -85,10 +123,14 @@ public class TenantRequestHandler implements RequestHandler, ReloadHandler, Host
     }
 
     /**
-     * Activates the config of the given app. Notifies listeners
+     * Activates the config of the given app. Notifies listeners.
+     * If enabled, all configs of the app are generated before it is activated.
+     *
      * @param applicationSet the {@link ApplicationSet} to be reloaded
      */
     public void reloadConfig(ApplicationSet applicationSet) {
+        if (pregenerationExecutor != null)
+            applicationSet.pregenerateConfigs(responseFactory, pregenerationExecutor, maxPregenerationBytes);
         setLiveApp(applicationSet);
         notifyReloadListeners(applicationSet);
     }
@@ -4,6 +4,9 @@ package com.yahoo.vespa.config.server;
 import com.yahoo.cloud.config.ConfigserverConfig;
 import com.yahoo.config.provision.ApplicationId;
 import com.yahoo.config.provision.ApplicationName;
+import com.yahoo.config.provision.Deployer;
+import com.yahoo.config.provision.Deployment;
+import com.yahoo.config.provision.HostFilter;
 import com.yahoo.config.provision.InstanceName;
 import com.yahoo.config.provision.TenantName;
 import com.yahoo.io.IOUtils;
@@ -31,12 +34,16 @@ import java.io.File;
 import java.io.FileReader;
 import java.time.Clock;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author lulf
@@ -95,6 +102,46 @@ public class ConfigServerBootstrapTest extends TestWithTenant {
         assertThat(deployer.lastDeployed, Is.is(id));
     }
 
+    @Test
+    public void testTenantRedeploymentFailures() throws Exception {
+        ApplicationId failing = ApplicationId.from(tenant1, ApplicationName.from("failing"), InstanceName.defaultName());
+        ApplicationId failingActivation = ApplicationId.from(tenant1, ApplicationName.from("failingActivation"), InstanceName.defaultName());
+        ApplicationId working = ApplicationId.from(tenant2, ApplicationName.defaultName(), InstanceName.defaultName());
+        tenants.getTenant(tenant1).getApplicationRepo().createPutApplicationTransaction(failing, 3).commit();
+        tenants.getTenant(tenant1).getApplicationRepo().createPutApplicationTransaction(failingActivation, 4).commit();
+        tenants.getTenant(tenant2).getApplicationRepo().createPutApplicationTransaction(working, 5).commit();
+
+        Set<ApplicationId> activated = Collections.synchronizedSet(new HashSet<>());
+        Deployer deployer = (application, timeout) -> {
+            if (application.equals(failing))
+                throw new IllegalArgumentException("Could not create session of " + application);
+            return Optional.of(new Deployment() {
+                @Override
+                public void prepare() { }
+
+                @Override
+                public void activate() {
+                    if (application.equals(failingActivation))
+                        throw new IllegalStateException("Could not activate " + application);
+                    activated.add(application);
+                }
+
+                @Override
+                public void restart(HostFilter filter) { }
+            });
+        };
+
+        try {
+            applicationRepository.redeployAllApplications(deployer);
+            fail("Expected redeployment to fail");
+        }
+        catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Could not create session of " + failing));
+        }
+        // Failing to activate is only logged, and other applications are redeployed before the failure is thrown
+        assertThat(activated, is(Collections.singleton(working)));
+    }
+
     private void waitUntilStarted(MockRpc server, long timeout) throws InterruptedException {
         long start = System.currentTimeMillis();
         while ((System.currentTimeMillis() - start) < timeout) {
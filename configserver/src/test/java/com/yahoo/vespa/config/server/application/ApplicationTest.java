@@ -26,6 +26,7 @@ import com.yahoo.vespa.config.server.ServerCache;
 import com.yahoo.vespa.config.server.UnknownConfigDefinitionException;
 import com.yahoo.vespa.config.server.monitoring.MetricUpdater;
 import com.yahoo.vespa.config.server.monitoring.Metrics;
+import com.yahoo.vespa.config.server.rpc.UncompressedConfigResponseFactory;
 import com.yahoo.vespa.model.VespaModel;
 import org.junit.Before;
 import org.junit.Test;
@@ -35,8 +36,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -65,6 +69,7 @@ public class ApplicationTest {
     private static final String[] emptySchema = new String[0];
 
     private Application handler;
+    private MetricUpdater metricUpdater;
 
     @Before
     public void setupHandler() throws IOException, SAXException {
@@ -72,8 +77,8 @@ public class ApplicationTest {
         ServerCache cache = createCacheAndAddContent();
         VespaModel model = new VespaModel(FilesApplicationPackage.fromFile(testApp));
         final ApplicationId applicationId = new ApplicationId.Builder().tenant("foo").applicationName("foo").build();
-        handler = new Application(model, cache, 1, Version.fromIntValues(1, 2, 3),
-                                  new MetricUpdater(Metrics.createTestMetrics(), Metrics.createDimensions(applicationId)), applicationId);
+        metricUpdater = new MetricUpdater(Metrics.createTestMetrics(), Metrics.createDimensions(applicationId));
+        handler = new Application(model, cache, 1, Version.fromIntValues(1, 2, 3), metricUpdater, applicationId);
     }
 
     private static ServerCache createCacheAndAddContent() {
@@ -137,6 +142,41 @@ public class ApplicationTest {
         assertTrue(response == cached_response);
     }
 
+    @Test
+    public void require_that_configs_can_be_pregenerated() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        int pregenerated = handler.pregenerateConfigs(new UncompressedConfigResponseFactory(), executor, Long.MAX_VALUE);
+        executor.shutdown();
+        assertTrue(pregenerated > 0);
+        assertEquals(pregenerated, handler.getCache().checkSumElems());
+
+        ConfigKey<?> logdKey = handler.allConfigsProduced().stream()
+                                      .filter(key -> key.getName().equals(LogdConfig.CONFIG_DEF_NAME))
+                                      .findFirst().get();
+        handler.resolveConfig(createRequest(LogdConfig.CONFIG_DEF_NAME, LogdConfig.CONFIG_DEF_NAMESPACE,
+                                            LogdConfig.CONFIG_DEF_MD5, LogdConfig.CONFIG_DEF_SCHEMA, logdKey.getConfigId()));
+        assertEquals("Served from the cache", pregenerated, handler.getCache().checkSumElems());
+    }
+
+    @Test
+    public void require_that_pregeneration_is_bounded_by_size() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        assertEquals(0, handler.pregenerateConfigs(new UncompressedConfigResponseFactory(), executor, 1));
+        executor.shutdown();
+        assertEquals(0, handler.getCache().checkSumElems());
+    }
+
+    @Test
+    public void require_that_pregenerated_configs_metric_is_reset_on_each_pregeneration() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        int pregenerated = handler.pregenerateConfigs(new UncompressedConfigResponseFactory(), executor, Long.MAX_VALUE);
+        assertEquals(pregenerated, metricUpdater.getStaticMetrics().get("configserver.pregeneratedConfigs").intValue());
+
+        handler.pregenerateConfigs(new UncompressedConfigResponseFactory(), executor, 1);
+        executor.shutdown();
+        assertEquals(0, metricUpdater.getStaticMetrics().get("configserver.pregeneratedConfigs").intValue());
+    }
+
     private static GetConfigRequest createRequest(String name, String namespace, String defMd5, String[] schema, String configId) {
         Request request = JRTClientConfigRequestV3.
                 createWithParams(new ConfigKey<>(name, configId, namespace, defMd5, null), DefContent.fromArray(schema),
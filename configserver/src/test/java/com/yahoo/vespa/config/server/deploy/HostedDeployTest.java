@@ -3,6 +3,9 @@ package com.yahoo.vespa.config.server.deploy;
 
 import com.google.common.io.Files;
 import com.yahoo.cloud.config.ConfigserverConfig;
+import com.yahoo.config.model.api.Model;
+import com.yahoo.config.model.api.ModelContext;
+import com.yahoo.config.model.api.ModelCreateResult;
 import com.yahoo.config.model.api.ModelFactory;
 import com.yahoo.config.provision.ApplicationId;
 import com.yahoo.config.provision.Version;
@@ -16,6 +19,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -64,6 +68,26 @@ public class HostedDeployTest {
         assertEquals(3, tester.getAllocatedHostsOf(app).getHosts().size());
     }
 
+    @Test
+    public void testDeployMultipleVersionsSequentiallyWhenProvisioningHosts() throws InterruptedException, IOException {
+        ManualClock clock = new ManualClock("2016-10-09T00:00:00");
+        AtomicInteger buildsInProgress = new AtomicInteger();
+        AtomicInteger maxBuildsInProgress = new AtomicInteger();
+        List<ModelFactory> modelFactories = new ArrayList<>();
+        for (String version : new String[] { "6.1.0", "6.2.0", "6.3.0" })
+            modelFactories.add(new BuildCountingModelFactory(DeployTester.createModelFactory(Version.fromString(version), clock),
+                                                             buildsInProgress, maxBuildsInProgress));
+        ConfigserverConfig config = new ConfigserverConfig(new ConfigserverConfig.Builder()
+                                                                   .configServerDBDir(Files.createTempDir().getAbsolutePath())
+                                                                   .hostedVespa(true)
+                                                                   .multitenant(true)
+                                                                   .numParallelModelBuilds(3));
+        DeployTester tester = new DeployTester("src/test/apps/hosted/", modelFactories, config);
+        ApplicationId app = tester.deployApp("myApp", Instant.now());
+        assertEquals(3, tester.getAllocatedHostsOf(app).getHosts().size());
+        assertEquals("Models are not built in parallel when a host provisioner is present", 1, maxBuildsInProgress.get());
+    }
+
     @Test
     public void testRedeployAfterExpiredValidationOverride() throws InterruptedException, IOException {
         // Old version of model fails, but application disables loading old models until 2016-10-10, so deployment works
@@ -125,6 +149,38 @@ public class HostedDeployTest {
               .forEach(h -> assertEquals(vespaVersion, h.membership().get().cluster().vespaVersion()));
     }
 
+    /** A model factory which records the max number of models it and its siblings are building at the same time */
+    private static class BuildCountingModelFactory implements ModelFactory {
+
+        private final ModelFactory delegate;
+        private final AtomicInteger buildsInProgress;
+        private final AtomicInteger maxBuildsInProgress;
+
+        BuildCountingModelFactory(ModelFactory delegate, AtomicInteger buildsInProgress, AtomicInteger maxBuildsInProgress) {
+            this.delegate = delegate;
+            this.buildsInProgress = buildsInProgress;
+            this.maxBuildsInProgress = maxBuildsInProgress;
+        }
+
+        @Override
+        public Version getVersion() { return delegate.getVersion(); }
+
+        @Override
+        public Model createModel(ModelContext modelContext) { return delegate.createModel(modelContext); }
+
+        @Override
+        public ModelCreateResult createAndValidateModel(ModelContext modelContext, boolean ignoreValidationErrors) {
+            maxBuildsInProgress.accumulateAndGet(buildsInProgress.incrementAndGet(), Math::max);
+            try {
+                return delegate.createAndValidateModel(modelContext, ignoreValidationErrors);
+            }
+            finally {
+                buildsInProgress.decrementAndGet();
+            }
+        }
+
+    }
+
     private static ConfigserverConfig createConfigserverConfig() {
         return new ConfigserverConfig(new ConfigserverConfig.Builder()
                                               .configServerDBDir(Files.createTempDir()
@@ -0,0 +1,149 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.config.server.modelfactory;
+
+import com.yahoo.config.application.api.ApplicationPackage;
+import com.yahoo.config.model.api.Model;
+import com.yahoo.config.model.api.ModelContext;
+import com.yahoo.config.model.api.ModelCreateResult;
+import com.yahoo.config.model.api.ModelFactory;
+import com.yahoo.config.model.test.MockApplicationPackage;
+import com.yahoo.config.provision.AllocatedHosts;
+import com.yahoo.config.provision.ApplicationId;
+import com.yahoo.config.provision.HostSpec;
+import com.yahoo.config.provision.Version;
+import com.yahoo.lang.SettableOptional;
+import com.yahoo.vespa.config.server.ModelStub;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author agent
+ */
+public class ModelsBuilderTest {
+
+    private final ApplicationId applicationId = ApplicationId.defaultId();
+    private final ApplicationPackage applicationPackage = new MockApplicationPackage.Builder().withEmptyHosts()
+                                                                                             .withEmptyServices()
+                                                                                             .build();
+
+    @Test
+    public void requireThatHostsOfClustersOnlyInOlderVersionsAreAdded() {
+        for (int maxParallelBuilds : new int[] { 1, 2 }) {
+            List<ModelFactory> factories = Arrays.asList(
+                    new StubModelFactory("6.3.0", () -> modelWithHosts("host0", "host1")),
+                    new StubModelFactory("6.2.0", () -> modelWithHosts("host1", "host2")),
+                    new StubModelFactory("6.1.0", () -> modelWithHosts("host3")));
+
+            SettableOptional<AllocatedHosts> allocatedHosts = new SettableOptional<>();
+            List<ModelResult> models = new TestModelsBuilder(factories, maxParallelBuilds)
+                    .buildModels(applicationId, null, applicationPackage, allocatedHosts, Instant.now());
+
+            assertEquals(3, models.size());
+            assertEquals("With " + maxParallelBuilds + " parallel builds",
+                         new HashSet<>(Arrays.asList("host0", "host1", "host2", "host3")),
+                         hostnames(allocatedHosts.get()));
+        }
+    }
+
+    @Test
+    public void requireThatTheErrorOfTheNewestFailingOlderVersionIsThrown() {
+        CountDownLatch oldestFailed = new CountDownLatch(1);
+        List<ModelFactory> factories = Arrays.asList(
+                new StubModelFactory("6.3.0", () -> modelWithHosts("host0")),
+                new StubModelFactory("6.2.0", () -> {
+                    // Fail after the oldest version, which is built in parallel with this
+                    try {
+                        assertTrue(oldestFailed.await(60, TimeUnit.SECONDS));
+                    }
+                    catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    throw new IllegalArgumentException("6.2.0 failed");
+                }),
+                new StubModelFactory("6.1.0", () -> {
+                    oldestFailed.countDown();
+                    throw new IllegalArgumentException("6.1.0 failed");
+                }));
+
+        try {
+            new TestModelsBuilder(factories, 2).buildModels(applicationId, null, applicationPackage,
+                                                            new SettableOptional<>(), Instant.now());
+            fail("Expected building models to fail");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals(applicationId + ": Error loading model", e.getMessage());
+            assertEquals("6.2.0 failed", e.getCause().getMessage());
+        }
+    }
+
+    private static Model modelWithHosts(String ... hostnames) {
+        AllocatedHosts hosts = AllocatedHosts.withHosts(Arrays.stream(hostnames)
+                                                              .map(hostname -> new HostSpec(hostname, Collections.emptyList()))
+                                                              .collect(Collectors.toSet()));
+        return new ModelStub() {
+            @Override
+            public AllocatedHosts allocatedHosts() { return hosts; }
+        };
+    }
+
+    private static Set<String> hostnames(AllocatedHosts hosts) {
+        return hosts.getHosts().stream().map(HostSpec::hostname).collect(Collectors.toSet());
+    }
+
+    private static class TestModelsBuilder extends ModelsBuilder<ModelResult> {
+
+        TestModelsBuilder(List<ModelFactory> factories, int maxParallelBuilds) {
+            super(new ModelFactoryRegistry(factories), false, maxParallelBuilds);
+        }
+
+        @Override
+        protected ModelResult buildModelVersion(ModelFactory modelFactory, ApplicationPackage applicationPackage,
+                                                ApplicationId applicationId,
+                                                com.yahoo.component.Version wantedNodeVespaVersion,
+                                                Optional<AllocatedHosts> allocatedHosts,
+                                                Instant now) {
+            Model model = modelFactory.createModel(null);
+            return () -> model;
+        }
+
+    }
+
+    private static class StubModelFactory implements ModelFactory {
+
+        private final Version version;
+        private final Supplier<Model> model;
+
+        StubModelFactory(String version, Supplier<Model> model) {
+            this.version = Version.fromString(version);
+            this.model = model;
+        }
+
+        @Override
+        public Version getVersion() { return version; }
+
+        @Override
+        public Model createModel(ModelContext modelContext) { return model.get(); }
+
+        @Override
+        public ModelCreateResult createAndValidateModel(ModelContext modelContext, boolean ignoreValidationErrors) {
+            return new ModelCreateResult(createModel(modelContext), Collections.emptyList());
+        }
+
+    }
+
+}
@@ -22,6 +22,7 @@ class AccessLogHandler {
 
         logFileHandler.setFilePattern(config.pattern());
         logFileHandler.setRotationTimes(config.rotation());
+        logFileHandler.setCompressOnRotation(config.compressOnRotation());
 
         if (config.rotateScheme() == DATE)
             createSymlink(config, logFileHandler);
@@ -38,6 +39,11 @@ class AccessLogHandler {
             handler.setSymlinkName(config.symlink());
     }
 
+    /** Writes a record directly to the log file, bypassing the logger and the formatter of this */
+    void log(LogFileHandler.RecordWriter writer) {
+        logFileHandler.publish(writer);
+    }
+
     public void shutdown() {
         logFileHandler.close();
         access.removeHandler(logFileHandler);
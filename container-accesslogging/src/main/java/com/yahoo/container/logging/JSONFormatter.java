@@ -10,6 +10,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
@@ -24,15 +25,15 @@ import java.util.logging.Logger;
  */
 public class JSONFormatter {
 
+    /** Generator factories are thread safe and expensive to create, so a single one is shared */
+    private static final JsonFactory generatorFactory = new JsonFactory(new ObjectMapper());
+
     private AccessLogEntry accessLogEntry;
-    private final JsonFactory generatorFactory;
 
     private static Logger logger = Logger.getLogger(JSONFormatter.class.getName());
 
     public JSONFormatter(final AccessLogEntry entry) {
         accessLogEntry = entry;
-        generatorFactory = new JsonFactory();
-        generatorFactory.setCodec(new ObjectMapper());
     }
 
     /**
@@ -43,74 +44,89 @@ public class JSONFormatter {
     public String format() {
         ByteArrayOutputStream logLine = new ByteArrayOutputStream();
         try {
-            JsonGenerator generator = generatorFactory.createGenerator(logLine, JsonEncoding.UTF8);
-            generator.writeStartObject();
-            generator.writeStringField("ip", accessLogEntry.getIpV4Address());
-            generator.writeNumberField("time", toTimestampInSeconds(accessLogEntry.getTimeStampMillis()));
-            generator.writeNumberField("duration",
-                                       durationAsSeconds(accessLogEntry.getDurationBetweenRequestResponseMillis()));
-            generator.writeNumberField("responsesize", accessLogEntry.getReturnedContentSize());
-            generator.writeNumberField("code", accessLogEntry.getStatusCode());
-            generator.writeStringField("method", accessLogEntry.getHttpMethod());
-            generator.writeStringField("uri", getNormalizedURI(accessLogEntry.getURI()));
-            generator.writeStringField("version", accessLogEntry.getHttpVersion());
-            generator.writeStringField("agent", accessLogEntry.getUserAgent());
-            generator.writeStringField("host", accessLogEntry.getHostString());
-
-            // Only add remote address/port fields if relevant
-            if (remoteAddressDiffers(accessLogEntry.getIpV4Address(), accessLogEntry.getRemoteAddress())) {
-                generator.writeStringField("remoteaddr", accessLogEntry.getRemoteAddress());
-                if (accessLogEntry.getRemotePort() > 0) {
-                    generator.writeNumberField("remoteport", accessLogEntry.getRemotePort());
-                }
-            }
+            JsonGenerator generator = createGenerator(logLine);
+            write(generator);
+            generator.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to generate JSON access log entry: " + e.getMessage());
+        }
 
-            // Only add peer address/port fields if relevant
-            if (accessLogEntry.getPeerAddress() != null) {
-                generator.writeStringField("peeraddr", accessLogEntry.getPeerAddress());
+        return logLine.toString();
+    }
 
-                int peerPort = accessLogEntry.getPeerPort();
-                if (peerPort > 0 && peerPort != accessLogEntry.getRemotePort()) {
-                    generator.writeNumberField("peerport", peerPort);
-                }
+    /**
+     * Returns a generator writing to the given stream, which may be used to write any number of entries,
+     * without any separator between them
+     */
+    static JsonGenerator createGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = generatorFactory.createGenerator(out, JsonEncoding.UTF8);
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    /** Writes the associated {@link AccessLogEntry} as a JSON object to the given generator, and flushes it */
+    void write(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("ip", accessLogEntry.getIpV4Address());
+        generator.writeNumberField("time", toTimestampInSeconds(accessLogEntry.getTimeStampMillis()));
+        generator.writeNumberField("duration",
+                                   durationAsSeconds(accessLogEntry.getDurationBetweenRequestResponseMillis()));
+        generator.writeNumberField("responsesize", accessLogEntry.getReturnedContentSize());
+        generator.writeNumberField("code", accessLogEntry.getStatusCode());
+        generator.writeStringField("method", accessLogEntry.getHttpMethod());
+        generator.writeStringField("uri", getNormalizedURI(accessLogEntry.getURI()));
+        generator.writeStringField("version", accessLogEntry.getHttpVersion());
+        generator.writeStringField("agent", accessLogEntry.getUserAgent());
+        generator.writeStringField("host", accessLogEntry.getHostString());
+
+        // Only add remote address/port fields if relevant
+        if (remoteAddressDiffers(accessLogEntry.getIpV4Address(), accessLogEntry.getRemoteAddress())) {
+            generator.writeStringField("remoteaddr", accessLogEntry.getRemoteAddress());
+            if (accessLogEntry.getRemotePort() > 0) {
+                generator.writeNumberField("remoteport", accessLogEntry.getRemotePort());
             }
+        }
 
-            // Only add search sub block of this is a search request
-            if (isSearchRequest(accessLogEntry)) {
-                generator.writeObjectFieldStart("search");
-                generator.writeNumberField("totalhits", getTotalHitCount(accessLogEntry.getHitCounts()));
-                generator.writeNumberField("hits", getRetrievedHitCount(accessLogEntry.getHitCounts()));
-                generator.writeEndObject();
+        // Only add peer address/port fields if relevant
+        if (accessLogEntry.getPeerAddress() != null) {
+            generator.writeStringField("peeraddr", accessLogEntry.getPeerAddress());
+
+            int peerPort = accessLogEntry.getPeerPort();
+            if (peerPort > 0 && peerPort != accessLogEntry.getRemotePort()) {
+                generator.writeNumberField("peerport", peerPort);
             }
+        }
+
+        // Only add search sub block of this is a search request
+        if (isSearchRequest(accessLogEntry)) {
+            generator.writeObjectFieldStart("search");
+            generator.writeNumberField("totalhits", getTotalHitCount(accessLogEntry.getHitCounts()));
+            generator.writeNumberField("hits", getRetrievedHitCount(accessLogEntry.getHitCounts()));
+            generator.writeEndObject();
+        }
 
-            // Add key/value access log entries. Keys with single values are written as single
-            // string value fields while keys with multiple values are written as string arrays
-            Map<String,List<String>> keyValues = accessLogEntry.getKeyValues();
-            if (keyValues != null && !keyValues.isEmpty()) {
-                generator.writeObjectFieldStart("attributes");
-                for (Map.Entry<String,List<String>> entry : keyValues.entrySet()) {
-                    if (entry.getValue().size() == 1) {
-                        generator.writeStringField(entry.getKey(), entry.getValue().get(0));
-                    } else {
-                        generator.writeFieldName(entry.getKey());
-                        generator.writeStartArray();
-                        for (String s : entry.getValue()) {
-                            generator.writeString(s);
-                        }
-                        generator.writeEndArray();
+        // Add key/value access log entries. Keys with single values are written as single
+        // string value fields while keys with multiple values are written as string arrays
+        Map<String,List<String>> keyValues = accessLogEntry.getKeyValues();
+        if (keyValues != null && !keyValues.isEmpty()) {
+            generator.writeObjectFieldStart("attributes");
+            for (Map.Entry<String,List<String>> entry : keyValues.entrySet()) {
+                if (entry.getValue().size() == 1) {
+                    generator.writeStringField(entry.getKey(), entry.getValue().get(0));
+                } else {
+                    generator.writeFieldName(entry.getKey());
+                    generator.writeStartArray();
+                    for (String s : entry.getValue()) {
+                        generator.writeString(s);
                     }
+                    generator.writeEndArray();
                 }
-                generator.writeEndObject();
             }
-
             generator.writeEndObject();
-            generator.close();
-
-        } catch (IOException e) {
-            logger.log(Level.WARNING, "Unable to generate JSON access log entry: " + e.getMessage());
         }
 
-        return logLine.toString();
+        generator.writeEndObject();
+        generator.flush();
     }
 
 
@@ -0,0 +1,127 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.container.logging;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.logging.LogRecord;
+
+/**
+ * A reusable slot in the ring buffer of a {@link LogFileHandler}, holding the bytes of one formatted log record,
+ * a log record which is to be formatted by the log thread, or a command to rotate the log file.
+ * A buffer is owned by a single thread at the time, so it keeps the encoder and JSON generator
+ * writing into it, instead of creating them for each record.
+ *
+ * @author agent
+ */
+final class LogBuffer extends OutputStream {
+
+    /** Buffers grown beyond this size are shrunk when reset, to bound the memory held by the ring buffer */
+    private static final int maxRetainedSize = 4 * 1024;
+
+    private byte[] bytes = new byte[256];
+    private ByteBuffer view = ByteBuffer.wrap(bytes);
+    private int size = 0;
+
+    private boolean rotate = false;
+    private LogRecord record = null;
+
+    private CharsetEncoder encoder = null;
+    private JsonGenerator jsonGenerator = null;
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(size + 1);
+        bytes[size++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(b, offset, bytes, size, length);
+        size += length;
+    }
+
+    /** Encodes the given string into this by the given charset, replacing characters which can not be encoded */
+    void encode(String s, Charset charset) {
+        if (encoder == null || ! encoder.charset().equals(charset))
+            encoder = charset.newEncoder()
+                             .onMalformedInput(CodingErrorAction.REPLACE)
+                             .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ensureCapacity(size + s.length());
+        CharBuffer chars = CharBuffer.wrap(s);
+        view.limit(bytes.length).position(size);
+        while (encoder.encode(chars, view, true).isOverflow())
+            grow();
+        while (encoder.flush(view).isOverflow())
+            grow();
+        size = view.position();
+        encoder.reset();
+    }
+
+    /** Returns a JSON generator writing into this, which must be flushed before this is read */
+    JsonGenerator jsonGenerator() throws IOException {
+        if (jsonGenerator == null)
+            jsonGenerator = JSONFormatter.createGenerator(this);
+        return jsonGenerator;
+    }
+
+    /** Sets whether this is a command to rotate the log file rather than a record */
+    void setRotate(boolean rotate) { this.rotate = rotate; }
+
+    boolean isRotate() { return rotate; }
+
+    /** Sets a record to be formatted into this by the log thread, as formatters are not required to be thread safe */
+    void setRecord(LogRecord record) { this.record = record; }
+
+    /** Returns the record to be formatted into this, or null if this already holds the bytes of its record */
+    LogRecord record() { return record; }
+
+    /** Returns the array holding the content of this, which is valid up to {@link #size} */
+    byte[] bytes() { return bytes; }
+
+    int size() { return size; }
+
+    /** Empties this, so it can be reused for another record */
+    void reset() {
+        size = 0;
+        rotate = false;
+        record = null;
+        if (bytes.length > maxRetainedSize) {
+            bytes = new byte[maxRetainedSize];
+            view = ByteBuffer.wrap(bytes);
+        }
+    }
+
+    /** Empties this after writing to it failed, also dropping its generator which may be left mid-value */
+    void resetAfterFailure() {
+        jsonGenerator = null;
+        encoder = null;
+        reset();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length)
+            resize(Math.max(capacity, bytes.length * 2));
+    }
+
+    /** Doubles the size of this while encoding into the view */
+    private void grow() {
+        int position = view.position();
+        resize(bytes.length * 2);
+        view.limit(bytes.length).position(position);
+    }
+
+    private void resize(int capacity) {
+        bytes = Arrays.copyOf(bytes, capacity);
+        view = ByteBuffer.wrap(bytes);
+    }
+
+}
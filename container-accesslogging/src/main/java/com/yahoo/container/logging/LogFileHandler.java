@@ -4,31 +4,53 @@ package com.yahoo.container.logging;
 import com.yahoo.container.core.AccessLogConfig;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Filter;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 import java.util.logging.StreamHandler;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-
+import java.util.zip.GZIPOutputStream;
 
 /**
  * <p>Implements log file naming/rotating logic for container logs.</p>
  *
- * <p>Overridden methods: publish</p>
+ * <p>Published records are put in a reusable slot of a lock-free ring buffer, from which a single thread
+ * formats them, as formatters are not required to be thread safe, and copies them into a write buffer
+ * which is written to the current file when full or when the ring buffer is empty.
+ * Records written by a {@link RecordWriter} are instead written into their slot by the publishing thread.
+ * Publishing never blocks: If the ring buffer is full the record is dropped and counted.</p>
+ *
+ * <p>Overridden methods: publish, flush, isLoggable</p>
  *
- * <p>Added methods: setFilePattern, setRotationTimes, rotateNow (+ few others)</p>
+ * <p>Added methods: setFilePattern, setRotationTimes, rotateNow, setCompressOnRotation (+ few others)</p>
  *
  * @author Bob Travis
  */
 public class LogFileHandler extends StreamHandler {
 
+    private static final Logger log = Logger.getLogger(LogFileHandler.class.getName());
+
     /** True to use the sequence file name scheme, false (default) to use the date scheme */
     private final boolean useSequenceNameScheme;
     private long[] rotationTimes = {0}; //default to one log per day, at midnight
@@ -36,15 +58,24 @@ public class LogFileHandler extends StreamHandler {
     private long lastRotationTime = -1; // absolute time (millis since epoch) of current file start
     private int numberOfRecords = -1;
     private long nextRotationTime = 0;
-    private OutputStream currentOutputStream = null;
-    private String fileName;
+    private FileOutputStream currentOutputStream = null;
+    private volatile String fileName;
     private String symlinkName = null;
-    private ArrayBlockingQueue<LogRecord> logQueue = new ArrayBlockingQueue<>(100000);
-    LogRecord rotateCmd = new LogRecord(Level.SEVERE, "rotateNow");
+    private boolean compressOnRotation = false;
+    private final RingBuffer<LogBuffer> logQueue = new RingBuffer<>(8192, LogBuffer::new);
+    private final AtomicLong droppedRecords = new AtomicLong();
+
+    /** The buffer records are collected in before they are written, only accessed by the log thread */
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024);
+    private CharsetEncoder encoder = null;
+
+    /** Compresses rotated files, created when first needed */
+    private ExecutorService compressor = null;
 
     static private class LogThread extends Thread {
         LogFileHandler logFileHandler;
-        long lastFlush = 0;
+        long lastDropCheck = 0;
+        long reportedDrops = 0;
         public LogThread(LogFileHandler logFile) {
             super("Logger");
             setDaemon(true);
@@ -59,32 +90,60 @@ public class LogFileHandler extends StreamHandler {
                 com.yahoo.protect.Process.logAndDie("Failed storing log records", e);
             }
 
-            logFileHandler.flush();
+            Thread.interrupted(); // clear the flag so the remaining records can be stored
+            try {
+                storeQueuedRecords(); // store what was published before shutdown
+                logFileHandler.closeCurrentFile();
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Failed storing log records at shutdown", e);
+            }
         }
 
         private void storeLogRecords() throws InterruptedException {
             while (!isInterrupted()) {
-                LogRecord r = logFileHandler.logQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (r != null) {
-                    if (r == logFileHandler.rotateCmd) {
+                if (storeQueuedRecords() == 0) {
+                    reportDroppedRecords();
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                    if (Thread.interrupted()) throw new InterruptedException();
+                }
+            }
+        }
+
+        /**
+         * Stores records until the queue is empty and returns the number of records stored.
+         * Records are written to the file at least for every batch of 1024 records.
+         */
+        private int storeQueuedRecords() throws InterruptedException {
+            int count = 0;
+            LogBuffer buffer;
+            while ((buffer = logFileHandler.logQueue.peek()) != null) {
+                try {
+                    if (buffer.isRotate()) {
+                        logFileHandler.writeBufferedRecords();
                         logFileHandler.internalRotateNow();
-                        lastFlush = System.nanoTime();
                     } else {
-                        logFileHandler.internalPublish(r);
+                        logFileHandler.format(buffer);
+                        logFileHandler.internalPublish(buffer);
                     }
-                    flushIfOld(3, TimeUnit.SECONDS);
-                } else {
-                    flushIfOld(100, TimeUnit.MILLISECONDS);
+                } finally {
+                    buffer.reset();
+                    logFileHandler.logQueue.release();
                 }
+                if (++count % 1024 == 0)
+                    logFileHandler.writeBufferedRecords();
             }
+            logFileHandler.writeBufferedRecords();
+            return count;
         }
 
-        private void flushIfOld(long age, TimeUnit unit) {
+        private void reportDroppedRecords() {
             long now = System.nanoTime();
-            if (TimeUnit.NANOSECONDS.toMillis(now - lastFlush) > unit.toMillis(age)) {
-                logFileHandler.flush();
-                lastFlush = now;
-            }
+            if (TimeUnit.NANOSECONDS.toSeconds(now - lastDropCheck) < 10) return;
+            lastDropCheck = now;
+            long drops = logFileHandler.droppedRecords.get();
+            if (drops == reportedDrops) return;
+            log.log(Level.WARNING, "Dropped " + (drops - reportedDrops) + " log records as the log queue was full");
+            reportedDrops = drops;
         }
     }
     LogThread logThread = null;
@@ -116,18 +175,79 @@ public class LogFileHandler extends StreamHandler {
     }
 
     /**
-     * Sends logrecord to file, first rotating file if needed.
+     * Puts a logrecord into the queue of records to be formatted and sent to file by the log thread.
+     * This never blocks: If the queue is full the record is dropped.
      *
      * @param r logrecord to publish
      */
     public void publish(LogRecord r) {
+        if ( ! isLoggable(r)) return;
+        publish(buffer -> buffer.setRecord(r));
+    }
+
+    /**
+     * Writes a record directly into the queue of records to be sent to file, without first formatting it to a string.
+     * This never blocks: If the queue is full the record is dropped.
+     *
+     * @param writer writes the complete record, including any line terminator, to the buffer it is given
+     */
+    void publish(RecordWriter writer) {
+        long position = logQueue.claim();
+        if (position < 0) {
+            droppedRecords.incrementAndGet();
+            return;
+        }
+
+        LogBuffer buffer = logQueue.slot(position);
+        try {
+            writer.write(buffer);
+        } catch (Exception e) {
+            buffer.resetAfterFailure();
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+        } finally {
+            logQueue.publish(position);
+        }
+    }
+
+    /**
+     * Records are written to the file by the log thread as soon as they are taken from the queue,
+     * so there is nothing to flush here.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Checks the level and filter of this only, as the log file is written without using the output stream
+     * of the superclass, which does not consider records loggable unless that stream is set.
+     */
+    @Override
+    public boolean isLoggable(LogRecord record) {
+        if (record == null) return false;
+        int levelValue = getLevel().intValue();
+        if (record.getLevel().intValue() < levelValue || levelValue == Level.OFF.intValue()) return false;
+        Filter filter = getFilter();
+        return filter == null || filter.isLoggable(record);
+    }
+
+    /** Returns the number of records which have been dropped because the queue was full */
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    /** Formats the record held by the given buffer, if any, into it. This is only called by the log thread. */
+    private void format(LogBuffer buffer) {
+        LogRecord record = buffer.record();
+        if (record == null) return;
         try {
-            logQueue.put(r);
-        } catch (InterruptedException e) {
+            buffer.encode(getFormatter().format(record), charset());
+        } catch (Exception e) {
+            buffer.resetAfterFailure();
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
         }
     }
 
-    private void internalPublish(LogRecord r) throws InterruptedException {
+    private void internalPublish(LogBuffer record) throws InterruptedException {
         // first check to see if new file needed.
         // if so, use this.internalRotateNow() to do it
 
@@ -136,11 +256,60 @@ public class LogFileHandler extends StreamHandler {
             nextRotationTime = getNextRotationTime(now); // lazy initialization
         }
         if (now > nextRotationTime || currentOutputStream == null) {
+            writeBufferedRecords();
             internalRotateNow();
         }
+        if (record.size() == 0) return; // formatting failed
+
         // count records, and publish
         numberOfRecords++;
-        super.publish(r);
+        if (record.size() > writeBuffer.remaining())
+            writeBufferedRecords();
+        if (record.size() > writeBuffer.remaining())
+            write(record.bytes(), record.size());
+        else
+            writeBuffer.put(record.bytes(), 0, record.size());
+    }
+
+    /** Encodes the given string into the write buffer, writing the buffer to the file whenever it is full */
+    private void encode(String s) {
+        CharBuffer chars = CharBuffer.wrap(s);
+        CoderResult result;
+        while ((result = encoder.encode(chars, writeBuffer, true)).isOverflow())
+            writeBufferedRecords();
+        if (result.isError())
+            reportError("Could not encode log record", null, ErrorManager.FORMAT_FAILURE);
+        while (encoder.flush(writeBuffer).isOverflow())
+            writeBufferedRecords();
+        encoder.reset();
+    }
+
+    /** Writes what has been collected in the write buffer to the current file */
+    private void writeBufferedRecords() {
+        write(writeBuffer.array(), writeBuffer.position());
+        writeBuffer.clear();
+    }
+
+    private void write(byte[] bytes, int length) {
+        try {
+            if (currentOutputStream != null && length > 0)
+                currentOutputStream.write(bytes, 0, length);
+        } catch (IOException e) {
+            reportError("Could not write to log file '" + fileName + "'", e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    private Charset charset() {
+        String encoding = getEncoding();
+        return encoding != null ? Charset.forName(encoding) : Charset.defaultCharset();
+    }
+
+    /**
+     * Sets whether files should be compressed with gzip when they are rotated.
+     * Compression is done in a separate thread, which replaces the rotated file by a .gz file when done.
+     */
+    public void setCompressOnRotation(boolean compressOnRotation) {
+        this.compressOnRotation = compressOnRotation;
     }
 
     /**
@@ -210,28 +379,37 @@ public class LogFileHandler extends StreamHandler {
      * Force file rotation now, independent of schedule.
      */
     public void rotateNow () {
-        publish(rotateCmd);
+        long position;
+        while ((position = logQueue.claim()) < 0) // unlike records, this must not be dropped
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        logQueue.slot(position).setRotate(true);
+        logQueue.publish(position);
     }
 
     // Throw InterruptedException upwards rather than relying on isInterrupted to stop the thread as
     // isInterrupted() returns false after inerruption in p.waitFor
     private void internalRotateNow() throws InterruptedException {
         // figure out new file name, then
-        // use super.setOutputStream to switch to a new file
+        // switch to a new file
 
         long now = System.currentTimeMillis();
+        String previousFileName = fileName;
         fileName = LogFormatter.insertDate(filePattern, now);
-        super.flush();
-        super.close();
+        closeCurrentFile();
 
+        File rotatedFile = null;
         if (useSequenceNameScheme)
-            moveCurrentFile();
+            rotatedFile = moveCurrentFile();
+        else if (previousFileName != null && ! previousFileName.equals(fileName))
+            rotatedFile = new File(previousFileName);
 
         try {
             checkAndCreateDir(fileName);
-            FileOutputStream os = new FileOutputStream(fileName, true); // append mode, for safety
-            super.setOutputStream(os);
-            currentOutputStream = os;
+            currentOutputStream = new FileOutputStream(fileName, true); // append mode, for safety
+            encoder = charset().newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            encode(getFormatter().getHead(this));
         }
         catch (IOException e) {
             throw new RuntimeException("Couldn't open log file '" + fileName + "'", e);
@@ -240,11 +418,52 @@ public class LogFileHandler extends StreamHandler {
         if ( ! useSequenceNameScheme)
             createSymlinkToCurrentFile();
 
+        if (compressOnRotation && rotatedFile != null)
+            compress(rotatedFile);
+
         numberOfRecords = 0;
         lastRotationTime = now;
         nextRotationTime = 0; //figure it out later (lazy evaluation)
     }
 
+    private void closeCurrentFile() {
+        if (currentOutputStream == null) return;
+        try {
+            encode(getFormatter().getTail(this));
+            writeBufferedRecords();
+            currentOutputStream.close();
+        }
+        catch (IOException e) {
+            reportError("Could not close log file", e, ErrorManager.CLOSE_FAILURE);
+        }
+        currentOutputStream = null;
+    }
+
+    private void compress(File file) {
+        if (compressor == null)
+            compressor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Logger compressor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        compressor.execute(() -> {
+            File compressedFile = new File(file.getPath() + ".gz");
+            try (InputStream in = new FileInputStream(file);
+                 OutputStream out = new GZIPOutputStream(new FileOutputStream(compressedFile), 64 * 1024)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) >= 0)
+                    out.write(buffer, 0, read);
+            }
+            catch (IOException e) {
+                log.log(Level.WARNING, "Could not compress log file '" + file + "'", e);
+                compressedFile.delete();
+                return;
+            }
+            file.delete();
+        });
+    }
+
     /** Name files by date - create a symlink with a constant name to the newest file */
     private void createSymlinkToCurrentFile() throws InterruptedException {
         if (symlinkName == null) return;
@@ -265,11 +484,11 @@ public class LogFileHandler extends StreamHandler {
      * Name the current file to "name.n" where n
      * 1+ the largest integer in existing file names
      */
-    private void moveCurrentFile() {
+    private File moveCurrentFile() {
         File file=new File(fileName);
-        if ( ! file.exists()) return; // no current file
+        if ( ! file.exists()) return null; // no current file
         File dir=file.getParentFile();
-        Pattern logFilePattern=Pattern.compile(".*\\.(\\d+)");
+        Pattern logFilePattern=Pattern.compile(".*\\.(\\d+)(\\.gz)?");
         long largestN=0;
         for (File existingFile : dir.listFiles()) {
             Matcher matcher=logFilePattern.matcher(existingFile.getName());
@@ -278,7 +497,8 @@ public class LogFileHandler extends StreamHandler {
             if (thisN>largestN)
                 largestN=thisN;
         }
-        file.renameTo(new File(dir,file.getName() + "." + (largestN + 1)));
+        File movedFile = new File(dir,file.getName() + "." + (largestN + 1));
+        return file.renameTo(movedFile) ? movedFile : null;
     }
 
     /**
@@ -357,18 +577,30 @@ public class LogFileHandler extends StreamHandler {
     }
 
     /**
-     * Flushes all queued messages, interrupts the log thread in this and
-     * waits for it to end before returning
+     * Interrupts the log thread in this, which writes all queued messages before ending,
+     * and waits for it to end before returning
      */
     public void shutdown() {
         logThread.interrupt();
         try {
             logThread.join();
+            if (compressor != null) {
+                compressor.shutdown();
+                compressor.awaitTermination(1, TimeUnit.MINUTES);
+            }
         }
         catch (InterruptedException e) {
         }
     }
 
+    /** Writes a record to the buffer it is stored in until it is written to the log file */
+    @FunctionalInterface
+    interface RecordWriter {
+
+        void write(LogBuffer buffer) throws IOException;
+
+    }
+
     /**
      * Only for unit testing. Do not use.
      */
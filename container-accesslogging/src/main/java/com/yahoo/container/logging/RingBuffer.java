@@ -0,0 +1,105 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.container.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, lock-free queue of pre-allocated, reusable slots which may be written by any number of threads
+ * and read by a single thread. Claiming a slot never blocks: If all slots are taken the claim is rejected.
+ *
+ * Each slot has a sequence number which tells whether it is free to be claimed at a given position,
+ * or holds the item published at that position, such that producers and the consumer only contend
+ * when the buffer is full or empty.
+ *
+ * @author agent
+ */
+final class RingBuffer<T> {
+
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    /** The next position to claim, claimed by producers */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** The next position to read, only accessed by the consumer */
+    private long head = 0;
+
+    /**
+     * Creates a ring buffer with room for at least the given number of items
+     *
+     * @param minCapacity the minimum number of slots, which must be at least 2, as a single slot
+     *                    can not tell a slot which is free from one which holds an unread item
+     * @param slotFactory creates the slots of this
+     */
+    RingBuffer(int minCapacity, Supplier<T> slotFactory) {
+        if (minCapacity < 2) throw new IllegalArgumentException("Capacity must be at least 2, not " + minCapacity);
+        int capacity = Integer.highestOneBit(minCapacity);
+        if (capacity < minCapacity) capacity <<= 1;
+        slots = new Object[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = slotFactory.get();
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Claims the next slot for writing and returns its position, or returns -1 if this is full.
+     * The slot at the returned position is owned by the caller until it is passed to {@link #publish},
+     * which must always be done, also if writing the slot fails.
+     */
+    long claim() {
+        long position = tail.get();
+        while (true) {
+            long difference = sequences.get((int)position & mask) - position;
+            if (difference == 0) { // the slot is free at this position
+                if (tail.compareAndSet(position, position + 1))
+                    return position;
+                position = tail.get();
+            }
+            else if (difference < 0) { // the slot still holds the item from the previous round
+                return -1;
+            }
+            else { // another producer took this position
+                position = tail.get();
+            }
+        }
+    }
+
+    /** Returns the slot at a position returned from {@link #claim} */
+    @SuppressWarnings("unchecked")
+    T slot(long position) {
+        return (T)slots[(int)position & mask];
+    }
+
+    /** Makes the slot at the given claimed position available to the consumer */
+    void publish(long position) {
+        sequences.set((int)position & mask, position + 1);
+    }
+
+    /**
+     * Returns the next published slot, in the order they were claimed, or null if there is none.
+     * The slot remains owned by the consumer until it calls {@link #release}.
+     * This must only be called by a single thread.
+     */
+    T peek() {
+        int index = (int)head & mask;
+        if (sequences.get(index) != head + 1) return null; // not yet published
+        @SuppressWarnings("unchecked")
+        T slot = (T)slots[index];
+        return slot;
+    }
+
+    /** Frees the slot last returned by {@link #peek}, such that it may be claimed again */
+    void release() {
+        sequences.set((int)head & mask, head + slots.length);
+        head++;
+    }
+
+    int capacity() { return slots.length; }
+
+}
@@ -2,6 +2,7 @@
 package com.yahoo.container.logging;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 
 
 /**
@@ -180,4 +181,23 @@ public class JSONLogTestCase extends junit.framework.TestCase {
         assertEquals(expectedOutput, new JSONFormatter(entry).format());
     }
 
+    public void test_entries_written_to_a_reused_buffer() throws Exception {
+        LogBuffer buffer = new LogBuffer();
+        new JSONFormatter(newAccessLogEntry("first")).write(buffer.jsonGenerator());
+        buffer.write('\n');
+        new JSONFormatter(newAccessLogEntry("second")).write(buffer.jsonGenerator());
+        buffer.write('\n');
+
+        String[] lines = new String(buffer.bytes(), 0, buffer.size(), StandardCharsets.UTF_8).split("\n", -1);
+        assertEquals(3, lines.length);
+        assertEquals(new JSONFormatter(newAccessLogEntry("first")).format(), lines[0]);
+        assertEquals(new JSONFormatter(newAccessLogEntry("second")).format(), lines[1]);
+        assertEquals("", lines[2]);
+
+        buffer.reset();
+        new JSONFormatter(newAccessLogEntry("third")).write(buffer.jsonGenerator());
+        assertEquals(new JSONFormatter(newAccessLogEntry("third")).format(),
+                     new String(buffer.bytes(), 0, buffer.size(), StandardCharsets.UTF_8));
+    }
+
 }
@@ -0,0 +1,174 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.container.logging;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author agent
+ */
+public class RingBufferTestCase {
+
+    @Test
+    public void testCapacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(2, buffer(2).capacity());
+        assertEquals(8, buffer(5).capacity());
+        assertEquals(8, buffer(8).capacity());
+        assertEquals(131072, buffer(100000).capacity());
+    }
+
+    @Test
+    public void testCapacityMustBeAtLeastTwo() {
+        try {
+            buffer(1);
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException expected) {
+            assertEquals("Capacity must be at least 2, not 1", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testOfferAndDrainInOrder() {
+        RingBuffer<long[]> buffer = buffer(4);
+        assertNull(buffer.peek());
+
+        for (int i = 0; i < 4; i++)
+            assertTrue(offer(buffer, i));
+        assertFull(buffer);
+
+        assertEquals(0, poll(buffer));
+        assertEquals(1, poll(buffer));
+        assertEquals(2, poll(buffer));
+
+        // wrap around
+        assertTrue(offer(buffer, 4));
+        assertTrue(offer(buffer, 5));
+        assertTrue(offer(buffer, 6));
+        assertFull(buffer);
+        for (int i = 3; i <= 6; i++)
+            assertEquals(i, poll(buffer));
+        assertNull(buffer.peek());
+    }
+
+    @Test
+    public void testWrapAroundAtSmallestCapacity() {
+        RingBuffer<long[]> buffer = buffer(2);
+        long next = 0;
+        for (int round = 0; round < 10; round++) {
+            assertTrue(offer(buffer, next));
+            assertTrue(offer(buffer, next + 1));
+            assertFull(buffer);
+            assertEquals(next, poll(buffer));
+            assertTrue(offer(buffer, next + 2));
+            assertFull(buffer);
+            assertEquals(next + 1, poll(buffer));
+            assertEquals(next + 2, poll(buffer));
+            assertNull(buffer.peek());
+            next += 3;
+        }
+    }
+
+    @Test
+    public void testSlotsAreReused() {
+        RingBuffer<long[]> buffer = buffer(2);
+        List<long[]> slots = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            long position = buffer.claim();
+            slots.add(buffer.slot(position));
+            buffer.publish(position);
+            buffer.peek();
+            buffer.release();
+        }
+        assertNotSame(slots.get(0), slots.get(1));
+        for (int i = 2; i < 6; i++)
+            assertSame(slots.get(i % 2), slots.get(i));
+    }
+
+    @Test
+    public void testUnpublishedSlotsAreNotRead() {
+        RingBuffer<long[]> buffer = buffer(4);
+        long first = buffer.claim();
+        assertTrue(offer(buffer, 1));
+        assertNull("Earlier claimed slot is not yet published", buffer.peek());
+        buffer.slot(first)[0] = 0;
+        buffer.publish(first);
+        assertEquals(0, poll(buffer));
+        assertEquals(1, poll(buffer));
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        int producerCount = 4;
+        int itemsPerProducer = 100000;
+        RingBuffer<long[]> buffer = new RingBuffer<>(1024, () -> new long[2]);
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < producerCount; p++) {
+            int producer = p;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < itemsPerProducer; i++) {
+                    long position;
+                    while ((position = buffer.claim()) < 0)
+                        Thread.yield();
+                    long[] slot = buffer.slot(position);
+                    slot[0] = producer;
+                    slot[1] = i;
+                    buffer.publish(position);
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+
+        long[] nextExpected = new long[producerCount];
+        int received = 0;
+        while (received < producerCount * itemsPerProducer) {
+            long[] slot = buffer.peek();
+            if (slot == null) continue;
+            int producer = (int)slot[0];
+            assertEquals("Items from each producer are received in order", nextExpected[producer]++, slot[1]);
+            buffer.release();
+            received++;
+        }
+        for (Thread producer : producers)
+            producer.join();
+        assertNull(buffer.peek());
+        for (long next : nextExpected)
+            assertEquals(itemsPerProducer, next);
+    }
+
+    private static RingBuffer<long[]> buffer(int minCapacity) {
+        return new RingBuffer<>(minCapacity, () -> new long[1]);
+    }
+
+    private static boolean offer(RingBuffer<long[]> buffer, long item) {
+        long position = buffer.claim();
+        if (position < 0) return false;
+        buffer.slot(position)[0] = item;
+        buffer.publish(position);
+        return true;
+    }
+
+    private static long poll(RingBuffer<long[]> buffer) {
+        long[] slot = buffer.peek();
+        assertNotNull("An item is available", slot);
+        long item = slot[0];
+        buffer.release();
+        return item;
+    }
+
+    private static void assertFull(RingBuffer<long[]> buffer) {
+        assertEquals("Full", -1, buffer.claim());
+    }
+
+}
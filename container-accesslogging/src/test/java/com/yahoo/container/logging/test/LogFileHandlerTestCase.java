@@ -1,11 +1,16 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.container.logging.test;
 
+import com.yahoo.container.core.AccessLogConfig;
 import com.yahoo.container.logging.LogFileHandler;
 import com.yahoo.io.IOUtils;
 import org.junit.Test;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -13,8 +18,11 @@ import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.SimpleFormatter;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author <a href="mailto:travisb@yahoo-inc.com">Bob Travis</a>
@@ -114,6 +122,30 @@ public class LogFileHandlerTestCase {
       new File(logFilePattern).deleteOnExit();
     }
 
+    @Test
+    public void testCompressionOnRotation() throws InterruptedException, IOException {
+        String logDirectory = "./testlogforcompression";
+        LogFileHandler h = new LogFileHandler(AccessLogConfig.FileHandler.RotateScheme.Enum.SEQUENCE);
+        h.setFilePattern(logDirectory + "/logfilehandlertest");
+        h.setFormatter(new SimpleFormatter());
+        h.setCompressOnRotation(true);
+
+        h.publish(new LogRecord(Level.INFO, "first file"));
+        h.rotateNow();
+        h.publish(new LogRecord(Level.INFO, "second file"));
+        h.shutdown();
+
+        File compressedFile = new File(logDirectory, "logfilehandlertest.1.gz");
+        assertTrue(compressedFile.exists());
+        assertFalse(new File(logDirectory, "logfilehandlertest.1").exists());
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(compressedFile))))) {
+            reader.readLine();
+            assertEquals("INFO: first file", reader.readLine());
+        }
+        assertTrue(IOUtils.readFile(new File(logDirectory, "logfilehandlertest")).contains("second file"));
+        deleteRecursive(logDirectory);
+    }
+
     @Test
     public void testSymlink() {
         LogFileHandler h = new LogFileHandler();
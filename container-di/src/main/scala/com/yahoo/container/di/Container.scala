@@ -209,7 +209,7 @@ class Container(
   }
 
   private def constructComponents(graph: ComponentGraph) {
-    graph.nodes foreach (_.newOrCachedInstance())
+    graph.constructInstances(componentDeconstructor.deconstruct(_))
   }
 
   def shutdown(graph: ComponentGraph, deconstructor: ComponentDeconstructor) {
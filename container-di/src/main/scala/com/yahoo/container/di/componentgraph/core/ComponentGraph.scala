@@ -1,9 +1,11 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.container.di.componentgraph.core
 
-import java.util.logging.Logger
+import java.util.concurrent.{Callable, ExecutionException, ExecutorService, Executors}
+import java.util.logging.{Level, Logger}
 
 import com.yahoo.component.provider.ComponentRegistry
+import com.yahoo.concurrent.DaemonThreadFactory
 import com.yahoo.config.ConfigInstance
 
 import java.lang.annotation.{Annotation => JavaAnnotation}
@@ -133,6 +135,99 @@ class ComponentGraph(val generation: Long = 0) {
 
   def allComponentsAndProviders = nodes map {_.instance.get}
 
+  /**
+   * Creates the instances of all nodes which do not already have one (i.e. which are not reused).
+   * The nodes at each dependency depth only use nodes at lower depths, and are therefore constructed concurrently,
+   * on a pool of at most one thread per processor, with the thread context class loader of the calling thread.
+   * The components of the nodes they use are resolved once on the calling thread first, as providers
+   * need not be thread safe.
+   * Note that this changes how often providers are called: When constructed concurrently, all the nodes at one
+   * depth which use a provider share the single result of one call to its get(), while each of them makes its own
+   * call to get() when constructed sequentially, as all consumers did before.
+   * If any construction fails, the error of the failing node first ordered by component id at the lowest failing
+   * depth is thrown when all the constructions at that depth are done, after the components constructed at that
+   * depth are passed to the given deconstruct function.
+   */
+  def constructInstances(deconstruct: AnyRef => Unit = _ => ()) {
+    val levels = nodesByDepth(nodesById.values) map { _.filter(_.instance.isEmpty).sortBy(_.componentId) }
+    val maxConcurrency = (levels map (_.size)).foldLeft(0)(_ max _) min Runtime.getRuntime.availableProcessors
+
+    if (maxConcurrency <= 1) {
+      levels foreach { nodes =>
+        try {
+          nodes foreach constructInstance
+        } catch {
+          case e: Throwable =>
+            deconstructConstructed(nodes, deconstruct)
+            throw e
+        }
+      }
+    } else {
+      val executor = Executors.newFixedThreadPool(maxConcurrency, new DaemonThreadFactory("component-construction-"))
+      try {
+        levels foreach { constructConcurrently(_, executor, deconstruct) }
+      } finally {
+        executor.shutdownNow()
+      }
+    }
+  }
+
+  private def constructConcurrently(nodes: List[Node], executor: ExecutorService, deconstruct: AnyRef => Unit) {
+    val classLoader = Thread.currentThread.getContextClassLoader
+    val dependencies = nodes.flatMap(_.constructionDependencies).distinct
+    dependencies foreach (_.resolveComponent())
+
+    try {
+      val futures = nodes map { node =>
+        executor.submit(new Callable[Unit] {
+          override def call() {
+            val thread = Thread.currentThread
+            val previousClassLoader = thread.getContextClassLoader
+            thread.setContextClassLoader(classLoader)
+            try {
+              constructInstance(node)
+            } finally {
+              thread.setContextClassLoader(previousClassLoader)
+            }
+          }
+        })
+      }
+
+      val failures = futures map { future =>
+        try {
+          future.get()
+          None
+        } catch {
+          case e: ExecutionException => Some(e.getCause)
+        }
+      }
+      failures.flatten.headOption foreach { cause =>
+        deconstructConstructed(nodes, deconstruct)
+        throw cause
+      }
+    } finally {
+      dependencies foreach (_.clearResolvedComponent())
+    }
+  }
+
+  /** Deconstructs and forgets the instances constructed of the given nodes, as the graph will not be used. */
+  private def deconstructConstructed(nodes: List[Node], deconstruct: AnyRef => Unit) {
+    for (node <- nodes; instance <- node.instance) {
+      node.instance = None
+      try {
+        deconstruct(instance)
+      } catch {
+        case e: Exception => log.log(Level.WARNING, s"Failed deconstructing ${node.idAndType}", e)
+      }
+    }
+  }
+
+  private def constructInstance(node: Node) {
+    val startTime = System.currentTimeMillis
+    node.ensureInstance()
+    log.log(LogLevel.DEBUG, s"Constructed ${node.idAndType} in ${System.currentTimeMillis - startTime} ms")
+  }
+
   private def completeComponentRegistryNode(registry: ComponentRegistryNode) {
     registry.injectAll(osgiComponentsOfClass(registry.componentClass))
   }
@@ -302,6 +397,27 @@ object ComponentGraph {
     isBindingAnnotation(annotation.getClass)
   }
 
+  /**
+   * Returns the nodes grouped by their depth in the graph, from the nodes which do not use any other nodes
+   * and upwards, such that the nodes in each group only use nodes in earlier groups.
+   */
+  def nodesByDepth(nodes: Traversable[Node]): List[List[Node]] = {
+    val depths = mutable.Map[ComponentId, Int]()
+    val visiting = mutable.Set[ComponentId]()
+
+    def depth(node: Node): Int = {
+      depths.getOrElse(node.componentId, {
+        require(visiting.add(node.componentId), "There's a cycle in the graph.")
+        val nodeDepth = (node.constructionDependencies map depth).foldLeft(-1)(_ max _) + 1
+        visiting.remove(node.componentId)
+        depths(node.componentId) = nodeDepth
+        nodeDepth
+      })
+    }
+
+    nodes.toList.groupBy(depth).toList.sortBy(_._1).map(_._2)
+  }
+
   /**
    * The returned list is the nodes from the graph bottom-up.
    * @return A list where a earlier than b in the list implies that there is no path from a to b
@@ -27,6 +27,9 @@ class JerseyNode(componentId: ComponentId,
   extends ComponentNode(componentId, configId, clazz) {
 
 
+  /** All the components to inject are used when constructing the rest api context. */
+  override def constructionDependencies: List[Node] = usedComponents ++ componentsToInject
+
   override protected def newInstance(): RestApiContext = {
     val instance = super.newInstance()
     val restApiContext = instance.asInstanceOf[RestApiContext]
@@ -25,14 +25,37 @@ abstract class Node(val componentId: ComponentId) {
    */
   def usedComponents: List[Node]
 
+  /** The nodes which must have their instances constructed before this. */
+  def constructionDependencies: List[Node] = usedComponents
+
+  /** The component of this, when resolved ahead of constructing the nodes using it on other threads. */
+  private var resolvedComponent : Option[AnyRef] = None
+
   protected def newInstance() : AnyRef
 
   def newOrCachedInstance() : AnyRef = {
-    component(
-      instance.getOrElse {
-        instance = Some(newInstance())
-        instance.get
-      })
+    resolvedComponent getOrElse component(ensureInstance())
+  }
+
+  /** Returns the instance of this, which is the provider itself for providers, after creating it if needed. */
+  private[core] def ensureInstance() : AnyRef = {
+    instance.getOrElse {
+      instance = Some(newInstance())
+      instance.get
+    }
+  }
+
+  /**
+   * Resolves the component of this once, on the calling thread, and returns that from newOrCachedInstance
+   * until cleared, such that nodes using this can be constructed on other threads without calling a provider
+   * concurrently.
+   */
+  private[core] def resolveComponent() {
+    resolvedComponent = Some(newOrCachedInstance())
+  }
+
+  private[core] def clearResolvedComponent() {
+    resolvedComponent = None
   }
 
   private def component(instance: AnyRef) = instance match {
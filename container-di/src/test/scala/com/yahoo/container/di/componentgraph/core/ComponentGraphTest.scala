@@ -1,7 +1,7 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.container.di.componentgraph.core
 
-import java.util.concurrent.{Executor, Executors}
+import java.util.concurrent.{ConcurrentLinkedQueue, Executor, Executors}
 
 import com.google.inject.name.{Named, Names}
 import com.google.inject.{AbstractModule, Guice, Inject, Key, Provider => GuiceProvider}
@@ -19,6 +19,8 @@ import org.hamcrest.Matcher
 import org.junit.Assert._
 import org.junit.Test
 
+import scala.collection.JavaConverters._
+import scala.collection.mutable
 import scala.language.implicitConversions
 
 /**
@@ -115,6 +117,80 @@ class ComponentGraphTest {
     componentGraph.getInstance(clazz)
   }
 
+  @Test
+  def components_are_constructed_after_the_components_they_use() {
+    val injectedComponent = mockComponentNode(classOf[SimpleComponent])
+    val targetComponent = mockComponentNode(classOf[ComponentTakingComponent])
+    targetComponent.inject(injectedComponent)
+    val independentComponent = mockComponentNode(classOf[SimpleComponent2])
+
+    val componentGraph = new ComponentGraph
+    componentGraph.add(injectedComponent)
+    componentGraph.add(targetComponent)
+    componentGraph.add(independentComponent)
+    componentGraph.complete()
+
+    assertEquals(List(Set(injectedComponent.componentId, independentComponent.componentId), Set(targetComponent.componentId)),
+                 ComponentGraph.nodesByDepth(componentGraph.nodes) map (_.map(_.componentId).toSet))
+
+    componentGraph.constructInstances()
+    assertTrue(independentComponent.instance.isDefined)
+    assertTrue(componentGraph.getInstance(classOf[ComponentTakingComponent]).injectedComponent eq injectedComponent.instance.get)
+  }
+
+  @Test
+  def construction_error_of_first_component_by_id_is_thrown() {
+    val componentGraph = new ComponentGraph
+    componentGraph.add(mockComponentNodeWithId(classOf[FailingComponent], "b"))
+    componentGraph.add(mockComponentNodeWithId(classOf[FailingComponent], "a"))
+    componentGraph.complete()
+
+    try {
+      componentGraph.constructInstances()
+      fail("Expected exception")
+    } catch {
+      case e: ComponentNode.ComponentConstructorException =>
+        assertThat(e.getMessage, containsString("'a'"))
+    }
+  }
+
+  @Test
+  def components_constructed_at_the_depth_of_a_failing_component_are_deconstructed() {
+    val componentGraph = new ComponentGraph
+    val simpleComponent = mockComponentNodeWithId(classOf[SimpleComponent], "a")
+    componentGraph.add(simpleComponent)
+    componentGraph.add(mockComponentNodeWithId(classOf[FailingComponent], "b"))
+    componentGraph.complete()
+
+    val deconstructed = mutable.ListBuffer[AnyRef]()
+    try {
+      componentGraph.constructInstances(deconstructed += _)
+      fail("Expected exception")
+    } catch {
+      case e: ComponentNode.ComponentConstructorException => // expected
+    }
+    assertEquals(1, deconstructed.size)
+    assertTrue(deconstructed.head.isInstanceOf[SimpleComponent])
+    assertTrue(simpleComponent.instance.isEmpty)
+  }
+
+  @Test
+  def providers_are_only_called_by_the_constructing_thread() {
+    val componentGraph = new ComponentGraph
+    val executorProvider = mockComponentNode(classOf[ThreadRecordingExecutorProvider])
+    componentGraph.add(executorProvider)
+    for (id <- List("a", "b", "c", "d")) {
+      val componentTakingExecutor = mockComponentNodeWithId(classOf[ComponentTakingExecutor], id)
+      componentTakingExecutor.inject(executorProvider)
+      componentGraph.add(componentTakingExecutor)
+    }
+    componentGraph.complete()
+
+    componentGraph.constructInstances()
+    val provider = executorProvider.instance.get.asInstanceOf[ThreadRecordingExecutorProvider]
+    assertEquals(Set(Thread.currentThread), provider.callingThreads.asScala.toSet)
+  }
+
   @Test
   def components_are_shared() {
     val componentGraph = new ComponentGraph
@@ -467,6 +543,10 @@ object ComponentGraphTest {
 
   class ComponentCausingCycle(component: ComponentCausingCycle) extends AbstractComponent
 
+  class FailingComponent extends AbstractComponent {
+    sys.error("Always fails")
+  }
+
   class SimpleComponentProviderThatThrows extends Provider[SimpleComponent] {
     def get() = throw new AssertionError("Should never be called.")
     def deconstruct() {}
@@ -480,6 +560,14 @@ object ComponentGraphTest {
 
   class DerivedExecutorProvider extends ExecutorProvider
 
+  class ThreadRecordingExecutorProvider extends ExecutorProvider {
+    val callingThreads = new ConcurrentLinkedQueue[Thread]()
+    override def get() = {
+      callingThreads.add(Thread.currentThread)
+      super.get()
+    }
+  }
+
   class IntProvider extends Provider[java.lang.Integer] {
     def get() = throw new AssertionError("Should never be called.")
     def deconstruct() {}
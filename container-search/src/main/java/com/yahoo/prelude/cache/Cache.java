@@ -14,6 +14,10 @@ import com.yahoo.statistics.Value;
  * <p>A generic cache which keeps the total memory consumed by its content
  * below a configured maximum.</p>
  *
+ * <p>If created with a {@link CacheValueSerializer}, values are stored serialized outside the Java heap
+ * in an {@link OffHeapStore}, and only the keys are kept on the heap. Eviction is then in insertion order
+ * rather than LRU.</p>
+ *
  * <p>Thread safe.</p>
  *
  * @author vegardh
@@ -34,6 +38,12 @@ public class Cache<K, V> {
     /** The max allowed size of an entry */
     private long maxEntrySizeBytes=10000;
 
+    /** The serializer of values stored off heap, or null if values are stored on the heap */
+    private final CacheValueSerializer<K, V> serializer;
+
+    /** The store of values when they are stored off heap, or null if values are stored on the heap */
+    private final OffHeapStore<K> offHeapStore;
+
     /**
      * Creates a new cache
      *
@@ -43,9 +53,25 @@ public class Cache<K, V> {
      * @param manager the current Statistics manager acquired by injection
      */
     public Cache(long maxSizeBytes,long timeToLiveMillis, long maxEntrySizeBytes, Statistics manager) {
+        this(maxSizeBytes, timeToLiveMillis, maxEntrySizeBytes, manager, null);
+    }
+
+    /**
+     * Creates a new cache
+     *
+     * @param maxSizeBytes the max size in bytes this cache is permitted to consume,
+     *        off heap if a serializer is given, otherwise including Result objects and Query keys
+     * @param timeToLiveMillis a negative value means unlimited time
+     * @param manager the current Statistics manager acquired by injection
+     * @param serializer the serializer to use to store values off heap, or null to store values on the heap
+     */
+    public Cache(long maxSizeBytes,long timeToLiveMillis, long maxEntrySizeBytes, Statistics manager,
+                 CacheValueSerializer<K, V> serializer) {
         this.maxSizeBytes=maxSizeBytes;
         this.timeToLiveMillis=timeToLiveMillis;
         this.maxEntrySizeBytes=maxEntrySizeBytes;
+        this.serializer = serializer;
+        this.offHeapStore = serializer == null ? null : new OffHeapStore<>(maxSizeBytes);
         initStats(manager);
     }
 
@@ -77,6 +103,16 @@ public class Cache<K, V> {
         return true;
     }
 
+    private synchronized boolean synchPutOffHeap(K key, byte[] serializedValue) {
+        boolean added = offHeapStore.put(key, serializedValue, System.currentTimeMillis());
+        elems.put(offHeapStore.size());
+        return added;
+    }
+
+    private synchronized byte[] synchGetOffHeap(K key) {
+        return offHeapStore.get(key, System.currentTimeMillis(), timeToLiveMillis);
+    }
+
     /**
      * Attempts to add a value to the cache
      *
@@ -85,6 +121,14 @@ public class Cache<K, V> {
      * @return true if the value was added, false if it could not be added
      */
     public boolean put(K key,V value) {
+        if (offHeapStore != null) {
+            byte[] serializedValue = serializer.serialize(value);
+            if (serializedValue == null || tooBigToCache(serializedValue.length)) {
+                return false;
+            }
+            entrySizes.put(serializedValue.length);
+            return synchPutOffHeap(key, serializedValue);
+        }
         if (value instanceof Result) { // Optimized for CachingSearcher. Assuming the key is the Query.
             long totalSizeBytes = calc.sizeOf(value); // Result has a Query field
             if (tooBigToCache(totalSizeBytes)) {
@@ -136,12 +180,19 @@ public class Cache<K, V> {
         }
     }
 
-    public boolean containsKey(K k) {
+    public synchronized boolean containsKey(K k) {
+        if (offHeapStore != null) {
+            return offHeapStore.containsKey(k);
+        }
         return content.containsKey(new CacheKey<>(-1, k));
     }
 
     /** Returns a value, if it is present in the cache */
     public V get(K key) {
+        if (offHeapStore != null) {
+            byte[] serializedValue = synchGetOffHeap(key);
+            return serializedValue == null ? null : serializer.deserialize(key, serializedValue);
+        }
         // Currently it works to make a new CacheKey object without size
         // because we have changed hashCode() there.
         CacheKey<K> cacheKey = new CacheKey<>(-1, key);
@@ -168,6 +219,11 @@ public class Cache<K, V> {
      * @return true if the value was removed, false if it was not present
      */
     public synchronized boolean remove(K key) {
+        if (offHeapStore != null) {
+            boolean removed = offHeapStore.remove(key);
+            elems.put(offHeapStore.size());
+            return removed;
+        }
         CacheValue<K, V> value=content.remove(key);
         if (value==null) {
             return false;
@@ -178,7 +234,10 @@ public class Cache<K, V> {
         return true;
     }
 
-    public int size() {
+    public synchronized int size() {
+        if (offHeapStore != null) {
+            return offHeapStore.size();
+        }
         return content.size();
     }
 
@@ -0,0 +1,22 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.cache;
+
+/**
+ * Converts cache values to and from bytes, such that they can be stored outside the Java heap.
+ *
+ * @author agent
+ */
+public interface CacheValueSerializer<K, V> {
+
+    /** Returns the given value as bytes, or null if this value cannot be serialized (and should not be cached) */
+    byte[] serialize(V value);
+
+    /**
+     * Recreates a value from bytes produced by {@link #serialize}
+     *
+     * @param key the key the value was looked up by
+     * @param data the serialized value
+     */
+    V deserialize(K key, byte[] data);
+
+}
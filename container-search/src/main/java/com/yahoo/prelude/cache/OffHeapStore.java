@@ -0,0 +1,190 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>A store of byte arrays in direct memory outside the Java heap.
+ * Only the keys and a small index entry per value is kept on the heap.</p>
+ *
+ * <p>Values are written sequentially into a ring of direct buffers, each of which is allocated when first
+ * written to. When the ring is full, new values overwrite the oldest ones, which are then evicted,
+ * i.e eviction is in insertion (FIFO) order.</p>
+ *
+ * <p>Not thread safe.</p>
+ *
+ * @author agent
+ */
+public class OffHeapStore<K> {
+
+    /** The max size of a single direct buffer */
+    private static final int defaultMaxBufferSize = 1 << 30;
+
+    private final ByteBuffer[] buffers;
+    private final int bufferSize;
+
+    /** The location of each value in this */
+    private final Map<K, Entry<K>> index = new HashMap<>();
+
+    /** All entries in the order they were written, including those which are removed but not yet overwritten */
+    private final Deque<Entry<K>> log = new ArrayDeque<>();
+
+    private int writeBuffer = 0;
+    private int writePosition = 0;
+
+    private long usedBytes = 0;
+    private long evictionCount = 0;
+
+    /** Creates a store which can hold at most the given number of bytes */
+    public OffHeapStore(long capacityBytes) {
+        this(capacityBytes, defaultMaxBufferSize);
+    }
+
+    OffHeapStore(long capacityBytes, int maxBufferSize) {
+        if (capacityBytes <= 0)
+            throw new IllegalArgumentException("Off heap capacity must be positive, was " + capacityBytes);
+        int bufferCount = (int)((capacityBytes + maxBufferSize - 1) / maxBufferSize);
+        this.bufferSize = (int)((capacityBytes + bufferCount - 1) / bufferCount);
+        this.buffers = new ByteBuffer[bufferCount];
+    }
+
+    /**
+     * Stores a value, evicting the oldest values as necessary. Any previous value of the key is removed.
+     *
+     * @param key the key of the value
+     * @param value the value to store
+     * @param timestamp the time of insertion in milliseconds, used for expiry
+     * @return true if the value was stored, false if it is larger than the max value size of this
+     */
+    public boolean put(K key, byte[] value, long timestamp) {
+        remove(key);
+        if (value.length > bufferSize) return false;
+
+        long cursor = ringOffset(writeBuffer, writePosition);
+        long consumedBytes = value.length;
+        if ((long)writePosition + value.length > bufferSize) { // Skip the rest of this buffer
+            consumedBytes += bufferSize - writePosition;
+            writeBuffer = (writeBuffer + 1) % buffers.length;
+            writePosition = 0;
+        }
+        evictConsumed(cursor, consumedBytes);
+
+        ByteBuffer target = buffer(writeBuffer).duplicate();
+        target.position(writePosition);
+        target.put(value);
+
+        Entry<K> entry = new Entry<>(key, writeBuffer, writePosition, value.length, timestamp);
+        index.put(key, entry);
+        log.addLast(entry);
+        writePosition += value.length;
+        usedBytes += value.length;
+        return true;
+    }
+
+    /**
+     * Returns a copy of the value stored for this key, or null if none, or if it is expired,
+     * in which case it is also removed.
+     *
+     * @param now the current time in milliseconds
+     * @param timeToLiveMillis the max age of a returned value, negative for indefinite lifespan
+     */
+    public byte[] get(K key, long now, long timeToLiveMillis) {
+        Entry<K> entry = index.get(key);
+        if (entry == null) return null;
+
+        if (timeToLiveMillis >= 0 && now - entry.timestamp >= timeToLiveMillis) {
+            remove(key);
+            return null;
+        }
+
+        byte[] value = new byte[entry.length];
+        ByteBuffer source = buffers[entry.buffer].duplicate();
+        source.position(entry.position);
+        source.get(value);
+        return value;
+    }
+
+    /** Returns whether there is a value stored for this key (expired or not) */
+    public boolean containsKey(K key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Removes a value if present. Its space is reclaimed when it is overwritten.
+     *
+     * @return true if the value was removed, false if it was not present
+     */
+    public boolean remove(K key) {
+        Entry<K> entry = index.remove(key);
+        if (entry == null) return false;
+        usedBytes -= entry.length;
+        return true;
+    }
+
+    /** Returns the number of values in this */
+    public int size() { return index.size(); }
+
+    /** Returns the number of bytes occupied by values in this */
+    public long usedBytes() { return usedBytes; }
+
+    /** Returns the number of bytes this can hold */
+    public long capacityBytes() { return (long)bufferSize * buffers.length; }
+
+    /** Returns the number of values which have been overwritten by others since this was created */
+    public long evictionCount() { return evictionCount; }
+
+    /**
+     * Evicts the values which are overwritten or skipped when the given number of bytes of the ring
+     * are consumed from the given cursor offset. As values are written sequentially around the ring,
+     * the log is in ring order starting at the cursor, so these are always the oldest values.
+     */
+    private void evictConsumed(long cursor, long consumedBytes) {
+        long capacity = capacityBytes();
+        while ( ! log.isEmpty()) {
+            Entry<K> oldest = log.peekFirst();
+            long distanceFromCursor = Math.floorMod(ringOffset(oldest.buffer, oldest.position) - cursor, capacity);
+            if (distanceFromCursor >= consumedBytes) return;
+
+            log.removeFirst();
+            if (index.get(oldest.key) == oldest) { // not already removed or replaced
+                index.remove(oldest.key);
+                usedBytes -= oldest.length;
+                evictionCount++;
+            }
+        }
+    }
+
+    /** Returns the offset of the given position in the given buffer from the start of the first buffer */
+    private long ringOffset(int buffer, int position) {
+        return (long)buffer * bufferSize + position;
+    }
+
+    private ByteBuffer buffer(int i) {
+        if (buffers[i] == null)
+            buffers[i] = ByteBuffer.allocateDirect(bufferSize);
+        return buffers[i];
+    }
+
+    private static class Entry<K> {
+
+        final K key;
+        final int buffer;
+        final int position;
+        final int length;
+        final long timestamp;
+
+        Entry(K key, int buffer, int position, int length, long timestamp) {
+            this.key = key;
+            this.buffer = buffer;
+            this.position = position;
+            this.length = length;
+            this.timestamp = timestamp;
+        }
+
+    }
+
+}
@@ -0,0 +1,122 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.cache;
+
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.search.Result;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.Hit;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Inspector;
+import com.yahoo.slime.Slime;
+import com.yahoo.slime.Type;
+
+import java.util.ArrayList;
+
+/**
+ * Serializes results to slime binary format, such that they can be cached outside the heap.
+ * This supports flat, error free results containing hits whose field values are strings, numbers,
+ * booleans or raw data. Other results are not serialized, and will therefore not be cached.
+ * Deserialized results contain plain (unfillable) hits which belong to the query used for the lookup.
+ *
+ * @author agent
+ */
+public class ResultSerializer implements CacheValueSerializer<QueryCacheKey, Result> {
+
+    @Override
+    public byte[] serialize(Result result) {
+        if (result.hits().getError() != null) return null;
+
+        Slime slime = new Slime();
+        Cursor root = slime.setObject();
+        root.setLong("totalhits", result.getTotalHitCount());
+        Coverage coverage = result.getCoverage(false);
+        if (coverage != null) {
+            Cursor coverageObject = root.setObject("coverage");
+            coverageObject.setLong("docs", coverage.getDocs());
+            coverageObject.setLong("active", coverage.getActive());
+            coverageObject.setLong("soon", coverage.getSoonActive());
+        }
+
+        Cursor hits = root.setArray("hits");
+        for (Hit hit : result.hits()) {
+            if ( ! isSerializable(hit)) return null;
+            if ( ! serialize(hit, hits.addObject())) return null;
+        }
+        return BinaryFormat.encode(slime);
+    }
+
+    private boolean isSerializable(Hit hit) {
+        if (hit.isMeta()) return false;
+        return hit.getClass() == Hit.class || hit.getClass() == FastHit.class;
+    }
+
+    /** Returns false if this hit cannot be serialized */
+    private boolean serialize(Hit hit, Cursor hitObject) {
+        if (hit.getId() == null) return false;
+        hitObject.setString("id", hit.getId().toString());
+        hitObject.setDouble("relevance", hit.getRelevance().getScore());
+        if (hit.getSource() != null)
+            hitObject.setString("source", hit.getSource());
+
+        Cursor fields = hitObject.setObject("fields");
+        for (String name : new ArrayList<>(hit.fieldKeys())) {
+            Object value = hit.getField(name); // decodes lazy field values, which updates the field map
+            if (value == null) continue;
+            if ( ! serialize(name, value, fields)) return false;
+        }
+        return true;
+    }
+
+    /** Returns false if this value cannot be serialized */
+    private boolean serialize(String name, Object value, Cursor fields) {
+        if (value instanceof CharSequence)
+            fields.setString(name, value.toString());
+        else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+            fields.setLong(name, ((Number)value).longValue());
+        else if (value instanceof Double || value instanceof Float)
+            fields.setDouble(name, ((Number)value).doubleValue());
+        else if (value instanceof Boolean)
+            fields.setBool(name, (Boolean)value);
+        else if (value instanceof byte[])
+            fields.setData(name, (byte[])value);
+        else
+            return false;
+        return true;
+    }
+
+    @Override
+    public Result deserialize(QueryCacheKey key, byte[] data) {
+        Inspector root = BinaryFormat.decode(data).get();
+        Result result = new Result(key.getQuery());
+        result.setTotalHitCount(root.field("totalhits").asLong());
+        Inspector coverage = root.field("coverage");
+        if (coverage.valid())
+            result.setCoverage(new Coverage(coverage.field("docs").asLong(), coverage.field("active").asLong())
+                                       .setSoonActive(coverage.field("soon").asLong()));
+
+        Inspector hits = root.field("hits");
+        for (int i = 0; i < hits.entries(); i++)
+            result.hits().add(deserializeHit(hits.entry(i)));
+        return result;
+    }
+
+    private Hit deserializeHit(Inspector hitObject) {
+        Hit hit = new Hit(hitObject.field("id").asString(), hitObject.field("relevance").asDouble());
+        Inspector source = hitObject.field("source");
+        if (source.valid())
+            hit.setSource(source.asString());
+        hitObject.field("fields").traverse((String name, Inspector value) -> hit.setField(name, valueOf(value)));
+        return hit;
+    }
+
+    private Object valueOf(Inspector value) {
+        if (value.type() == Type.STRING) return value.asString();
+        if (value.type() == Type.LONG) return value.asLong();
+        if (value.type() == Type.DOUBLE) return value.asDouble();
+        if (value.type() == Type.BOOL) return value.asBool();
+        if (value.type() == Type.DATA) return value.asData();
+        throw new IllegalArgumentException("Unexpected slime type " + value.type());
+    }
+
+}
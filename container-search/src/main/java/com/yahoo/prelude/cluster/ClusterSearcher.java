@@ -25,6 +25,7 @@ import com.yahoo.prelude.fastsearch.CacheParams;
 import com.yahoo.prelude.fastsearch.ClusterParams;
 import com.yahoo.prelude.fastsearch.DocumentdbInfoConfig;
 import com.yahoo.prelude.fastsearch.FastSearcher;
+import com.yahoo.prelude.fastsearch.PacketCacheStatistics;
 import com.yahoo.prelude.fastsearch.SummaryParameters;
 import com.yahoo.prelude.fastsearch.VespaBackEndSearcher;
 import com.yahoo.search.Query;
@@ -70,6 +71,9 @@ public class ClusterSearcher extends Searcher {
 
     private final Value cacheHitRatio;
 
+    /** Statistics of the packet cache of this, or null if caching is not active */
+    private final PacketCacheStatistics packetCacheStatistics;
+
     private final String clusterModelName;
 
     private final List<Backend> backends = new ArrayList<>();
@@ -129,7 +133,10 @@ public class ClusterSearcher extends Searcher {
         maxQueryCacheTimeout = ParameterParser.asMilliSeconds(clusterConfig.maxQueryCacheTimeout(),
                                                               DEFAULT_MAX_QUERY_CACHE_TIMEOUT);
 
-        CacheParams cacheParams = new CacheParams(createCache(clusterConfig, clusterModelName));
+        CacheControl cacheControl = createCache(clusterConfig, clusterModelName);
+        packetCacheStatistics = cacheControl.packetCache() == null ? null
+                                : new PacketCacheStatistics(clusterModelName, cacheControl.packetCache(), manager);
+        CacheParams cacheParams = new CacheParams(cacheControl);
         SummaryParameters docSumParams = new SummaryParameters(qrsConfig
                 .com().yahoo().prelude().fastsearch().FastSearcher().docsum()
                 .defaultclass());
@@ -248,6 +255,7 @@ public class ClusterSearcher extends Searcher {
         monitor = new ClusterMonitor(this, new QrMonitorConfig(new QrMonitorConfig.Builder()), Optional.of(new VipStatus()));
         cacheHitRatio = new Value("com.yahoo.prelude.cluster.ClusterSearcher.ClusterSearcher().dummy",
                                   Statistics.nullImplementation, new Value.Parameters());
+        packetCacheStatistics = null;
         clusterModelName = "testScenario";
         fs4ResourcePool = null;
         maxQueryTimeout = DEFAULT_MAX_QUERY_TIMEOUT;
@@ -56,9 +56,7 @@ public final class Docsum {
         } else {
             b.position(fieldStart); // reset to start of field
         }
-        byte[] bufferView = new byte[length];
-        b.get(bufferView);
-        return new FastHit.RawField(dataType, bufferView);
+        return new FastHit.RawField(dataType, packet, b.position(), length);
     }
 
     public ByteBuffer packetAsBuffer() {
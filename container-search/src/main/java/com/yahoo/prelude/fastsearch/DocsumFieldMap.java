@@ -0,0 +1,267 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.fastsearch;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The fields of a hit which is filled from a docsum definition.
+ * This stores the keys and values in insertion order in arrays, and uses the field index of the
+ * docsum definition to look up fields of that definition, such that no hash table or entry objects
+ * are allocated per hit. Ad-hoc fields not in the definition are looked up by scanning.
+ * Iteration order, null values and removal behaves as in a LinkedHashMap.
+ *
+ * @author agent
+ */
+final class DocsumFieldMap extends AbstractMap<String, Object> {
+
+    private final DocsumDefinition definition;
+
+    /** The position in keys and values of each field in the definition, or -1 if it is not set */
+    private final int[] positions;
+
+    private String[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    /** Incremented on each structural modification, to fail fast in iterators */
+    private int modifications = 0;
+
+    private EntrySet entrySet = null;
+
+    /** Creates a field map for the given definition, containing the given fields */
+    DocsumFieldMap(DocsumDefinition definition, Map<String, Object> fields) {
+        this.definition = definition;
+        this.positions = new int[definition.getFieldCount()];
+        Arrays.fill(positions, -1);
+        int capacity = definition.getFieldCount() + fields.size() + 2;
+        this.keys = new String[capacity];
+        this.values = new Object[capacity];
+        for (Map.Entry<String, Object> field : fields.entrySet())
+            put(field.getKey(), field.getValue());
+    }
+
+    /** Returns the definition this uses to look up fields */
+    DocsumDefinition definition() { return definition; }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return positionOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int position = positionOf(key);
+        return position < 0 ? null : values[position];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Integer fieldIndex = definition.getFieldIndex(key);
+        int position = fieldIndex != null ? positions[fieldIndex] : adHocPositionOf(key);
+        if (position >= 0) {
+            Object previous = values[position];
+            values[position] = value;
+            return previous;
+        }
+
+        ensureCapacity(size + 1);
+        keys[size] = fieldIndex != null ? definition.getField(fieldIndex).getName() : key;
+        values[size] = value;
+        if (fieldIndex != null)
+            positions[fieldIndex] = size;
+        size++;
+        modifications++;
+        return null;
+    }
+
+    /**
+     * Sets the value of the field having the given index in the definition of this, unless it already has
+     * a non-null value. This is cheaper than put as it does not need to look up the field index.
+     */
+    void setIfNull(int fieldIndex, Object value) {
+        int position = positions[fieldIndex];
+        if (position >= 0) {
+            if (values[position] == null)
+                values[position] = value;
+            return;
+        }
+        ensureCapacity(size + 1);
+        keys[size] = definition.getField(fieldIndex).getName();
+        values[size] = value;
+        positions[fieldIndex] = size;
+        size++;
+        modifications++;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int position = positionOf(key);
+        if (position < 0) return null;
+        Object previous = values[position];
+        removeAt(position);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        Arrays.fill(positions, -1);
+        size = 0;
+        modifications++;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (entrySet == null)
+            entrySet = new EntrySet();
+        return entrySet;
+    }
+
+    private int positionOf(Object key) {
+        if ( ! (key instanceof String)) return -1;
+        Integer fieldIndex = definition.getFieldIndex((String)key);
+        if (fieldIndex != null) return positions[fieldIndex];
+        return adHocPositionOf((String)key);
+    }
+
+    /** Returns the position of a key which is not in the definition, or -1 if it is not set */
+    private int adHocPositionOf(String key) {
+        int hash = key.hashCode();
+        for (int i = 0; i < size; i++) {
+            if (keys[i].hashCode() == hash && keys[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    private void removeAt(int position) {
+        Integer fieldIndex = definition.getFieldIndex(keys[position]);
+        if (fieldIndex != null)
+            positions[fieldIndex] = -1;
+        int moved = size - position - 1;
+        System.arraycopy(keys, position + 1, keys, position, moved);
+        System.arraycopy(values, position + 1, values, position, moved);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] > position)
+                positions[i]--;
+        }
+        modifications++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= keys.length) return;
+        int newCapacity = Math.max(capacity, keys.length * 3 / 2);
+        keys = Arrays.copyOf(keys, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public void clear() { DocsumFieldMap.this.clear(); }
+
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() { return new EntryIterator(); }
+
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+        private int next = 0;
+        private int current = -1;
+        private int expectedModifications = modifications;
+
+        @Override
+        public boolean hasNext() { return next < size; }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (modifications != expectedModifications) throw new ConcurrentModificationException();
+            if (next >= size) throw new NoSuchElementException();
+            current = next++;
+            return new Entry(current);
+        }
+
+        @Override
+        public void remove() {
+            if (current < 0) throw new IllegalStateException();
+            if (modifications != expectedModifications) throw new ConcurrentModificationException();
+            removeAt(current);
+            next = current;
+            current = -1;
+            expectedModifications = modifications;
+        }
+
+    }
+
+    /** An entry which reads and writes through to the arrays of this */
+    private final class Entry implements Map.Entry<String, Object> {
+
+        private final int position;
+        private final String key;
+
+        Entry(int position) {
+            this.position = position;
+            this.key = keys[position];
+        }
+
+        @Override
+        public String getKey() { return key; }
+
+        @Override
+        public Object getValue() {
+            return isCurrent() ? values[position] : DocsumFieldMap.this.get(key);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            if (isCurrent()) {
+                Object previous = values[position];
+                values[position] = value;
+                return previous;
+            }
+            return DocsumFieldMap.this.put(key, value);
+        }
+
+        /** Returns whether the key of this is still at the position it was read from */
+        private boolean isCurrent() {
+            return position < size && keys[position] == key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if ( ! (o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>)o;
+            Object value = getValue();
+            return key.equals(other.getKey()) && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() { return key + "=" + getValue(); }
+
+    }
+
+}
@@ -11,6 +11,10 @@ import com.yahoo.data.access.Inspector;
 import com.yahoo.data.access.Type;
 import com.yahoo.data.access.simple.Value.StringValue;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * A regular hit from a Vespa backend
  *
@@ -269,30 +273,50 @@ public class FastHit extends Hit {
 
     public void addSummary(Docsum docsum) {
         LazyDocsumValue lazyDocsumValue = new LazyDocsumValue(docsum);
-        reserve(docsum.getDefinition().getFieldCount());
-        for (DocsumField field : docsum.getDefinition().getFields()) {
-            setDocsumFieldIfNotPresent(field.getName(), lazyDocsumValue);
+        DocsumDefinition docsumDef = docsum.getDefinition();
+        DocsumFieldMap fields = docsumFieldMap(docsumDef);
+        for (int i = 0; i < docsumDef.getFieldCount(); i++) {
+            setDocsumFieldIfNotPresent(fields, i, docsumDef.getField(i).getName(), lazyDocsumValue);
         }
     }
 
     void addSummary(DocsumDefinition docsumDef, Inspector value) {
-        reserve(docsumDef.getFieldCount());
-        for (DocsumField field : docsumDef.getFields()) {
+        DocsumFieldMap fields = docsumFieldMap(docsumDef);
+        for (int i = 0; i < docsumDef.getFieldCount(); i++) {
+            DocsumField field = docsumDef.getField(i);
             String fieldName = field.getName();
             if (value.type() == Type.STRING &&
                 (field instanceof LongstringField || field instanceof StringField || field instanceof XMLField)) {
-                setDocsumFieldIfNotPresent(fieldName, new LazyString(field, value));
+                setDocsumFieldIfNotPresent(fields, i, fieldName, new LazyString(field, value));
             } else {
                 Inspector f = value.field(fieldName);
                 if (field.getEmulConfig().forceFillEmptyFields() || f.valid()) {
-                    setDocsumFieldIfNotPresent(fieldName, field.convert(f));
+                    setDocsumFieldIfNotPresent(fields, i, fieldName, field.convert(f));
                 }
             }
         }
     }
 
-    private void setDocsumFieldIfNotPresent(String fieldName, Object value) {
-        if (super.getField(fieldName) == null) {
+    /**
+     * Returns the compact field map of this if it is indexed by the given definition, or null if fields
+     * from this definition must be set through the ordinary field map.
+     * If this has no compact map yet, one indexed by the given definition is created.
+     */
+    private DocsumFieldMap docsumFieldMap(DocsumDefinition definition) {
+        Map<String, Object> fields = getFieldMapInternal();
+        if (fields instanceof DocsumFieldMap)
+            return ((DocsumFieldMap)fields).definition() == definition ? (DocsumFieldMap)fields : null;
+
+        DocsumFieldMap docsumFields = new DocsumFieldMap(definition, fields != null ? fields : Collections.emptyMap());
+        setFieldMapInternal(docsumFields);
+        return docsumFields;
+    }
+
+    private void setDocsumFieldIfNotPresent(DocsumFieldMap fields, int fieldIndex, String fieldName, Object value) {
+        if (fields != null) {
+            fields.setIfNull(fieldIndex, value);
+        }
+        else if (super.getField(fieldName) == null) {
             setField(fieldName, value);
         }
     }
@@ -374,14 +398,33 @@ public class FastHit extends Hit {
 
         private final boolean needXmlEscape;
 
-        private final byte[] contents;
+        private final byte[] buffer;
+        private final int offset;
+        private final int length;
 
         public RawField(DocsumField fieldType, byte[] contents) {
+            this(fieldType, contents, 0, contents.length);
+        }
+
+        /** Creates a raw field of a range of the given buffer, without copying it */
+        public RawField(DocsumField fieldType, byte[] buffer, int offset, int length) {
             needXmlEscape = ! (fieldType instanceof XMLField);
-            this.contents = contents;
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
         }
 
-        public byte [] getUtf8() { return contents; }
+        /** Returns the contents of this. This is a copy unless this field spans the entire buffer holding it */
+        public byte [] getUtf8() {
+            if (offset == 0 && length == buffer.length) return buffer;
+            return Arrays.copyOfRange(buffer, offset, offset + length);
+        }
+
+        /** Returns the buffer containing this field from {@link #getOffset} and {@link #getLength} bytes on */
+        public byte[] getBuffer() { return buffer; }
+        public int getOffset() { return offset; }
+        public int getLength() { return length; }
+
         public boolean needXmlEscape() { return needXmlEscape; }
 
     }
@@ -75,7 +75,7 @@ public class FastSearcher extends VespaBackEndSearcher {
      *                      over the fs4 protocol
      * @param fs4ResourcePool the resource pool used to create direct connections to the local search nodes when
      *                        bypassing the dispatch node
-     * @param dispatcher the dispatcher used (when enabled) to send summary requests over the rpc protocol.
+     * @param dispatcher the dispatcher used (when enabled) to send search and summary requests over the rpc protocol.
      *                   Eventually we will move everything to this protocol and never use dispatch nodes.
      *                   At that point we won't need a cluster searcher above this to select and pass the right
      *                   backend.
@@ -168,6 +168,9 @@ public class FastSearcher extends VespaBackEndSearcher {
 
     @Override
     public Result doSearch2(Query query, QueryPacket queryPacket, CacheKey cacheKey, Execution execution) {
+        if (wantsRPCSearch(query))
+            return searchOverRpc(query, execution);
+
         FS4Channel channel = null;
         try {
             if (dispatcher.searchCluster().groupSize() == 1)
@@ -201,6 +204,28 @@ public class FastSearcher extends VespaBackEndSearcher {
         }
     }
     
+    /** Searches by sending the query directly to the search nodes over rpc and merging their hits here */
+    private Result searchOverRpc(Query query, Execution execution) {
+        if (query.getPresentation().getSummary() == null)
+            query.getPresentation().setSummary(getDefaultDocsumClass());
+
+        Result result = dispatcher.search(query, rpcCompression(query));
+        for (Iterator<Hit> i = hitIterator(result); i.hasNext();) {
+            Hit hit = i.next();
+            if ( ! (hit instanceof FastHit)) continue;
+            hit.setSource(getName());
+            hit.setSourceNumber(getSourceNumber());
+        }
+
+        if (query.properties().getBoolean(Ranking.RANKFEATURES, false))
+            fill(result, query.getPresentation().getSummary(), execution);
+        return result;
+    }
+
+    private CompressionType rpcCompression(Query query) {
+        return CompressionType.valueOf(query.properties().getString(dispatchCompression, "LZ4").toUpperCase());
+    }
+
     /** When we only search a single node, doing all grouping in one pass is more efficient */
     private void forceSinglePassGrouping(Query query) {
         for (GroupingRequest groupingRequest : GroupingRequest.getRequests(query))
@@ -263,10 +288,8 @@ public class FastSearcher extends VespaBackEndSearcher {
         traceQuery(getName(), "fill", query, query.getOffset(), query.getHits(), 2, quotedSummaryClass(summaryClass));
 
         if (wantsRPCSummaryFill(query)) {
-            CompressionType compression =
-                CompressionType.valueOf(query.properties().getString(dispatchCompression, "LZ4").toUpperCase());
             fillSDDocName(result);
-            dispatcher.fill(result, summaryClass, compression);
+            dispatcher.fill(result, summaryClass, rpcCompression(query));
             return;
         }
 
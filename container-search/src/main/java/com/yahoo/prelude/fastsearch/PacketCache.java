@@ -33,6 +33,12 @@ public class PacketCache extends LinkedHashMap<CacheKey, PacketWrapper> {
     /** The max age for a valid cache entry, 0 mean infinite */
     private final long maxAge;
 
+    /** The number of entries removed to make room for others since this was created */
+    private long evictionCount = 0;
+
+    /** The number of entries removed because they were too old since this was created */
+    private long expiredCount = 0;
+
     private static final Logger log = Logger.getLogger(PacketCache.class.getName());
 
     public void clear() {
@@ -82,6 +88,7 @@ public class PacketCache extends LinkedHashMap<CacheKey, PacketWrapper> {
     {
         if (totalSize > capacity) {
             totalSize -= eldest.getValue().getPacketsSize();
+            evictionCount++;
             return true;
         }
         return false;
@@ -93,6 +100,7 @@ public class PacketCache extends LinkedHashMap<CacheKey, PacketWrapper> {
         for (Iterator<PacketWrapper> i = values().iterator(); i.hasNext();) {
             PacketWrapper eldestEntry = i.next();
             totalSize -= eldestEntry.getPacketsSize();
+            evictionCount++;
 
             i.remove();
             if (totalSize < capacity) {
@@ -164,6 +172,7 @@ public class PacketCache extends LinkedHashMap<CacheKey, PacketWrapper> {
 
         if ((now - timestamp) > maxAge) {
             remove(key);
+            expiredCount++;
             return null;
         } else {
             return result;
@@ -183,4 +192,10 @@ public class PacketCache extends LinkedHashMap<CacheKey, PacketWrapper> {
         return totalSize;
     }
 
+    /** Returns the number of entries which have been removed to make room for others */
+    public long evictionCount() { return evictionCount; }
+
+    /** Returns the number of entries which have been removed on lookup because they were too old */
+    public long expiredCount() { return expiredCount; }
+
 }
@@ -0,0 +1,67 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.fastsearch;
+
+import com.yahoo.statistics.Callback;
+import com.yahoo.statistics.Counter;
+import com.yahoo.statistics.Handle;
+import com.yahoo.statistics.Statistics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Reports the hit, miss, eviction and expiry counts of a packet cache as statistics counters.
+ * The counters are updated from the cache each time they are logged.
+ *
+ * @author agent
+ */
+public class PacketCacheStatistics {
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter expired;
+
+    /**
+     * Creates counters of the given cache, registered in the given statistics manager
+     *
+     * @param namePrefix the prefix of the counter names, e.g the name of the cluster owning the cache
+     */
+    public PacketCacheStatistics(String namePrefix, SegmentedPacketCache cache, Statistics manager) {
+        hits = counter(namePrefix + ".packet_cache_hits", cache::hitCount, manager);
+        misses = counter(namePrefix + ".packet_cache_misses", cache::missCount, manager);
+        evictions = counter(namePrefix + ".packet_cache_evictions", cache::evictionCount, manager);
+        expired = counter(namePrefix + ".packet_cache_expired", cache::expiredCount, manager);
+    }
+
+    private static Counter counter(String name, LongSupplier count, Statistics manager) {
+        return new Counter(name, manager, false, new CountUpdater(count), false);
+    }
+
+    public Counter hits() { return hits; }
+
+    public Counter misses() { return misses; }
+
+    public Counter evictions() { return evictions; }
+
+    public Counter expired() { return expired; }
+
+    /** Adds the increase in a count of the cache since it was last logged to the counter it is the callback of */
+    private static class CountUpdater implements Callback {
+
+        private final LongSupplier count;
+        private long reported = 0;
+
+        CountUpdater(LongSupplier count) {
+            this.count = count;
+        }
+
+        @Override
+        public void run(Handle h, boolean firstTime) {
+            long current = count.getAsLong();
+            ((Counter)h).increment(current - reported);
+            reported = current;
+        }
+
+    }
+
+}
@@ -0,0 +1,189 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.fastsearch;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A packet cache which can be accessed concurrently from many threads.
+ * Keys are distributed over a number of segments, each of which is a {@link PacketCache}
+ * with its own lock, LRU order, byte size limit and expiry.
+ * Threads only contend when they access keys in the same segment,
+ * at the cost of making the LRU order approximate across segments.
+ * Small caches use a single segment such that they behave exactly as a PacketCache.
+ *
+ * @author agent
+ */
+public class SegmentedPacketCache {
+
+    /** The smallest byte capacity we will give a segment when this is split into multiple segments */
+    private static final int minSegmentCapacity = 1 << 20;
+
+    private final PacketCache[] segments;
+
+    /** Mask from a spread key hash to a segment index. The number of segments is always a power of two. */
+    private final int segmentMask;
+
+    private final int capacity;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Creates a cache with a total size given by capacityMegaBytes*2^20+capacityBytes
+     *
+     * @param capacityMegaBytes the cache size, measured in megabytes
+     * @param capacityBytes additional number of bytes to add to the cache size
+     * @param maxAge seconds a cache entry is valid, 0 or less are illegal arguments
+     */
+    public SegmentedPacketCache(int capacityMegaBytes, int capacityBytes, double maxAge) {
+        this(capacityMegaBytes, capacityBytes, maxAge, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a cache with a total size given by capacityMegaBytes*2^20+capacityBytes
+     *
+     * @param capacityMegaBytes the cache size, measured in megabytes
+     * @param capacityBytes additional number of bytes to add to the cache size
+     * @param maxAge seconds a cache entry is valid, 0 or less are illegal arguments
+     * @param maxSegments the max number of segments to use. The number used will be the largest power of two
+     *                    not larger than this, which also gives each segment at least a megabyte of capacity
+     */
+    public SegmentedPacketCache(int capacityMegaBytes, int capacityBytes, double maxAge, int maxSegments) {
+        PacketCache first = new PacketCache(capacityMegaBytes, capacityBytes, maxAge); // validates arguments
+        this.capacity = first.getByteCapacity();
+
+        int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(maxSegments, capacity / minSegmentCapacity)));
+        this.segmentMask = segmentCount - 1;
+        this.segments = new PacketCache[segmentCount];
+        if (segmentCount == 1) {
+            segments[0] = first;
+        }
+        else {
+            for (int i = 0; i < segmentCount; i++)
+                segments[i] = new PacketCache(0, capacity / segmentCount, maxAge);
+        }
+        setMaxCacheItemPercentage(1);
+    }
+
+    /**
+     * Sets the max size of a cached item compared to the total size.
+     * Cache requests for larger objects will be ignored.
+     */
+    public void setMaxCacheItemPercentage(int maxCapacityPercentage) {
+        // Each segment only has its share of the total capacity
+        int segmentPercentage = Math.min(100, maxCapacityPercentage * segments.length);
+        for (PacketCache segment : segments) {
+            synchronized (segment) {
+                segment.setMaxCacheItemPercentage(segmentPercentage);
+            }
+        }
+    }
+
+    /** Returns the cached entry for this key, or null if none, or if it is older than the max age */
+    public PacketWrapper get(CacheKey key, long now) {
+        PacketCache segment = segmentOf(key);
+        PacketWrapper entry;
+        synchronized (segment) {
+            entry = segment.get(key, now);
+        }
+        if (entry == null)
+            missCount.increment();
+        else
+            hitCount.increment();
+        return entry;
+    }
+
+    /**
+     * Adds an entry to this cache, unless it is larger than the max item percentage
+     *
+     * @param timestamp the timestamp for the first packet in the entry, unit milliseconds
+     * @return the previous entry for this key, or null if none
+     */
+    public PacketWrapper put(CacheKey key, PacketWrapper entry, long timestamp) {
+        PacketCache segment = segmentOf(key);
+        synchronized (segment) {
+            return segment.put(key, entry, timestamp);
+        }
+    }
+
+    public PacketWrapper remove(CacheKey key) {
+        PacketCache segment = segmentOf(key);
+        synchronized (segment) {
+            return segment.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (PacketCache segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /** Returns the capacity of this in megabytes */
+    public int getCapacity() { return capacity >> 20; }
+
+    /** Returns the capacity of this in bytes */
+    public int getByteCapacity() { return capacity; }
+
+    /** Returns the number of segments of this */
+    public int segmentCount() { return segments.length; }
+
+    /** Returns the number of entries in this */
+    public int size() {
+        int size = 0;
+        for (PacketCache segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /** Returns the current total number of bytes of packets in this */
+    public long totalPacketSize() {
+        long size = 0;
+        for (PacketCache segment : segments) {
+            synchronized (segment) {
+                size += segment.totalPacketSize();
+            }
+        }
+        return size;
+    }
+
+    /** Returns the number of lookups which returned an entry since this was created */
+    public long hitCount() { return hitCount.sum(); }
+
+    /** Returns the number of lookups which did not return an entry since this was created */
+    public long missCount() { return missCount.sum(); }
+
+    /** Returns the number of entries which have been removed to make room for others since this was created */
+    public long evictionCount() {
+        long count = 0;
+        for (PacketCache segment : segments) {
+            synchronized (segment) {
+                count += segment.evictionCount();
+            }
+        }
+        return count;
+    }
+
+    /** Returns the number of entries which have been removed because they were too old since this was created */
+    public long expiredCount() {
+        long count = 0;
+        for (PacketCache segment : segments) {
+            synchronized (segment) {
+                count += segment.expiredCount();
+            }
+        }
+        return count;
+    }
+
+    private PacketCache segmentOf(CacheKey key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16); // spread the high bits, as the mask only uses the low ones
+        return segments[hash & segmentMask];
+    }
+
+}
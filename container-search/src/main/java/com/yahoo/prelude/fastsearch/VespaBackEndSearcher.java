@@ -57,6 +57,11 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
     private static final CompoundName combinerows=new CompoundName("combinerows");
     /** If this is turned on this will fill summaries by dispatching directly to search nodes over RPC */
     private final static CompoundName dispatchSummaries = new CompoundName("dispatch.summaries");
+    /**
+     * If this is turned on this will search by dispatching directly to search nodes over RPC.
+     * This is off by default, as it requires search nodes which serve the proton.search rpc method.
+     */
+    private final static CompoundName dispatchSearch = new CompoundName("dispatch.search");
 
     protected static final CompoundName PACKET_COMPRESSION_LIMIT = new CompoundName("packetcompressionlimit");
     protected static final CompoundName PACKET_COMPRESSION_TYPE = new CompoundName("packetcompressiontype");
@@ -91,6 +96,7 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
     private int sourceNumber;
 
     protected final String getName()          { return name; }
+    protected final int getSourceNumber()     { return sourceNumber; }
     protected final String getDefaultDocsumClass() { return defaultDocsumClass; }
 
     /** Sets default document summary class. Default is null */
@@ -113,7 +119,19 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
     protected abstract void doPartialFill(Result result, String summaryClass);
 
     protected static boolean wantsRPCSummaryFill(Query query) {
-        return query.properties().getBoolean(dispatchSummaries);
+        return query.properties().getBoolean(dispatchSummaries) || wantsRPCSearch(query);
+    }
+
+    /**
+     * Returns whether this query should be searched by dispatching directly to search nodes over RPC.
+     * Queries requesting sorting or grouping are not supported by RPC search as their results cannot
+     * (yet) be merged in the container, and are always dispatched over fs4.
+     */
+    protected static boolean wantsRPCSearch(Query query) {
+        if ( ! query.properties().getBoolean(dispatchSearch)) return false;
+        if (query.getRanking().getSorting() != null) return false;
+        if (GroupingExecutor.hasGroupingList(query)) return false;
+        return true;
     }
 
     /**
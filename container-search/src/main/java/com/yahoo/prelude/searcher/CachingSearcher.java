@@ -8,6 +8,7 @@ import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.prelude.cache.Cache;
 import com.yahoo.prelude.cache.QueryCacheKey;
+import com.yahoo.prelude.cache.ResultSerializer;
 import com.yahoo.search.Searcher;
 import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.searchchain.Execution;
@@ -29,10 +30,12 @@ public class CachingSearcher extends Searcher {
     private Value cacheHitRatio = null;
 
     public CachingSearcher(QrSearchersConfig config, Statistics manager) {
-        long maxSizeBytes = config.com().yahoo().prelude().searcher().CachingSearcher().cachesizemegabytes()*1024*1024;
-        long timeToLiveMillis = config.com().yahoo().prelude().searcher().CachingSearcher().timetoliveseconds()*1000;
+        long maxSizeBytes = config.com().yahoo().prelude().searcher().CachingSearcher().cachesizemegabytes()*1024L*1024L;
+        long timeToLiveMillis = config.com().yahoo().prelude().searcher().CachingSearcher().timetoliveseconds()*1000L;
         long maxEntrySizeBytes = config.com().yahoo().prelude().searcher().CachingSearcher().maxentrysizebytes();
-        cache=new Cache<>(maxSizeBytes, timeToLiveMillis, maxEntrySizeBytes, manager);
+        boolean offHeap = config.com().yahoo().prelude().searcher().CachingSearcher().offheap();
+        cache=new Cache<>(maxSizeBytes, timeToLiveMillis, maxEntrySizeBytes, manager,
+                          offHeap ? new ResultSerializer() : null);
         initRatio(manager);
     }
 
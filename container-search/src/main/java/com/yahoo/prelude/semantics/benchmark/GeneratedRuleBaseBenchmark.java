@@ -0,0 +1,109 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.semantics.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.yahoo.search.Query;
+import com.yahoo.prelude.semantics.RuleBase;
+import com.yahoo.prelude.semantics.parser.ParseException;
+
+/**
+ * Benchmarks evaluation of queries over a large generated rule base, consisting of
+ * single term, two term and named condition rules over a vocabulary of generated terms,
+ * with queries of random terms from the same vocabulary.
+ *
+ * @author agent
+ */
+public class GeneratedRuleBaseBenchmark {
+
+    /** The number of terms in each named condition */
+    private static final int conditionSize = 10;
+
+    private final Random random = new Random(1);
+
+    public void benchmark(int ruleCount, int queryCount, int iterations) throws IOException, ParseException {
+        int vocabularySize = ruleCount * 10;
+
+        long startTime = System.currentTimeMillis();
+        RuleBase ruleBase = RuleBase.createFromString("generated", generateRules(ruleCount, vocabularySize), null);
+        long initializationTime = System.currentTimeMillis() - startTime;
+
+        List<String> queries = new ArrayList<>(queryCount);
+        for (int i = 0; i < queryCount; i++)
+            queries.add(generateQuery(vocabularySize));
+
+        for (String queryString : queries) // warm up
+            ruleBase.analyze(new Query("?query=" + queryString), 0);
+
+        startTime = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            for (String queryString : queries)
+                ruleBase.analyze(new Query("?query=" + queryString), 0);
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        System.out.print("BENCHMARK: rules=" + ruleCount +
+                         "\n           queries=" + queryCount +
+                         "\n           iterations=" + iterations +
+                         "\n           initialization=" + initializationTime + "ms" +
+                         "\n           elapsed=" + elapsed + "ms" +
+                         "\n           per query=" + (elapsed * 1000.0 / (iterations * queryCount)) + "us\n");
+    }
+
+    private String generateRules(int ruleCount, int vocabularySize) {
+        StringBuilder b = new StringBuilder();
+        int conditionCount = 0;
+        for (int i = 0; i < ruleCount; i++) {
+            switch (i % 3) {
+                case 0:
+                    b.append(term(vocabularySize)).append(" -> ").append("r").append(i).append(";\n");
+                    break;
+                case 1:
+                    b.append(term(vocabularySize)).append(" ").append(term(vocabularySize))
+                     .append(" -> ").append("r").append(i).append(";\n");
+                    break;
+                case 2:
+                    String condition = "c" + conditionCount++;
+                    b.append("[").append(condition).append("] ").append(term(vocabularySize))
+                     .append(" -> ").append(condition).append(":[").append(condition).append("];\n");
+                    b.append("[").append(condition).append("] :- ");
+                    for (int j = 0; j < conditionSize; j++)
+                        b.append(term(vocabularySize)).append(j < conditionSize - 1 ? ", " : ";\n");
+                    break;
+            }
+        }
+        return b.toString();
+    }
+
+    private String generateQuery(int vocabularySize) {
+        StringBuilder b = new StringBuilder();
+        int length = 1 + random.nextInt(5);
+        for (int i = 0; i < length; i++)
+            b.append(term(vocabularySize)).append(i < length - 1 ? "+" : "");
+        return b.toString();
+    }
+
+    private String term(int vocabularySize) {
+        return "t" + random.nextInt(vocabularySize);
+    }
+
+    public static void main(String[] args) {
+        if (args.length<3) {
+            System.out.println("USAGE: GeneratedRuleBaseBenchmark ruleCount queryCount iterations");
+            System.exit(1);
+        }
+
+        try {
+            new GeneratedRuleBaseBenchmark().benchmark(Integer.parseInt(args[0]),
+                                                       Integer.parseInt(args[1]),
+                                                       Integer.parseInt(args[2]));
+        }
+        catch (Exception e) {
+            System.out.println("ERROR: " + e);
+            System.exit(1);
+        }
+    }
+
+}
@@ -7,7 +7,8 @@ import com.yahoo.prelude.semantics.RuleBase;
 import com.yahoo.prelude.semantics.RuleBaseException;
 import com.yahoo.prelude.semantics.rule.ProductionRule;
 
-import java.util.ListIterator;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * Evaluates the rules of a rule base. This method is thread safe on analyze calls, but
@@ -19,10 +20,18 @@ public class RuleEngine {
 
     private RuleBase rules;
 
+    /** The index of the rules by the terms they must match, or null if the rule base is not initialized */
+    private volatile RuleIndex index=null;
+
     public RuleEngine(RuleBase rules) {
         this.rules=rules;
     }
 
+    /** Indexes the rules of the rule base. This must be called when the rule base is initialized */
+    public void initialize() {
+        index=new RuleIndex(rules);
+    }
+
     /**
      * Evaluates a rule base over a query
      *
@@ -32,19 +41,32 @@ public class RuleEngine {
      *         If there is an error, this query is destroyed (unusable)
      */
     public String evaluate(Query query,int traceLevel) {
-        // TODO: This is O(query size*rule base size). We'll eventually need to create indices
-        //       on rules to look up rule candidates per term to make it O(query size) instead
-        //       Probably create indices on the first term like Prolog implementations use to
-
         boolean matchedAnything=false;
         Evaluation evaluation=new Evaluation(query,traceLevel);
         evaluation.setStemming(rules.getStemming());
         evaluation.trace(2,"Evaluating query '" + evaluation.getQuery().getModel().getQueryTree().getRoot() + "':");
-        for (ListIterator<ProductionRule> i=rules.ruleIterator(); i.hasNext(); ) {
+
+        // Only evaluate the rules which may match a term of the query, in rule order
+        List<ProductionRule> ruleList=rules.rules();
+        RuleIndex index=this.index;
+        BitSet candidates;
+        if (index!=null) {
+            candidates=index.candidates(evaluation,ruleList.size());
+            if (evaluation.getTraceLevel()>=3)
+                evaluation.trace(3,"Evaluating " + candidates.cardinality() + " of " + ruleList.size() + " rules");
+        }
+        else {
+            candidates=new BitSet(ruleList.size());
+            candidates.set(0,ruleList.size());
+        }
+
+        for (int i=candidates.nextSetBit(0); i>=0; i=candidates.nextSetBit(i+1)) {
             evaluation.reset();
-            ProductionRule rule=i.next();
+            ProductionRule rule=ruleList.get(i);
             boolean matched=matchRuleAtAllStartPoints(evaluation,rule);
             matchedAnything|=matched;
+            if (matched && index!=null) // the query has changed, so subsequent rules may now match new terms
+                index.addCandidates(evaluation,candidates);
         }
 
         if (!matchedAnything) return null;
@@ -0,0 +1,153 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.semantics.engine;
+
+import com.yahoo.prelude.semantics.RuleBase;
+import com.yahoo.prelude.semantics.rule.ChoiceCondition;
+import com.yahoo.prelude.semantics.rule.CompositeCondition;
+import com.yahoo.prelude.semantics.rule.Condition;
+import com.yahoo.prelude.semantics.rule.ConditionReference;
+import com.yahoo.prelude.semantics.rule.NamedCondition;
+import com.yahoo.prelude.semantics.rule.ProductionRule;
+import com.yahoo.prelude.semantics.rule.SuperCondition;
+import com.yahoo.prelude.semantics.rule.TermCondition;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of the rules of a rule base by the first term they must match, such that only the rules which
+ * may match some term of a query needs to be evaluated over it, like first argument indexing in Prolog.
+ * <p>
+ * The terms a condition must match is the terms of term conditions, the union of the terms of the alternatives
+ * of choices, the terms of the first condition having terms in sequences and other composites which requires
+ * all their conditions to match, and the terms of referenced named conditions.
+ * Rules whose condition does not require any term to match, such as ellipses, negations, automata references
+ * and conditions in other name spaces than the query, are always evaluated.
+ *
+ * @author agent
+ */
+class RuleIndex {
+
+    /** The indexes of the rules in the rule base which must match each term */
+    private final Map<String, int[]> rulesByTerm;
+
+    /** The indexes of the rules which are not indexed by any term */
+    private final BitSet unindexedRules = new BitSet();
+
+    /** The number of rules indexed by this */
+    private final int size;
+
+    /** Creates an index of the rules of an initialized rule base */
+    RuleIndex(RuleBase ruleBase) {
+        List<ProductionRule> rules = ruleBase.rules();
+        Map<NamedCondition, Set<String>> namedConditionTerms = new HashMap<>();
+        Map<String, List<Integer>> rulesByTermList = new HashMap<>();
+        for (int i = 0; i < rules.size(); i++) {
+            Set<String> terms = termsOf(rules.get(i).getCondition(), ruleBase, namedConditionTerms, new HashSet<>());
+            if (terms == null) {
+                unindexedRules.set(i);
+                continue;
+            }
+            for (String term : terms)
+                rulesByTermList.computeIfAbsent(term, t -> new ArrayList<>(1)).add(i);
+        }
+
+        rulesByTerm = new HashMap<>(rulesByTermList.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : rulesByTermList.entrySet()) {
+            int[] ruleIndexes = new int[entry.getValue().size()];
+            for (int i = 0; i < ruleIndexes.length; i++)
+                ruleIndexes[i] = entry.getValue().get(i);
+            rulesByTerm.put(entry.getKey(), ruleIndexes);
+        }
+        size = rules.size();
+    }
+
+    /**
+     * Returns the terms of which the given condition must match at least one, or null if it
+     * can match without matching any particular term
+     */
+    private static Set<String> termsOf(Condition condition, RuleBase ruleBase,
+                                       Map<NamedCondition, Set<String>> namedConditionTerms,
+                                       Set<NamedCondition> visiting) {
+        if (condition == null) return null;
+        if (condition.getNameSpace() != null) return null;
+
+        if (condition instanceof TermCondition) {
+            String term = ((TermCondition)condition).getTerm();
+            return term == null ? null : Collections.singleton(term);
+        }
+        else if (condition instanceof ChoiceCondition) {
+            Set<String> terms = new HashSet<>();
+            for (Iterator<Condition> i = ((CompositeCondition)condition).conditionIterator(); i.hasNext(); ) {
+                Set<String> alternativeTerms = termsOf(i.next(), ruleBase, namedConditionTerms, visiting);
+                if (alternativeTerms == null) return null;
+                terms.addAll(alternativeTerms);
+            }
+            return terms.isEmpty() ? null : terms;
+        }
+        else if (condition instanceof CompositeCondition) {
+            for (Iterator<Condition> i = ((CompositeCondition)condition).conditionIterator(); i.hasNext(); ) {
+                Set<String> terms = termsOf(i.next(), ruleBase, namedConditionTerms, visiting);
+                if (terms != null) return terms;
+            }
+            return null;
+        }
+        else if (condition instanceof ConditionReference) {
+            NamedCondition namedCondition = ruleBase.getCondition(((ConditionReference)condition).getConditionName());
+            if (namedCondition == null) return null; // an automata reference
+            if (namedConditionTerms.containsKey(namedCondition)) return namedConditionTerms.get(namedCondition);
+            if ( ! visiting.add(namedCondition)) return null; // recursive
+            Set<String> terms = termsOf(namedCondition.getCondition(), ruleBase, namedConditionTerms, visiting);
+            visiting.remove(namedCondition);
+            namedConditionTerms.put(namedCondition, terms);
+            return terms;
+        }
+        else if (condition instanceof SuperCondition) {
+            return termsOf(((SuperCondition)condition).getCondition(), ruleBase, namedConditionTerms, visiting);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the indexes of the rules which may match the current query of the given evaluation.
+     *
+     * @param ruleCount the number of rules in the rule base. Rules added after this index was created are
+     *                  always candidates
+     */
+    BitSet candidates(Evaluation evaluation, int ruleCount) {
+        BitSet candidates = (BitSet)unindexedRules.clone();
+        if (ruleCount > size)
+            candidates.set(size, ruleCount);
+        addCandidates(evaluation, candidates);
+        return candidates;
+    }
+
+    /** Adds the indexes of the rules which may match some term of the current query of the given evaluation */
+    void addCandidates(Evaluation evaluation, BitSet candidates) {
+        boolean stemming = evaluation.getStemming();
+        for (FlattenedItem item : evaluation.items()) {
+            String term = item.getItem().stringValue();
+            addCandidates(term, candidates);
+            if (stemming && term.length() >= 3) { // as in TermCondition
+                addCandidates(term + "s", candidates);
+                if (term.endsWith("s"))
+                    addCandidates(term.substring(0, term.length() - 1), candidates);
+            }
+        }
+    }
+
+    private void addCandidates(String term, BitSet candidates) {
+        int[] ruleIndexes = rulesByTerm.get(term);
+        if (ruleIndexes == null) return;
+        for (int ruleIndex : ruleIndexes)
+            candidates.set(ruleIndex);
+    }
+
+}
@@ -18,6 +18,10 @@ interface Client {
                     int uncompressedLength, byte[] compressedSlime, Dispatcher.GetDocsumsResponseReceiver responseReceiver,
                     double timeoutSeconds);
 
+    void search(int nodeId, NodeConnection node, CompressionType compression,
+                int uncompressedLength, byte[] compressedSlime, Dispatcher.SearchResponseReceiver responseReceiver,
+                double timeoutSeconds);
+
     /** Creates a connection to a particular node in this */
     NodeConnection createConnection(String hostname, int port);
 
@@ -80,6 +84,73 @@ interface Client {
 
     }
 
+    class SearchResponseOrError {
+
+        // One of these will be non empty and the other not
+        private Optional<SearchResponse> response;
+        private Optional<String> error;
+
+        /** The id of the node this is a response from */
+        private final int nodeId;
+
+        public static SearchResponseOrError fromResponse(SearchResponse response) {
+            return new SearchResponseOrError(Optional.of(response), Optional.empty(), response.nodeId());
+        }
+
+        public static SearchResponseOrError fromError(int nodeId, String error) {
+            return new SearchResponseOrError(Optional.empty(), Optional.of(error), nodeId);
+        }
+
+        private SearchResponseOrError(Optional<SearchResponse> response, Optional<String> error, int nodeId) {
+            this.response = response;
+            this.error = error;
+            this.nodeId = nodeId;
+        }
+
+        /** Returns the response, or empty if there is an error */
+        public Optional<SearchResponse> response() { return response; }
+
+        /** Returns the error or empty if there is a response */
+        public Optional<String> error() { return error; }
+
+        /** Returns the id of the node this is a response or error from */
+        public int nodeId() { return nodeId; }
+
+    }
+
+    class SearchResponse {
+
+        private final int nodeId;
+        private final byte compression;
+        private final int uncompressedSize;
+        private final byte[] compressedSlimeBytes;
+
+        public SearchResponse(int nodeId, byte compression, int uncompressedSize, byte[] compressedSlimeBytes) {
+            this.nodeId = nodeId;
+            this.compression = compression;
+            this.uncompressedSize = uncompressedSize;
+            this.compressedSlimeBytes = compressedSlimeBytes;
+        }
+
+        /** Returns the id of the node which produced this response */
+        public int nodeId() {
+            return nodeId;
+        }
+
+        public byte compression() {
+            return compression;
+        }
+
+        public int uncompressedSize() {
+            return uncompressedSize;
+        }
+
+        public byte[] compressedSlimeBytes() {
+            return compressedSlimeBytes;
+        }
+
+    }
+
     interface NodeConnection {
 
         /** Closes this connection */
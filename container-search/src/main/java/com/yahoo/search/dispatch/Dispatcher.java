@@ -9,12 +9,14 @@ import com.yahoo.compress.CompressionType;
 import com.yahoo.compress.Compressor;
 import com.yahoo.container.handler.VipStatus;
 import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.document.GlobalId;
 import com.yahoo.prelude.fastsearch.FS4ResourcePool;
 import com.yahoo.prelude.fastsearch.FastHit;
 import com.yahoo.prelude.fastsearch.TimeoutException;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.query.SessionId;
+import com.yahoo.search.result.Coverage;
 import com.yahoo.search.result.ErrorMessage;
 import com.yahoo.search.result.Hit;
 import com.yahoo.slime.BinaryFormat;
@@ -23,17 +25,22 @@ import com.yahoo.slime.Slime;
 import com.yahoo.data.access.Inspector;
 import com.yahoo.vespa.config.search.DispatchConfig;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * A dispatcher communicates with search nodes to (in the future) perform queries and (now) fill hits.
+ * A dispatcher communicates with search nodes to perform queries and fill hits.
  * This class is multithread safe.
  *
  * @author bratseth
@@ -52,6 +59,9 @@ public class Dispatcher extends AbstractComponent {
 
     private final Compressor compressor = new Compressor();
 
+    /** Used to distribute queries over the groups of the search cluster */
+    private final AtomicInteger nextGroup = new AtomicInteger(0);
+
     public Dispatcher(DispatchConfig dispatchConfig, FS4ResourcePool fs4ResourcePool,
                       int containerClusterSize, VipStatus vipStatus) {
         this.client = new RpcClient();
@@ -92,6 +102,110 @@ public class Dispatcher extends AbstractComponent {
         }
     }
 
+    /**
+     * Searches the search cluster by sending an RPC search request to each node of one of its groups,
+     * and merges the top hits returned by each node into a single result.
+     * The hits of the returned result are not filled and must be filled by {@link #fill}.
+     * <p>
+     * This is used by queries which set dispatch.search, which is off by default, as it requires
+     * search nodes which serve the proton.search rpc method.
+     */
+    public Result search(Query query, CompressionType compression) {
+        Result result = new Result(query);
+        Map<Integer, Client.NodeConnection> nodes = selectNodes();
+        if (nodes.isEmpty()) {
+            result.hits().addError(ErrorMessage.createNoBackendsInService("No search nodes are available"));
+            return result;
+        }
+
+        byte[] serializedSlime = BinaryFormat.encode(toSlime(query));
+        double timeoutSeconds = ((double)query.getTimeLeft()-3.0)/1000.0;
+        Compressor.Compression compressionResult = compressor.compress(compression, serializedSlime);
+
+        SearchResponseReceiver responseReceiver = new SearchResponseReceiver(nodes.size(), compressor, result);
+        for (Map.Entry<Integer, Client.NodeConnection> node : nodes.entrySet()) {
+            client.search(node.getKey(), node.getValue(), compressionResult.type(),
+                          serializedSlime.length, compressionResult.data(), responseReceiver, timeoutSeconds);
+        }
+        responseReceiver.processResponses(query);
+        return result;
+    }
+
+    /**
+     * Returns the connections to the nodes of the next group in the search cluster which has
+     * sufficient coverage, indexed by node id, or all the nodes if we don't have a cluster model
+     */
+    private Map<Integer, Client.NodeConnection> selectNodes() {
+        if (searchCluster == null || searchCluster.groups().isEmpty()) return nodeConnections;
+
+        List<SearchCluster.Group> groups = searchCluster.groups().values().asList();
+        int start = Math.abs(nextGroup.getAndIncrement() % groups.size());
+        for (int i = 0; i < groups.size(); i++) {
+            SearchCluster.Group group = groups.get((start + i) % groups.size());
+            if ( ! group.hasSufficientCoverage()) continue;
+
+            Map<Integer, Client.NodeConnection> nodes = new LinkedHashMap<>();
+            for (SearchCluster.Node node : group.nodes()) {
+                Client.NodeConnection connection = nodeConnections.get(node.key());
+                if (connection != null)
+                    nodes.put(node.key(), connection);
+            }
+            return nodes;
+        }
+        return nodeConnections; // no group has sufficient coverage; query them all rather than nothing
+    }
+
+    private static Slime toSlime(Query query) {
+        Slime slime = new Slime();
+        Cursor root = slime.setObject();
+        root.setLong("offset", 0); // each node must return the hits of the entire window as they will be merged here
+        root.setLong("hits", query.getOffset() + query.getHits());
+        root.setLong("timeout", Math.max(50, query.getTimeLeft()));
+        if (query.getRanking().getProfile() != null)
+            root.setString("ranking", query.getRanking().getProfile());
+        if (query.getModel().getDocumentDb() != null)
+            root.setString("doctype", query.getModel().getDocumentDb());
+        SessionId sessionId = query.getSessionId(false);
+        if (sessionId != null)
+            root.setData("sessionid", sessionId.asUtf8String().getBytes());
+
+        EncodedData queryStack = encode(buffer -> query.encode(buffer));
+        root.setLong("stackitems", queryStack.returned);
+        root.setData("querystack", queryStack.data);
+        if (query.hasEncodableProperties())
+            root.setData("properties", encode(buffer -> query.encodeAsProperties(buffer, true)).data);
+        return slime;
+    }
+
+    /** Encodes using the given encoder into a buffer which is grown until the encoded data fits */
+    private static EncodedData encode(ToIntFunction<ByteBuffer> encoder) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (true) {
+            try {
+                int returned = encoder.applyAsInt(buffer);
+                buffer.flip();
+                byte[] data = new byte[buffer.remaining()];
+                buffer.get(data);
+                return new EncodedData(returned, data);
+            }
+            catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    private static class EncodedData {
+
+        final int returned;
+        final byte[] data;
+
+        EncodedData(int returned, byte[] data) {
+            this.returned = returned;
+            this.data = data;
+        }
+
+    }
+
     /** Return a map of hits by their search node (partition) id */
     private static ListMap<Integer, FastHit> hitsByNode(Result result) {
         ListMap<Integer, FastHit> hitsByPartition = new ListMap<>();
@@ -154,6 +268,136 @@ public class Dispatcher extends AbstractComponent {
             nodeConnection.close();
     }
 
+    /**
+     * Receiver of the responses to a set of search requests.
+     * The hits of all responses are added to the result, which is then sorted and trimmed to the requested window.
+     * Nodes which fail to respond in time are reported through reduced coverage rather than as an error,
+     * unless no node responds.
+     */
+    public static class SearchResponseReceiver {
+
+        private final BlockingQueue<Client.SearchResponseOrError> responses;
+        private final Compressor compressor;
+        private final Result result;
+
+        /** The number of responses we should receive (and process) before this is complete */
+        private int outstandingResponses;
+
+        /** The number of requests which did not produce a valid response */
+        private int failedResponses = 0;
+
+        /** The number of requests which produced a valid response */
+        private int successfulResponses = 0;
+
+        private long totalHitCount = 0;
+        private long coverageDocs = 0;
+        private long activeDocs = 0;
+        private long soonActiveDocs = 0;
+        private int degradedReason = 0;
+
+        public SearchResponseReceiver(int requestCount, Compressor compressor, Result result) {
+            this.compressor = compressor;
+            responses = new LinkedBlockingQueue<>(requestCount);
+            outstandingResponses = requestCount;
+            this.result = result;
+        }
+
+        /** Called by a thread belonging to the client when a valid response becomes available */
+        public void receive(Client.SearchResponseOrError response) {
+            responses.add(response);
+        }
+
+        /**
+         * Call this from the dispatcher thread to initiate and complete processing of responses.
+         * This will block until all responses are available and processed, or to timeout, and then
+         * completes the result with the merged hits and coverage of the responses received.
+         */
+        public void processResponses(Query query) {
+            try {
+                while (outstandingResponses > 0) {
+                    long timeLeftMs = query.getTimeLeft();
+                    if (timeLeftMs <= 0) break;
+                    Client.SearchResponseOrError response = responses.poll(timeLeftMs, TimeUnit.MILLISECONDS);
+                    if (response == null) break;
+                    processResponse(response);
+                    outstandingResponses--;
+                }
+            }
+            catch (InterruptedException e) {
+                // handled as timeout of the outstanding responses below
+            }
+            complete(query);
+        }
+
+        private void processResponse(Client.SearchResponseOrError responseOrError) {
+            if (responseOrError.error().isPresent()) {
+                failedResponses++;
+                log.log(Level.FINE, () -> "Error searching node " + responseOrError.nodeId() + ": " + responseOrError.error().get());
+                result.getQuery().trace(false, 1, "Search node ", responseOrError.nodeId(), " failed: ", responseOrError.error().get());
+                return;
+            }
+
+            Client.SearchResponse response = responseOrError.response().get();
+            CompressionType compression = CompressionType.valueOf(response.compression());
+            byte[] slimeBytes = compressor.decompress(response.compressedSlimeBytes(), compression, response.uncompressedSize());
+            add(response.nodeId(), new SlimeAdapter(BinaryFormat.decode(slimeBytes).get()));
+        }
+
+        private void add(int nodeId, Inspector response) {
+            successfulResponses++;
+            totalHitCount += response.field("totalhits").asLong();
+
+            Inspector coverage = response.field("coverage");
+            coverageDocs += coverage.field("docs").asLong();
+            activeDocs += coverage.field("active").asLong();
+            soonActiveDocs += coverage.field("soon").asLong();
+            degradedReason |= (int)coverage.field("degraded").asLong();
+
+            Inspector errors = response.field("errors");
+            for (int i = 0; i < errors.entryCount(); i++)
+                result.hits().addError(ErrorMessage.createBackendCommunicationError("Error from search node " + nodeId +
+                                                                                    ": " + errors.entry(i).asString()));
+
+            Inspector hits = response.field("hits");
+            for (int i = 0; i < hits.entryCount(); i++) {
+                Inspector hitObject = hits.entry(i);
+                FastHit hit = new FastHit();
+                hit.setQuery(result.getQuery());
+                hit.setFillable();
+                hit.setRelevance(hitObject.field("relevance").asDouble());
+                hit.setGlobalId(new GlobalId(hitObject.field("gid").asData()));
+                hit.setDistributionKey(nodeId);
+                hit.setPartId(nodeId, 0);
+                result.hits().add(hit);
+            }
+        }
+
+        private void complete(Query query) {
+            if (successfulResponses == 0) {
+                if (outstandingResponses > 0)
+                    result.hits().addError(ErrorMessage.createTimeout("Timed out waiting for search nodes. " +
+                                                                      outstandingResponses + " responses outstanding."));
+                else
+                    result.hits().addError(ErrorMessage.createBackendCommunicationError("No search nodes responded successfully"));
+                return;
+            }
+
+            int failed = failedResponses + outstandingResponses;
+            if (failed > 0) {
+                // We don't know the active documents of the nodes which did not respond, so assume they are
+                // the average of those which did, such that coverage reflects the missing part of the corpus
+                activeDocs += failed * (activeDocs / successfulResponses);
+                soonActiveDocs += failed * (soonActiveDocs / successfulResponses);
+                query.trace(false, 1, failed, " search nodes did not respond in time; returning partial results");
+            }
+            result.setTotalHitCount(totalHitCount);
+            result.setCoverage(new Coverage(coverageDocs, activeDocs).setSoonActive(soonActiveDocs)
+                                                                      .setDegradedReason(degradedReason));
+            result.hits().trim(query.getOffset(), query.getHits());
+        }
+
+    }
+
     /** Receiver of the responses to a set of getDocsums requests */
     public static class GetDocsumsResponseReceiver {
 
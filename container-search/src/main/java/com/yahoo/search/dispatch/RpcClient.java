@@ -44,6 +44,19 @@ class RpcClient implements Client {
         rpcNode.invokeAsync(request, timeoutSeconds, new RpcResponseWaiter(rpcNode, responseReceiver));
     }
 
+    @Override
+    public void search(int nodeId, NodeConnection node, CompressionType compression, int uncompressedLength,
+                       byte[] compressedSlime, Dispatcher.SearchResponseReceiver responseReceiver, double timeoutSeconds) {
+        Request request = new Request("proton.search");
+        request.parameters().add(new Int8Value(compression.getCode()));
+        request.parameters().add(new Int32Value(uncompressedLength));
+        request.parameters().add(new DataValue(compressedSlime));
+
+        request.setContext(nodeId);
+        RpcNodeConnection rpcNode = ((RpcNodeConnection) node);
+        rpcNode.invokeAsync(request, timeoutSeconds, new RpcSearchResponseWaiter(rpcNode, responseReceiver));
+    }
+
     private static class RpcNodeConnection implements NodeConnection {
 
         // Information about the connected node
@@ -125,4 +138,45 @@ class RpcClient implements Client {
 
     }
 
+    private static class RpcSearchResponseWaiter implements RequestWaiter {
+
+        /** The node to which we made the request we are waiting for - for error messages only */
+        private final RpcNodeConnection node;
+
+        /** The handler to which the response is forwarded */
+        private final Dispatcher.SearchResponseReceiver handler;
+
+        public RpcSearchResponseWaiter(RpcNodeConnection node, Dispatcher.SearchResponseReceiver handler) {
+            this.node = node;
+            this.handler = handler;
+        }
+
+        @Override
+        public void handleRequestDone(Request requestWithResponse) {
+            int nodeId = (Integer) requestWithResponse.getContext();
+            if (requestWithResponse.isError()) {
+                handler.receive(SearchResponseOrError.fromError(nodeId, "Error response from " + node + ": " +
+                                                                        requestWithResponse.errorMessage()));
+                return;
+            }
+
+            Values returnValues = requestWithResponse.returnValues();
+            if (returnValues.size() < 3) {
+                handler.receive(SearchResponseOrError.fromError(nodeId, "Invalid search response from " + node +
+                                                                        ": Expected 3 return arguments, got " +
+                                                                        returnValues.size()));
+                return;
+            }
+
+            byte compression = returnValues.get(0).asInt8();
+            int uncompressedSize = returnValues.get(1).asInt32();
+            byte[] compressedSlimeBytes = returnValues.get(2).asData();
+            handler.receive(SearchResponseOrError.fromResponse(new SearchResponse(nodeId,
+                                                                                  compression,
+                                                                                  uncompressedSize,
+                                                                                  compressedSlimeBytes)));
+        }
+
+    }
+
 }
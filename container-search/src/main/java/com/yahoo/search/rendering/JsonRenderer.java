@@ -9,7 +9,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
 import com.yahoo.data.JsonProducer;
 import com.yahoo.data.access.Inspectable;
-import com.yahoo.data.access.simple.JsonRender;
+import com.yahoo.data.access.Inspector;
 import com.yahoo.document.datatypes.FieldValue;
 import com.yahoo.document.datatypes.StringFieldValue;
 import com.yahoo.document.datatypes.TensorFieldValue;
@@ -36,10 +36,13 @@ import com.yahoo.search.result.Coverage;
 import com.yahoo.search.result.DefaultErrorHit;
 import com.yahoo.search.result.ErrorHit;
 import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.FeatureData;
 import com.yahoo.search.result.Hit;
 import com.yahoo.search.result.HitGroup;
 import com.yahoo.search.result.NanNumber;
+import com.yahoo.search.result.StructuredData;
 import com.yahoo.tensor.Tensor;
+import com.yahoo.text.DoubleFormatter;
 import com.yahoo.yolean.trace.TraceNode;
 import com.yahoo.yolean.trace.TraceVisitor;
 import org.json.JSONArray;
@@ -74,18 +77,6 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
     private static final CompoundName DEBUG_RENDERING_KEY = new CompoundName("renderer.json.debug");
     private static final CompoundName JSON_CALLBACK = new CompoundName("jsoncallback");
 
-    private enum RenderDecision {
-        YES, NO, DO_NOT_KNOW;
-
-        boolean booleanValue() {
-            switch (this) {
-                case YES: return true;
-                case NO: return false;
-                default: throw new IllegalStateException();
-            }
-        }
-    }
-
     // if this must be optimized, simply use com.fasterxml.jackson.core.SerializableString
     private static final String BUCKET_LIMITS = "limits";
     private static final String BUCKET_TO = "to";
@@ -518,7 +509,19 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
     private boolean renderStandardFields(Hit hit, boolean initialHasFieldsField) throws IOException {
         boolean hasFieldsField = initialHasFieldsField;
         for (String fieldName : hit.fieldKeys()) {
-            if (!shouldRender(fieldName, hit)) continue;
+            if ( ! debugRendering && fieldName.startsWith(VESPA_HIDDEN_FIELD_PREFIX)) continue;
+
+            // Fields which are not decoded are passed through from the raw utf-8 of the summary
+            FastHit.RawField rawField = undecodedRawField(fieldName, hit);
+            if (rawField != null) {
+                if ( ! debugRendering && rawField.getLength() == 0) continue;
+                hasFieldsField |= fieldsStart(hasFieldsField);
+                generator.writeFieldName(fieldName);
+                renderRawField(rawField);
+                continue;
+            }
+
+            if ( ! shouldRender(fieldName, hit)) continue;
 
             // We can't look at the size of fieldKeys() and know whether we need
             // the fields object, as all fields may be hidden.
@@ -531,12 +534,7 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
     private boolean shouldRender(String fieldName, Hit hit) {
         if (debugRendering) return true;
 
-        if (fieldName.startsWith(VESPA_HIDDEN_FIELD_PREFIX)) return false;
-
-        RenderDecision r = lazyRenderAwareCheck(fieldName, hit);
-        if (r != RenderDecision.DO_NOT_KNOW) return r.booleanValue();
-
-        // this will trigger field decoding, so it is important the lazy decoding magic is done first
+        // this will trigger field decoding, so undecoded fields must be handled before this is called
         Object field = hit.getField(fieldName);
 
         if (field instanceof CharSequence && ((CharSequence) field).length() == 0) return false;
@@ -549,16 +547,17 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
         return true;
     }
 
-    private RenderDecision lazyRenderAwareCheck(String fieldName, Hit hit) {
-        if ( ! (hit instanceof FastHit)) return RenderDecision.DO_NOT_KNOW;
+    /** Returns the raw utf-8 of the given field if it is not decoded and is a text field, null otherwise */
+    private FastHit.RawField undecodedRawField(String fieldName, Hit hit) {
+        if ( ! (hit instanceof FastHit)) return null;
 
-        FastHit asFastHit = (FastHit) hit;
-        if (asFastHit.fieldIsNotDecoded(fieldName)) {
-            FastHit.RawField rawField = asFastHit.fetchFieldAsUtf8(fieldName);
-            if (rawField != null)
-                return rawField.getUtf8().length == 0 ? RenderDecision.NO : RenderDecision.YES;
-        }
-        return RenderDecision.DO_NOT_KNOW;
+        FastHit fastHit = (FastHit) hit;
+        if ( ! fastHit.fieldIsNotDecoded(fieldName)) return null;
+        return fastHit.fetchFieldAsUtf8(fieldName);
+    }
+
+    private void renderRawField(FastHit.RawField rawField) throws IOException {
+        generator.writeUTF8String(rawField.getBuffer(), rawField.getOffset(), rawField.getLength());
     }
 
     private void renderSpecialCasesForGrouping(Hit hit) throws IOException {
@@ -647,12 +646,13 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
             generator.writeTree((TreeNode) field);
         } else if (field instanceof Tensor) {
             renderTensor(Optional.of((Tensor)field));
+        } else if (field instanceof StructuredData || field instanceof FeatureData) {
+            // These produce the same json as rendering the inspector, which is done without an intermediate string
+            renderInspector(((Inspectable) field).inspect());
         } else if (field instanceof JsonProducer) {
             generator.writeRawValue(((JsonProducer) field).toJson());
         } else if (field instanceof Inspectable) {
-            StringBuilder intermediate = new StringBuilder();
-            JsonRender.render((Inspectable) field, intermediate, true);
-            generator.writeRawValue(intermediate.toString());
+            renderInspector(((Inspectable) field).inspect());
         } else if (field instanceof StringFieldValue) {
             // This needs special casing as JsonWriter hides empty strings now
             generator.writeString(((StringFieldValue)field).getString());
@@ -675,6 +675,67 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
         }
     }
 
+    /**
+     * Renders an inspector directly to the generator, producing the same json as
+     * {@link com.yahoo.data.access.simple.JsonRender}, except that non-ascii characters are written as utf-8
+     */
+    private void renderInspector(Inspector inspector) throws IOException {
+        switch (inspector.type()) {
+            case EMPTY:
+                generator.writeNull();
+                break;
+            case BOOL:
+                generator.writeBoolean(inspector.asBool());
+                break;
+            case LONG:
+                generator.writeNumber(inspector.asLong());
+                break;
+            case DOUBLE:
+                double value = inspector.asDouble();
+                if (Double.isNaN(value) || Double.isInfinite(value))
+                    generator.writeNull();
+                else
+                    generator.writeNumber(DoubleFormatter.stringValue(value));
+                break;
+            case STRING:
+                byte[] utf8 = inspector.asUtf8();
+                generator.writeUTF8String(utf8, 0, utf8.length);
+                break;
+            case DATA:
+                generator.writeString(hexString(inspector.asData()));
+                break;
+            case ARRAY:
+                generator.writeStartArray();
+                for (Inspector entry : inspector.entries())
+                    renderInspector(entry);
+                generator.writeEndArray();
+                break;
+            case OBJECT:
+                generator.writeStartObject();
+                for (Map.Entry<String, Inspector> field : inspector.fields()) {
+                    generator.writeFieldName(field.getKey());
+                    renderInspector(field.getValue());
+                }
+                generator.writeEndObject();
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected inspector type " + inspector.type());
+        }
+    }
+
+    private static final char[] hexDigits = "0123456789ABCDEF".toCharArray();
+
+    private static String hexString(byte[] data) {
+        char[] hex = new char[2 + data.length * 2];
+        hex[0] = '0';
+        hex[1] = 'x';
+        for (int i = 0; i < data.length; i++) {
+            hex[2 + i * 2] = hexDigits[(data[i] >> 4) & 0xf];
+            hex[3 + i * 2] = hexDigits[data[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
     private void renderNumberField(Number field) throws IOException {
         if (field instanceof Integer) {
             generator.writeNumber(field.intValue());
@@ -722,20 +783,10 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
      * Really a private method, but package access for testability.
      */
     boolean tryDirectRendering(String fieldName, Hit hit) throws IOException {
-        boolean renderedAsUtf8 = false;
-        if (hit instanceof FastHit) {
-            FastHit f = (FastHit) hit;
-            if (f.fieldIsNotDecoded(fieldName)) {
-                FastHit.RawField r = f.fetchFieldAsUtf8(fieldName);
-                if (r != null) {
-                    byte[] utf8 = r.getUtf8();
-
-                    generator.writeUTF8String(utf8, 0, utf8.length);
-                    renderedAsUtf8 = true;
-                }
-            }
-        }
-        return renderedAsUtf8;
+        FastHit.RawField rawField = undecodedRawField(fieldName, hit);
+        if (rawField == null) return false;
+        renderRawField(rawField);
+        return true;
     }
 
     @Override
@@ -752,6 +752,24 @@ public class Hit extends ListenableFreezableClass implements Data, Comparable<Hi
         return filled;
     }
 
+    /**
+     * For vespa internal use only.
+     * Replaces the map holding the fields of this. The given map must contain the fields currently set in this.
+     * This allows subclasses which know which fields will be set to store them more compactly.
+     */
+    protected final void setFieldMapInternal(Map<String,Object> fields) {
+        this.fields = fields;
+        unmodifiableFieldMap = null;
+    }
+
+    /**
+     * For vespa internal use only.
+     * Gives access to the modifiable backing map of fields, or null if no fields have been set.
+     */
+    protected final Map<String,Object> getFieldMapInternal() {
+        return fields;
+    }
+
     private Map<String,Object> getFieldMap() {
         return getFieldMap(16);
     }
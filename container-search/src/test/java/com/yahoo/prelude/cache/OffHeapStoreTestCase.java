@@ -0,0 +1,75 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.cache;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class OffHeapStoreTestCase extends TestCase {
+
+    private int writeCount = 0;
+
+    public void testWrappingToTheStartOfABufferEvictsSkippedValues() {
+        OffHeapStore<String> store = new OffHeapStore<>(100, 100);
+        Map<String, byte[]> written = new HashMap<>();
+        put("A", 60, store, written);
+        put("B", 30, store, written);
+        put("C", 20, store, written);
+        put("D", 30, store, written);
+        put("E", 55, store, written);
+        assertNull(store.get("C", 0, -1));
+        assertNull(store.get("D", 0, -1));
+        assertContent(store, written);
+    }
+
+    public void testWrappingManyTimesWithMixedValueSizes() {
+        for (int bufferSize : new int[] { 37, 100, 1000 }) {
+            OffHeapStore<String> store = new OffHeapStore<>(1000, bufferSize);
+            Map<String, byte[]> written = new HashMap<>();
+            Random random = new Random(bufferSize);
+            for (int i = 0; i < 2000; i++) {
+                String key = "key" + random.nextInt(300);
+                if (random.nextInt(10) == 0) {
+                    store.remove(key);
+                    written.remove(key);
+                }
+                else {
+                    put(key, random.nextInt(Math.min(bufferSize, 120) + 1), store, written);
+                }
+                assertContent(store, written);
+                assertTrue(store.usedBytes() <= store.capacityBytes());
+            }
+            assertTrue(store.evictionCount() > 0);
+        }
+    }
+
+    private void put(String key, int length, OffHeapStore<String> store, Map<String, byte[]> written) {
+        byte[] value = new byte[length];
+        writeCount++;
+        for (int i = 0; i < length; i++)
+            value[i] = (byte)(writeCount + i);
+        if (store.put(key, value, 0))
+            written.put(key, value);
+        else
+            written.remove(key);
+    }
+
+    /** Verifies that the store returns the last value written of each key it contains */
+    private void assertContent(OffHeapStore<String> store, Map<String, byte[]> written) {
+        long usedBytes = 0;
+        int size = 0;
+        for (Map.Entry<String, byte[]> entry : written.entrySet()) {
+            byte[] value = store.get(entry.getKey(), 0, -1);
+            if (value == null) continue; // evicted
+            assertTrue("Value of " + entry.getKey(), Arrays.equals(entry.getValue(), value));
+            usedBytes += value.length;
+            size++;
+        }
+        assertEquals(size, store.size());
+        assertEquals(usedBytes, store.usedBytes());
+    }
+
+}
@@ -8,7 +8,9 @@ import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.statistics.Statistics;
 import com.yahoo.prelude.cache.Cache;
+import com.yahoo.prelude.cache.CacheValueSerializer;
 import com.yahoo.prelude.cache.QueryCacheKey;
+import com.yahoo.prelude.cache.ResultSerializer;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class CacheTestCase extends TestCase {
@@ -180,4 +182,66 @@ public class CacheTestCase extends TestCase {
         assertNotNull(cache.get("two"));
     }
 
+    public void testOffHeapResult() {
+        Cache<QueryCacheKey, Result> cache = new Cache<>(100*1024, 3600, 100000, Statistics.nullImplementation,
+                                                         new ResultSerializer());
+        Query q = new Query("/std_xmls_a00?hits=5&offset=5&query=flowers+shop");
+        Result r = getSomeResult(q, "foo");
+        r.setTotalHitCount(42);
+        r.hits().get(0).setField("title", "flowers");
+        r.hits().get(0).setField("count", 7L);
+        QueryCacheKey qk = new QueryCacheKey(q);
+        assertNull(cache.get(qk));
+        assertTrue(cache.put(qk, r));
+        assertEquals(1, cache.size());
+
+        Query q2 = new Query("/std_xmls_a00?hits=5&offset=5&query=flowers+shop");
+        Result cached = cache.get(new QueryCacheKey(q2));
+        assertNotNull(cached);
+        assertSame(q2, cached.getQuery());
+        assertEquals(42, cached.getTotalHitCount());
+        assertEquals(1, cached.hits().size());
+        Hit hit = cached.hits().get(0);
+        assertEquals("foo", hit.getId().toString());
+        assertEquals(10.0, hit.getRelevance().getScore());
+        assertEquals("flowers", hit.getField("title"));
+        assertEquals(7L, hit.getField("count"));
+
+        assertTrue(cache.remove(qk));
+        assertNull(cache.get(qk));
+        assertEquals(0, cache.size());
+    }
+
+    public void testOffHeapUnserializableResultIsNotCached() {
+        Cache<QueryCacheKey, Result> cache = new Cache<>(100*1024, 3600, 100000, Statistics.nullImplementation,
+                                                         new ResultSerializer());
+        Query q = new Query("/std_xmls_a00?hits=5&offset=5&query=flowers+shop");
+        Result r = getSomeResult(q, "foo");
+        r.hits().get(0).setField("unknown", new Object());
+        assertFalse(cache.put(new QueryCacheKey(q), r));
+        assertEquals(0, cache.size());
+    }
+
+    public void testOffHeapEvictsOldest() {
+        Cache cache = new Cache(10*1024, 3600, 100*1024, Statistics.nullImplementation, new BytesSerializer());
+        assertTrue(cache.put("five", new byte[5*1024]));
+        assertTrue(cache.put("two", new byte[2*1024]));
+        assertNotNull(cache.get("five"));
+        assertTrue(cache.put("four", new byte[4*1024])); // wraps and overwrites "five"
+        assertNull(cache.get("five"));
+        assertEquals(2*1024, ((byte[])cache.get("two")).length);
+        assertEquals(4*1024, ((byte[])cache.get("four")).length);
+        assertEquals(2, cache.size());
+    }
+
+    private static class BytesSerializer implements CacheValueSerializer<String, byte[]> {
+
+        @Override
+        public byte[] serialize(byte[] value) { return value; }
+
+        @Override
+        public byte[] deserialize(String key, byte[] data) { return data; }
+
+    }
+
 }
@@ -0,0 +1,139 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.fastsearch;
+
+import com.yahoo.container.search.LegacyEmulationConfig;
+import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Slime;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the docsum field map behaves as a LinkedHashMap
+ *
+ * @author agent
+ */
+public class DocsumFieldMapTestCase {
+
+    private final DocsumDefinition definition = createDefinition("a", "b", "c", "d");
+
+    @Test
+    public void testBehavesAsLinkedHashMap() {
+        Random random = new Random(1);
+        List<String> keys = Arrays.asList("a", "b", "c", "d", "x", "y", "z");
+        Map<String, Object> expected = new LinkedHashMap<>();
+        Map<String, Object> map = new DocsumFieldMap(definition, Collections.emptyMap());
+        for (int i = 0; i < 10000; i++) {
+            String key = keys.get(random.nextInt(keys.size()));
+            switch (random.nextInt(6)) {
+                case 0: case 1: case 2 :
+                    Object value = random.nextInt(10) == 0 ? null : i;
+                    assertEquals(expected.put(key, value), map.put(key, value));
+                    break;
+                case 3 :
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                case 4 :
+                    removeWithIterator(expected.keySet().iterator(), key);
+                    removeWithIterator(map.keySet().iterator(), key);
+                    break;
+                case 5 :
+                    if (random.nextInt(100) == 0) {
+                        expected.clear();
+                        map.clear();
+                    }
+                    break;
+            }
+            assertEquals(expected.get(key), map.get(key));
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            assertEquals(expected.size(), map.size());
+            assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+            assertEquals(expected, map);
+            assertEquals(expected.hashCode(), map.hashCode());
+        }
+    }
+
+    @Test
+    public void testEntriesWriteThrough() {
+        Map<String, Object> map = new DocsumFieldMap(definition, Collections.emptyMap());
+        map.put("b", 1);
+        map.put("x", 2);
+        for (Map.Entry<String, Object> entry : map.entrySet())
+            entry.setValue((Integer)entry.getValue() * 10);
+        assertEquals(10, map.get("b"));
+        assertEquals(20, map.get("x"));
+    }
+
+    @Test
+    public void testSetIfNull() {
+        DocsumFieldMap map = new DocsumFieldMap(definition, Collections.singletonMap("c", "existing"));
+        map.put("a", null);
+        map.setIfNull(2, "ignored");
+        map.setIfNull(0, "a value");
+        map.setIfNull(3, "d value");
+        assertEquals("{c=existing, a=a value, d=d value}", map.toString());
+    }
+
+    @Test
+    public void testFastHitFields() {
+        FastHit hit = new FastHit("uri:1", 0.5);
+        hit.setField("x", "ad-hoc");
+        hit.setField("b", "set before fill");
+
+        Slime slime = new Slime();
+        Cursor docsum = slime.setObject();
+        docsum.setString("a", "a value");
+        docsum.setString("b", "b value");
+        docsum.setLong("c", 3);
+        hit.addSummary(definition, new SlimeAdapter(slime.get()));
+
+        assertEquals("a value", hit.getField("a"));
+        assertEquals("set before fill", hit.getField("b"));
+        assertEquals(3, hit.getField("c"));
+        assertNull(hit.getField("d"));
+        assertEquals(Arrays.asList("uri", "x", "b", "a", "c"), new ArrayList<>(hit.fieldKeys()));
+        assertTrue(hit.fields().containsKey("c"));
+
+        hit.removeField("a");
+        hit.setField("a", "again");
+        assertEquals(Arrays.asList("uri", "x", "b", "c", "a"), new ArrayList<>(hit.fieldKeys()));
+
+        FastHit clone = (FastHit)hit.clone();
+        clone.setField("c", 4);
+        assertEquals(3, hit.getField("c"));
+        assertEquals(4, clone.getField("c"));
+        assertFalse(hit.fields().equals(clone.fields()));
+    }
+
+    private void removeWithIterator(Iterator<String> keys, String key) {
+        while (keys.hasNext()) {
+            if (keys.next().equals(key))
+                keys.remove();
+        }
+    }
+
+    private static DocsumDefinition createDefinition(String ... fieldNames) {
+        List<DocumentdbInfoConfig.Documentdb.Summaryclass.Fields.Builder> fields = new ArrayList<>();
+        for (String fieldName : fieldNames)
+            fields.add(new DocumentdbInfoConfig.Documentdb.Summaryclass.Fields.Builder()
+                               .name(fieldName).type(fieldName.equals("c") ? "integer" : "string"));
+        DocumentdbInfoConfig.Documentdb.Summaryclass config =
+                new DocumentdbInfoConfig.Documentdb.Summaryclass(new DocumentdbInfoConfig.Documentdb.Summaryclass.Builder()
+                                                                         .id(0).name("default").fields(fields));
+        return new DocsumDefinition(config, new LegacyEmulationConfig(new LegacyEmulationConfig.Builder()));
+    }
+
+}
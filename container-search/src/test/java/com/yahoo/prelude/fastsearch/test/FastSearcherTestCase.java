@@ -2,6 +2,7 @@
 package com.yahoo.prelude.fastsearch.test;
 
 import com.google.common.collect.ImmutableList;
+import com.yahoo.compress.CompressionType;
 import com.yahoo.component.chain.Chain;
 import com.yahoo.config.subscription.ConfigGetter;
 import com.yahoo.container.search.Fs4Config;
@@ -418,7 +419,7 @@ public class FastSearcherTestCase {
     public void testSinglePassGroupingIsForcedWithSingleNodeGroups() {
         FastSearcher fastSearcher = new FastSearcher(new MockBackend(),
                                                      new FS4ResourcePool(1),
-                                                     new MockDispatcher(new SearchCluster.Node("host0", 123, 0)),
+                                                     new MockDispatcher(new SearchCluster.Node(0, "host0", 123, 0)),
                                                      new SummaryParameters(null),
                                                      new ClusterParams("testhittype"),
                                                      new CacheParams(100, 1e64),
@@ -441,8 +442,8 @@ public class FastSearcherTestCase {
     @Test
     public void testSinglePassGroupingIsNotForcedWithSingleNodeGroups() {
         MockDispatcher dispatcher = 
-                new MockDispatcher(ImmutableList.of(new SearchCluster.Node("host0", 123, 0),
-                                                    new SearchCluster.Node("host1", 123, 0)));
+                new MockDispatcher(ImmutableList.of(new SearchCluster.Node(0, "host0", 123, 0),
+                                                    new SearchCluster.Node(1, "host1", 123, 0)));
 
         FastSearcher fastSearcher = new FastSearcher(new MockBackend(),
                                                      new FS4ResourcePool(1),
@@ -466,6 +467,37 @@ public class FastSearcherTestCase {
         assertForceSinglePassIs(false, q);
     }
 
+    @Test
+    public void testSearchIsDispatchedOverRpcOnlyWhenRequested() {
+        List<Query> rpcQueries = new ArrayList<>();
+        MockDispatcher dispatcher = new MockDispatcher(new SearchCluster.Node(0, "host0", 123, 0)) {
+            @Override
+            public Result search(Query query, CompressionType compression) {
+                rpcQueries.add(query);
+                return new Result(query);
+            }
+        };
+        FastSearcher fastSearcher = new FastSearcher(new MockBackend(),
+                                                     new FS4ResourcePool(1),
+                                                     dispatcher,
+                                                     new SummaryParameters(null),
+                                                     new ClusterParams("testhittype"),
+                                                     new CacheParams(0, 0.0),
+                                                     documentdbInfoConfig);
+
+        fastSearcher.search(new Query("?query=foo"), new Execution(Execution.Context.createContextStub()));
+        assertTrue("Off by default", rpcQueries.isEmpty());
+
+        Query sorted = new Query("?query=foo&dispatch.search=true&sorting=title");
+        fastSearcher.search(sorted, new Execution(Execution.Context.createContextStub()));
+        assertTrue("Sorted queries are dispatched over fs4", rpcQueries.isEmpty());
+
+        Query query = new Query("?query=foo&dispatch.search=true");
+        fastSearcher.search(query, new Execution(Execution.Context.createContextStub()));
+        assertEquals(1, rpcQueries.size());
+        assertSame(query, rpcQueries.get(0));
+    }
+
     private void assertForceSinglePassIs(boolean expected, Query query) {
         for (GroupingRequest request : GroupingRequest.getRequests(query))
             assertForceSinglePassIs(expected, request.getRootOperation());
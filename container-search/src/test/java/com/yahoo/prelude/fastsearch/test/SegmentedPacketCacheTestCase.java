@@ -0,0 +1,163 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.fastsearch.test;
+
+import com.yahoo.container.StatisticsConfig;
+import com.yahoo.fs4.BasicPacket;
+import com.yahoo.fs4.BufferTooSmallException;
+import com.yahoo.fs4.PacketDecoder;
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.prelude.fastsearch.CacheKey;
+import com.yahoo.prelude.fastsearch.PacketCacheStatistics;
+import com.yahoo.prelude.fastsearch.PacketWrapper;
+import com.yahoo.prelude.fastsearch.SegmentedPacketCache;
+import com.yahoo.search.Query;
+import com.yahoo.statistics.Handle;
+import com.yahoo.statistics.Statistics;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the segmented packet cache
+ *
+ * @author agent
+ */
+public class SegmentedPacketCacheTestCase {
+
+    @Test
+    public void testSegmentCount() {
+        assertEquals(1, new SegmentedPacketCache(0, 1000, 1e64, 16).segmentCount());
+        assertEquals(1, new SegmentedPacketCache(1, 0, 1e64, 16).segmentCount());
+        assertEquals(4, new SegmentedPacketCache(5, 0, 1e64, 16).segmentCount());
+        assertEquals(16, new SegmentedPacketCache(100, 0, 1e64, 16).segmentCount());
+        assertEquals(8, new SegmentedPacketCache(100, 0, 1e64, 12).segmentCount());
+    }
+
+    @Test
+    public void testPutAndGetAcrossSegments() throws BufferTooSmallException {
+        SegmentedPacketCache cache = new SegmentedPacketCache(16, 0, 1e64, 16);
+        assertEquals(16, cache.segmentCount());
+
+        for (int i = 0; i < 100; i++)
+            cache.put(key(i), createCacheEntry(), System.currentTimeMillis());
+        assertEquals(100, cache.size());
+        assertEquals(100 * PacketCacheTestCase.length, cache.totalPacketSize());
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++)
+            assertNotNull(cache.get(key(i), now));
+        assertNull(cache.get(key(100), now));
+        assertEquals(100, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        cache.remove(key(0));
+        assertNull(cache.get(key(0), now));
+        assertEquals(99, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.totalPacketSize());
+    }
+
+    @Test
+    public void testEviction() throws BufferTooSmallException {
+        // room for three entries in a single segment
+        SegmentedPacketCache cache = new SegmentedPacketCache(0, PacketCacheTestCase.length * 4 - 1, 1e64);
+        cache.setMaxCacheItemPercentage(50);
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++)
+            cache.put(key(i), createCacheEntry(), now);
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get(key(0), now));
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void testExpiry() throws BufferTooSmallException {
+        SegmentedPacketCache cache = new SegmentedPacketCache(0, 1024, 5 * 3600);
+        cache.setMaxCacheItemPercentage(50);
+
+        long now = System.currentTimeMillis();
+        cache.put(key(1), createCacheEntry(), now - 10 * 3600 * 1000);
+        cache.put(key(2), createCacheEntry(), now);
+        assertNull(cache.get(key(1), now));
+        assertNotNull(cache.get(key(2), now));
+        assertEquals(1, cache.expiredCount());
+    }
+
+    @Test
+    public void testStatisticsAreReported() throws BufferTooSmallException {
+        SegmentedPacketCache cache = new SegmentedPacketCache(0, PacketCacheTestCase.length * 4 - 1, 5 * 3600);
+        cache.setMaxCacheItemPercentage(50);
+        RecordingStatistics manager = new RecordingStatistics();
+        PacketCacheStatistics statistics = new PacketCacheStatistics("mycluster", cache, manager);
+        assertEquals(Arrays.asList(statistics.hits(), statistics.misses(), statistics.evictions(), statistics.expired()),
+                     manager.handles);
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++)
+            cache.put(key(i), createCacheEntry(), now);
+        assertNull(cache.get(key(0), now)); // evicted
+        assertNotNull(cache.get(key(4), now));
+        manager.log();
+        assertEquals(1, statistics.hits().get());
+        assertEquals(1, statistics.misses().get());
+        assertEquals(2, statistics.evictions().get());
+        assertEquals(0, statistics.expired().get());
+
+        cache.put(key(5), createCacheEntry(), now - 10 * 3600 * 1000);
+        assertNull(cache.get(key(5), now)); // expired
+        assertNotNull(cache.get(key(4), now));
+        manager.log();
+        assertEquals("Counts are cumulative", 2, statistics.hits().get());
+        assertEquals(2, statistics.misses().get());
+        assertEquals(1, statistics.expired().get());
+    }
+
+    private CacheKey key(int i) {
+        return new CacheKey(QueryPacket.create(new Query("/?query=key" + i)));
+    }
+
+    private PacketWrapper createCacheEntry() throws BufferTooSmallException {
+        ByteBuffer data = ByteBuffer.allocate(PacketCacheTestCase.length);
+        data.put(PacketCacheTestCase.queryResultPacketData);
+        data.flip();
+        BasicPacket[] content = new BasicPacket[] { PacketDecoder.extractPacket(data).packet };
+        return new PacketWrapper(null, content);
+    }
+
+    /** Statistics which records the handles registered, and runs them when told to */
+    private static class RecordingStatistics implements Statistics {
+
+        final List<Handle> handles = new ArrayList<>();
+
+        @Override
+        public void register(Handle h) {
+            handles.add(h);
+        }
+
+        void log() {
+            handles.forEach(Handle::run);
+        }
+
+        @Override
+        public void remove(String name) { }
+
+        @Override
+        public StatisticsConfig getConfig() { return new StatisticsConfig(new StatisticsConfig.Builder()); }
+
+        @Override
+        public int purge() { return 0; }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.semantics.test;
+
+/**
+ * Tests that indexing rules by the terms they must match does not change which rules match
+ *
+ * @author agent
+ */
+public class RuleIndexTestCase extends RuleBaseAbstractTestCase {
+
+    public RuleIndexTestCase(String name) {
+        super(name,"ruleindex.sr");
+    }
+
+    public void testRuleMatchingTermProducedByEarlierRule() {
+        assertSemantics("third","first");
+        assertSemantics("third","firsts");
+    }
+
+    public void testRuleMatchingNamedConditionTerm() {
+        assertSemantics("service:truck","truck wash");
+        assertSemantics("service:car","car wash");
+    }
+
+    public void testRuleMatchingTermAfterEllipsis() {
+        assertSemantics("request:\"coffee now\"","coffee now please");
+    }
+
+    public void testNoMatch() {
+        assertSemantics("AND nothing here","nothing here");
+    }
+
+}
@@ -23,6 +23,7 @@ import java.util.Map;
 public class MockClient implements Client {
 
     private final Map<DocsumKey, Map<String, Object>> docsums = new HashMap<>();
+    private final Map<String, Map<Integer, Double>> searchHits = new HashMap<>();
     private final Compressor compressor = new Compressor();
     private boolean malfunctioning = false;
 
@@ -72,6 +73,47 @@ public class MockClient implements Client {
         responseReceiver.receive(GetDocsumsResponseOrError.fromResponse(response));
     }
 
+    @Override
+    public void search(int nodeId, NodeConnection node, CompressionType compression,
+                       int uncompressedSize, byte[] compressedSlime, Dispatcher.SearchResponseReceiver responseReceiver,
+                       double timeoutSeconds) {
+        if (malfunctioning || ! searchHits.containsKey(node.toString())) {
+            responseReceiver.receive(SearchResponseOrError.fromError(nodeId, "Malfunctioning"));
+            return;
+        }
+
+        Inspector request = BinaryFormat.decode(compressor.decompress(compressedSlime, compression, uncompressedSize)).get();
+        long hitsToReturn = request.field("hits").asLong();
+        Map<Integer, Double> hits = searchHits.get(node.toString());
+
+        Slime responseSlime = new Slime();
+        Cursor root = responseSlime.setObject();
+        root.setLong("totalhits", hits.size());
+        Cursor coverage = root.setObject("coverage");
+        coverage.setLong("docs", 100);
+        coverage.setLong("active", 100);
+        coverage.setLong("soon", 100);
+        Cursor hitsArray = root.setArray("hits");
+        hits.entrySet().stream()
+                       .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
+                       .limit(hitsToReturn)
+                       .forEach(hit -> {
+                           Cursor hitObject = hitsArray.addObject();
+                           hitObject.setData("gid", globalIdFrom(hit.getKey()).getRawId());
+                           hitObject.setDouble("relevance", hit.getValue());
+                       });
+        byte[] slimeBytes = BinaryFormat.encode(responseSlime);
+        Compressor.Compression compressionResult = compressor.compress(compression, slimeBytes);
+        SearchResponse response = new SearchResponse(nodeId, compressionResult.type().getCode(), slimeBytes.length,
+                                                     compressionResult.data());
+        responseReceiver.receive(SearchResponseOrError.fromResponse(response));
+    }
+
+    /** Sets the hits (and their relevance) returned by searching the given node */
+    public void setSearchResponse(String nodeId, int docId, double relevance) {
+        searchHits.computeIfAbsent(nodeId, k -> new HashMap<>()).put(docId, relevance);
+    }
+
     public void setDocsumReponse(String nodeId, int docId, String docsumClass, Map<String, Object> docsumValues) {
         docsums.put(new DocsumKey(nodeId, globalIdFrom(docId), docsumClass), docsumValues);
     }
@@ -0,0 +1,99 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.compress.CompressionType;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests using a dispatcher to search over rpc
+ *
+ * @author agent
+ */
+public class SearchTestCase {
+
+    private MockClient client = new MockClient();
+
+    @Test
+    public void testSearchMergesHitsFromAllNodes() {
+        Dispatcher dispatcher = createDispatcher(3);
+        client.setSearchResponse("host0", 0, 0.9);
+        client.setSearchResponse("host0", 1, 0.3);
+        client.setSearchResponse("host1", 2, 0.8);
+        client.setSearchResponse("host1", 3, 0.5);
+        client.setSearchResponse("host2", 4, 0.7);
+
+        Result result = dispatcher.search(new Query("?query=foo&hits=3"), CompressionType.valueOf("LZ4"));
+
+        assertNull(result.hits().getError());
+        assertEquals(5, result.getTotalHitCount());
+        assertEquals(3, result.getHitCount());
+        assertHit(client.globalIdFrom(0).toString(), 0, 0.9, result, 0);
+        assertHit(client.globalIdFrom(2).toString(), 1, 0.8, result, 1);
+        assertHit(client.globalIdFrom(4).toString(), 2, 0.7, result, 2);
+        assertEquals(100, result.getCoverage(false).getResultPercentage());
+    }
+
+    @Test
+    public void testSearchWithOffset() {
+        Dispatcher dispatcher = createDispatcher(2);
+        client.setSearchResponse("host0", 0, 0.9);
+        client.setSearchResponse("host0", 1, 0.3);
+        client.setSearchResponse("host1", 2, 0.8);
+        client.setSearchResponse("host1", 3, 0.5);
+
+        Result result = dispatcher.search(new Query("?query=foo&hits=2&offset=1"), CompressionType.valueOf("LZ4"));
+
+        assertEquals(2, result.getHitCount());
+        assertHit(client.globalIdFrom(2).toString(), 1, 0.8, result, 0);
+        assertHit(client.globalIdFrom(3).toString(), 1, 0.5, result, 1);
+    }
+
+    @Test
+    public void testPartialResultWhenANodeFails() {
+        Dispatcher dispatcher = createDispatcher(2);
+        client.setSearchResponse("host0", 0, 0.9);
+        // no response configured for host1, which will then fail
+
+        Result result = dispatcher.search(new Query("?query=foo"), CompressionType.valueOf("LZ4"));
+
+        assertNull(result.hits().getError());
+        assertEquals(1, result.getHitCount());
+        assertEquals(50, result.getCoverage(false).getResultPercentage());
+    }
+
+    @Test
+    public void testErrorWhenAllNodesFail() {
+        client.setMalfunctioning(true);
+        Dispatcher dispatcher = createDispatcher(2);
+
+        Result result = dispatcher.search(new Query("?query=foo"), CompressionType.valueOf("LZ4"));
+
+        assertEquals("No search nodes responded successfully", result.hits().getError().getDetailedMessage());
+    }
+
+    private Dispatcher createDispatcher(int nodeCount) {
+        Map<Integer, Client.NodeConnection> nodes = new HashMap<>();
+        for (int i = 0; i < nodeCount; i++)
+            nodes.put(i, client.createConnection("host" + i, 123));
+        return new Dispatcher(nodes, client);
+    }
+
+    private void assertHit(String expectedGlobalId, int expectedNode, double expectedRelevance, Result result, int index) {
+        assertTrue(result.hits().get(index) instanceof FastHit);
+        FastHit hit = (FastHit)result.hits().get(index);
+        assertEquals(expectedGlobalId, hit.getGlobalId().toString());
+        assertEquals(expectedNode, hit.getDistributionKey());
+        assertEquals(expectedRelevance, hit.getRelevance().getScore(), 0.000001);
+    }
+
+}
@@ -0,0 +1,91 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.rendering;
+
+import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.result.StructuredData;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Slime;
+import com.yahoo.text.Utf8;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Measures the time spent rendering typical result pages of hits from a backend as json.
+ *
+ * @author agent
+ */
+public class JsonRendererBenchmark {
+
+    private final JsonRenderer renderer = new JsonRenderer();
+
+    /** Returns the average time in milliseconds spent rendering the given result */
+    private double benchmark(int iterations, Result result) throws InterruptedException, ExecutionException {
+        long bytes = run(Math.max(iterations / 10, 10), result); // warmup
+        System.gc();
+        long startTime = System.nanoTime();
+        bytes += run(iterations, result);
+        long totalTime = System.nanoTime() - startTime;
+        if (bytes == 0) throw new IllegalStateException("Nothing was rendered");
+        return totalTime / 1000000.0 / iterations;
+    }
+
+    private long run(int iterations, Result result) throws InterruptedException, ExecutionException {
+        long bytes = 0;
+        Execution execution = new Execution(Execution.Context.createContextStub());
+        for (int i = 0; i < iterations; i++) {
+            JsonRenderer renderer = (JsonRenderer)this.renderer.clone(); // as in production
+            renderer.init();
+            ByteArrayOutputStream stream = new ByteArrayOutputStream(64 * 1024);
+            renderer.render(stream, result, execution, null).get();
+            bytes += stream.size();
+        }
+        return bytes;
+    }
+
+    private static Result createResult(int hitCount, int stringFieldCount) {
+        Result result = new Result(new Query("?query=test&hits=" + hitCount));
+        for (int i = 0; i < hitCount; i++) {
+            FastHit hit = new FastHit("id:test:test::" + i, 1.0 / (i + 1));
+            for (int field = 0; field < stringFieldCount; field++)
+                hit.setLazyStringField("string" + field, Utf8.toBytes("The value of field " + field + " in hit " + i));
+            hit.setField("int", i);
+            hit.setField("long", 1000000000000L + i);
+            hit.setField("double", i / 3.0);
+            hit.setField("structured", structuredData(i));
+            result.hits().add(hit);
+        }
+        result.setTotalHitCount(hitCount * 100);
+        return result;
+    }
+
+    private static StructuredData structuredData(int i) {
+        Slime slime = new Slime();
+        Cursor root = slime.setObject();
+        root.setString("name", "hit " + i);
+        Cursor array = root.setArray("values");
+        for (int j = 0; j < 10; j++)
+            array.addDouble(j * 1.5 + i);
+        Cursor nested = root.setObject("nested");
+        nested.setLong("position", i);
+        nested.setBool("even", i % 2 == 0);
+        return new StructuredData(new SlimeAdapter(slime.get()));
+    }
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        JsonRendererBenchmark b = new JsonRendererBenchmark();
+        double time;
+
+        time = b.benchmark(20000, createResult(10, 10));
+        System.out.printf("10 hits,  10 string fields, time per result: %8.4f ms\n", time);
+        time = b.benchmark(2000, createResult(100, 10));
+        System.out.printf("100 hits, 10 string fields, time per result: %8.4f ms\n", time);
+        time = b.benchmark(500, createResult(400, 30));
+        System.out.printf("400 hits, 30 string fields, time per result: %8.4f ms\n", time);
+    }
+
+}
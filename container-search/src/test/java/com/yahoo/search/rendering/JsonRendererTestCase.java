@@ -64,6 +64,7 @@ import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.times;
 
@@ -957,6 +958,67 @@ public class JsonRendererTestCase {
         assertEqualJson(expected, summary);
     }
 
+    @Test
+    public void testStructuredDataValues() throws InterruptedException, ExecutionException, IOException {
+        String expected = "{\n"
+                + "    \"root\": {\n"
+                + "        \"children\": [\n"
+                + "            {\n"
+                + "                \"fields\": {\n"
+                + "                    \"structured\": {\n"
+                + "                        \"data\": \"0x01AB\",\n"
+                + "                        \"nan\": null,\n"
+                + "                        \"infinity\": null,\n"
+                + "                        \"double\": 2.5,\n"
+                + "                        \"nested\": {\n"
+                + "                            \"array\": [ 1, { \"inner\": true } ],\n"
+                + "                            \"empty\": null\n"
+                + "                        }\n"
+                + "                    }\n"
+                + "                },\n"
+                + "                \"id\": \"structured\",\n"
+                + "                \"relevance\": 1.0\n"
+                + "            }\n"
+                + "        ],\n"
+                + "        \"fields\": {\n"
+                + "            \"totalCount\": 0\n"
+                + "        },\n"
+                + "        \"id\": \"toplevel\",\n"
+                + "        \"relevance\": 1.0\n"
+                + "    }\n"
+                + "}\n";
+        Slime slime = new Slime();
+        Cursor c = slime.setObject();
+        c.setData("data", new byte[] { 0x01, (byte)0xab });
+        c.setDouble("nan", Double.NaN);
+        c.setDouble("infinity", Double.POSITIVE_INFINITY);
+        c.setDouble("double", 2.5);
+        Cursor nested = c.setObject("nested");
+        Cursor array = nested.setArray("array");
+        array.addLong(1);
+        array.addObject().setBool("inner", true);
+        nested.setNix("empty");
+        Result r = newEmptyResult();
+        Hit h = new Hit("structured");
+        h.setField("structured", new StructuredData(new SlimeAdapter(slime.get())));
+        r.hits().add(h);
+        String summary = render(r);
+        assertEqualJson(expected, summary);
+    }
+
+    @Test
+    public void testNonAsciiStructuredDataIsRenderedAsUtf8() throws InterruptedException, ExecutionException, IOException {
+        Slime slime = new Slime();
+        slime.setObject().setString("blåbærsyltetøy", "日本語");
+        Result r = newEmptyResult();
+        Hit h = new Hit("structured");
+        h.setField("structured", new StructuredData(new SlimeAdapter(slime.get())));
+        r.hits().add(h);
+        String summary = render(r);
+        assertTrue(summary, summary.contains("\"structured\":{\"blåbærsyltetøy\":\"日本語\"}"));
+        assertFalse(summary, summary.contains("\\u"));
+    }
+
     @Test
     public final void testFieldValueInHit() throws IOException, InterruptedException, ExecutionException, JSONException {
         String expected = "{\n"
@@ -1,7 +1,9 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.documentapi;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.logging.Logger;
@@ -40,6 +42,9 @@ public class ProgressToken {
     public static final BucketId NULL_BUCKET = new BucketId();
     public static final BucketId FINISHED_BUCKET = new BucketId(Integer.MAX_VALUE);
 
+    /** The number of distribution bits used to divide the bucket space into slices, see {@link #slice} */
+    public static final int SLICE_DISTRIBUTION_BITS = 8;
+
     /**
      * When a bucket has its state kept by the progress token, we need to
      * discern between active buckets (i.e. those that have been returned by
@@ -247,6 +252,128 @@ public class ProgressToken {
         return ret;
     }
 
+    /**
+     * Splits the buckets left to visit according to the given token into the given number of
+     * contiguous slices of the bucket space, which can be visited independently by iterators
+     * of their own. The token of each slice contains the buckets of its slice as pending, with
+     * the bucket cursor at the end of the bucket space, such that all buckets outside the slice
+     * are regarded as finished. Slices are made from the {@link #SLICE_DISTRIBUTION_BITS} most
+     * significant bits of bucket keys, so the bucket space must be visited with at least that many
+     * distribution bits, and there can be at most 2^{@link #SLICE_DISTRIBUTION_BITS} slices.
+     *
+     * @param token the progress to slice, or a new token to slice the entire bucket space
+     * @param sliceCount the number of slices to create
+     * @return the slice tokens, or a list containing only the given token if it cannot be sliced,
+     *         because it covers explicit buckets, is finished or uses too few distribution bits
+     * @throws IllegalArgumentException if the slice count is not in [1, 2^{@link #SLICE_DISTRIBUTION_BITS}]
+     */
+    public static List<ProgressToken> slice(ProgressToken token, int sliceCount) {
+        if (sliceCount < 1 || sliceCount > 1 << SLICE_DISTRIBUTION_BITS)
+            throw new IllegalArgumentException("Slice count must be in [1, " + (1 << SLICE_DISTRIBUTION_BITS) +
+                                               "], but was " + sliceCount);
+        if (sliceCount == 1) return Collections.singletonList(token);
+
+        boolean fresh = token.getTotalBucketCount() == 0;
+        if ( ! fresh && ! isSliceable(token)) return Collections.singletonList(token);
+
+        int distributionBits = fresh ? SLICE_DISTRIBUTION_BITS : token.getDistributionBitCount();
+        long totalBucketCount = 1L << distributionBits;
+        long bucketsPerSliceBucket = 1L << (distributionBits - SLICE_DISTRIBUTION_BITS);
+        long cursor = fresh ? 0 : token.getBucketCursor();
+        List<ProgressToken> slices = new ArrayList<>(sliceCount);
+        for (int i = 0; i < sliceCount; i++) {
+            ProgressToken slice = new ProgressToken(distributionBits);
+            slice.setTotalBucketCount(totalBucketCount);
+            slice.setBucketCursor(totalBucketCount);
+            slices.add(slice);
+        }
+        if ( ! fresh) {
+            for (Map.Entry<BucketKeyWrapper, BucketEntry> entry : token.buckets.entrySet())
+                slices.get(sliceOf(entry.getKey().getKey(), sliceCount))
+                      .addBucket(entry.getKey().toBucketId(), entry.getValue().getProgress(), BucketState.BUCKET_PENDING);
+            for (Map.Entry<BucketId, BucketId> failed : token.failedBuckets.entrySet())
+                slices.get(0).addFailedBucket(failed.getKey(), failed.getValue(), token.getFirstErrorMsg());
+        }
+        for (int i = 0; i < sliceCount; i++) { // add the buckets not yet returned by the given token's iterator
+            ProgressToken slice = slices.get(i);
+            long start = sliceStart(i, sliceCount) * bucketsPerSliceBucket;
+            long end = sliceStart(i + 1, sliceCount) * bucketsPerSliceBucket;
+            for (long n = Math.max(start, cursor); n < end; n++) {
+                long key = makeNthBucketKey(n, distributionBits);
+                if ( ! slice.buckets.containsKey(new BucketKeyWrapper(key)))
+                    slice.addBucket(new BucketId(keyToBucketId(key)), NULL_BUCKET, BucketState.BUCKET_PENDING);
+            }
+            slice.setFinishedBucketCount(totalBucketCount - slice.getPendingBucketCount());
+        }
+        return slices;
+    }
+
+    /**
+     * Returns a new token containing the progress of all the given slice tokens, as returned by
+     * {@link #slice} and then updated by visiting. Such tokens only contain the buckets left to visit
+     * in their slice, so the merged token contains the union of those buckets, in pending state,
+     * and can be used to resume visiting with or without slicing. This does not synchronize on the
+     * given tokens.
+     *
+     * @return the merged token, or null if the tokens which have buckets left to visit are not currently
+     *         at the same number of distribution bits, or some of them are in an inconsistent state
+     * @throws IllegalArgumentException if some of the given tokens are not slice tokens
+     */
+    public static ProgressToken merge(List<ProgressToken> slices) {
+        int distributionBits = -1;
+        for (ProgressToken slice : slices) {
+            if (slice.getBucketCursor() != slice.getTotalBucketCount())
+                throw new IllegalArgumentException("Not a slice token: Bucket cursor is at " + slice.getBucketCursor() +
+                                                   " of " + slice.getTotalBucketCount());
+            if (slice.isInconsistentState()) return null;
+            if (slice.buckets.isEmpty()) continue; // visited to the end, at whatever distribution bits
+            if (distributionBits == -1)
+                distributionBits = slice.getDistributionBitCount();
+            else if (slice.getDistributionBitCount() != distributionBits)
+                return null;
+        }
+        if (distributionBits == -1) // all slices are done
+            distributionBits = slices.get(0).getDistributionBitCount();
+
+        long totalBucketCount = 1L << distributionBits;
+        ProgressToken merged = new ProgressToken(distributionBits);
+        merged.setTotalBucketCount(totalBucketCount);
+        merged.setBucketCursor(totalBucketCount);
+        for (ProgressToken slice : slices) {
+            for (Map.Entry<BucketKeyWrapper, BucketEntry> entry : slice.buckets.entrySet())
+                merged.addBucket(entry.getKey().toBucketId(), entry.getValue().getProgress(),
+                                 BucketState.BUCKET_PENDING);
+            for (Map.Entry<BucketId, BucketId> failed : slice.failedBuckets.entrySet())
+                merged.addFailedBucket(failed.getKey(), failed.getValue(), slice.getFirstErrorMsg());
+        }
+        merged.setFinishedBucketCount(totalBucketCount - merged.getPendingBucketCount());
+        return merged;
+    }
+
+    /** Returns whether the given existing token covers the entire bucket space with enough bits to be sliced */
+    private static boolean isSliceable(ProgressToken token) {
+        if (token.isFinished() || token.isInconsistentState()) return false;
+        if (token.getDistributionBitCount() < SLICE_DISTRIBUTION_BITS) return false;
+        if (token.getTotalBucketCount() != 1L << token.getDistributionBitCount()) return false;
+        for (BucketKeyWrapper key : token.buckets.keySet())
+            if (key.toBucketId().getUsedBits() < SLICE_DISTRIBUTION_BITS) return false;
+        return true;
+    }
+
+    /** Returns the first of the superbuckets at {@link #SLICE_DISTRIBUTION_BITS} bits of the given slice */
+    private static long sliceStart(int slice, int sliceCount) {
+        return ((long)slice << SLICE_DISTRIBUTION_BITS) / sliceCount;
+    }
+
+    /** Returns the slice containing the bucket with the given key */
+    private static int sliceOf(long bucketKey, int sliceCount) {
+        long superbucket = bucketKey >>> (64 - SLICE_DISTRIBUTION_BITS);
+        int slice = (int)(superbucket * sliceCount >>> SLICE_DISTRIBUTION_BITS);
+        while (sliceStart(slice + 1, sliceCount) <= superbucket) slice++;
+        while (sliceStart(slice, sliceCount) > superbucket) slice--;
+        return slice;
+    }
+
     public void addFailedBucket(BucketId superbucket, BucketId progress, String errorMsg) {
         BucketId existing = failedBuckets.put(superbucket, progress);
         if (existing != null) {
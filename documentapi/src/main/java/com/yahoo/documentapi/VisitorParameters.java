@@ -48,6 +48,7 @@ public class VisitorParameters extends Parameters {
     private int traceLevel = 0;
     private ThrottlePolicy throttlePolicy = null;
     private boolean skipBucketsOnFatalErrors = false;
+    private int slices = 1;
 
     // Advanced parameter, only for internal use.
     Set<BucketId> bucketsToVisit = null;
@@ -99,6 +100,7 @@ public class VisitorParameters extends Parameters {
                 params.getDynamicMaxBucketsIncreaseFactor());
         setTraceLevel(params.getTraceLevel());
         skipBucketsOnFatalErrors(params.skipBucketsOnFatalErrors());
+        setSlices(params.getSlices());
     }
 
     // Get functions
@@ -324,6 +326,17 @@ public class VisitorParameters extends Parameters {
 
     public void skipBucketsOnFatalErrors(boolean skipBucketsOnFatalErrors) { this.skipBucketsOnFatalErrors = skipBucketsOnFatalErrors; }
 
+    /** Returns the number of slices of the bucket space to visit concurrently. Default is 1. */
+    public int getSlices() { return slices; }
+
+    /**
+     * Sets the number of slices of the bucket space to visit concurrently, each with its own iterator,
+     * progress token and window of pending visitors. The progress of all slices is merged into a single
+     * progress token, which can be used to resume visiting with any number of slices.
+     * Limits on the number of hits apply to each slice.
+     */
+    public void setSlices(int slices) { this.slices = slices; }
+
     /**
      * Set whether or not max buckets per visitor value should be dynamically
      * increased when using orderdoc and visitors do not return at least half
@@ -379,6 +392,9 @@ public class VisitorParameters extends Parameters {
                     .append(dynamicMaxBucketsIncreaseFactor)
                     .append('\n');
         }
+        if (slices > 1) {
+            sb.append("  Slices:             ").append(slices).append('\n');
+        }
         sb.append(')');
 
         return sb.toString();
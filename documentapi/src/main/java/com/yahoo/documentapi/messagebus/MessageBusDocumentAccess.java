@@ -86,7 +86,10 @@ public class MessageBusDocumentAccess extends DocumentAccess {
     }
 
     @Override
-    public MessageBusVisitorSession createVisitorSession(VisitorParameters params) throws ParseException, IllegalArgumentException {
+    public VisitorSession createVisitorSession(VisitorParameters params) throws ParseException, IllegalArgumentException {
+        if (params.getSlices() > 1)
+            return SlicedVisitorSession.createForMessageBus(bus.getMessageBus(), scheduledExecutorService, params);
+
         MessageBusVisitorSession session = MessageBusVisitorSession.createForMessageBus(
                 bus.getMessageBus(), scheduledExecutorService, params);
         session.start();
@@ -0,0 +1,362 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.documentapi.messagebus;
+
+import com.yahoo.document.BucketIdFactory;
+import com.yahoo.document.select.BucketSelector;
+import com.yahoo.document.select.parser.ParseException;
+import com.yahoo.documentapi.AckToken;
+import com.yahoo.documentapi.ProgressToken;
+import com.yahoo.documentapi.VisitorControlHandler;
+import com.yahoo.documentapi.VisitorControlSession;
+import com.yahoo.documentapi.VisitorDataHandler;
+import com.yahoo.documentapi.VisitorDataQueue;
+import com.yahoo.documentapi.VisitorParameters;
+import com.yahoo.documentapi.VisitorResponse;
+import com.yahoo.documentapi.VisitorSession;
+import com.yahoo.log.LogLevel;
+import com.yahoo.messagebus.Message;
+import com.yahoo.messagebus.MessageBus;
+import com.yahoo.messagebus.Trace;
+import com.yahoo.vdslib.VisitorStatistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A visitor session which visits slices of the bucket space concurrently, each with a {@link MessageBusVisitorSession}
+ * of its own, such that each slice has its own iterator, progress token and window of pending visitors.
+ * The slices are created by {@link ProgressToken#slice}, and their progress is merged by {@link ProgressToken#merge}
+ * into the progress token of this session, which is passed to the control handler of this at most once a second
+ * for each slice, and when a slice completes.
+ * <p>
+ * Visiting is done when all slices are done. If one slice fails, the others are aborted, and the session
+ * completes with the code and message of the first slice which did not succeed.
+ *
+ * @author agent
+ */
+public class SlicedVisitorSession implements VisitorSession {
+
+    private static final Logger log = Logger.getLogger(SlicedVisitorSession.class.getName());
+
+    /** The min interval between merging the progress of a slice into the progress of this session */
+    private static final long progressIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+
+    /** Creates the session visiting a slice */
+    interface SliceSessionFactory {
+        MessageBusVisitorSession create(VisitorParameters sliceParameters) throws ParseException;
+    }
+
+    private final VisitorParameters params;
+    private final Executor executor;
+    private final MessageBusVisitorSession.Clock clock;
+    private final List<Slice> slices = new ArrayList<>();
+
+    private final Object monitor = new Object();
+    /** The last merged progress of all slices */
+    private ProgressToken progress;
+    private int slicesDone = 0;
+    private VisitorControlHandler.CompletionCode completionCode = VisitorControlHandler.CompletionCode.SUCCESS;
+    private String completionMessage = null;
+
+    SlicedVisitorSession(VisitorParameters params, List<ProgressToken> sliceTokens,
+                         SliceSessionFactory sliceSessionFactory, Executor executor,
+                         MessageBusVisitorSession.Clock clock) throws ParseException {
+        this.params = params;
+        this.executor = executor;
+        this.clock = clock;
+        this.progress = ProgressToken.merge(sliceTokens);
+        initializeHandlers();
+        for (int i = 0; i < sliceTokens.size(); i++)
+            slices.add(new Slice(i, sliceTokens.get(i)));
+        for (Slice slice : slices)
+            slice.session = sliceSessionFactory.create(sliceParameters(slice));
+    }
+
+    /**
+     * Creates and starts a session visiting the given number of slices concurrently, or a single
+     * {@link MessageBusVisitorSession} if the parameters cannot be sliced because they select explicit buckets
+     * or have a resume token which cannot be sliced.
+     */
+    public static VisitorSession createForMessageBus(MessageBus mbus,
+                                                     ScheduledExecutorService scheduledExecutorService,
+                                                     VisitorParameters params) throws ParseException {
+        List<ProgressToken> sliceTokens = sliceTokens(params);
+        if (sliceTokens.size() < 2) {
+            MessageBusVisitorSession session = MessageBusVisitorSession.createForMessageBus(mbus, scheduledExecutorService, params);
+            session.start();
+            return session;
+        }
+
+        SlicedVisitorSession session = new SlicedVisitorSession(params, sliceTokens,
+                sliceParameters -> MessageBusVisitorSession.createForMessageBus(mbus, scheduledExecutorService, sliceParameters),
+                scheduledExecutorService, new MessageBusVisitorSession.RealClock());
+        session.start();
+        return session;
+    }
+
+    private static List<ProgressToken> sliceTokens(VisitorParameters params) throws ParseException {
+        ProgressToken token = params.getResumeToken() != null ? params.getResumeToken() : new ProgressToken();
+        if (params.getBucketsToVisit() != null && ! params.getBucketsToVisit().isEmpty())
+            return Collections.singletonList(token);
+        if (new BucketSelector(new BucketIdFactory()).getBucketList(params.getDocumentSelection()) != null)
+            return Collections.singletonList(token);
+        return ProgressToken.slice(token, params.getSlices());
+    }
+
+    private void initializeHandlers() {
+        if (params.getLocalDataHandler() != null) {
+            params.getLocalDataHandler().reset();
+            params.getLocalDataHandler().setSession(this);
+        } else if (params.getRemoteDataHandler() == null) {
+            params.setLocalDataHandler(new VisitorDataQueue());
+            params.getLocalDataHandler().setSession(this);
+        }
+
+        if (params.getControlHandler() != null) {
+            params.getControlHandler().reset();
+        } else {
+            params.setControlHandler(new VisitorControlHandler());
+        }
+        params.getControlHandler().setSession(this);
+    }
+
+    private VisitorParameters sliceParameters(Slice slice) {
+        VisitorParameters sliceParameters = new VisitorParameters(params);
+        sliceParameters.setSessionTimeoutMs(params.getSessionTimeoutMs());
+        sliceParameters.setThrottlePolicy(params.getThrottlePolicy());
+        sliceParameters.setSlices(1);
+        sliceParameters.setResumeToken(slice.token);
+        sliceParameters.setControlHandler(new SliceControlHandler(slice));
+        if (params.getLocalDataHandler() != null)
+            sliceParameters.setLocalDataHandler(new SliceDataHandler());
+        return sliceParameters;
+    }
+
+    public void start() {
+        for (Slice slice : slices)
+            slice.session.start();
+    }
+
+    /** Returns the number of slices visited by this */
+    public int getSliceCount() { return slices.size(); }
+
+    @Override
+    public boolean isDone() {
+        for (Slice slice : slices)
+            if ( ! slice.session.isDone()) return false;
+        return true;
+    }
+
+    /** Returns the last merged progress of all slices */
+    @Override
+    public ProgressToken getProgress() {
+        synchronized (monitor) {
+            return progress;
+        }
+    }
+
+    /** Returns a trace containing the trace of each slice as a child */
+    @Override
+    public Trace getTrace() {
+        Trace trace = new Trace(params.getTraceLevel());
+        for (Slice slice : slices)
+            trace.getRoot().addChild(slice.session.getTrace().getRoot());
+        return trace;
+    }
+
+    @Override
+    public boolean waitUntilDone(long timeoutMs) throws InterruptedException {
+        return params.getControlHandler().waitUntilDone(timeoutMs);
+    }
+
+    @Override
+    public void ack(AckToken token) {
+        if ( ! (token.ackObject instanceof SliceAck))
+            throw new IllegalArgumentException("Not an ack token of this session: " + token.ackObject);
+        SliceAck ack = (SliceAck)token.ackObject;
+        ack.session.ack(ack.token);
+    }
+
+    @Override
+    public void abort() {
+        for (Slice slice : slices)
+            if (slice.session != null) // may be called by a slice completing while this is created
+                slice.session.abort();
+    }
+
+    @Override
+    public VisitorResponse getNext() {
+        if (params.getLocalDataHandler() == null) {
+            throw new IllegalStateException("Data has been routed to external source for this visitor");
+        }
+        return params.getLocalDataHandler().getNext();
+    }
+
+    @Override
+    public VisitorResponse getNext(int timeoutMilliseconds) throws InterruptedException {
+        if (params.getLocalDataHandler() == null) {
+            throw new IllegalStateException("Data has been routed to external source for this visitor");
+        }
+        return params.getLocalDataHandler().getNext(timeoutMilliseconds);
+    }
+
+    @Override
+    public void destroy() {
+        for (Slice slice : slices)
+            slice.session.destroy();
+    }
+
+    /**
+     * Merges the progress of the given slice into the progress of this and passes it to the control handler,
+     * unless this was done less than the progress interval ago and this is not forced.
+     * Must be called with the monitor of the token of the slice held, and not the monitor of this.
+     */
+    private void progressed(Slice slice, boolean force) {
+        long now = clock.monotonicNanoTime();
+        if ( ! force && now - slice.lastSnapshotNanos < progressIntervalNanos) return;
+        slice.lastSnapshotNanos = now;
+
+        ProgressToken snapshot = ProgressToken.merge(Collections.singletonList(slice.token));
+        if (snapshot == null) return; // changing distribution bits; try again later
+
+        ProgressToken merged;
+        synchronized (monitor) {
+            slice.snapshot = snapshot;
+            List<ProgressToken> snapshots = new ArrayList<>(slices.size());
+            for (Slice each : slices)
+                snapshots.add(each.snapshot);
+            merged = ProgressToken.merge(snapshots);
+            if (merged == null) return; // slices are at different distribution bits; keep the last merged
+            progress = merged;
+        }
+        params.getControlHandler().onProgress(merged);
+    }
+
+    private void statisticsUpdated(Slice slice, VisitorStatistics statistics) {
+        VisitorStatistics total = new VisitorStatistics();
+        synchronized (monitor) {
+            slice.statistics = statistics;
+            for (Slice each : slices)
+                if (each.statistics != null)
+                    total.add(each.statistics);
+        }
+        params.getControlHandler().onVisitorStatistics(total);
+    }
+
+    private void sliceDone(Slice slice, VisitorControlHandler.CompletionCode code, String message) {
+        progressed(slice, true);
+
+        boolean abortOthers = false;
+        boolean allDone;
+        synchronized (monitor) {
+            if (code != VisitorControlHandler.CompletionCode.SUCCESS
+                && completionCode == VisitorControlHandler.CompletionCode.SUCCESS) {
+                completionCode = code;
+                completionMessage = message;
+                abortOthers = true;
+            }
+            allDone = ++slicesDone == slices.size();
+        }
+        log.log(LogLevel.DEBUG, "Slice " + slice.index + " of " + slices.size() + " completed with " + code +
+                                (message == null ? "" : ": " + message));
+
+        if (abortOthers && ! allDone) // Not from this thread, which holds the token monitor of this slice
+            executor.execute(this::abort);
+        if (allDone) {
+            if (params.getLocalDataHandler() != null)
+                params.getLocalDataHandler().onDone();
+            params.getControlHandler().onDone(completionCode, completionMessage);
+        }
+    }
+
+    /** A slice of the bucket space, and the session visiting it */
+    private static class Slice {
+
+        final int index;
+        /** The progress token used by the session of this slice */
+        final ProgressToken token;
+        MessageBusVisitorSession session;
+
+        // Accessed while holding the token monitor
+        long lastSnapshotNanos = 0;
+
+        // Accessed while holding the monitor of the sliced session
+        ProgressToken snapshot;
+        VisitorStatistics statistics;
+
+        Slice(int index, ProgressToken token) {
+            this.index = index;
+            this.token = token;
+            this.snapshot = ProgressToken.merge(Collections.singletonList(token));
+        }
+
+    }
+
+    /** Passes the callbacks of the session of a slice on to the control handler of this */
+    private class SliceControlHandler extends VisitorControlHandler {
+
+        private final Slice slice;
+
+        SliceControlHandler(Slice slice) {
+            this.slice = slice;
+        }
+
+        @Override
+        public void onProgress(ProgressToken token) {
+            super.onProgress(token);
+            progressed(slice, false);
+        }
+
+        @Override
+        public void onVisitorError(String message) {
+            params.getControlHandler().onVisitorError(message);
+        }
+
+        @Override
+        public void onVisitorStatistics(VisitorStatistics statistics) {
+            super.onVisitorStatistics(statistics);
+            statisticsUpdated(slice, statistics);
+        }
+
+        @Override
+        public void onDone(CompletionCode code, String message) {
+            super.onDone(code, message);
+            synchronized (slice.token) {
+                sliceDone(slice, code, message);
+            }
+        }
+
+    }
+
+    /** Passes the data of the session of a slice on to the data handler of this, with acks back to the slice session */
+    private class SliceDataHandler extends VisitorDataHandler {
+
+        @Override
+        public void onMessage(Message message, AckToken token) {
+            params.getLocalDataHandler().onMessage(message, new AckToken(new SliceAck(session, token)));
+        }
+
+    }
+
+    /** An ack of a message received by the session of a slice */
+    private static class SliceAck {
+
+        final VisitorControlSession session;
+        final AckToken token;
+
+        SliceAck(VisitorControlSession session, AckToken token) {
+            this.session = session;
+            this.token = token;
+        }
+
+        @Override
+        public String toString() { return token.ackObject.toString(); }
+
+    }
+
+}
@@ -13,6 +13,7 @@ import com.yahoo.messagebus.Error;
 import com.yahoo.messagebus.metrics.MetricSet;
 import com.yahoo.messagebus.routing.*;
 import com.yahoo.vdslib.distribution.Distribution;
+import com.yahoo.vdslib.distribution.DistributorOwnershipTable;
 import com.yahoo.vdslib.state.ClusterState;
 import com.yahoo.vdslib.state.Node;
 import com.yahoo.vdslib.state.NodeType;
@@ -56,7 +57,7 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
         }
     }
 
-    /** Helper class to match a host pattern with node to use. */
+    /** Helper class to match a host pattern with node to use. This class is thread safe. */
     public abstract static class HostFetcher {
         private int requiredUpPercentageToSendToKnownGoodNodes = 60;
         private List<Integer> validRandomTargets = new ArrayList<>();
@@ -65,7 +66,7 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
 
         public void setRequiredUpPercentageToSendToKnownGoodNodes(int percent) { this.requiredUpPercentageToSendToKnownGoodNodes = percent; }
 
-        public void updateValidTargets(ClusterState state) {
+        public synchronized void updateValidTargets(ClusterState state) {
             List<Integer> validRandomTargets = new ArrayList<>();
             for (int i=0; i<state.getNodeCount(NodeType.DISTRIBUTOR); ++i) {
                 if (state.getNodeState(new Node(NodeType.DISTRIBUTOR, i)).getState().oneOf(upStates)) validRandomTargets.add(i);
@@ -74,7 +75,7 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
             this.totalTargets = state.getNodeCount(NodeType.DISTRIBUTOR);
         }
         public abstract String getTargetSpec(Integer distributor, RoutingContext context);
-        public String getRandomTargetSpec(RoutingContext context) {
+        public synchronized String getRandomTargetSpec(RoutingContext context) {
             // Try to use list of random targets, if at least X % of the nodes are up
             while (100 * validRandomTargets.size() / totalTargets >= requiredUpPercentageToSendToKnownGoodNodes) {
                 int randIndex = randomizer.nextInt(validRandomTargets.size());
@@ -270,7 +271,7 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
         }
     }
 
-    /** Class handling the logic of picking a distributor */
+    /** Class handling the logic of picking a distributor. This class is thread safe. */
     public static class DistributorSelectionLogic {
         /** Class that tracks a failure of a given type per node. */
         public static class InstabilityChecker {
@@ -279,7 +280,7 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
 
             public InstabilityChecker(int failureLimit) { this.failureLimit = failureLimit; }
 
-            public boolean tooManyFailures(int nodeIndex) {
+            public synchronized boolean tooManyFailures(int nodeIndex) {
                 if (nodeFailures.size() > nodeIndex && nodeFailures.get(nodeIndex) > failureLimit) {
                     nodeFailures.set(nodeIndex, 0);
                     return true;
@@ -288,7 +289,7 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
                 }
             }
 
-            public void addFailure(Integer calculatedDistributor) {
+            public synchronized void addFailure(Integer calculatedDistributor) {
                 while (nodeFailures.size() <= calculatedDistributor) nodeFailures.add(0);
                 nodeFailures.set(calculatedDistributor, nodeFailures.get(calculatedDistributor) + 1);
             }
@@ -309,7 +310,11 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
         private final HostFetcher hostFetcher;
         private final Distribution distribution;
         private final InstabilityChecker persistentFailureChecker;
+        /** The cluster state and ownership table, which are guarded by this as they are used by several threads */
         private ClusterState cachedClusterState = null;
+        /** The ideal distributors in the cached cluster state, and the cluster state instance it is created from */
+        private DistributorOwnershipTable ownershipTable = null;
+        private ClusterState ownershipTableState = null;
         private int oldClusterVersionGottenCount = 0;
         private final int maxOldClusterVersionBeforeSendingRandom; // Reset cluster version protection
 
@@ -328,11 +333,17 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
 
         public String getTargetSpec(RoutingContext context, BucketId bucketId) {
             String sendRandomReason = null;
-            MessageContext messageContext = new MessageContext(cachedClusterState);
+            ClusterState clusterState;
+            DistributorOwnershipTable ownershipTable;
+            synchronized (this) {
+                clusterState = cachedClusterState;
+                ownershipTable = clusterState != null ? ownershipTable() : null;
+            }
+            MessageContext messageContext = new MessageContext(clusterState);
             context.setContext(messageContext);
-            if (cachedClusterState != null) { // If we have a cached cluster state (regular case), we use that to calculate correct node.
+            if (clusterState != null) { // If we have a cached cluster state (regular case), we use that to calculate correct node.
                 try{
-                    Integer target = distribution.getIdealDistributorNode(cachedClusterState, bucketId, owningBucketStates);
+                    Integer target = ownershipTable.getIdealDistributorNode(bucketId);
                     // If we have had too many failures towards existing node, reset failure count and send to random
                     if (persistentFailureChecker.tooManyFailures(target)) {
                         sendRandomReason = "Too many failures detected versus distributor " + target + ". Sending to random instead of using cached state.";
@@ -345,9 +356,9 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
                         if (targetSpec != null) {
                             if (context.shouldTrace(1)) {
                                 context.trace(1, "Using distributor " + messageContext.calculatedDistributor + " for " +
-                                        bucketId + " as our state version is " + cachedClusterState.getVersion());
+                                        bucketId + " as our state version is " + clusterState.getVersion());
                             }
-                            messageContext.usedState = cachedClusterState;
+                            messageContext.usedState = clusterState;
                             return targetSpec;
                         } else {
                             sendRandomReason = "Want to use distributor " + messageContext.calculatedDistributor + " but it is not in slobrok. Sending to random.";
@@ -355,14 +366,17 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
                         }
                     }
                 } catch (Distribution.TooFewBucketBitsInUseException e) {
-                    Reply reply = new WrongDistributionReply(cachedClusterState.toString(true));
+                    Reply reply = new WrongDistributionReply(clusterState.toString(true));
                     reply.addError(new Error(DocumentProtocol.ERROR_WRONG_DISTRIBUTION,
                                              "Too few distribution bits used for given cluster state"));
                     context.setReply(reply);
                     return null;
                 } catch (Distribution.NoDistributorsAvailableException e) {
                     log.log(LogLevel.DEBUG, "No distributors available; clearing cluster state");
-                    cachedClusterState = null;
+                    synchronized (this) {
+                        if (cachedClusterState == clusterState)
+                            cachedClusterState = null;
+                    }
                     sendRandomReason = "No distributors available. Sending to random distributor.";
                 }
             } else {
@@ -374,6 +388,15 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
             return hostFetcher.getRandomTargetSpec(context);
         }
 
+        /** Returns the ownership table of the cached cluster state, which must be non-null */
+        private DistributorOwnershipTable ownershipTable() {
+            if (ownershipTableState != cachedClusterState) {
+                ownershipTable = distribution.createDistributorOwnershipTable(cachedClusterState, owningBucketStates);
+                ownershipTableState = cachedClusterState;
+            }
+            return ownershipTable;
+        }
+
         private static Optional<ClusterState> clusterStateFromReply(final WrongDistributionReply reply) {
             try {
                 return Optional.of(new ClusterState(reply.getSystemState()));
@@ -383,7 +406,7 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
             }
         }
 
-        public void handleWrongDistribution(WrongDistributionReply reply, RoutingContext routingContext) {
+        public synchronized void handleWrongDistribution(WrongDistributionReply reply, RoutingContext routingContext) {
             final MessageContext context = (MessageContext) routingContext.getContext();
             final Optional<ClusterState> replyState = clusterStateFromReply(reply);
             if (!replyState.isPresent()) {
@@ -480,7 +503,7 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
             }
         }
 
-        public void handleErrorReply(Reply reply, Object untypedContext) {
+        public synchronized void handleErrorReply(Reply reply, Object untypedContext) {
             MessageContext messageContext = (MessageContext) untypedContext;
             if (messageContext.calculatedDistributor != null) {
                 persistentFailureChecker.addFailure(messageContext.calculatedDistributor);
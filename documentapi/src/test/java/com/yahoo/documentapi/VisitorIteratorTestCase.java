@@ -9,6 +9,7 @@ import com.yahoo.document.BucketId;
 import com.yahoo.document.BucketIdFactory;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -1382,6 +1383,55 @@ public class VisitorIteratorTestCase extends TestCase {
         assertTrue(buckets.isEmpty());
     }
 
+    public void testSlicedIterationWithMergedProgress() throws ParseException {
+        int db = 10;
+        BucketIdFactory idFactory = new BucketIdFactory();
+        List<ProgressToken> slices = ProgressToken.slice(new ProgressToken(), 3);
+        assertEquals(3, slices.size());
+
+        // Visit the first 100 buckets of each slice, and leave one bucket of each active with progress
+        Set<BucketId> visited = new TreeSet<BucketId>();
+        for (ProgressToken slice : slices) {
+            VisitorIterator iter = VisitorIterator.createFromDocumentSelection(
+                    "id.group != \"yahoo.com\"", idFactory, 1, slice);
+            iter.setDistributionBitCount(db);
+            for (int i = 0; i < 100; ++i) {
+                VisitorIterator.BucketProgress bp = iter.getNext();
+                assertTrue("Slices are disjoint", visited.add(bp.getSuperbucket()));
+                iter.update(bp.getSuperbucket(), ProgressToken.FINISHED_BUCKET);
+            }
+            VisitorIterator.BucketProgress active = iter.getNext();
+            iter.update(active.getSuperbucket(), new BucketId(db + 1, active.getSuperbucket().getId()));
+        }
+
+        ProgressToken merged = ProgressToken.merge(slices);
+        assertEquals(1 << db, merged.getTotalBucketCount());
+        assertEquals(300, merged.getFinishedBucketCount());
+        assertEquals((1 << db) - 300, merged.getPendingBucketCount());
+
+        // Resume from the serialized merged progress, both without slicing and with a different number of slices
+        Set<BucketId> remaining = remainingBuckets(Arrays.asList(new ProgressToken(merged.serialize())), db);
+        assertEquals((1 << db) - 300, remaining.size());
+        assertEquals(remaining, remainingBuckets(ProgressToken.slice(new ProgressToken(merged.serialize()), 2), db));
+        for (BucketId bucket : remaining)
+            assertFalse(visited.contains(bucket));
+    }
+
+    private Set<BucketId> remainingBuckets(List<ProgressToken> tokens, int db) throws ParseException {
+        Set<BucketId> buckets = new TreeSet<BucketId>();
+        for (ProgressToken token : tokens) {
+            VisitorIterator iter = VisitorIterator.createFromDocumentSelection(
+                    "id.group != \"yahoo.com\"", new BucketIdFactory(), db, token);
+            while (iter.hasNext()) {
+                VisitorIterator.BucketProgress bp = iter.getNext();
+                assertTrue("Buckets are visited once", buckets.add(bp.getSuperbucket()));
+                iter.update(bp.getSuperbucket(), ProgressToken.FINISHED_BUCKET);
+            }
+            assertTrue(iter.isDone());
+        }
+        return buckets;
+    }
+
     public void testExceptionOnWrongDocumentSelection() throws ParseException {
         BucketIdFactory idFactory = new BucketIdFactory();
         // Since we don't store the actual original document selection in the
@@ -0,0 +1,322 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.documentapi.messagebus;
+
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.select.parser.ParseException;
+import com.yahoo.documentapi.AckToken;
+import com.yahoo.documentapi.ProgressToken;
+import com.yahoo.documentapi.VisitorControlHandler;
+import com.yahoo.documentapi.VisitorDataHandler;
+import com.yahoo.documentapi.VisitorParameters;
+import com.yahoo.documentapi.messagebus.protocol.CreateVisitorMessage;
+import com.yahoo.documentapi.messagebus.protocol.CreateVisitorReply;
+import com.yahoo.documentapi.messagebus.protocol.DocumentProtocol;
+import com.yahoo.documentapi.messagebus.protocol.RemoveDocumentMessage;
+import com.yahoo.documentapi.messagebus.protocol.WrongDistributionReply;
+import com.yahoo.messagebus.Error;
+import com.yahoo.messagebus.ErrorCode;
+import com.yahoo.messagebus.Message;
+import com.yahoo.messagebus.MessageHandler;
+import com.yahoo.messagebus.Reply;
+import com.yahoo.messagebus.ReplyHandler;
+import com.yahoo.messagebus.Result;
+import com.yahoo.messagebus.routing.RoutingTable;
+import com.yahoo.messagebus.routing.RoutingTableSpec;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests a sliced visitor session with a message bus visitor session of each slice, talking to mock senders and
+ * receivers, and with all tasks run in the test thread.
+ *
+ * @author agent
+ */
+public class SlicedVisitorSessionTestCase {
+
+    private final Deque<Runnable> tasks = new ArrayDeque<>();
+    private final MockClock clock = new MockClock();
+    private final List<MockSlice> slices = new ArrayList<>();
+    private final MockControlHandler controlHandler = new MockControlHandler();
+    private final MockDataHandler dataHandler = new MockDataHandler();
+
+    @Test
+    public void testAllSlicesAreVisitedAndDoneIsSignalledOnce() throws ParseException {
+        SlicedVisitorSession session = createSession(2);
+        session.start();
+        runTasks();
+        assertEquals(2, slices.size());
+        assertTrue(slices.get(0).hasMessages());
+        assertTrue(slices.get(1).hasMessages());
+
+        visitToEnd(slices.get(0));
+        assertFalse(session.isDone());
+        assertEquals(0, controlHandler.doneCount);
+
+        visitToEnd(slices.get(1));
+        assertTrue(session.isDone());
+        assertEquals(1, controlHandler.doneCount);
+        assertEquals(VisitorControlHandler.CompletionCode.SUCCESS, controlHandler.getResult().getCode());
+        assertEquals(1, dataHandler.doneCount);
+        assertTrue(session.getProgress().isFinished());
+    }
+
+    @Test
+    public void testAcksAreRoutedToTheSessionOfTheSlice() throws ParseException {
+        SlicedVisitorSession session = createSession(2);
+        session.start();
+        runTasks();
+
+        slices.get(1).receive(new RemoveDocumentMessage(new DocumentId("doc:foo:bar")));
+        runTasks();
+        assertEquals(1, dataHandler.acks.size());
+        assertEquals(0, slices.get(1).replies.size());
+
+        dataHandler.ack(dataHandler.acks.get(0));
+        assertEquals(0, slices.get(0).replies.size());
+        assertEquals(1, slices.get(1).replies.size());
+
+        try {
+            session.ack(new AckToken("not a slice ack"));
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException expected) {
+            assertEquals("Not an ack token of this session: not a slice ack", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testFailureOfOneSliceAbortsTheOthers() throws ParseException {
+        SlicedVisitorSession session = createSession(3);
+        session.start();
+        runTasks();
+
+        slices.get(1).replyToNext(message -> {
+            Reply reply = createReply(message, ProgressToken.FINISHED_BUCKET);
+            reply.addError(new Error(ErrorCode.APP_FATAL_ERROR, "Broken"));
+            return reply;
+        });
+        runTasks();
+        visitToEnd(slices.get(1)); // returns the visitors still pending in the failed slice
+        assertTrue(slices.get(1).session.isDone());
+        assertEquals(0, controlHandler.doneCount);
+
+        // The other slices are aborted, and complete once their pending visitors return
+        assertFalse(slices.get(0).hasMessagesAfterReplies());
+        assertFalse(slices.get(2).hasMessagesAfterReplies());
+        assertTrue(session.isDone());
+        assertEquals(1, controlHandler.doneCount);
+        assertEquals(VisitorControlHandler.CompletionCode.FAILURE, controlHandler.getResult().getCode());
+        assertTrue(controlHandler.getResult().getMessage().contains("Broken"));
+        assertEquals(1, dataHandler.doneCount);
+        assertFalse(session.getProgress().isFinished());
+    }
+
+    @Test
+    public void testProgressIsMergedWhenSlicesAreAtTheSameDistributionBits() throws ParseException {
+        SlicedVisitorSession session = createSession(2);
+        session.start();
+        runTasks();
+        assertEquals(8, session.getProgress().getDistributionBitCount());
+
+        // The first slice changes to 10 distribution bits when all its pending visitors have returned
+        slices.get(0).replyToAll(message -> {
+            WrongDistributionReply reply = new WrongDistributionReply("version:2 storage:100 distributor:100 bits:10");
+            reply.setMessage(message);
+            reply.addError(new Error(DocumentProtocol.ERROR_WRONG_DISTRIBUTION, "Wrong distribution"));
+            return reply;
+        });
+        runTasks();
+
+        // Its progress can not be merged with the other slice, which still visits buckets at 8 bits
+        clock.advance(1, TimeUnit.SECONDS);
+        int progressCount = controlHandler.progressCount;
+        slices.get(0).replyToNext(message -> createReply(message, ProgressToken.FINISHED_BUCKET));
+        runTasks();
+        assertEquals(progressCount, controlHandler.progressCount);
+        assertEquals(8, session.getProgress().getDistributionBitCount());
+
+        // ... but when the other slice is done, its distribution bits no longer matter
+        visitToEnd(slices.get(1));
+        assertEquals(progressCount + 1, controlHandler.progressCount);
+        ProgressToken progress = session.getProgress();
+        assertEquals(10, progress.getDistributionBitCount());
+        assertEquals(1 << 10, progress.getTotalBucketCount());
+        assertEquals((1 << 10) - progress.getPendingBucketCount(), progress.getFinishedBucketCount());
+        assertTrue(progress.getPendingBucketCount() > 0);
+        assertTrue(progress.getPendingBucketCount() < 1 << 9);
+
+        visitToEnd(slices.get(0));
+        assertTrue(session.getProgress().isFinished());
+        assertEquals(1, controlHandler.doneCount);
+    }
+
+    private SlicedVisitorSession createSession(int sliceCount) throws ParseException {
+        VisitorParameters params = new VisitorParameters("");
+        params.setRoute("storage");
+        params.setControlHandler(controlHandler);
+        params.setLocalDataHandler(dataHandler);
+        RoutingTable routingTable = new RoutingTable(new RoutingTableSpec(DocumentProtocol.NAME));
+        MessageBusVisitorSession.AsyncTaskExecutor executor = new MessageBusVisitorSession.AsyncTaskExecutor() {
+            @Override
+            public void submitTask(Runnable task) { tasks.add(task); }
+            @Override
+            public void scheduleTask(Runnable task, long delay, TimeUnit unit) { tasks.add(task); }
+        };
+        return new SlicedVisitorSession(params, ProgressToken.slice(new ProgressToken(), sliceCount),
+                                        sliceParameters -> {
+                                            MockSlice slice = new MockSlice();
+                                            slice.session = new MessageBusVisitorSession(sliceParameters, executor, slice, slice,
+                                                                                         routingTable, clock);
+                                            slices.add(slice);
+                                            return slice.session;
+                                        },
+                                        tasks::add,
+                                        clock);
+    }
+
+    private void runTasks() {
+        while ( ! tasks.isEmpty())
+            tasks.poll().run();
+    }
+
+    /** Replies that all visitors sent by the given slice have visited their buckets to the end, until it is done */
+    private void visitToEnd(MockSlice slice) {
+        while (slice.hasMessages()) {
+            slice.replyToAll(message -> createReply(message, ProgressToken.FINISHED_BUCKET));
+            runTasks();
+        }
+    }
+
+    private static CreateVisitorReply createReply(Message message, com.yahoo.document.BucketId lastBucket) {
+        CreateVisitorReply reply = (CreateVisitorReply)((CreateVisitorMessage)message).createReply();
+        reply.setMessage(message);
+        reply.setLastBucket(lastBucket);
+        return reply;
+    }
+
+    /** The sender and receiver of the session of a slice */
+    private class MockSlice implements MessageBusVisitorSession.Sender, MessageBusVisitorSession.Receiver,
+                                       MessageBusVisitorSession.SenderFactory, MessageBusVisitorSession.ReceiverFactory {
+
+        MessageBusVisitorSession session;
+        private ReplyHandler replyHandler;
+        private MessageHandler messageHandler;
+        private final Deque<Message> messages = new ArrayDeque<>();
+        final List<Reply> replies = new ArrayList<>();
+
+        @Override
+        public MessageBusVisitorSession.Sender createSender(ReplyHandler replyHandler, VisitorParameters params) {
+            this.replyHandler = replyHandler;
+            return this;
+        }
+
+        @Override
+        public MessageBusVisitorSession.Receiver createReceiver(MessageHandler messageHandler, String sessionName) {
+            this.messageHandler = messageHandler;
+            return this;
+        }
+
+        @Override
+        public Result send(Message message) {
+            messages.add(message);
+            return Result.ACCEPTED;
+        }
+
+        @Override
+        public int getPendingCount() { return messages.size(); }
+
+        @Override
+        public void reply(Reply reply) { replies.add(reply); }
+
+        @Override
+        public String getConnectionSpec() { return "receiver/connection/spec"; }
+
+        @Override
+        public void destroy() { }
+
+        boolean hasMessages() { return ! messages.isEmpty(); }
+
+        /** Returns whether this has sent new visitors after the pending ones are returned as visited to the end */
+        boolean hasMessagesAfterReplies() {
+            replyToAll(message -> createReply(message, ProgressToken.FINISHED_BUCKET));
+            runTasks();
+            return hasMessages();
+        }
+
+        void replyToNext(Function<Message, Reply> replyFactory) {
+            replyHandler.handleReply(replyFactory.apply(messages.poll()));
+        }
+
+        void replyToAll(Function<Message, Reply> replyFactory) {
+            while (hasMessages())
+                replyToNext(replyFactory);
+        }
+
+        void receive(Message message) {
+            messageHandler.handleMessage(message);
+        }
+
+    }
+
+    private static class MockClock implements MessageBusVisitorSession.Clock {
+
+        private long nanos = 0;
+
+        @Override
+        public long monotonicNanoTime() { return nanos; }
+
+        void advance(long time, TimeUnit unit) { nanos += unit.toNanos(time); }
+
+    }
+
+    private static class MockControlHandler extends VisitorControlHandler {
+
+        int progressCount = 0;
+        int doneCount = 0;
+
+        @Override
+        public void onProgress(ProgressToken token) {
+            super.onProgress(token);
+            progressCount++;
+        }
+
+        @Override
+        public void onDone(CompletionCode code, String message) {
+            super.onDone(code, message);
+            doneCount++;
+        }
+
+    }
+
+    private static class MockDataHandler extends VisitorDataHandler {
+
+        final List<AckToken> acks = new ArrayList<>();
+        int doneCount = 0;
+
+        @Override
+        public void onMessage(Message message, AckToken token) {
+            assertNotNull(message);
+            acks.add(token);
+        }
+
+        @Override
+        public void onDone() {
+            super.onDone();
+            doneCount++;
+        }
+
+    }
+
+}
@@ -9,6 +9,7 @@ class Buffer {
 
     static final int MAX_IO = 65000;
 
+    private BufferPool pool;
     private ByteBuffer buf;
     private int        readPos;
     private int        writePos;
@@ -54,18 +55,54 @@ class Buffer {
             if (buf.capacity() + free < minFree) {
                 size = buf.capacity() + minFree;
             }
-            ByteBuffer tmp = ByteBuffer.allocate(size);
+            ByteBuffer tmp = allocate(size);
             tmp.order(buf.order());
             buf.position(readPos);
             buf.limit(writePos);
             tmp.put(buf);
+            free(buf);
             buf = tmp;
             readPos = 0;
         }
     }
 
+    private ByteBuffer allocate(int size) {
+        return (pool != null) ? pool.acquire(size) : ByteBuffer.allocate(size);
+    }
+
+    private void free(ByteBuffer old) {
+        if (pool != null) {
+            pool.release(old);
+        }
+    }
+
     public Buffer(int size) {
-        buf = ByteBuffer.allocate(size);
+        this(size, null);
+    }
+
+    /**
+     * Create a buffer which takes its underlying byte buffers from
+     * the given pool. Use {@link #release} to give the current byte
+     * buffer back to the pool when this buffer is no longer used.
+     *
+     * @param size initial size
+     * @param pool the pool to allocate from, or null to allocate from the heap
+     **/
+    public Buffer(int size, BufferPool pool) {
+        this.pool = pool;
+        buf = allocate(size);
+        readPos = 0;
+        writePos = 0;
+        readMode = false;
+    }
+
+    /**
+     * Give the underlying byte buffer back to the pool, if any. This
+     * buffer is empty after this is called, but may still be used.
+     **/
+    public void release() {
+        free(buf);
+        buf = ByteBuffer.allocate(0);
         readPos = 0;
         writePos = 0;
         readMode = false;
@@ -78,11 +115,15 @@ class Buffer {
         if (used > size || buf.capacity() <= size) {
             return false;
         }
-        ByteBuffer tmp = ByteBuffer.allocate(size);
+        if (pool != null && BufferPool.capacityFor(size) >= buf.capacity()) {
+            return false;
+        }
+        ByteBuffer tmp = allocate(size);
         tmp.order(buf.order());
         buf.position(rpos);
         buf.limit(wpos);
         tmp.put(buf);
+        free(buf);
         buf = tmp;
         readPos = 0;
         writePos = used;
@@ -0,0 +1,148 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.jrt;
+
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A pool of reusable direct byte buffers used for network IO. Using
+ * direct buffers lets the channel read and write without copying
+ * through a temporary direct buffer, and pooling them avoids the cost
+ * of allocating (and later freeing) direct memory for each buffer.
+ *
+ * <p>Buffers are handed out in power of two size classes. Requests
+ * larger than the largest size class are served with heap buffers
+ * which are not pooled. The total number of bytes kept in the pool is
+ * bounded.</p>
+ **/
+class BufferPool {
+
+    static final int MIN_SHIFT = 13; // 8k
+    static final int MAX_SHIFT = 20; // 1M
+
+    static final int DEFAULT_MAX_POOLED_BYTES = 16 * 1024 * 1024;
+
+    private final List<ArrayDeque<ByteBuffer>> free;
+    private final long maxPooledBytes;
+    private long pooledBytes = 0;
+    private long allocCount = 0;
+    private long reuseCount = 0;
+
+    private static int sizeClass(int size) {
+        if (size <= (1 << MIN_SHIFT)) {
+            return 0;
+        }
+        return (32 - Integer.numberOfLeadingZeros(size - 1)) - MIN_SHIFT;
+    }
+
+    /**
+     * Create a buffer pool keeping at most the given number of bytes
+     * in unused buffers.
+     *
+     * @param maxPooledBytes the max number of bytes to keep in the pool
+     **/
+    BufferPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+        free = new ArrayList<>(MAX_SHIFT - MIN_SHIFT + 1);
+        for (int i = 0; i < MAX_SHIFT - MIN_SHIFT + 1; i++) {
+            free.add(new ArrayDeque<>());
+        }
+    }
+
+    BufferPool() {
+        this(DEFAULT_MAX_POOLED_BYTES);
+    }
+
+    /**
+     * Obtain the capacity of the buffer that will be returned when
+     * asking for a buffer of the given size.
+     *
+     * @return buffer capacity in bytes
+     * @param minSize the minimum buffer capacity
+     **/
+    static int capacityFor(int minSize) {
+        int sizeClass = sizeClass(minSize);
+        if (sizeClass >= MAX_SHIFT - MIN_SHIFT + 1) {
+            return minSize;
+        }
+        return 1 << (sizeClass + MIN_SHIFT);
+    }
+
+    /**
+     * Obtain a cleared, big endian buffer with at least the given
+     * capacity. The buffer should be given back using {@link
+     * #release} when it is no longer used.
+     *
+     * @return a buffer with at least the given capacity
+     * @param minSize the minimum buffer capacity
+     **/
+    ByteBuffer acquire(int minSize) {
+        int sizeClass = sizeClass(minSize);
+        if (sizeClass >= free.size()) {
+            return ByteBuffer.allocate(minSize);
+        }
+        synchronized (this) {
+            ByteBuffer buf = free.get(sizeClass).pollLast();
+            if (buf != null) {
+                pooledBytes -= buf.capacity();
+                reuseCount++;
+                return buf;
+            }
+            allocCount++;
+        }
+        return ByteBuffer.allocateDirect(1 << (sizeClass + MIN_SHIFT));
+    }
+
+    /**
+     * Give a buffer back to this pool. Buffers not obtained from a
+     * pool are ignored, as are buffers that would make the pool
+     * exceed its max size. The buffer must not be used after it is
+     * released.
+     *
+     * @param buf the buffer to give back
+     **/
+    void release(ByteBuffer buf) {
+        if (!buf.isDirect()) {
+            return;
+        }
+        int sizeClass = sizeClass(buf.capacity());
+        if (sizeClass >= free.size() || buf.capacity() != (1 << (sizeClass + MIN_SHIFT))) {
+            return;
+        }
+        buf.clear();
+        buf.order(ByteOrder.BIG_ENDIAN);
+        synchronized (this) {
+            if (pooledBytes + buf.capacity() > maxPooledBytes) {
+                return;
+            }
+            pooledBytes += buf.capacity();
+            free.get(sizeClass).addLast(buf);
+        }
+    }
+
+    /**
+     * @return the number of bytes held in unused buffers
+     **/
+    synchronized long pooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * @return the number of direct buffers allocated by this pool
+     **/
+    synchronized long allocCount() {
+        return allocCount;
+    }
+
+    /**
+     * @return the number of times a pooled buffer has been reused
+     **/
+    synchronized long reuseCount() {
+        return reuseCount;
+    }
+}
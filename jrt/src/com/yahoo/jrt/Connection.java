@@ -6,6 +6,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Map;
@@ -22,6 +23,7 @@ class Connection extends Target {
     private static final int READ_REDO  = 10;
     private static final int WRITE_SIZE = 8192;
     private static final int WRITE_REDO = 10;
+    private static final int WRITE_MAX  = Buffer.MAX_IO;
 
     private static final int INITIAL   = 0;
     private static final int CONNECTED = 1;
@@ -30,8 +32,10 @@ class Connection extends Target {
     private int           state      = INITIAL;
     private Queue         queue      = new Queue();
     private Queue         myQueue    = new Queue();
-    private Buffer        input      = new Buffer(READ_SIZE * 2);
-    private Buffer        output     = new Buffer(WRITE_SIZE * 2);
+    private Buffer        input;
+    private ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+    private ByteBuffer[]  gather     = new ByteBuffer[0];
+    private int           outputBytes = 0;
     private int           maxInputSize  = 64*1024;
     private int           maxOutputSize = 64*1024;
     private Map<Integer, ReplyHandler> replyMap = new HashMap<>();
@@ -39,6 +43,8 @@ class Connection extends Target {
     private int           activeReqs = 0;
     private int           writeWork  = 0;
     private Transport     parent;
+    private TransportThread transportThread;
+    private BufferPool    bufferPool;
     private Supervisor    owner;
     private Spec          spec;
     private SocketChannel channel;
@@ -85,6 +91,9 @@ class Connection extends Target {
                       SocketChannel channel) {
 
         this.parent = parent;
+        this.transportThread = parent.selectThread();
+        this.bufferPool = transportThread.bufferPool();
+        this.input = new Buffer(READ_SIZE * 2, bufferPool);
         this.owner = owner;
         this.channel = channel;
         server = true;
@@ -94,6 +103,9 @@ class Connection extends Target {
     public Connection(Transport parent, Supervisor owner, Spec spec, Object context) {
         super(context);
         this.parent = parent;
+        this.transportThread = parent.selectThread();
+        this.bufferPool = transportThread.bufferPool();
+        this.input = new Buffer(READ_SIZE * 2, bufferPool);
         this.owner = owner;
         this.spec = spec;
         server = false;
@@ -112,6 +124,10 @@ class Connection extends Target {
         return parent;
     }
 
+    public TransportThread transportThread() {
+        return transportThread;
+    }
+
     public int allocateKey() {
         long v = requestId.getAndIncrement();
         v = v*2 + (server ? 1 : 0);
@@ -148,7 +164,7 @@ class Connection extends Target {
             }
         }
         if (enableWrite) {
-            parent.enableWrite(this);
+            transportThread.enableWrite(this);
         }
         return accepted;
     }
@@ -243,22 +259,14 @@ class Connection extends Target {
             queue.flush(myQueue);
         }
         for (int i = 0; i < WRITE_REDO; i++) {
-            while (output.bytes() < WRITE_SIZE) {
-                Packet packet = (Packet) myQueue.dequeue();
-                if (packet == null) {
-                    break;
-                }
-                PacketInfo info = packet.getPacketInfo();
-                ByteBuffer wb = output.getWritable(info.packetLength());
-                owner.writePacket(info);
-                info.encodePacket(packet, wb);
-            }
-            ByteBuffer rb = output.getChannelReadable();
-            if (rb.remaining() == 0) {
+            encodePackets();
+            if (output.isEmpty()) {
                 break;
             }
-            channel.write(rb);
-            if (rb.remaining() > 0) {
+            gather = output.toArray(gather);
+            outputBytes -= (int)channel.write(gather, 0, output.size());
+            releaseWritten();
+            if (!output.isEmpty()) {
                 break;
             }
         }
@@ -266,15 +274,56 @@ class Connection extends Target {
         synchronized (this) {
             writeWork = queue.size()
                 + myQueue.size()
-                + ((output.bytes() > 0) ? 1 : 0);
+                + ((outputBytes > 0) ? 1 : 0);
             disableWrite = (writeWork == 0);
         }
         if (disableWrite) {
             disableWrite();
         }
-        if (maxOutputSize > 0) {
-            output.shrink(maxOutputSize);
+    }
+
+    /**
+     * Encode queued packets into pooled buffers until there is
+     * enough output for a single gathering write. Small packets are
+     * packed together in the same buffer, while large packets get a
+     * buffer of their own.
+     **/
+    private void encodePackets() {
+        ByteBuffer chunk = null;
+        while (outputBytes < WRITE_MAX) {
+            Packet packet = (Packet) myQueue.dequeue();
+            if (packet == null) {
+                break;
+            }
+            PacketInfo info = packet.getPacketInfo();
+            if (chunk == null || chunk.remaining() < info.packetLength()) {
+                if (chunk != null) {
+                    chunk.flip();
+                    output.addLast(chunk);
+                }
+                chunk = bufferPool.acquire(Math.max(WRITE_SIZE, info.packetLength()));
+            }
+            owner.writePacket(info);
+            info.encodePacket(packet, chunk);
+            outputBytes += info.packetLength();
+        }
+        if (chunk != null) {
+            chunk.flip();
+            output.addLast(chunk);
+        }
+    }
+
+    private void releaseWritten() {
+        while (!output.isEmpty() && !output.peekFirst().hasRemaining()) {
+            releaseOutput(output.removeFirst());
+        }
+    }
+
+    private void releaseOutput(ByteBuffer chunk) {
+        if (maxOutputSize > 0 && chunk.capacity() > maxOutputSize) {
+            return;
         }
+        bufferPool.release(chunk);
     }
 
     public void fini() {
@@ -282,6 +331,11 @@ class Connection extends Target {
         if (selectionKey != null) {
             selectionKey.cancel();
         }
+        input.release();
+        while (!output.isEmpty()) {
+            releaseOutput(output.removeFirst());
+        }
+        outputBytes = 0;
     }
 
     public boolean isClosed() {
@@ -389,7 +443,7 @@ class Connection extends Target {
     }
 
     public void close() {
-        parent.closeConnection(this);
+        transportThread.closeConnection(this);
     }
 
     public String toString() {
@@ -2,7 +2,8 @@
 package com.yahoo.jrt;
 
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -37,16 +38,17 @@ public class Supervisor {
             this.method = method;
         }
         public void run() {
-            Method m = methodMap.remove(methodName);
-            if (method != null && m != method) {
-                methodMap.put(method.name(), method);
+            if (method != null) {
+                methodMap.remove(methodName, method);
+            } else {
+                methodMap.remove(methodName);
             }
         }
     }
 
     private Transport               transport;
     private SessionHandler          sessionHandler = null;
-    private HashMap<String, Method> methodMap      = new HashMap<>();
+    private Map<String, Method>     methodMap      = new ConcurrentHashMap<>();
     private int                     maxInputBufferSize  = 0;
     private int                     maxOutputBufferSize = 0;
 
@@ -94,7 +96,7 @@ public class Supervisor {
      *
      * @return the method map
      **/
-    HashMap<String, Method> methodMap() {
+    Map<String, Method> methodMap() {
         return methodMap;
     }
 
@@ -2,10 +2,7 @@
 package com.yahoo.jrt;
 
 
-import java.io.IOException;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,176 +13,77 @@ import java.util.logging.Logger;
  * multiplexed network IO, handles scheduled tasks and keeps track of
  * some additional helper threads. A single Transport object can back
  * multiple {@link Supervisor} objects.
+ *
+ * <p>A Transport may run multiple transport threads, each with its
+ * own selector and command queue. New connections are spread across
+ * the transport threads in a round-robin fashion, and each connection
+ * stays with the same thread for its lifetime. Tasks created with
+ * {@link #createTask createTask} and commands run with {@link #perform
+ * perform} are always run by the first transport thread, so they do
+ * not run concurrently with each other.</p>
  **/
 public class Transport {
 
-    private static final int OPEN    = 1;
-    private static final int CLOSING = 2;
-    private static final int CLOSED  = 3;
-
-    private class Run implements Runnable {
-        public void run() {
-            try {
-                Transport.this.run();
-            } catch (Throwable problem) {
-                handleFailure(problem, Transport.this);
-            }
-        }
-    }
-
-    private class AddConnectionCmd implements Runnable {
-        private Connection conn;
-        AddConnectionCmd(Connection conn) { this.conn = conn; }
-        public void run() { handleAddConnection(conn); }
-    }
-
-    private class CloseConnectionCmd implements Runnable {
-        private Connection conn;
-        CloseConnectionCmd(Connection conn) { this.conn = conn; }
-        public void run() { handleCloseConnection(conn); }
-    }
-
-    private class EnableWriteCmd implements Runnable {
-        private Connection conn;
-        EnableWriteCmd(Connection conn) { this.conn = conn; }
-        public void run() { handleEnableWrite(conn); }
-    }
-
-    private class SyncCmd implements Runnable {
-        boolean done = false;
-        public synchronized void waitDone() {
-            while (!done) {
-                try { wait(); } catch (InterruptedException e) {}
-            }
-        }
-        public synchronized void run() {
-            done = true;
-            notify();
-        }
-    }
-
     private static Logger log = Logger.getLogger(Transport.class.getName());
 
     private FatalErrorHandler fatalHandler; // NB: this must be set first
-    private Thread            thread;
-    private Queue             queue;
-    private Queue             myQueue;
+    private TransportThread[] threads;
+    private AtomicInteger     nextThread = new AtomicInteger(0);
+    private AtomicInteger     runningThreads;
     private Connector         connector;
     private Closer            closer;
-    private Scheduler         scheduler;
-    private int               state;
-    private Selector          selector;
-
-    private void handleAddConnection(Connection conn) {
-        if (conn.isClosed()) {
-            if (conn.hasSocket()) {
-                closer.closeLater(conn);
-            }
-            return;
-        }
-        if (!conn.init(selector)) {
-            handleCloseConnection(conn);
-        }
-    }
-
-    private void handleCloseConnection(Connection conn) {
-        if (conn.isClosed()) {
-            return;
-        }
-        conn.fini();
-        if (conn.hasSocket()) {
-            closer.closeLater(conn);
-        }
-    }
 
-    private void handleEnableWrite(Connection conn) {
-        if (conn.isClosed()) {
-            return;
-        }
-        conn.enableWrite();
-    }
-
-    private boolean postCommand(Runnable cmd) {
-        boolean wakeup;
-        synchronized (this) {
-            if (state == CLOSED) {
-                return false;
-            }
-            wakeup = queue.isEmpty();
-            queue.enqueue(cmd);
-        }
-        if (wakeup) {
-            selector.wakeup();
+    /**
+     * Create a new Transport object with the given fatal error
+     * handler and number of transport threads.
+     *
+     * @param fatalHandler fatal error handler
+     * @param numThreads the number of transport threads to use, must be positive
+     **/
+    public Transport(FatalErrorHandler fatalHandler, int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("A transport needs at least one thread, got " + numThreads);
         }
-        return true;
-    }
-
-    private void handleEvents() {
         synchronized (this) {
-            queue.flush(myQueue);
-        }
-        while (!myQueue.isEmpty()) {
-            ((Runnable)myQueue.dequeue()).run();
-        }
-    }
-
-    private boolean handleIOEvents(Connection conn,
-                                   SelectionKey key) {
-        if (conn.isClosed()) {
-            return true;
-        }
-        if (key.isReadable()) {
-            try {
-                conn.read();
-            } catch (IOException e) {
-                conn.setLostReason(e);
-                return false;
-            }
+            this.fatalHandler = fatalHandler; // NB: this must be set first
         }
-        if (key.isWritable()) {
-            try {
-                conn.write();
-            } catch (IOException e) {
-                conn.setLostReason(e);
-                return false;
-            }
+        runningThreads = new AtomicInteger(numThreads);
+        connector = new Connector(this);
+        closer    = new Closer(this);
+        threads   = new TransportThread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new TransportThread(this, numThreads == 1 ? "<transport>" : "<transport-" + i + ">");
         }
-        return true;
     }
 
     /**
-     * Create a new Transport object with the given fatal error handler.
+     * Create a new Transport object with the given fatal error handler
+     * and a single transport thread.
      *
      * @param fatalHandler fatal error handler
      **/
     public Transport(FatalErrorHandler fatalHandler) {
-        synchronized (this) {
-            this.fatalHandler = fatalHandler; // NB: this must be set first
-        }
-        thread    = new Thread(new Run(), "<transport>");
-        queue     = new Queue();
-        myQueue   = new Queue();
-        connector = new Connector(this);
-        closer    = new Closer(this);
-        scheduler = new Scheduler(System.currentTimeMillis());
-        state     = OPEN;
-        try {
-            selector = Selector.open();
-        } catch (Exception e) {
-            throw new Error("Could not open transport selector", e);
-        }
-        thread.setDaemon(true);
-        thread.start();
+        this(fatalHandler, 1);
     }
 
     /**
-     * Create a Transport object with no fatal error handler. If a
-     * fatal error occurs when no fatal error handler is registered,
-     * the default action is to log the error and exit with exit code
-     * 1.
+     * Create a Transport object with no fatal error handler and the
+     * given number of transport threads.
+     *
+     * @param numThreads the number of transport threads to use, must be positive
+     **/
+    public Transport(int numThreads) {
+        this(null, numThreads);
+    }
+
+    /**
+     * Create a Transport object with no fatal error handler and a
+     * single transport thread. If a fatal error occurs when no fatal
+     * error handler is registered, the default action is to log the
+     * error and exit with exit code 1.
      **/
     public Transport() {
-        this(null);
+        this(null, 1);
     }
 
     /**
@@ -207,6 +105,28 @@ public class Transport {
         Runtime.getRuntime().halt(1);
     }
 
+    /**
+     * Obtain the number of transport threads used by this Transport.
+     *
+     * @return the number of transport threads
+     **/
+    public int numThreads() {
+        return threads.length;
+    }
+
+    /**
+     * Select the transport thread which should handle a new
+     * connection. Invoked by the {@link Connection} constructors.
+     *
+     * @return the transport thread for a new connection
+     **/
+    TransportThread selectThread() {
+        if (threads.length == 1) {
+            return threads[0];
+        }
+        return threads[Math.floorMod(nextThread.getAndIncrement(), threads.length)];
+    }
+
     /**
      * Listen to the given address. This method is called by a {@link
      * Supervisor} object.
@@ -247,9 +167,7 @@ public class Transport {
      * @param conn the connection to add
      **/
     void addConnection(Connection conn) {
-        if (!postCommand(new AddConnectionCmd(conn))) {
-            perform(new CloseConnectionCmd(conn));
-        }
+        conn.transportThread().addConnection(conn);
     }
 
     /**
@@ -258,7 +176,7 @@ public class Transport {
      * @param conn the connection to close
      **/
     void closeConnection(Connection conn) {
-        postCommand(new CloseConnectionCmd(conn));
+        conn.transportThread().closeConnection(conn);
     }
 
     /**
@@ -268,11 +186,16 @@ public class Transport {
      * @param conn the connection to enable write events for
      **/
     void enableWrite(Connection conn) {
-        if (Thread.currentThread() == thread) {
-            handleEnableWrite(conn);
-        } else {
-            postCommand(new EnableWriteCmd(conn));
-        }
+        conn.transportThread().enableWrite(conn);
+    }
+
+    /**
+     * Close the socket of a connection in the closer thread.
+     *
+     * @param conn the connection whose socket should be closed
+     **/
+    void closeLater(Connection conn) {
+        closer.closeLater(conn);
     }
 
     /**
@@ -283,118 +206,87 @@ public class Transport {
      * @param cmd what to run when the task is executed
      **/
     public Task createTask(Runnable cmd) {
-        return new Task(scheduler, cmd);
+        return threads[0].createTask(cmd);
     }
 
     /**
      * Perform the given command in such a way that it does not run
      * concurrently with the transport thread or other commands
      * performed by invoking this method. This method will continue to
-     * work even after the transport thread has been shut down.
+     * work even after the transport thread has been shut down. When
+     * there are multiple transport threads, the command is run by the
+     * first one, and may run concurrently with IO on connections
+     * handled by the others.
      *
      * @param cmd the command to perform
      **/
     public void perform(Runnable cmd) {
-        if (Thread.currentThread() == thread) {
-            cmd.run();
-            return;
-        }
-        if (!postCommand(cmd)) {
-            join();
-            synchronized (thread) {
-                cmd.run();
-            }
-        }
+        threads[0].perform(cmd);
     }
 
     /**
-     * Synchronize with the transport thread. This method will block
+     * Synchronize with the transport threads. This method will block
      * until all commands issued before this method was invoked has
      * completed. If the transport thread has been shut down (or is in
      * the progress of being shut down) this method will instead wait
      * for the transport thread to complete, since no more commands
      * will be performed, and waiting would be forever. Invoking this
-     * method from the transport thread is not a good idea.
+     * method from a transport thread is not a good idea.
      *
      * @return this object, to enable chaining
      **/
     public Transport sync() {
-        SyncCmd cmd = new SyncCmd();
-        if (postCommand(cmd)) {
-            cmd.waitDone();
-        } else {
-            join();
+        TransportThread.SyncCmd[] cmds = new TransportThread.SyncCmd[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            cmds[i] = threads[i].postSync();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            if (cmds[i] != null) {
+                cmds[i].waitDone();
+            } else {
+                threads[i].join();
+            }
         }
         return this;
     }
 
-    private void run() {
-        while (state == OPEN) {
-
-            // perform I/O selection
-            try {
-                selector.select(100);
-            } catch (IOException e) {
-                log.log(Level.WARNING, "error during select", e);
-            }
-
-            // handle internal events
-            handleEvents();
-
-            // handle I/O events
-            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
-            while (keys.hasNext()) {
-                SelectionKey key = keys.next();
-                Connection conn = (Connection) key.attachment();
-                keys.remove();
-                if (!handleIOEvents(conn, key)) {
-                    handleCloseConnection(conn);
-                }
-            }
-
-            // check scheduled tasks
-            scheduler.checkTasks(System.currentTimeMillis());
-        }
+    /**
+     * Invoked by each transport thread when it is shutting down, to
+     * make sure no more connections are added by the connector.
+     **/
+    void awaitConnectorDone() {
         connector.shutdown().waitDone();
-        synchronized (this) {
-            state = CLOSED;
-        }
-        handleEvents();
-        Iterator<SelectionKey> keys = selector.keys().iterator();
-        while (keys.hasNext()) {
-            SelectionKey key = keys.next();
-            Connection conn = (Connection) key.attachment();
-            handleCloseConnection(conn);
+    }
+
+    /**
+     * Invoked by each transport thread as the last thing it does. The
+     * last thread to finish shuts down the helper threads.
+     **/
+    void threadDone() {
+        if (runningThreads.decrementAndGet() == 0) {
+            closer.shutdown().join();
+            connector.exit().join();
         }
-        try { selector.close(); } catch (Exception e) {}
-        closer.shutdown().join();
-        connector.exit().join();
     }
 
     /**
-     * Initiate controlled shutdown of the transport thread.
+     * Initiate controlled shutdown of the transport threads.
      *
      * @return this object, to enable chaining with join
      **/
     public Transport shutdown() {
-        synchronized (this) {
-            if (state == OPEN) {
-                state = CLOSING;
-                selector.wakeup();
-            }
+        for (TransportThread thread : threads) {
+            thread.shutdown();
         }
         return this;
     }
 
     /**
-     * Wait for the transport thread to finish.
+     * Wait for the transport threads to finish.
      **/
     public void join() {
-        while (true) {
-            try {
-                thread.join();
-                return;
-            } catch (InterruptedException e) {}
+        for (TransportThread thread : threads) {
+            thread.join();
         }
     }
 }
@@ -0,0 +1,133 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.jrt;
+
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class BufferPoolTest extends junit.framework.TestCase {
+
+    public BufferPoolTest(String name) {
+        super(name);
+    }
+
+    public void testCapacity() {
+        assertEquals(8192, BufferPool.capacityFor(1));
+        assertEquals(8192, BufferPool.capacityFor(8192));
+        assertEquals(16384, BufferPool.capacityFor(8193));
+        assertEquals(1 << 20, BufferPool.capacityFor(1 << 20));
+        assertEquals((1 << 20) + 1, BufferPool.capacityFor((1 << 20) + 1));
+    }
+
+    public void testReuse() {
+        BufferPool pool = new BufferPool();
+        ByteBuffer a = pool.acquire(100);
+        assertTrue(a.isDirect());
+        assertEquals(8192, a.capacity());
+        a.putInt(42);
+        pool.release(a);
+        assertEquals(8192, pool.pooledBytes());
+
+        ByteBuffer b = pool.acquire(5000);
+        assertSame(a, b);
+        assertEquals(0, b.position());
+        assertEquals(b.capacity(), b.limit());
+        assertEquals(0, pool.pooledBytes());
+        assertEquals(1, pool.allocCount());
+        assertEquals(1, pool.reuseCount());
+
+        ByteBuffer c = pool.acquire(10000);
+        assertEquals(16384, c.capacity());
+        assertEquals(2, pool.allocCount());
+    }
+
+    public void testHugeBuffersAreNotPooled() {
+        BufferPool pool = new BufferPool();
+        ByteBuffer huge = pool.acquire(2 << 20);
+        assertFalse(huge.isDirect());
+        assertEquals(2 << 20, huge.capacity());
+        pool.release(huge);
+        assertEquals(0, pool.pooledBytes());
+        pool.release(ByteBuffer.allocateDirect(10000));
+        assertEquals(0, pool.pooledBytes());
+    }
+
+    public void testPoolSizeIsBounded() {
+        BufferPool pool = new BufferPool(3 * 8192);
+        ByteBuffer[] buffers = new ByteBuffer[5];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquire(8192);
+        }
+        for (ByteBuffer buf : buffers) {
+            pool.release(buf);
+        }
+        assertEquals(3 * 8192, pool.pooledBytes());
+    }
+
+    public void testPooledBuffer() {
+        BufferPool pool = new BufferPool();
+        Buffer buf = new Buffer(1024, pool);
+        byte[] data = new byte[100000];
+        Arrays.fill(data, (byte) 7);
+
+        buf.getWritable(data.length).put(data);
+        assertEquals(data.length, buf.bytes());
+        assertTrue(pool.pooledBytes() > 0); // the initial buffer was given back when growing
+        byte[] read = new byte[data.length];
+        buf.getReadable().get(read);
+        assertTrue(Arrays.equals(data, read));
+
+        assertTrue(buf.shrink(8192));
+        assertFalse(buf.shrink(8192));
+        buf.getWritable(1).put((byte) 3);
+        assertEquals(3, buf.getReadable().get());
+
+        long pooled = pool.pooledBytes();
+        buf.release();
+        assertEquals(0, buf.bytes());
+        assertEquals(pooled + 8192, pool.pooledBytes());
+        buf.getWritable(10).put((byte) 5);
+        assertEquals(5, buf.getReadable().get());
+    }
+
+    public void testMixedPacketSizes() throws ListenFailedException, InterruptedException {
+        Supervisor server   = new Supervisor(new Transport());
+        Supervisor client   = new Supervisor(new Transport());
+        Acceptor   acceptor = server.listen(new Spec(Test.PORT));
+        Target     target   = client.connect(new Spec("localhost", Test.PORT));
+        server.addMethod(new Method("echo", "x", "x", this, "rpc_echo"));
+        try {
+            int[] sizes = { 0, 10, 9000, 100000, 3 << 20, 17, 70000 };
+            int count = 200;
+            CountDownLatch done = new CountDownLatch(count);
+            AtomicInteger ok = new AtomicInteger(0);
+            for (int i = 0; i < count; i++) {
+                byte[] data = new byte[sizes[i % sizes.length]];
+                Arrays.fill(data, (byte) i);
+                Request req = new Request("echo");
+                req.parameters().add(new DataValue(data));
+                target.invokeAsync(req, 60.0, r -> {
+                    if (!r.isError() && Arrays.equals(data, r.returnValues().get(0).asData())) {
+                        ok.incrementAndGet();
+                    }
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(60, TimeUnit.SECONDS));
+            assertEquals(count, ok.get());
+        } finally {
+            target.close();
+            acceptor.shutdown().join();
+            client.transport().shutdown().join();
+            server.transport().shutdown().join();
+        }
+    }
+
+    public void rpc_echo(Request req) {
+        req.returnValues().add(req.parameters().get(0));
+    }
+}
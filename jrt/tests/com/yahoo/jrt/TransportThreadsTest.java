@@ -0,0 +1,119 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.jrt;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+public class TransportThreadsTest extends junit.framework.TestCase {
+
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_TARGETS = 8;
+
+    Supervisor   server;
+    Acceptor     acceptor;
+    Supervisor   client;
+    List<Target> targets;
+    Set<String>  serverThreads;
+
+    public TransportThreadsTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws ListenFailedException {
+        server   = new Supervisor(new Transport(NUM_THREADS));
+        client   = new Supervisor(new Transport(NUM_THREADS));
+        acceptor = server.listen(new Spec(Test.PORT));
+        serverThreads = Collections.synchronizedSet(new HashSet<>());
+        server.addMethod(new Method("inc", "i", "i", this, "rpc_inc"));
+        targets = new ArrayList<>();
+        for (int i = 0; i < NUM_TARGETS; i++) {
+            targets.add(client.connect(new Spec("localhost", Test.PORT)));
+        }
+    }
+
+    public void tearDown() {
+        for (Target target : targets) {
+            target.close();
+        }
+        acceptor.shutdown().join();
+        client.transport().shutdown().join();
+        server.transport().shutdown().join();
+    }
+
+    public void rpc_inc(Request req) {
+        serverThreads.add(Thread.currentThread().getName());
+        req.returnValues().add(new Int32Value(req.parameters().get(0).asInt32() + 1));
+    }
+
+    public void testNumThreads() {
+        assertEquals(NUM_THREADS, server.transport().numThreads());
+        Transport transport = new Transport();
+        assertEquals(1, new Supervisor(transport).transport().numThreads());
+        transport.shutdown().join();
+        try {
+            new Transport(0);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    public void testConnectionsAreSpreadOverThreads() {
+        for (int i = 0; i < NUM_TARGETS; i++) {
+            Request req = new Request("inc");
+            req.parameters().add(new Int32Value(i));
+            targets.get(i).invokeSync(req, 5.0);
+            assertTrue(!req.isError());
+            assertEquals(i + 1, req.returnValues().get(0).asInt32());
+        }
+        assertEquals(NUM_THREADS, serverThreads.size());
+    }
+
+    public void testConcurrentInvocations() throws InterruptedException {
+        int[] okCount = new int[NUM_TARGETS];
+        List<Thread> invokers = new ArrayList<>();
+        for (int t = 0; t < NUM_TARGETS; t++) {
+            final int index = t;
+            Thread invoker = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    Request req = new Request("inc");
+                    req.parameters().add(new Int32Value(i));
+                    targets.get(index).invokeSync(req, 5.0);
+                    if (!req.isError() && req.returnValues().get(0).asInt32() == i + 1) {
+                        okCount[index]++;
+                    }
+                }
+            });
+            invokers.add(invoker);
+            invoker.start();
+        }
+        for (Thread invoker : invokers) {
+            invoker.join();
+        }
+        for (int count : okCount) {
+            assertEquals(100, count);
+        }
+    }
+
+    public void testMethodRemovalIsSeenByAllThreads() {
+        server.removeMethod("inc");
+        server.transport().sync();
+        for (Target target : targets) {
+            Request req = new Request("inc");
+            req.parameters().add(new Int32Value(0));
+            target.invokeSync(req, 5.0);
+            assertTrue(req.isError());
+            assertEquals(ErrorCode.NO_SUCH_METHOD, req.errorCode());
+        }
+    }
+
+    public void testSyncAndPerform() {
+        boolean[] performed = { false };
+        client.transport().perform(() -> performed[0] = true);
+        client.transport().sync();
+        assertTrue(performed[0]);
+    }
+}
@@ -3,6 +3,7 @@ package com.yahoo.logserver;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
 import com.yahoo.io.SelectLoopHook;
@@ -14,13 +15,18 @@ import com.yahoo.logserver.handlers.LogHandler;
 /**
  * This is the central point from which LogMessage objects are
  * propagated throughout the logserver architecture.
+ * <p>
+ * In batched mode, messages are collected into batches under a short lock,
+ * and full batches are handed to the handlers (usually HandlerThread instances
+ * with their own bounded queues) without holding the lock, such that
+ * connections are not serialized on slow handlers.
  *
  * @author Bjorn Borud
  */
 public class LogDispatcher implements LogHandler, SelectLoopHook {
     private static final Logger log = Logger.getLogger(LogDispatcher.class.getName());
 
-    private final List<LogHandler> handlers = new ArrayList<>();
+    private final List<LogHandler> handlers = new CopyOnWriteArrayList<>();
     private int messageCount = 0;
     private boolean hasBeenShutDown = false;
     private boolean batchedMode = false;
@@ -41,49 +47,81 @@ public class LogDispatcher implements LogHandler, SelectLoopHook {
      * @param msg The LogMessage instance we wish to dispatch to the
      *            plugins
      */
-    public synchronized void handle(LogMessage msg) {
+    public void handle(LogMessage msg) {
         if (msg == null) {
             throw new NullPointerException("LogMessage was null");
         }
 
         if (batchedMode) {
-            addToBatch(msg);
+            dispatchBatch(addToBatch(msg));
         } else {
-            for (LogHandler h : handlers) {
-                h.handle(msg);
+            synchronized (this) {
+                for (LogHandler h : handlers) {
+                    h.handle(msg);
+                }
+                messageCount++;
             }
         }
-        messageCount++;
     }
 
-    private void addToBatch(LogMessage msg) {
-        if (currentBatchList == null) {
-            currentBatchList = new ArrayList<LogMessage>(batchSize);
-            currentBatchList.add(msg);
-            return;
+    /**
+     * Dispatches a list of messages, such as all the messages read from
+     * a connection at once, to all the LogHandler instances we've got registered.
+     *
+     * @param messages The LogMessage instances we wish to dispatch to the
+     *                 plugins
+     */
+    public void handle(List<LogMessage> messages) {
+        if (messages.isEmpty()) return;
+
+        if (batchedMode) {
+            dispatchBatch(addToBatch(messages));
+        } else {
+            synchronized (this) {
+                for (LogHandler h : handlers) {
+                    h.handle(messages);
+                }
+                messageCount += messages.size();
+            }
         }
+    }
 
+    /** Adds a message to the current batch and returns the batch if it became full, null otherwise */
+    private synchronized List<LogMessage> addToBatch(LogMessage msg) {
+        if (currentBatchList == null) {
+            currentBatchList = new ArrayList<>(batchSize);
+        }
         currentBatchList.add(msg);
+        messageCount++;
+        return currentBatchList.size() >= batchSize ? takeBatch() : null;
+    }
 
-        if (currentBatchList.size() == batchSize) {
-            flushBatch();
+    /** Adds messages to the current batch and returns the batch if it became full, null otherwise */
+    private synchronized List<LogMessage> addToBatch(List<LogMessage> messages) {
+        if (currentBatchList == null) {
+            currentBatchList = new ArrayList<>(Math.max(batchSize, messages.size()));
         }
+        currentBatchList.addAll(messages);
+        messageCount += messages.size();
+        return currentBatchList.size() >= batchSize ? takeBatch() : null;
+    }
+
+    private synchronized List<LogMessage> takeBatch() {
+        List<LogMessage> batch = currentBatchList;
+        currentBatchList = null;
+        return batch;
     }
 
     private void flushBatch() {
-        List<LogMessage> todo;
-        synchronized(this) {
-            todo = currentBatchList;
-            currentBatchList = null;
-        }
-        if (todo == null) return;
-        for (LogHandler ht : handlers) {
-            ht.handle(todo);
-        }
+        dispatchBatch(takeBatch());
     }
 
-    public void handle(List<LogMessage> messages) {
-        throw new IllegalStateException("method not supported");
+    /** Hands a batch to all handlers. This is done without holding the lock of this. */
+    private void dispatchBatch(List<LogMessage> batch) {
+        if (batch == null) return;
+        for (LogHandler ht : handlers) {
+            ht.handle(batch);
+        }
     }
 
     /**
@@ -9,14 +9,25 @@ import java.util.logging.Logger;
 import com.yahoo.io.FatalErrorHandler;
 import com.yahoo.log.LogLevel;
 import com.yahoo.log.LogMessage;
+import com.yahoo.log.event.Event;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This handler implements a dispatcher which runs in its own
  * thread.  The purpose of this handler is to isolate execution
  * of handlers from the main server IO threads.
+ * <p>
+ * The queue of this is bounded, and when it is full, incoming messages
+ * are dropped rather than blocking the thread dispatching them, such
+ * that one slow handler thread does not hold back all the others and
+ * the connections from the nodes. Messages queued while the thread
+ * was busy are handed to the handlers as a single batch. The number of
+ * dropped messages and the lag of the messages handled are tracked,
+ * and reported as events at regular intervals.
  *
  * @author Bjorn Borud
  */
@@ -48,6 +59,7 @@ public class HandlerThread extends Thread implements LogHandler {
     private static class ItemOrList {
         final LogMessage item;
         final List<LogMessage> list;
+        final long enqueuedAt = System.currentTimeMillis();
 
         ItemOrList(LogMessage i) {
             this.item = i;
@@ -59,6 +71,10 @@ public class HandlerThread extends Thread implements LogHandler {
             this.list = l;
         }
 
+        int size() {
+            return item != null ? 1 : list.size();
+        }
+
         public String toString() {
             return "item=" + item + ", list=" + list;
         }
@@ -67,14 +83,18 @@ public class HandlerThread extends Thread implements LogHandler {
     private final BlockingQueue<ItemOrList> queue;
     private final List<LogHandler> handlers = new ArrayList<LogHandler>();
     private long count;
-    @SuppressWarnings("unused")
-    private long droppedCount = 0;
-    @SuppressWarnings("unused")
-    private boolean queueWasFull = false;
-    @SuppressWarnings("unused")
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile boolean queueWasFull = false;
     private long lastDropLogMessage = 0;
-    @SuppressWarnings("unused")
     private long lastAcceptingLogMessage = 0;
+    private volatile long lagMillis = 0;
+    private volatile long maxLagMillis = 0;
+
+    /** Don't log about dropped messages more often than this */
+    private static final long dropLogIntervalMillis = 10 * 1000;
+
+    /** How often the queue metrics of this are reported as events */
+    private static final long metricsIntervalMillis = 5 * 60 * 1000;
 
     public HandlerThread(String name) {
         super(name);
@@ -110,15 +130,34 @@ public class HandlerThread extends Thread implements LogHandler {
     }
 
     private void handleInternal(ItemOrList o) {
-        boolean done = false;
-        while (! done) {
-            try {
-                queue.put(o);
-                done = true;
-            } catch (InterruptedException e) {
-                // NOP
+        if (queue.offer(o)) {
+            if (queueWasFull) {
+                logAccepting();
             }
+            return;
         }
+
+        droppedCount.addAndGet(o.size());
+        queueWasFull = true;
+        logDropping();
+    }
+
+    private synchronized void logDropping() {
+        long now = System.currentTimeMillis();
+        if (now - lastDropLogMessage < dropLogIntervalMillis) return;
+        lastDropLogMessage = now;
+        log.log(LogLevel.WARNING, "Queue of " + getName() + " is full, dropping messages. " +
+                                  "Dropped " + droppedCount.get() + " messages in total, lag is " + lagMillis + " ms");
+    }
+
+    private synchronized void logAccepting() {
+        if ( ! queueWasFull) return;
+        queueWasFull = false;
+        long now = System.currentTimeMillis();
+        if (now - lastAcceptingLogMessage < dropLogIntervalMillis) return;
+        lastAcceptingLogMessage = now;
+        log.log(LogLevel.INFO, "Queue of " + getName() + " is accepting messages again. " +
+                               "Dropped " + droppedCount.get() + " messages in total");
     }
 
     public void flush() {
@@ -141,6 +180,39 @@ public class HandlerThread extends Thread implements LogHandler {
         return count;
     }
 
+    /** Returns the number of messages dropped by this because its queue was full */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /** Returns the number of batches and single messages currently queued for this */
+    public int getQueueLength() {
+        return queue.size();
+    }
+
+    /** Returns the time in milliseconds the last batch handled by this spent in the queue */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /** Returns the largest time in milliseconds any batch handled by this has spent in the queue */
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    /** Returns the name of the event reporting the given metric of this */
+    String metricName(String metric) {
+        return "logserver." + getName().trim().replaceAll("\\s+", "_") + "." + metric;
+    }
+
+    /** Reports the dropped message count, queue length and lag of this as events */
+    void reportMetrics() {
+        Event.count(metricName("dropped"), getDroppedCount());
+        Event.value(metricName("queue_length"), getQueueLength());
+        Event.value(metricName("lag_ms"), getLagMillis());
+        Event.value(metricName("max_lag_ms"), getMaxLagMillis());
+    }
+
     /**
      * Register a LogHandler
      */
@@ -182,6 +254,29 @@ public class HandlerThread extends Thread implements LogHandler {
         return queue;
     }
 
+    private void handle(ItemOrList o) {
+        if (o.item != null) {
+            for (LogHandler handler : handlers) {
+                handler.handle(o.item);
+            }
+        } else if (o.list != null) {
+            for (LogHandler handler : handlers) {
+                handler.handle(o.list);
+            }
+        } else {
+            throw new IllegalArgumentException("not LogMessage or List: " + o);
+        }
+    }
+
+    /** Updates the lag from the oldest element taken from the queue */
+    private void updateLag(ItemOrList oldest) {
+        long lag = System.currentTimeMillis() - oldest.enqueuedAt;
+        lagMillis = lag;
+        if (lag > maxLagMillis) {
+            maxLagMillis = lag;
+        }
+    }
+
     /**
      * Consume messages from the incoming queue and hand
      * them off to the handlers.
@@ -191,34 +286,51 @@ public class HandlerThread extends Thread implements LogHandler {
             throw new NullPointerException("channel is not allowed to be null");
         }
 
-        // TODO: Make the legmessage elements some kind of composite structure to handle both individual messages and lists uniformly.
         List<ItemOrList> drainList = new ArrayList<ItemOrList>(queue.size() + 1);
+        long nextMetricsReport = System.currentTimeMillis() + metricsIntervalMillis;
         try {
             for (; ; ) {
                 drainList.clear();
-                // block in take(), then see if there is more
-                // to be had with drainTo()
-                drainList.add(queue.take());
+                // block in poll() until there is something or it is time
+                // to report metrics, then see if there is more to be had
+                // with drainTo()
+                ItemOrList first = queue.poll(Math.max(1, nextMetricsReport - System.currentTimeMillis()),
+                                              TimeUnit.MILLISECONDS);
+                long now = System.currentTimeMillis();
+                if (now >= nextMetricsReport) {
+                    reportMetrics();
+                    nextMetricsReport = now + metricsIntervalMillis;
+                }
+                if (first == null) {
+                    continue;
+                }
+                drainList.add(first);
                 queue.drainTo(drainList);
 
-                for (ItemOrList o : drainList) {
-                    // we can get two types of elements here: single log
-                    // messages or lists of log messages, so we need to
-                    // handle them accordingly.
-
-                    if (o.item != null) {
-                        for (LogHandler handler : handlers) {
-                            handler.handle(o.item);
+                updateLag(drainList.get(0));
+
+                // we can get two types of elements here: single log
+                // messages or lists of log messages. If there is more
+                // than one, they are combined into one list so that each
+                // handler is invoked once for everything that was queued.
+                if (drainList.size() == 1) {
+                    handle(drainList.get(0));
+                } else {
+                    List<LogMessage> batch = new ArrayList<>();
+                    for (ItemOrList o : drainList) {
+                        if (o.item != null) {
+                            batch.add(o.item);
+                        } else if (o.list != null) {
+                            batch.addAll(o.list);
+                        } else {
+                            throw new IllegalArgumentException("not LogMessage or List: " + o);
                         }
-                    } else if (o.list != null) {
-                        for (LogHandler handler : handlers) {
-                            handler.handle(o.list);
-                        }
-                    } else {
-                        throw new IllegalArgumentException("not LogMessage or List: " + o);
                     }
-                    count++;
+                    for (LogHandler handler : handlers) {
+                        handler.handle(batch);
+                    }
                 }
+                count += drainList.size();
             }
         } catch (InterruptedException e) {
             // NOP
@@ -3,6 +3,9 @@ package com.yahoo.logserver.handlers.archive;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
@@ -10,6 +13,7 @@ import java.util.Iterator;
 import java.util.TimeZone;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import com.yahoo.logserver.filter.LogFilter;
 import com.yahoo.logserver.filter.LogFilterManager;
@@ -28,6 +32,13 @@ import com.yahoo.logserver.handlers.AbstractLogHandler;
  * This class is not thread safe.
  * </p>
  * <p>
+ * Messages are written either as plain text files, or, if blockFormat is set,
+ * as files of compressed blocks with a sparse index (see {@link BlockLogWriter}),
+ * which can be searched efficiently using a {@link LogArchiveReader}.
+ * While this has a writer of an hour open, a marker file ending by {@link #openSuffix} exists
+ * for the hour, so the {@link LogArchiveCompactor} will not compact files which may still be written to.
+ * </p>
+ * <p>
  * TODO:
  * </p>
  * <ul>
@@ -52,6 +63,11 @@ import com.yahoo.logserver.handlers.AbstractLogHandler;
 public class ArchiverHandler extends AbstractLogHandler {
     private static final Logger log = Logger.getLogger(ArchiverHandler.class.getName());
 
+    /**
+     * The suffix of the marker file of an hour for which a writer is open
+     */
+    static final String openSuffix = ".open";
+
     /**
      * File instance representing root directory for logging
      */
@@ -73,6 +89,11 @@ public class ArchiverHandler extends AbstractLogHandler {
      */
     private int maxFileSize;
 
+    /**
+     * Whether to write compressed blocks rather than plain text
+     */
+    private boolean blockFormat = false;
+
     /**
      * Calendar instance for operating on Date objects
      */
@@ -126,6 +147,15 @@ public class ArchiverHandler extends AbstractLogHandler {
         this.maxFileSize = maxFileSize;
     }
 
+    /**
+     * Creates an ArchiverHandler which puts files under
+     * the given root directory, in the block format if blockFormat is true.
+     */
+    public ArchiverHandler(String rootDir, int maxFileSize, boolean blockFormat) {
+        this(rootDir, maxFileSize);
+        this.blockFormat = blockFormat;
+    }
+
 
     /**
      * Return the appropriate LogWriter given a log message.
@@ -138,7 +168,13 @@ public class ArchiverHandler extends AbstractLogHandler {
         }
 
         // invariant: LogWriter we sought was not in the cache
-        logWriter = new LogWriter(getPrefix(m), maxFileSize);
+        String prefix = getPrefix(m);
+        markOpen(prefix);
+        if (blockFormat) {
+            logWriter = new BlockLogWriter(prefix, maxFileSize);
+        } else {
+            logWriter = new LogWriter(prefix, maxFileSize);
+        }
         logWriterLRUCache.put(slot, logWriter);
 
         return logWriter;
@@ -222,6 +258,7 @@ public class ArchiverHandler extends AbstractLogHandler {
             LogWriter l = it.next();
             try {
                 l.close();
+                markClosed(l.getPrefix());
             } catch (IOException e) {
                 log.log(Level.WARNING, "Closing failed", e);
             }
@@ -248,7 +285,36 @@ public class ArchiverHandler extends AbstractLogHandler {
                 log.log(LogLevel.DEBUG, "Created root at " + absoluteRootDir);
             }
         }
+        removeOpenMarkers();
+    }
 
+    /**
+     * Creates the marker telling that the files with the given prefix may still be written to
+     */
+    static void markOpen(String prefix) throws IOException {
+        File marker = new File(prefix + openSuffix);
+        marker.getParentFile().mkdirs();
+        marker.createNewFile();
+    }
+
+    /**
+     * Removes the marker telling that the files with the given prefix may still be written to
+     */
+    static void markClosed(String prefix) throws IOException {
+        Files.deleteIfExists(new File(prefix + openSuffix).toPath());
+    }
+
+    /**
+     * Removes the markers left by an archiver which was stopped without closing its writers,
+     * as this has no writers open yet
+     */
+    private void removeOpenMarkers() {
+        try (Stream<Path> files = Files.walk(root.toPath(), 4)) {
+            files.filter(file -> file.getFileName().toString().endsWith(openSuffix))
+                 .forEach(file -> file.toFile().delete());
+        } catch (IOException | UncheckedIOException e) {
+            log.log(Level.WARNING, "Could not remove open markers under " + absoluteRootDir, e);
+        }
     }
 
     public String toString() {
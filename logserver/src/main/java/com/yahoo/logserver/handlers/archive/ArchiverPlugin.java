@@ -20,6 +20,11 @@ public class ArchiverPlugin implements Plugin {
      */
     private static final String DEFAULT_MAXFILESIZE = "20971520";
 
+    /**
+     * Default archive format, "text" or "blocks".
+     */
+    private static final String DEFAULT_FORMAT = "text";
+
     private final Server server = Server.getInstance();
     private static final Logger log = Logger.getLogger(ArchiverPlugin.class.getName());
     private ArchiverHandler archiver;
@@ -37,6 +42,8 @@ public class ArchiverPlugin implements Plugin {
      * Config keys used:
      * <p>
      * maxfilesize
+     * format         "text" (default) or "blocks" for compressed blocks
+     *                with an index which can be searched by LogArchiveReader
      * dir            The root of the logarchive, make sure this does
      * <b>not</b> end with a '/' character.
      */
@@ -52,9 +59,10 @@ public class ArchiverPlugin implements Plugin {
         String rootDir = config.get("dir", DEFAULT_DIR);
         int maxFileSize = config.getInt("maxfilesize", DEFAULT_MAXFILESIZE);
         String threadName = config.get("thread", getPluginName());
+        boolean blockFormat = "blocks".equals(config.get("format", DEFAULT_FORMAT));
 
         // register log handler and flusher
-        archiver = new ArchiverHandler(rootDir, maxFileSize);
+        archiver = new ArchiverHandler(rootDir, maxFileSize, blockFormat);
         server.registerLogHandler(archiver, threadName);
         server.registerFlusher(archiver);
     }
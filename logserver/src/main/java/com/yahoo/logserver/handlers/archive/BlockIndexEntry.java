@@ -0,0 +1,114 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.logserver.handlers.archive;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The index entry of a compressed block of log messages in a block archive file.
+ * This records where the block is, and the time range, hosts, services and levels
+ * of the messages in it, such that queries can skip blocks without reading them.
+ * A set which would become larger than maxDistinctValues is stored as null, meaning
+ * that the block must be read to find out whether it contains a given value.
+ *
+ * @author agent
+ */
+public class BlockIndexEntry {
+
+    /** The max number of distinct values of a set we keep in the index */
+    static final int maxDistinctValues = 64;
+
+    private final long offset;
+    private final int compressedSize;
+    private final int uncompressedSize;
+    private final int messageCount;
+    private final long minTime;
+    private final long maxTime;
+    private final Set<String> hosts;
+    private final Set<String> services;
+    private final Set<String> levels;
+
+    BlockIndexEntry(long offset, int compressedSize, int uncompressedSize, int messageCount,
+                    long minTime, long maxTime, Set<String> hosts, Set<String> services, Set<String> levels) {
+        this.offset = offset;
+        this.compressedSize = compressedSize;
+        this.uncompressedSize = uncompressedSize;
+        this.messageCount = messageCount;
+        this.minTime = minTime;
+        this.maxTime = maxTime;
+        this.hosts = hosts;
+        this.services = services;
+        this.levels = levels;
+    }
+
+    /** Returns the position of this block in the data file, including the block header */
+    public long getOffset() { return offset; }
+
+    /** Returns the size of the compressed data of this block, excluding the block header */
+    public int getCompressedSize() { return compressedSize; }
+
+    public int getUncompressedSize() { return uncompressedSize; }
+
+    public int getMessageCount() { return messageCount; }
+
+    /** Returns the time in milliseconds of the earliest message in this block */
+    public long getMinTime() { return minTime; }
+
+    /** Returns the time in milliseconds of the latest message in this block */
+    public long getMaxTime() { return maxTime; }
+
+    /** Returns the hosts of the messages in this block, or null if there are too many to index */
+    public Set<String> getHosts() { return hosts; }
+
+    /** Returns the services of the messages in this block, or null if there are too many to index */
+    public Set<String> getServices() { return services; }
+
+    /** Returns the lowercase levels of the messages in this block, or null if there are too many to index */
+    public Set<String> getLevels() { return levels; }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(offset);
+        out.writeInt(compressedSize);
+        out.writeInt(uncompressedSize);
+        out.writeInt(messageCount);
+        out.writeLong(minTime);
+        out.writeLong(maxTime);
+        writeSet(hosts, out);
+        writeSet(services, out);
+        writeSet(levels, out);
+    }
+
+    static BlockIndexEntry readFrom(DataInput in) throws IOException {
+        return new BlockIndexEntry(in.readLong(), in.readInt(), in.readInt(), in.readInt(), in.readLong(), in.readLong(),
+                                   readSet(in), readSet(in), readSet(in));
+    }
+
+    private static void writeSet(Set<String> set, DataOutput out) throws IOException {
+        if (set == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(set.size());
+        for (String value : set)
+            out.writeUTF(value);
+    }
+
+    private static Set<String> readSet(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) return null;
+        Set<String> set = new HashSet<>(size * 2);
+        for (int i = 0; i < size; i++)
+            set.add(in.readUTF());
+        return Collections.unmodifiableSet(set);
+    }
+
+    @Override
+    public String toString() {
+        return "block at " + offset + " of " + messageCount + " messages in [" + minTime + ", " + maxTime + "]";
+    }
+
+}
@@ -0,0 +1,258 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.logserver.handlers.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+import com.yahoo.log.LogLevel;
+
+/**
+ * Writes log messages in the native format to files of compressed blocks, with a sparse index of each block
+ * in a separate file. Messages are collected until a block is full, or until the block is flushed when
+ * it has been open for a while, and then compressed and appended to the data file, after which its
+ * index entry is appended to the index file.
+ * <p>
+ * This is a LogWriter which writes its own files. Like LogWriter, files are named by the given prefix
+ * followed by "-" and a generation number, and a new generation is started when a file has grown past
+ * its maximum size. Data files end by
+ * {@link #dataSuffix} and index files by {@link #indexSuffix}. Existing files are never appended to.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author agent
+ */
+public class BlockLogWriter extends LogWriter {
+
+    private static final Logger log = Logger.getLogger(BlockLogWriter.class.getName());
+
+    public static final String dataSuffix = ".blocks";
+    public static final String indexSuffix = ".blocks.idx";
+
+    /** The first int of each block in a data file */
+    static final int blockMagic = 0x4c4f4742;
+
+    /** The size of the header preceding each block in a data file: Magic, compressed size and uncompressed size */
+    static final int blockHeaderSize = 12;
+
+    /** The default max number of bytes of messages in a block before it is compressed */
+    public static final int defaultMaxBlockSize = 256 * 1024;
+
+    /** Flushing does not write a block until it has been open this long, to avoid writing tiny blocks */
+    private static final long minFlushAgeMillis = 10 * 1000;
+
+    private final long maxFileSize;
+    private final int maxBlockSize;
+
+    private int generation = 0;
+    private File currentFile;
+    private DataOutputStream data;
+    private DataOutputStream index;
+    private long dataSize;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] compressBuffer = new byte[64 * 1024];
+
+    private final StringBuilder block = new StringBuilder();
+    private long blockOpenedAt;
+    private int messageCount;
+    private long minTime;
+    private long maxTime;
+    private Set<String> hosts;
+    private Set<String> services;
+    private Set<String> levels;
+
+    /**
+     * Creates a block writer
+     *
+     * @param prefix the path prefix of the files written
+     * @param maxFileSize the max size of a data file in (compressed) bytes before a new generation is started
+     */
+    public BlockLogWriter(String prefix, long maxFileSize) {
+        this(prefix, maxFileSize, defaultMaxBlockSize);
+    }
+
+    public BlockLogWriter(String prefix, long maxFileSize, int maxBlockSize) {
+        super(prefix);
+        this.maxFileSize = maxFileSize;
+        this.maxBlockSize = maxBlockSize;
+        resetBlock();
+    }
+
+    /** Returns the data file currently written to, or null if no file is open */
+    public File getCurrentFile() { return currentFile; }
+
+    /**
+     * Adds a log message in the native format, ending by a newline.
+     * The message is not written to disk until the block it is added to is written.
+     */
+    @Override
+    public void write(String line) throws IOException {
+        if (messageCount == 0)
+            blockOpenedAt = System.currentTimeMillis();
+        block.append(line);
+        messageCount++;
+        indexMessage(line);
+
+        if (block.length() >= maxBlockSize)
+            writeBlock();
+    }
+
+    /**
+     * Note that this method should not be used directly since each write must be a complete message.
+     * Use the one that takes String instead.
+     */
+    @Override
+    public void write(char[] cbuff, int offset, int len) throws IOException {
+        throw new RuntimeException("This method should not be used");
+    }
+
+    /** Writes the current block if it has been open long enough, and flushes the files */
+    @Override
+    public void flush() throws IOException {
+        if (messageCount > 0 && System.currentTimeMillis() - blockOpenedAt >= minFlushAgeMillis)
+            writeBlock();
+        if (data != null) {
+            data.flush();
+            index.flush();
+        }
+    }
+
+    /** Writes the current block, if any, and closes the files */
+    @Override
+    public void close() throws IOException {
+        if (messageCount > 0)
+            writeBlock();
+        closeFiles();
+        deflater.end();
+    }
+
+    /** Updates the index of the current block from the time, host, service and level fields of the line */
+    private void indexMessage(String line) {
+        int timeEnd = line.indexOf('\t');
+        int hostEnd = line.indexOf('\t', timeEnd + 1);
+        int threadProcessEnd = line.indexOf('\t', hostEnd + 1);
+        int serviceEnd = line.indexOf('\t', threadProcessEnd + 1);
+        int componentEnd = line.indexOf('\t', serviceEnd + 1);
+        int levelEnd = line.indexOf('\t', componentEnd + 1);
+        if (timeEnd < 0 || levelEnd < 0) { // not a valid message: Make sure this block is never skipped
+            minTime = Long.MIN_VALUE;
+            maxTime = Long.MAX_VALUE;
+            hosts = services = levels = null;
+            return;
+        }
+
+        try {
+            long time = (long)(Double.parseDouble(line.substring(0, timeEnd)) * 1000);
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+        } catch (NumberFormatException e) {
+            minTime = Long.MIN_VALUE;
+            maxTime = Long.MAX_VALUE;
+        }
+        hosts = add(line, timeEnd + 1, hostEnd, hosts);
+        services = add(line, threadProcessEnd + 1, serviceEnd, services);
+        levels = add(line, componentEnd + 1, levelEnd, levels);
+    }
+
+    /** Adds the value at the given range of the line to the set, or returns null if there are too many values */
+    private static Set<String> add(String line, int start, int end, Set<String> set) {
+        if (set == null) return null;
+        String value = line.substring(start, end);
+        if (set.size() >= BlockIndexEntry.maxDistinctValues && ! set.contains(value)) return null;
+        set.add(value);
+        return set;
+    }
+
+    private void writeBlock() throws IOException {
+        if (data == null)
+            openNextFiles();
+
+        byte[] uncompressed = block.toString().getBytes(StandardCharsets.UTF_8);
+        deflater.reset();
+        deflater.setInput(uncompressed);
+        deflater.finish();
+        int compressedSize = 0;
+        while ( ! deflater.finished()) {
+            if (compressedSize == compressBuffer.length)
+                compressBuffer = Arrays.copyOf(compressBuffer, compressBuffer.length * 2);
+            compressedSize += deflater.deflate(compressBuffer, compressedSize, compressBuffer.length - compressedSize);
+        }
+
+        long offset = dataSize;
+        data.writeInt(blockMagic);
+        data.writeInt(compressedSize);
+        data.writeInt(uncompressed.length);
+        data.write(compressBuffer, 0, compressedSize);
+        data.flush(); // the block must be on disk before it is referenced from the index
+        dataSize += blockHeaderSize + compressedSize;
+
+        new BlockIndexEntry(offset, compressedSize, uncompressed.length, messageCount,
+                            minTime, maxTime, hosts, services, levels).writeTo(index);
+        index.flush();
+        resetBlock();
+
+        if (dataSize >= maxFileSize) {
+            log.fine("Block archive file '" + currentFile.getAbsolutePath() + "' full, rotating");
+            closeFiles();
+        }
+    }
+
+    private void resetBlock() {
+        block.setLength(0);
+        messageCount = 0;
+        minTime = Long.MAX_VALUE;
+        maxTime = Long.MIN_VALUE;
+        hosts = new HashSet<>();
+        services = new HashSet<>();
+        levels = new HashSet<>();
+    }
+
+    private void openNextFiles() throws IOException {
+        int maxAttempts = 1000;
+        while (maxAttempts-- > 0) {
+            String name = getPrefix() + "-" + generation++;
+            File dataFile = new File(name + dataSuffix);
+            File indexFile = new File(name + indexSuffix);
+            if (dataFile.exists() || indexFile.exists()) continue;
+
+            File dir = dataFile.getParentFile();
+            if (dir != null && ! dir.exists())
+                dir.mkdirs();
+
+            log.log(LogLevel.DEBUG, "openNextFiles, new file: " + dataFile);
+            currentFile = dataFile;
+            data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile), 64 * 1024));
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 4 * 1024));
+            dataSize = 0;
+            return;
+        }
+        throw new RuntimeException("Unable to create next block archive file");
+    }
+
+    private void closeFiles() throws IOException {
+        if (data == null) return;
+        try {
+            data.close();
+        } finally {
+            index.close();
+            data = null;
+            index = null;
+            currentFile = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "block log writer to " + getPrefix();
+    }
+
+}
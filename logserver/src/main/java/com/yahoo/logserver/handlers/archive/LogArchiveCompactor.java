@@ -0,0 +1,282 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.logserver.handlers.archive;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Offline compaction of a log archive: Rewrites the files of each hour which is done being written
+ * into as few block files with as large blocks as possible. Plain text files (also gzipped ones) written
+ * by the text format of {@link ArchiverHandler} are converted to the block format, and block files
+ * with small blocks, written when the archiver was flushed during periods of little logging, are merged.
+ * Hours for which the archiver still has a writer open, as told by their open marker, are skipped,
+ * as messages may arrive late.
+ * <p>
+ * The messages of an hour are written to temporary files. When these are complete, the compaction is committed
+ * by atomically creating a marker file listing the original files, before these are deleted and the temporary
+ * files are renamed to replace them. Running this again after it was stopped redoes the compaction of the hour
+ * it was working on if it was not committed, and completes it otherwise, such that no messages are lost or
+ * duplicated.
+ *
+ * @author agent
+ */
+public class LogArchiveCompactor {
+
+    private static final Logger log = Logger.getLogger(LogArchiveCompactor.class.getName());
+
+    /** Matches the names of archive files: Hour, generation and suffix */
+    private static final Pattern archiveFileName =
+            Pattern.compile("(\\d\\d)-(\\d+)(|\\.gz|" + Pattern.quote(BlockLogWriter.dataSuffix) + ")");
+
+    private static final String temporaryInfix = ".compacting";
+
+    /** The suffix of the marker file listing the original files of a committed compaction */
+    private static final String committedSuffix = ".compacted";
+
+    /** The suffix of the marker file of a committed compaction whose original files are deleted */
+    private static final String completingSuffix = ".completing";
+
+    private static final long hourMillis = 60 * 60 * 1000;
+
+    private final File root;
+    private final long maxFileSize;
+    private final int maxBlockSize;
+
+    public LogArchiveCompactor(String rootDir, long maxFileSize, int maxBlockSize) {
+        this.root = new File(rootDir).getAbsoluteFile();
+        this.maxFileSize = maxFileSize;
+        this.maxBlockSize = maxBlockSize;
+    }
+
+    /**
+     * Compacts all hours in the archive which ended before the given time and are not open in the archiver
+     *
+     * @return the number of hours compacted
+     */
+    public int compactBefore(long time) throws IOException {
+        int compacted = 0;
+        for (File year : subdirectories(root))
+            for (File month : subdirectories(year))
+                for (File day : subdirectories(month))
+                    compacted += compactDay(day, time);
+        return compacted;
+    }
+
+    private int compactDay(File day, long time) throws IOException {
+        long dayStart = LocalDateTime.of(Integer.parseInt(day.getParentFile().getParentFile().getName()),
+                                         Integer.parseInt(day.getParentFile().getName()),
+                                         Integer.parseInt(day.getName()),
+                                         0, 0).toEpochSecond(ZoneOffset.UTC) * 1000;
+        int compacted = 0;
+        for (Map.Entry<Integer, List<File>> hour : filesByHour(day).entrySet()) {
+            if (dayStart + (hour.getKey() + 1) * hourMillis > time) continue; // may still be written to
+            String hourPrefix = new File(day, String.format("%02d", hour.getKey())).getPath();
+            if (new File(hourPrefix + ArchiverHandler.openSuffix).exists()) continue; // is still written to
+            if (compactHour(hourPrefix, hour.getValue()))
+                compacted++;
+        }
+        return compacted;
+    }
+
+    /**
+     * Returns the archive files of each hour of a day directory, in generation order,
+     * with text files before block files of the same generation, as the text format is the older
+     */
+    private Map<Integer, List<File>> filesByHour(File day) {
+        Map<Integer, List<File>> filesByHour = new TreeMap<>();
+        File[] files = day.listFiles();
+        if (files == null) return filesByHour;
+        for (File file : files) {
+            Matcher matcher = archiveFileName.matcher(file.getName());
+            if (matcher.matches())
+                filesByHour.computeIfAbsent(Integer.parseInt(matcher.group(1)), hour -> new ArrayList<>()).add(file);
+            else if (file.getName().contains(temporaryInfix) || file.getName().endsWith(committedSuffix)
+                     || file.getName().endsWith(completingSuffix))
+                filesByHour.computeIfAbsent(Integer.parseInt(file.getName().substring(0, 2)), hour -> new ArrayList<>());
+        }
+        for (List<File> hourFiles : filesByHour.values())
+            hourFiles.sort(Comparator.comparing(LogArchiveCompactor::generationOf)
+                                     .thenComparing(file -> file.getName().endsWith(BlockLogWriter.dataSuffix)));
+        return filesByHour;
+    }
+
+    private boolean compactHour(String hourPrefix, List<File> files) throws IOException {
+        String temporaryPrefix = hourPrefix + temporaryInfix;
+        File committed = new File(hourPrefix + committedSuffix);
+        File completing = new File(hourPrefix + completingSuffix);
+        if (committed.exists() || completing.exists()) { // stopped after committing: Complete
+            complete(hourPrefix, committed, completing);
+            return true;
+        }
+        for (File file : filesStartingBy(temporaryPrefix)) // stopped before committing: Redo
+            delete(file);
+        if ( ! needsCompaction(files)) return false;
+
+        log.fine("Compacting " + files);
+        try (BlockLogWriter writer = new BlockLogWriter(temporaryPrefix, maxFileSize, maxBlockSize)) {
+            for (File file : files) {
+                if (file.getName().endsWith(BlockLogWriter.dataSuffix))
+                    LogArchiveReader.readBlocks(file, lines -> writeLines(lines, writer));
+                else
+                    writeTextFile(file, writer);
+            }
+        }
+
+        // Commit by atomically creating the marker listing the files to replace
+        List<String> originalNames = new ArrayList<>();
+        for (File file : files)
+            originalNames.add(file.getName());
+        Path commitFile = new File(temporaryPrefix + committedSuffix).toPath();
+        Files.write(commitFile, originalNames, StandardCharsets.UTF_8);
+        Files.move(commitFile, committed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        complete(hourPrefix, committed, completing);
+        return true;
+    }
+
+    /**
+     * Completes a committed compaction: Deletes the original files listed by the committed marker
+     * and marks this as done by renaming it to the completing marker, then renames the temporary files
+     * to their final names and deletes the completing marker. Each step may be redone.
+     */
+    private void complete(String hourPrefix, File committed, File completing) throws IOException {
+        if (committed.exists()) {
+            for (String name : Files.readAllLines(committed.toPath(), StandardCharsets.UTF_8)) {
+                File file = new File(committed.getParentFile(), name);
+                if (file.getName().endsWith(BlockLogWriter.dataSuffix))
+                    delete(LogArchiveReader.indexFileOf(file));
+                delete(file);
+            }
+            Files.move(committed.toPath(), completing.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        String temporaryPrefix = hourPrefix + temporaryInfix;
+        renameToFinal(filesStartingBy(temporaryPrefix), temporaryPrefix, hourPrefix);
+        delete(completing);
+    }
+
+    /** Deletes the given file if it exists */
+    void delete(File file) throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * Returns whether these files contain text files, block files which would fit in fewer files,
+     * or block files with blocks which are small on average
+     */
+    private boolean needsCompaction(List<File> files) throws IOException {
+        long totalSize = 0;
+        for (File file : files) {
+            if ( ! file.getName().endsWith(BlockLogWriter.dataSuffix)) return true;
+            totalSize += file.length();
+        }
+        if (files.size() > 1 && totalSize < maxFileSize * (files.size() - 1)) return true;
+
+        for (File file : files) {
+            List<BlockIndexEntry> blocks = LogArchiveReader.readIndex(LogArchiveReader.indexFileOf(file));
+            if (blocks.size() <= 1) continue;
+            long uncompressedSize = 0;
+            for (BlockIndexEntry block : blocks)
+                uncompressedSize += block.getUncompressedSize();
+            if (uncompressedSize / blocks.size() < maxBlockSize / 2) return true;
+        }
+        return false;
+    }
+
+    private void writeTextFile(File file, BlockLogWriter writer) throws IOException {
+        try (InputStream in = file.getName().endsWith(".gz") ? new GZIPInputStream(new FileInputStream(file))
+                                                             : new FileInputStream(file);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if ( ! line.isEmpty())
+                    writer.write(line + "\n");
+            }
+        }
+    }
+
+    private void writeLines(String lines, BlockLogWriter writer) {
+        try {
+            int start = 0;
+            while (start < lines.length()) {
+                int end = lines.indexOf('\n', start);
+                if (end < 0) end = lines.length() - 1;
+                writer.write(lines.substring(start, end + 1));
+                start = end + 1;
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void renameToFinal(List<File> temporaryFiles, String temporaryPrefix, String hourPrefix) throws IOException {
+        for (File file : temporaryFiles) {
+            File target = new File(hourPrefix + file.getPath().substring(temporaryPrefix.length()));
+            if ( ! file.renameTo(target))
+                throw new IOException("Could not rename '" + file + "' to '" + target + "'");
+        }
+    }
+
+    private static List<File> filesStartingBy(String prefix) {
+        File prefixFile = new File(prefix);
+        List<File> files = new ArrayList<>();
+        File[] candidates = prefixFile.getParentFile().listFiles();
+        if (candidates == null) return files;
+        for (File file : candidates)
+            if (file.getName().startsWith(prefixFile.getName()))
+                files.add(file);
+        return files;
+    }
+
+    private static long generationOf(File file) {
+        Matcher matcher = archiveFileName.matcher(file.getName());
+        return matcher.matches() ? Long.parseLong(matcher.group(2)) : Long.MAX_VALUE;
+    }
+
+    private static List<File> subdirectories(File directory) {
+        List<File> subdirectories = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) return subdirectories;
+        for (File file : files) {
+            if (file.isDirectory() && file.getName().matches("\\d+"))
+                subdirectories.add(file);
+        }
+        return subdirectories;
+    }
+
+    /**
+     * Compacts the hours which ended more than an hour ago, and which are not open in the archiver,
+     * in the archive at the given directory.
+     * Usage: LogArchiveCompactor archiveRootDirectory [maxFileSize]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: LogArchiveCompactor archiveRootDirectory [maxFileSize]");
+            System.exit(1);
+        }
+        long maxFileSize = args.length > 1 ? Long.parseLong(args[1]) : 20 * 1024 * 1024;
+        LogArchiveCompactor compactor = new LogArchiveCompactor(args[0], maxFileSize, BlockLogWriter.defaultMaxBlockSize);
+        int compacted = compactor.compactBefore(System.currentTimeMillis() - hourMillis);
+        System.out.println("Compacted " + compacted + " hours in " + args[0]);
+    }
+
+}
@@ -0,0 +1,99 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.logserver.handlers.archive;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+
+import com.yahoo.log.LogMessage;
+
+/**
+ * A query for log messages in a block archive: A time range and optionally sets of hosts, services
+ * and levels, where a message must have one of the given values in each set which is non-empty.
+ *
+ * @author agent
+ */
+public class LogArchiveQuery {
+
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private final Set<String> hosts = new HashSet<>();
+    private final Set<String> services = new HashSet<>();
+    private final Set<String> levels = new HashSet<>();
+
+    /** Only match messages logged at or after the given time in milliseconds */
+    public LogArchiveQuery from(long from) {
+        this.from = from;
+        return this;
+    }
+
+    /** Only match messages logged before the given time in milliseconds */
+    public LogArchiveQuery to(long to) {
+        this.to = to;
+        return this;
+    }
+
+    /** Match messages from this host. If no host is added, messages from all hosts are matched */
+    public LogArchiveQuery host(String host) {
+        hosts.add(host);
+        return this;
+    }
+
+    /** Match messages from this service. If no service is added, messages from all services are matched */
+    public LogArchiveQuery service(String service) {
+        services.add(service);
+        return this;
+    }
+
+    /** Match messages at this level. If no level is added, messages at all levels are matched */
+    public LogArchiveQuery level(Level level) {
+        levels.add(levelName(level));
+        return this;
+    }
+
+    public long getFrom() { return from; }
+
+    public long getTo() { return to; }
+
+    /** Returns whether the time range of this overlaps the given time range, where both ends are inclusive */
+    boolean overlaps(long minTime, long maxTime) {
+        return maxTime >= from && minTime < to;
+    }
+
+    /** Returns whether the given block may contain matching messages */
+    boolean mayMatch(BlockIndexEntry block) {
+        return overlaps(block.getMinTime(), block.getMaxTime())
+               && mayContain(hosts, block.getHosts())
+               && mayContain(services, block.getServices())
+               && mayContain(levels, block.getLevels());
+    }
+
+    /** Returns whether the given message matches this */
+    public boolean matches(LogMessage message) {
+        return message.getTime() >= from && message.getTime() < to
+               && (hosts.isEmpty() || hosts.contains(message.getHost()))
+               && (services.isEmpty() || services.contains(message.getService()))
+               && (levels.isEmpty() || levels.contains(levelName(message.getLevel())));
+    }
+
+    private static boolean mayContain(Set<String> wanted, Set<String> indexed) {
+        if (wanted.isEmpty() || indexed == null) return true;
+        for (String value : wanted)
+            if (indexed.contains(value)) return true;
+        return false;
+    }
+
+    /** Returns the name of the level as written in the native format */
+    private static String levelName(Level level) {
+        return level.toString().toLowerCase();
+    }
+
+    @Override
+    public String toString() {
+        return "log archive query [" + from + ", " + to + ")" +
+               (hosts.isEmpty() ? "" : " hosts: " + hosts) +
+               (services.isEmpty() ? "" : " services: " + services) +
+               (levels.isEmpty() ? "" : " levels: " + levels);
+    }
+
+}
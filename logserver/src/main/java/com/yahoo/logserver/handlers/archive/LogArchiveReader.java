@@ -0,0 +1,242 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.logserver.handlers.archive;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.yahoo.log.InvalidLogFormatException;
+import com.yahoo.log.LogMessage;
+
+/**
+ * Finds log messages in an archive written by an {@link ArchiverHandler} using the block format.
+ * Only the files of hours overlapping the queried time range are considered, and of those only
+ * the blocks whose index entry may match the query are read and decompressed.
+ * Matching messages are passed on one by one as they are read, such that large results are never
+ * held in memory.
+ *
+ * @author agent
+ */
+public class LogArchiveReader {
+
+    private static final Logger log = Logger.getLogger(LogArchiveReader.class.getName());
+
+    /** Matches the name of block data files: Hour and generation */
+    private static final Pattern dataFileName = Pattern.compile("(\\d\\d)-(\\d+)" + Pattern.quote(BlockLogWriter.dataSuffix));
+
+    private static final long hourMillis = 60 * 60 * 1000;
+
+    private final File root;
+
+    private long blocksRead = 0;
+    private long blocksSkipped = 0;
+
+    /** Creates a reader of the archive below the given root directory */
+    public LogArchiveReader(String rootDir) {
+        this.root = new File(rootDir).getAbsoluteFile();
+    }
+
+    /**
+     * Passes all messages in the archive matching the given query to the given consumer,
+     * ordered by hour and then by the order they were written.
+     *
+     * @return the number of matching messages
+     */
+    public long search(LogArchiveQuery query, Consumer<LogMessage> consumer) throws IOException {
+        long matches = 0;
+        byte[] compressed = new byte[0];
+        Inflater inflater = new Inflater();
+        try {
+            for (File dataFile : dataFiles(query)) {
+                List<BlockIndexEntry> blocks = readIndex(indexFileOf(dataFile));
+                if (blocks.isEmpty()) continue;
+                try (RandomAccessFile file = new RandomAccessFile(dataFile, "r")) {
+                    for (BlockIndexEntry block : blocks) {
+                        if ( ! query.mayMatch(block)) {
+                            blocksSkipped++;
+                            continue;
+                        }
+                        blocksRead++;
+                        if (compressed.length < block.getCompressedSize())
+                            compressed = new byte[block.getCompressedSize()];
+                        file.seek(block.getOffset() + BlockLogWriter.blockHeaderSize);
+                        file.readFully(compressed, 0, block.getCompressedSize());
+                        String lines = decompress(compressed, block.getCompressedSize(), block.getUncompressedSize(),
+                                                  inflater, dataFile);
+                        matches += forEachMatch(lines, query, consumer);
+                    }
+                }
+            }
+        }
+        finally {
+            inflater.end();
+        }
+        return matches;
+    }
+
+    /** Returns the number of blocks read by searches with this reader */
+    public long getBlocksRead() { return blocksRead; }
+
+    /** Returns the number of blocks skipped by searches with this reader because the index did not match */
+    public long getBlocksSkipped() { return blocksSkipped; }
+
+    private long forEachMatch(String lines, LogArchiveQuery query, Consumer<LogMessage> consumer) {
+        long matches = 0;
+        int start = 0;
+        while (start < lines.length()) {
+            int end = lines.indexOf('\n', start);
+            if (end < 0) end = lines.length();
+            try {
+                LogMessage message = LogMessage.parseNativeFormat(lines.substring(start, end));
+                if (query.matches(message)) {
+                    consumer.accept(message);
+                    matches++;
+                }
+            } catch (InvalidLogFormatException e) {
+                log.log(Level.FINE, "Skipping invalid archived message", e);
+            }
+            start = end + 1;
+        }
+        return matches;
+    }
+
+    /** Returns the data files of the hours overlapping the time range of the given query, in time order */
+    private List<File> dataFiles(LogArchiveQuery query) {
+        List<File> files = new ArrayList<>();
+        for (File year : numberedSubdirectories(root))
+            for (File month : numberedSubdirectories(year))
+                for (File day : numberedSubdirectories(month))
+                    files.addAll(dataFiles(day, query));
+        return files;
+    }
+
+    private List<File> dataFiles(File dayDirectory, LogArchiveQuery query) {
+        File monthDirectory = dayDirectory.getParentFile();
+        LocalDateTime day = LocalDateTime.of(Integer.parseInt(monthDirectory.getParentFile().getName()),
+                                             Integer.parseInt(monthDirectory.getName()),
+                                             Integer.parseInt(dayDirectory.getName()),
+                                             0, 0);
+        long dayStart = day.toEpochSecond(ZoneOffset.UTC) * 1000;
+        if ( ! query.overlaps(dayStart, dayStart + 24 * hourMillis - 1)) return new ArrayList<>();
+
+        List<File> files = new ArrayList<>();
+        File[] candidates = dayDirectory.listFiles();
+        if (candidates == null) return files;
+        for (File file : candidates) {
+            Matcher matcher = dataFileName.matcher(file.getName());
+            if ( ! matcher.matches()) continue;
+            long hourStart = dayStart + Integer.parseInt(matcher.group(1)) * hourMillis;
+            if (query.overlaps(hourStart, hourStart + hourMillis - 1))
+                files.add(file);
+        }
+        files.sort(Comparator.comparing((File file) -> hourAndGenerationOf(file)[0])
+                             .thenComparing(file -> hourAndGenerationOf(file)[1]));
+        return files;
+    }
+
+    private static long[] hourAndGenerationOf(File dataFile) {
+        Matcher matcher = dataFileName.matcher(dataFile.getName());
+        matcher.matches();
+        return new long[] { Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)) };
+    }
+
+    private static List<File> numberedSubdirectories(File directory) {
+        List<File> subdirectories = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) return subdirectories;
+        for (File file : files) {
+            if (file.isDirectory() && file.getName().matches("\\d+"))
+                subdirectories.add(file);
+        }
+        subdirectories.sort(Comparator.comparing(file -> Integer.parseInt(file.getName())));
+        return subdirectories;
+    }
+
+    static File indexFileOf(File dataFile) {
+        String path = dataFile.getPath();
+        return new File(path.substring(0, path.length() - BlockLogWriter.dataSuffix.length()) + BlockLogWriter.indexSuffix);
+    }
+
+    /**
+     * Reads the entries of an index file. An entry which is incomplete, because the writer was stopped
+     * while writing it, is ignored.
+     */
+    static List<BlockIndexEntry> readIndex(File indexFile) throws IOException {
+        List<BlockIndexEntry> entries = new ArrayList<>();
+        if ( ! indexFile.exists()) return entries;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            while (true)
+                entries.add(BlockIndexEntry.readFrom(in));
+        }
+        catch (EOFException e) {
+            return entries;
+        }
+    }
+
+    /**
+     * Passes the content of each block in the given data file to the given consumer, in order, without using the index.
+     * This stops at the first incomplete or invalid block.
+     */
+    static void readBlocks(File dataFile, Consumer<String> consumer) throws IOException {
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile)))) {
+            while (true) {
+                if (in.readInt() != BlockLogWriter.blockMagic) {
+                    log.warning("Invalid block in '" + dataFile + "', ignoring the rest of the file");
+                    return;
+                }
+                int compressedSize = in.readInt();
+                int uncompressedSize = in.readInt();
+                byte[] compressed = new byte[compressedSize];
+                in.readFully(compressed);
+                consumer.accept(decompress(compressed, compressedSize, uncompressedSize, inflater, dataFile));
+            }
+        }
+        catch (EOFException e) {
+            // done
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    private static String decompress(byte[] compressed, int compressedSize, int uncompressedSize,
+                                     Inflater inflater, File dataFile) throws IOException {
+        try {
+            inflater.reset();
+            inflater.setInput(compressed, 0, compressedSize);
+            byte[] uncompressed = new byte[uncompressedSize];
+            int size = 0;
+            while (size < uncompressedSize && ! inflater.finished()) {
+                int inflated = inflater.inflate(uncompressed, size, uncompressedSize - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                size += inflated;
+            }
+            if (size != uncompressedSize)
+                throw new IOException("Corrupt block in '" + dataFile + "': Expected " + uncompressedSize +
+                                      " bytes but got " + size);
+            return new String(uncompressed, StandardCharsets.UTF_8);
+        }
+        catch (DataFormatException e) {
+            throw new IOException("Corrupt block in '" + dataFile + "'", e);
+        }
+    }
+
+}
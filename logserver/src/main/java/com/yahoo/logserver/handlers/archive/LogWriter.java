@@ -32,6 +32,16 @@ public class LogWriter extends Writer {
         writer = nextWriter();
     }
 
+    /** Creates a writer of the given prefix for subclasses which write their own files */
+    protected LogWriter(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /** Returns the path prefix of the files written by this */
+    public String getPrefix() {
+        return prefix;
+    }
+
     /**
      * This is called when we want to rotate the output file to
      * start writing the next file.  There are two scenarios when
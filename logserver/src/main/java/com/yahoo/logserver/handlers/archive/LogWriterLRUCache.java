@@ -8,6 +8,9 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
+ * A cache of the writers of each time slot, which closes the least recently used writer when full,
+ * and then removes the marker telling its files may still be written to.
+ *
  * @author Bjorn Borud
  */
 @SuppressWarnings("serial")
@@ -27,6 +30,7 @@ public class LogWriterLRUCache extends LinkedHashMap<Integer, LogWriter> {
             log.fine("Closing oldest LogWriter: " + logWriter);
             try {
                 logWriter.close();
+                ArchiverHandler.markClosed(logWriter.getPrefix());
             } catch (IOException e) {
                 log.log(Level.WARNING, "closing LogWriter failed", e);
             }
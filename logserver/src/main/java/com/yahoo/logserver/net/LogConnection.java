@@ -15,7 +15,9 @@ import com.yahoo.logserver.net.control.Levels;
 import java.io.IOException;
 import java.util.logging.Logger;
 import java.util.logging.Level;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
 
@@ -238,16 +240,20 @@ public class LogConnection implements Connection {
 
         readBuffer.flip();
 
+        // parse all the complete messages read and dispatch them as one batch
+        List<LogMessage> messages = new ArrayList<>();
         String s;
         while ((s = ReadLine.readLine(readBuffer)) != null) {
             try {
-                LogMessage msg = LogMessage.parseNativeFormat(s);
-                dispatcher.handle(msg);
+                messages.add(LogMessage.parseNativeFormat(s));
             }
             catch (InvalidLogFormatException e) {
                 log.log(LogLevel.DEBUG, "Invalid log message", e);
             }
         }
+        if ( ! messages.isEmpty()) {
+            dispatcher.handle(messages);
+        }
     }
 
     public void close() throws IOException {
@@ -70,6 +70,39 @@ public class HandlerThreadTestCase {
         thread.join();
     }
 
+    @Test
+    public void testMessagesAreDroppedWhenQueueIsFull() throws InvalidLogFormatException, InterruptedException {
+        HandlerThread thread = new HandlerThread("myThread");
+        LogDispatcherTestCase.MockHandler h1 = new LogDispatcherTestCase.MockHandler();
+        thread.registerHandler(h1);
+        final LogMessage msg1 = LogMessage.parseNativeFormat("1098709001\tnalle.puh.com\t23234\tserviceName\ttst\tinfo\tthis is a test");
+
+        // Not started: The queue fills up
+        for (int i = 0; i < HandlerThread.DEFAULT_QUEUESIZE; i++)
+            thread.handle(msg1);
+        assertEquals(0, thread.getDroppedCount());
+        assertEquals(HandlerThread.DEFAULT_QUEUESIZE, thread.getQueueLength());
+        thread.handle(msg1);
+        thread.handle(new ArrayList<LogMessage>() {{ add(msg1); add(msg1); }});
+        assertEquals(3, thread.getDroppedCount());
+
+        thread.start();
+        while (h1.messages.size() < HandlerThread.DEFAULT_QUEUESIZE) {
+            Thread.sleep(10);
+        }
+        assertEquals("Everything queued is handled, as one batch", HandlerThread.DEFAULT_QUEUESIZE, h1.messages.size());
+        assertTrue(thread.getMaxLagMillis() >= thread.getLagMillis());
+        thread.interrupt();
+        thread.join();
+    }
+
+    @Test
+    public void testMetricNames() {
+        assertEquals("logserver.logmetrics_handler_thread.dropped",
+                     new HandlerThread("logmetrics handler thread").metricName("dropped"));
+        assertEquals("logserver.myThread.max_lag_ms", new HandlerThread("myThread").metricName("max_lag_ms"));
+    }
+
     @Test
     public void testAbortThread() throws InvalidLogFormatException, InterruptedException {
         HandlerThread thread = new HandlerThread("myThread");
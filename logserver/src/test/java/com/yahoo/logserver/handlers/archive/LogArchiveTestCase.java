@@ -0,0 +1,218 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.logserver.handlers.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.yahoo.log.InvalidLogFormatException;
+import com.yahoo.log.LogLevel;
+import com.yahoo.log.LogMessage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests writing, searching and compacting block format log archives
+ *
+ * @author agent
+ */
+public class LogArchiveTestCase {
+
+    /** 2004-09-14 10:00:00 UTC */
+    private static final long startTime = 1095156000000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndSearch() throws IOException, InvalidLogFormatException {
+        File root = temporaryFolder.newFolder();
+        ArchiverHandler archiver = new ArchiverHandler(root.getAbsolutePath(), 1024 * 1024, true);
+        // Two hours, with host and service changing every 100 messages, in blocks of about 100 messages
+        for (int i = 0; i < 2000; i++)
+            archiver.handle(message(startTime + i * 3600, "host" + (i / 100) % 3, "service" + (i / 100) % 2,
+                                    i % 10 == 0 ? "warning" : "info", "message " + i));
+        archiver.close();
+
+        assertTrue(new File(root, "2004/09/14/10-0" + BlockLogWriter.dataSuffix).exists());
+        assertTrue(new File(root, "2004/09/14/10-0" + BlockLogWriter.indexSuffix).exists());
+        assertTrue(new File(root, "2004/09/14/11-0" + BlockLogWriter.dataSuffix).exists());
+
+        assertEquals(2000, search(root, new LogArchiveQuery()).size());
+
+        LogArchiveReader reader = new LogArchiveReader(root.getAbsolutePath());
+        List<LogMessage> result = new ArrayList<>();
+        reader.search(new LogArchiveQuery().from(startTime + 100 * 3600).to(startTime + 110 * 3600), result::add);
+        assertEquals(10, result.size());
+        assertEquals("message 100", result.get(0).getPayload());
+        assertEquals("message 109", result.get(9).getPayload());
+
+        result = search(root, new LogArchiveQuery().host("host1").service("service0"));
+        assertEquals(300, result.size());
+        for (LogMessage message : result) {
+            assertEquals("host1", message.getHost());
+            assertEquals("service0", message.getService());
+        }
+
+        result = search(root, new LogArchiveQuery().host("host2").level(LogLevel.WARNING));
+        assertEquals(60, result.size());
+        assertEquals(LogLevel.WARNING, result.get(0).getLevel());
+
+        assertEquals(0, search(root, new LogArchiveQuery().host("nosuchhost")).size());
+        assertEquals(0, search(root, new LogArchiveQuery().from(startTime + 5 * 3600 * 1000)).size());
+    }
+
+    @Test
+    public void testBlocksAreSkipped() throws IOException, InvalidLogFormatException {
+        File root = temporaryFolder.newFolder();
+        BlockLogWriter writer = new BlockLogWriter(new File(root, "2004/09/14/10").getPath(), 1024 * 1024, 1000);
+        for (int i = 0; i < 1000; i++)
+            writer.write(message(startTime + i * 1000, "host" + i / 100, "service", "info", "message " + i).toString());
+        writer.close();
+
+        LogArchiveReader reader = new LogArchiveReader(root.getAbsolutePath());
+        List<LogMessage> result = new ArrayList<>();
+        reader.search(new LogArchiveQuery().host("host3"), result::add);
+        assertEquals(100, result.size());
+        assertTrue("Most blocks are skipped", reader.getBlocksSkipped() > reader.getBlocksRead() * 5);
+
+        long blocksRead = reader.getBlocksRead();
+        result.clear();
+        reader.search(new LogArchiveQuery().from(startTime + 500 * 1000).to(startTime + 501 * 1000), result::add);
+        assertEquals(1, result.size());
+        assertEquals("message 500", result.get(0).getPayload());
+        assertTrue(reader.getBlocksRead() - blocksRead <= 2);
+    }
+
+    @Test
+    public void testCompaction() throws IOException, InvalidLogFormatException {
+        File root = temporaryFolder.newFolder();
+        writeTextAndBlockFiles(new File(root, "2004/09/14/10").getPath());
+        assertEquals("A text file and three block files with indexes", 7, archiveFiles(root).size());
+
+        LogArchiveCompactor compactor = new LogArchiveCompactor(root.getAbsolutePath(), 1024 * 1024, 64 * 1024);
+        assertEquals("The hour is not compacted until it is done", 0, compactor.compactBefore(startTime));
+        assertEquals(1, compactor.compactBefore(startTime + 2 * 3600 * 1000));
+
+        assertCompacted(root);
+        assertEquals("Already compacted", 0, compactor.compactBefore(startTime + 2 * 3600 * 1000));
+    }
+
+    @Test
+    public void testCompactionStoppedBetweenDeletesIsCompleted() throws IOException, InvalidLogFormatException {
+        File root = temporaryFolder.newFolder();
+        writeTextAndBlockFiles(new File(root, "2004/09/14/10").getPath());
+
+        LogArchiveCompactor stoppingCompactor = new LogArchiveCompactor(root.getAbsolutePath(), 1024 * 1024, 64 * 1024) {
+            int deletes = 0;
+
+            @Override
+            void delete(File file) throws IOException {
+                if (++deletes > 2) throw new IOException("Stopped");
+                super.delete(file);
+            }
+        };
+        try {
+            stoppingCompactor.compactBefore(startTime + 2 * 3600 * 1000);
+            fail("Expected the compaction to stop");
+        }
+        catch (IOException expected) {
+            assertEquals("Stopped", expected.getMessage());
+        }
+        List<String> files = archiveFiles(root);
+        assertTrue("Committed", files.contains("10.compacted"));
+        assertFalse("Some original files are deleted", files.contains("10-0"));
+        assertTrue("Some original files remain", files.size() > 4);
+
+        LogArchiveCompactor compactor = new LogArchiveCompactor(root.getAbsolutePath(), 1024 * 1024, 64 * 1024);
+        assertEquals(1, compactor.compactBefore(startTime + 2 * 3600 * 1000));
+        assertCompacted(root);
+        assertEquals("Already compacted", 0, compactor.compactBefore(startTime + 2 * 3600 * 1000));
+    }
+
+    @Test
+    public void testHoursOpenInTheArchiverAreNotCompacted() throws IOException, InvalidLogFormatException {
+        File root = temporaryFolder.newFolder();
+        File openMarker = new File(root, "2004/09/14/10" + ArchiverHandler.openSuffix);
+        ArchiverHandler archiver = new ArchiverHandler(root.getAbsolutePath(), 1024 * 1024);
+        archiver.handle(message(startTime, "host", "service", "info", "message 0"));
+        archiver.flush();
+        assertTrue(openMarker.exists());
+
+        LogArchiveCompactor compactor = new LogArchiveCompactor(root.getAbsolutePath(), 1024 * 1024, 64 * 1024);
+        assertEquals("The hour is not compacted while the archiver may write to it",
+                     0, compactor.compactBefore(startTime + 2 * 3600 * 1000));
+        assertTrue(archiveFiles(root).contains("10-0"));
+
+        archiver.close();
+        assertFalse(openMarker.exists());
+        assertEquals(1, compactor.compactBefore(startTime + 2 * 3600 * 1000));
+        assertEquals(1, search(root, new LogArchiveQuery()).size());
+
+        archiver = new ArchiverHandler(root.getAbsolutePath(), 1024 * 1024);
+        archiver.handle(message(startTime, "host", "service", "info", "message 1"));
+        assertTrue(openMarker.exists());
+        new ArchiverHandler(root.getAbsolutePath(), 1024 * 1024); // as if restarted without closing
+        assertFalse("Markers left by an archiver which was not closed are removed", openMarker.exists());
+    }
+
+    /** Writes a text file and three block files of 100 messages each to the given hour */
+    private void writeTextAndBlockFiles(String prefix) throws IOException, InvalidLogFormatException {
+        LogWriter textWriter = new LogWriter(prefix, 1024 * 1024);
+        for (int i = 0; i < 100; i++)
+            textWriter.write(message(startTime + i, "host", "service", "info", "message " + i).toString());
+        textWriter.close();
+        for (int generation = 0; generation < 3; generation++) {
+            BlockLogWriter blockWriter = new BlockLogWriter(prefix, 1024 * 1024, 1000);
+            for (int i = 0; i < 100; i++) {
+                int n = 100 + generation * 100 + i;
+                blockWriter.write(message(startTime + n, "host", "service", "info", "message " + n).toString());
+            }
+            blockWriter.close();
+        }
+    }
+
+    /** Asserts that the hour written by writeTextAndBlockFiles is compacted to a single block */
+    private void assertCompacted(File root) throws IOException {
+        List<String> files = archiveFiles(root);
+        assertEquals(2, files.size());
+        assertTrue(files.contains("10-0" + BlockLogWriter.dataSuffix));
+        assertTrue(files.contains("10-0" + BlockLogWriter.indexSuffix));
+        assertFalse(files.contains("10-0"));
+
+        List<LogMessage> result = search(root, new LogArchiveQuery());
+        assertEquals(400, result.size());
+        for (int i = 0; i < 400; i++)
+            assertEquals("message " + i, result.get(i).getPayload());
+        assertEquals(1, LogArchiveReader.readIndex(new File(root, "2004/09/14/10-0" + BlockLogWriter.indexSuffix)).size());
+    }
+
+    private List<LogMessage> search(File root, LogArchiveQuery query) throws IOException {
+        List<LogMessage> result = new ArrayList<>();
+        long count = new LogArchiveReader(root.getAbsolutePath()).search(query, result::add);
+        assertEquals(count, result.size());
+        return result;
+    }
+
+    private List<String> archiveFiles(File root) {
+        List<String> names = new ArrayList<>();
+        for (File file : new File(root, "2004/09/14").listFiles())
+            names.add(file.getName());
+        return names;
+    }
+
+    private LogMessage message(long time, String host, String service, String level, String payload)
+            throws InvalidLogFormatException {
+        return LogMessage.parseNativeFormat(String.format("%d.%03d\t%s\t1/2\t%s\tcomponent\t%s\t%s",
+                                                          time / 1000, time % 1000, host, service, level, payload));
+    }
+
+}
@@ -75,6 +75,41 @@ public class LogDispatcherTestCase {
         assertEquals(2, handler.messages.size());
     }
 
+    @Test
+    public void testLogDispatcherBatchModeWithLists() {
+        MockHandler handler = new MockHandler();
+        LogDispatcher dispatcher = new LogDispatcher();
+        dispatcher.setBatchedMode(true);
+        dispatcher.registerLogHandler(handler);
+        List<LogMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 3000; i++)
+            messages.add(i % 2 == 0 ? sample1 : sample2);
+
+        dispatcher.handle(messages);
+        assertEquals(3000, dispatcher.getMessageCount());
+        assertEquals(0, handler.messages.size());
+        dispatcher.handle(messages);
+        assertEquals(6000, dispatcher.getMessageCount());
+        assertEquals("A full batch is dispatched", 6000, handler.messages.size());
+        dispatcher.handle(sample1);
+        dispatcher.selectLoopHook(false);
+        assertEquals(6001, handler.messages.size());
+    }
+
+    @Test
+    public void testHandleList() {
+        MockHandler handler = new MockHandler();
+        LogDispatcher dispatcher = new LogDispatcher();
+        dispatcher.registerLogHandler(handler);
+        List<LogMessage> messages = new ArrayList<>();
+        messages.add(sample1);
+        messages.add(sample2);
+        dispatcher.handle(messages);
+        assertEquals(2, dispatcher.getMessageCount());
+        assertTrue(sample1 == handler.messages.get(0));
+        assertTrue(sample2 == handler.messages.get(1));
+    }
+
     @Test
     public void testTestLogHandlerRegistration() {
         MockHandler handler = new MockHandler();
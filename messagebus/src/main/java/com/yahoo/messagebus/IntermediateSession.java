@@ -84,7 +84,7 @@ public final class IntermediateSession implements MessageHandler, ReplyHandler {
             handler.handleReply(reply);
         } else {
             routable.pushHandler(this);
-            mbus.handleMessage((Message)routable);
+            mbus.handleMessage((Message)routable, this);
         }
     }
 
@@ -139,7 +139,8 @@ public class MessageBus implements ConfigHandler, NetworkOwner, MessageHandler,
             throw new IllegalStateException("Network failed to become ready in time.");
 
         // Start messenger.
-        msn = new Messenger();
+        msn = new Messenger(params.getNumMessengerThreads());
+        msn.addRecurrentTask(new MessengerMetricsTask(msn, metrics));
 
         RetryPolicy retryPolicy = params.getRetryPolicy();
         if (retryPolicy != null) {
@@ -388,12 +389,23 @@ public class MessageBus implements ConfigHandler, NetworkOwner, MessageHandler,
 
     @Override
     public void handleMessage(Message msg) {
+        handleMessage(msg, this);
+    }
+
+    /**
+     * <p>Sends a message on behalf of the given session. Messages sent by the
+     * same session are sent in the order they are given to this.</p>
+     *
+     * @param msg     The message to send.
+     * @param session The session sending the message.
+     */
+    void handleMessage(Message msg, Object session) {
         if (resender != null && msg.hasBucketSequence()) {
             deliverError(msg, ErrorCode.SEQUENCE_ERROR, "Bucket sequences not supported when resender is enabled.");
             return;
         }
         SendProxy proxy = new SendProxy(this, net, resender);
-        msn.deliverMessage(msg, proxy);
+        msn.deliverMessage(msg, proxy, session);
     }
 
     @Override
@@ -607,6 +619,39 @@ public class MessageBus implements ConfigHandler, NetworkOwner, MessageHandler,
         deliverReply(reply, reply.popHandler());
     }
 
+    /**
+     * <p>Implements a task which periodically updates the messenger queue depth
+     * metrics.</p>
+     */
+    private static class MessengerMetricsTask implements Messenger.Task {
+
+        private static final long UPDATE_INTERVAL_MILLIS = 1000;
+
+        final Messenger msn;
+        final MessageBusMetricSet metrics;
+        long nextUpdate = 0;
+
+        MessengerMetricsTask(Messenger msn, MessageBusMetricSet metrics) {
+            this.msn = msn;
+            this.metrics = metrics;
+        }
+
+        public void destroy() {
+            // empty
+        }
+
+        public void run() {
+            long now = SystemTimer.INSTANCE.milliTime();
+            if (now < nextUpdate) return;
+
+            nextUpdate = now + UPDATE_INTERVAL_MILLIS;
+            for (int i = 0; i < msn.getNumThreads(); ++i) {
+                metrics.setMessengerQueueDepth(i, msn.getQueueDepth(i));
+            }
+        }
+
+    }
+
     /**
      * <p>Implements a task for running the resender in the messenger
      * thread. This task acts as a proxy for the resender, allowing the task to
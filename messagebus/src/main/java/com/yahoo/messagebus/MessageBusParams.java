@@ -19,6 +19,7 @@ public class MessageBusParams {
     private RetryPolicy retryPolicy;
     private int maxPendingCount;
     private int maxPendingSize;
+    private int numMessengerThreads;
 
     /**
      * Constructs a new instance of this parameter object with default values for all members.
@@ -27,6 +28,7 @@ public class MessageBusParams {
         retryPolicy = new RetryTransientErrorsPolicy();
         maxPendingCount = 1024;
         maxPendingSize = 128 * 1024 * 1024;
+        numMessengerThreads = 1;
     }
 
     /**
@@ -39,6 +41,7 @@ public class MessageBusParams {
         retryPolicy = params.retryPolicy;
         maxPendingCount = params.maxPendingCount;
         maxPendingSize = params.maxPendingSize;
+        numMessengerThreads = params.numMessengerThreads;
     }
 
     /**
@@ -143,4 +146,27 @@ public class MessageBusParams {
         this.maxPendingSize = maxSize;
         return this;
     }
+
+    /**
+     * Returns the number of threads used to deliver messages and replies.
+     *
+     * @return The number of threads.
+     */
+    public int getNumMessengerThreads() {
+        return numMessengerThreads;
+    }
+
+    /**
+     * Sets the number of threads used to deliver messages and replies. Messages with the same sequence id, and
+     * all messages and replies for the same session, are always delivered in order by the same thread.
+     * With more than one thread, all routing policies in use must be thread safe, as they are called
+     * from several threads at once.
+     *
+     * @param numThreads The number of threads to use.
+     * @return This, to allow chaining.
+     */
+    public MessageBusParams setNumMessengerThreads(int numThreads) {
+        this.numMessengerThreads = numThreads;
+        return this;
+    }
 }
@@ -3,38 +3,66 @@ package com.yahoo.messagebus;
 
 import com.yahoo.log.LogLevel;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Logger;
 
 /**
- * <p>This class implements a single thread that is able to process arbitrary
- * tasks. Tasks are enqueued using the synchronized {@link #enqueue(Task)}
- * method, and are run in the order they were enqueued.</p>
+ * <p>This class implements a set of threads that are able to process arbitrary
+ * tasks. Each thread, or shard, has its own lock-free task queue. Tasks are
+ * assigned to a shard by a key, and tasks with the same key are run in the
+ * order they were enqueued. Messages and replies are keyed by their handler,
+ * unless an explicit order key is given, such as the session sending the
+ * message. This means that everything delivered to a single session, and all
+ * messages sent by a single session, are run in order by the same thread.
+ * Tasks enqueued using {@link #enqueue(Task)} and all recurrent tasks are run
+ * by the first shard.</p>
  *
  * @author <a href="mailto:simon@yahoo-inc.com">Simon Thoresen</a>
  */
-public class Messenger implements Runnable {
+public class Messenger {
 
     private static final Logger log = Logger.getLogger(Messenger.class.getName());
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
     private final AtomicBoolean destroyed = new AtomicBoolean(false);
     private final List<Task> children = new ArrayList<>();
-    private final Queue<Task> queue = new ArrayDeque<>();
-    private final Thread thread = new Thread(this, "Messenger");
+    private final Shard[] shards;
 
+    /**
+     * <p>Creates a messenger which runs all tasks in a single thread.</p>
+     */
     public Messenger() {
-        thread.setDaemon(true);
+        this(1);
+    }
+
+    /**
+     * <p>Creates a messenger which runs tasks in the given number of
+     * threads.</p>
+     *
+     * @param numThreads The number of threads to use, must be positive.
+     */
+    public Messenger(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("A messenger needs at least one thread, got " + numThreads + ".");
+        }
+        shards = new Shard[numThreads];
+        for (int i = 0; i < numThreads; ++i) {
+            shards[i] = new Shard(numThreads == 1 ? "Messenger" : "Messenger-" + i, i == 0);
+        }
     }
 
     /**
      * <p>Adds a recurrent task to this that is to be run for every iteration of
-     * the main loop. This task must be very light-weight as to not block the
-     * messenger. Note that this method is NOT thread-safe, so it should NOT be
-     * used after calling {@link #start()}.</p>
+     * the main loop of the first thread. This task must be very light-weight as
+     * to not block the messenger. Note that this method is NOT thread-safe, so it
+     * should NOT be used after calling {@link #start()}.</p>
      *
      * @param task The task to add.
      */
@@ -43,13 +71,15 @@ public class Messenger implements Runnable {
     }
 
     /**
-     * <p>Starts the internal thread. This must be done AFTER all recurrent
+     * <p>Starts the internal threads. This must be done AFTER all recurrent
      * tasks have been added.</p>
      *
      * @see #addRecurrentTask(Task)
      */
     public void start() {
-        thread.start();
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
     }
 
     /**
@@ -61,7 +91,22 @@ public class Messenger implements Runnable {
      * @param handler The handler to send to.
      */
     public void deliverMessage(final Message msg, final MessageHandler handler) {
-        enqueue(new MessageTask(msg, handler));
+        deliverMessage(msg, handler, handler);
+    }
+
+    /**
+     * <p>Convenience method to post a {@link Task} that delivers a {@link
+     * Message} to a {@link MessageHandler} to the queue of tasks to be
+     * executed, in order with all other messages delivered with the same
+     * order key.</p>
+     *
+     * @param msg      The message to send.
+     * @param handler  The handler to send to.
+     * @param orderKey The object, such as a session, whose messages are to be
+     *                 delivered in order.
+     */
+    public void deliverMessage(final Message msg, final MessageHandler handler, final Object orderKey) {
+        enqueue(new MessageTask(msg, handler), System.identityHashCode(orderKey));
     }
 
     /**
@@ -73,40 +118,90 @@ public class Messenger implements Runnable {
      * @param handler The handler to return to.
      */
     public void deliverReply(final Reply reply, final ReplyHandler handler) {
-        enqueue(new ReplyTask(reply, handler));
+        enqueue(new ReplyTask(reply, handler), System.identityHashCode(handler));
     }
 
     /**
-     * <p>Enqueues the given task in the list of tasks that this worker is to
-     * process. If this thread has been destroyed previously, this method
-     * invokes {@link Messenger.Task#destroy()}.</p>
+     * <p>Enqueues the given task in the list of tasks that the first thread is
+     * to process. If this has been destroyed previously, this method invokes
+     * {@link Messenger.Task#destroy()}.</p>
      *
      * @param task The task to enqueue.
      */
     public void enqueue(final Task task) {
+        enqueue(task, shards[0]);
+    }
+
+    /**
+     * <p>Enqueues the given task in the list of tasks that the thread owning
+     * the given key is to process. Tasks with the same key are run in the
+     * order they are enqueued. If this has been destroyed previously, this
+     * method invokes {@link Messenger.Task#destroy()}.</p>
+     *
+     * @param task The task to enqueue.
+     * @param key  The key deciding which thread will run the task.
+     */
+    public void enqueue(final Task task, final long key) {
+        enqueue(task, shardOf(key));
+    }
+
+    private void enqueue(final Task task, final Shard shard) {
         if (destroyed.get()) {
             task.destroy();
             return;
         }
-        synchronized (this) {
-            queue.offer(task);
-            if (queue.size() == 1) {
-                notify();
-            }
+        shard.enqueue(task);
+    }
+
+    private Shard shardOf(long key) {
+        if (shards.length == 1) {
+            return shards[0];
         }
+        int hash = (int)(key ^ (key >>> 32));
+        hash ^= (hash >>> 16);
+        return shards[Math.floorMod(hash * 0x9E3779B9, shards.length)];
     }
 
     /**
-     * <p>Handshakes with the internal thread. If this method is called using
-     * the messenger thread, this will deadlock.</p>
+     * <p>Returns the number of threads used by this.</p>
+     *
+     * @return The number of threads.
+     */
+    public int getNumThreads() {
+        return shards.length;
+    }
+
+    /**
+     * <p>Returns the number of tasks currently waiting in the queue of the
+     * given thread.</p>
+     *
+     * @param thread The index of the thread, less than {@link #getNumThreads()}.
+     * @return The queue depth.
+     */
+    public int getQueueDepth(int thread) {
+        return shards[thread].depth.get();
+    }
+
+    /**
+     * <p>Handshakes with the internal threads. This waits until all tasks
+     * enqueued before this was called have been run. A messenger thread calling
+     * this does not wait for itself, but may deadlock if another messenger
+     * thread is syncing at the same time, so this should not be called from
+     * tasks.</p>
      */
     public void sync() {
-        if (Thread.currentThread() == thread) {
-            return; // no need to wait for self
+        List<SyncTask> tasks = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            if (Thread.currentThread() == shard.thread) {
+                continue; // no need to wait for self
+            }
+            SyncTask task = new SyncTask();
+            enqueue(task, shard);
+            tasks.add(task);
+        }
+        for (SyncTask task : tasks) {
+            task.await();
         }
-        final SyncTask task = new SyncTask();
-        enqueue(task);
-        task.await();
     }
 
     /**
@@ -118,81 +213,116 @@ public class Messenger implements Runnable {
      * @return True if content existed and was destroyed.
      */
     public boolean destroy() {
-        boolean done = false;
-        enqueue(Terminate.INSTANCE);
-        if (!destroyed.getAndSet(true)) {
+        for (Shard shard : shards) {
+            enqueue(Terminate.INSTANCE, shard);
+        }
+        if (destroyed.getAndSet(true)) {
+            return false;
+        }
+        for (Shard shard : shards) {
             try {
-                synchronized (this) {
-                    while (!queue.isEmpty()) {
-                        wait();
-                    }
-                }
-                thread.join();
+                shard.thread.join();
             } catch (final InterruptedException e) {
                 // ignore
             }
-            done = true;
+            shard.destroyQueued(); // tasks that raced with the destroyed flag
         }
-        return done;
+        return true;
     }
 
     @Override
-    public void run() {
-        while (true) {
-            Task task = null;
-            synchronized (this) {
+    protected void finalize() throws Throwable {
+        try {
+            if (destroy()) {
+                log.log(LogLevel.WARNING, "Messenger destroyed by finalizer, please review application shutdown logic.");
+            }
+        } finally {
+            super.finalize();
+        }
+    }
+
+    /**
+     * <p>A single messenger thread and its task queue.</p>
+     */
+    private class Shard implements Runnable {
+
+        final Queue<Task> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger depth = new AtomicInteger(0);
+        final Thread thread;
+        final boolean runChildren;
+        volatile boolean sleeping = false;
+
+        Shard(String name, boolean runChildren) {
+            this.thread = new Thread(this, name);
+            this.runChildren = runChildren;
+            thread.setDaemon(true);
+        }
+
+        void enqueue(final Task task) {
+            queue.offer(task);
+            depth.incrementAndGet();
+            if (sleeping) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        Task poll() {
+            Task task = queue.poll();
+            if (task == null) {
+                sleeping = true;
                 if (queue.isEmpty()) {
-                    try {
-                        wait(100);
-                    } catch (final InterruptedException e) {
-                        continue;
-                    }
-                }
-                if (queue.size() > 0) {
-                    task = queue.poll();
+                    LockSupport.parkNanos(IDLE_WAIT_NANOS);
                 }
-            }
-            if (task == Terminate.INSTANCE) {
-                break;
+                sleeping = false;
+                task = queue.poll();
             }
             if (task != null) {
-                try {
-                    task.run();
-                } catch (final Exception e) {
-                    log.log(LogLevel.ERROR, "An exception was thrown while running " + task.getClass().getName(), e);
+                depth.decrementAndGet();
+            }
+            return task;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Task task = poll();
+                if (task == Terminate.INSTANCE) {
+                    break;
+                }
+                if (task != null) {
+                    try {
+                        task.run();
+                    } catch (final Exception e) {
+                        log.log(LogLevel.ERROR, "An exception was thrown while running " + task.getClass().getName(), e);
+                    }
+                    try {
+                        task.destroy();
+                    } catch (final Exception e) {
+                        log.warning("An exception was thrown while destroying " + task.getClass().getName() + ": " +
+                                    e.toString());
+                        log.warning("Someone, somewhere might have to wait indefinetly for something.");
+                    }
                 }
-                try {
-                    task.destroy();
-                } catch (final Exception e) {
-                    log.warning("An exception was thrown while destroying " + task.getClass().getName() + ": " +
-                                e.toString());
-                    log.warning("Someone, somewhere might have to wait indefinetly for something.");
+                if (runChildren) {
+                    for (final Task child : children) {
+                        child.run();
+                    }
                 }
             }
-            for (final Task child : children) {
-                child.run();
-            }
-        }
-        for (final Task child : children) {
-            child.destroy();
-        }
-        synchronized (this) {
-            while (!queue.isEmpty()) {
-                final Task task = queue.poll();
-                task.destroy();
+            if (runChildren) {
+                for (final Task child : children) {
+                    child.destroy();
+                }
             }
-            notify();
+            destroyQueued();
         }
-    }
 
-    @Override
-    protected void finalize() throws Throwable {
-        try {
-            if (destroy()) {
-                log.log(LogLevel.WARNING, "Messenger destroyed by finalizer, please review application shutdown logic.");
+        void destroyQueued() {
+            Task task;
+            while ((task = queue.poll()) != null) {
+                depth.decrementAndGet();
+                task.destroy();
             }
-        } finally {
-            super.finalize();
         }
     }
 
@@ -44,7 +44,7 @@ public final class SourceSession implements ReplyHandler, MessageBus.SendBlocked
      */
     SourceSession(MessageBus mbus, SourceSessionParams params) {
         this.mbus = mbus;
-        sequencer = new Sequencer(mbus);
+        sequencer = new Sequencer(msg -> mbus.handleMessage(msg, this));
         if (!params.hasReplyHandler()) {
              throw new NullPointerException("Reply handler is null.");
         }
@@ -5,17 +5,23 @@ import com.yahoo.concurrent.CopyOnWriteHashMap;
 import com.yahoo.messagebus.Reply;
 import com.yahoo.messagebus.routing.Route;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * @author thomasg
  */
 public class MessageBusMetricSet extends MetricSet {
     public MetricSet protocols = new MetricSet("protocols");
+    public MetricSet messenger = new MetricSet("messenger");
 
     private final CopyOnWriteHashMap<String, RouteMetricSet> routeMetrics = new CopyOnWriteHashMap<String, RouteMetricSet>();
+    private final List<ValueMetric<Integer>> messengerQueueDepths = new CopyOnWriteArrayList<>();
 
     public MessageBusMetricSet() {
         super("messagebus");
         addMetric(protocols);
+        addMetric(messenger);
     }
 
     public RouteMetricSet getRouteMetrics(Route r) {
@@ -35,6 +41,20 @@ public class MessageBusMetricSet extends MetricSet {
         return metric;
     }
 
+    /** Sets the number of tasks waiting in the queue of the given messenger thread */
+    public void setMessengerQueueDepth(int thread, int depth) {
+        while (messengerQueueDepths.size() <= thread) {
+            synchronized (messengerQueueDepths) {
+                if (messengerQueueDepths.size() <= thread) {
+                    ValueMetric<Integer> metric = new ValueMetric<>(String.valueOf(messengerQueueDepths.size()), 0, messenger);
+                    metric.setXmlTagName("queuedepth");
+                    messengerQueueDepths.add(metric);
+                }
+            }
+        }
+        messengerQueueDepths.get(thread).set(depth);
+    }
+
     public void updateMetrics(Reply reply, Route r) {
 
     }
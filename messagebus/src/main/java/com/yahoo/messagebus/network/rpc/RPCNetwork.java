@@ -64,6 +64,9 @@ public class RPCNetwork implements Network, MethodHandler {
     private final Mirror mirror;
     private final Register register;
     private final TreeMap<Version, RPCSendAdapter> sendAdapters = new TreeMap<>();
+    private final int maxBatchSize;
+    private final double batchLingerSecs;
+    private RPCSendBatch batchAdapter;
     private NetworkOwner owner;
     private final SlobrokConfigSubscriber slobroksConfig;
     private final LinkedHashMap<String, Route> lruRouteMap = new LinkedHashMap<>(10000, 0.5f, true);
@@ -84,6 +87,8 @@ public class RPCNetwork implements Network, MethodHandler {
     public RPCNetwork(RPCNetworkParams params, SlobrokConfigSubscriber slobrokConfig) {
         this.slobroksConfig = slobrokConfig;
         identity = params.getIdentity();
+        maxBatchSize = params.getMaxBatchSize();
+        batchLingerSecs = params.getBatchLingerSecs();
         orb = new Supervisor(new Transport());
         orb.setMaxInputBufferSize(params.getMaxInputBufferSize());
         orb.setMaxOutputBufferSize(params.getMaxOutputBufferSize());
@@ -185,6 +190,10 @@ public class RPCNetwork implements Network, MethodHandler {
         RPCSendAdapter adapter2 = new RPCSendV2();
         addSendAdapter(new Version(5), adapter1);
         addSendAdapter(new Version(6,149), adapter2);
+
+        // The batch method is always served, but batches are only sent when enabled.
+        batchAdapter = new RPCSendBatch(adapter2, maxBatchSize, batchLingerSecs);
+        batchAdapter.attach(this);
     }
 
     @Override
@@ -275,6 +284,9 @@ public class RPCNetwork implements Network, MethodHandler {
             }
             register.shutdown();
             mirror.shutdown();
+            if (batchAdapter != null) {
+                batchAdapter.destroy();
+            }
             listener.shutdown().join();
             orb.transport().shutdown().join();
             targetPool.flushTargets(true);
@@ -347,7 +359,13 @@ public class RPCNetwork implements Network, MethodHandler {
      */
     public RPCSendAdapter getSendAdapter(Version version) {
         Map.Entry<Version, RPCSendAdapter> lower = sendAdapters.floorEntry(version);
-        return (lower != null) ? lower.getValue() : null;
+        if (lower == null) {
+            return null;
+        }
+        if (maxBatchSize > 1 && lower.getValue() instanceof RPCSendV2) {
+            return batchAdapter;
+        }
+        return lower.getValue();
     }
 
     /**
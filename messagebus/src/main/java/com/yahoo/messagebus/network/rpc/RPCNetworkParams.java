@@ -20,6 +20,8 @@ public class RPCNetworkParams {
     private int maxInputBufferSize = 256 * 1024;
     private int maxOutputBufferSize = 256 * 1024;
     private double connectionExpireSecs = 30;
+    private int maxBatchSize = 1;
+    private double batchLingerSecs = 0.001;
 
     /**
      * Constructs a new instance of this class with reasonable default values.
@@ -42,6 +44,8 @@ public class RPCNetworkParams {
         connectionExpireSecs = params.connectionExpireSecs;
         maxInputBufferSize = params.maxInputBufferSize;
         maxOutputBufferSize = params.maxOutputBufferSize;
+        maxBatchSize = params.maxBatchSize;
+        batchLingerSecs = params.batchLingerSecs;
     }
 
     /**
@@ -207,4 +211,51 @@ public class RPCNetworkParams {
         this.maxOutputBufferSize = maxOutputBufferSize;
         return this;
     }
+
+    /**
+     * Returns the max number of messages to pack into a single request to a service. A value of 1 means that
+     * batching is disabled, which is the default.
+     *
+     * @return The max batch size.
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Sets the max number of messages to pack into a single request to a service. Setting this to a value larger
+     * than 1 enables batching, which requires all recipients to support the batch send method. Recipients which
+     * do not are sent one message per request.
+     *
+     * @param maxBatchSize The max batch size.
+     * @return This, to allow chaining.
+     */
+    public RPCNetworkParams setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Max batch size must be positive, got " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Returns the number of seconds an incomplete batch is held back waiting for more messages before it is sent.
+     *
+     * @return The linger time in seconds.
+     */
+    public double getBatchLingerSecs() {
+        return batchLingerSecs;
+    }
+
+    /**
+     * Sets the number of seconds an incomplete batch is held back waiting for more messages before it is sent.
+     * This is only used when batching is enabled.
+     *
+     * @param secs The linger time in seconds.
+     * @return This, to allow chaining.
+     */
+    public RPCNetworkParams setBatchLingerSecs(double secs) {
+        this.batchLingerSecs = secs;
+        return this;
+    }
 }
@@ -0,0 +1,642 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.messagebus.network.rpc;
+
+import com.yahoo.component.Version;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.concurrent.ThreadFactoryFactory;
+import com.yahoo.jrt.DataValue;
+import com.yahoo.jrt.Int32Value;
+import com.yahoo.jrt.Int8Value;
+import com.yahoo.jrt.Method;
+import com.yahoo.jrt.MethodHandler;
+import com.yahoo.jrt.Request;
+import com.yahoo.jrt.RequestWaiter;
+import com.yahoo.jrt.Values;
+import com.yahoo.messagebus.EmptyReply;
+import com.yahoo.messagebus.Error;
+import com.yahoo.messagebus.ErrorCode;
+import com.yahoo.messagebus.Message;
+import com.yahoo.messagebus.Protocol;
+import com.yahoo.messagebus.Reply;
+import com.yahoo.messagebus.ReplyHandler;
+import com.yahoo.messagebus.Routable;
+import com.yahoo.messagebus.Trace;
+import com.yahoo.messagebus.TraceLevel;
+import com.yahoo.messagebus.TraceNode;
+import com.yahoo.messagebus.routing.Route;
+import com.yahoo.messagebus.routing.RoutingNode;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Inspector;
+import com.yahoo.slime.Slime;
+import com.yahoo.text.Utf8;
+import com.yahoo.text.Utf8Array;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Implements the request adapter for method "mbus.slime.batch", which packs many messages to the same target into a
+ * single request. Messages are collected per {@link RPCTarget} until either the max batch size is reached or the
+ * oldest message has waited for the linger time, and are then sent as one slime encoded, compressed body. The
+ * recipient delivers each message separately, and returns all the replies in a single response once every message
+ * in the batch has been replied to. The replies are demultiplexed and delivered to their respective routing nodes.
+ *
+ * <p>The request waits for the message with the most time remaining, but each message keeps its own deadline: A
+ * message whose time runs out before the response arrives is replied to with a timeout error right away, and its
+ * reply in the response is discarded. A slow message therefore never holds the reply of another message past the
+ * deadline of that message.</p>
+ *
+ * <p>Since messages are only passed to the network after the throttle policy of their source session has admitted
+ * them, a batch never holds more messages than the throttle windows allow. When the windows are smaller than the
+ * batch size, batches are sent once the linger time expires.</p>
+ *
+ * <p>Messages that are sent without waiting for a result, and messages to recipients that do not support the batch
+ * method, are sent one at a time using the given fallback adapter.</p>
+ *
+ * @author agent
+ */
+public class RPCSendBatch implements MethodHandler, ReplyHandler, RequestWaiter, RPCSendAdapter {
+
+    private final static String METHOD_NAME = "mbus.slime.batch";
+    private final static String METHOD_PARAMS = "bixbix";
+    private final static String METHOD_RETURN = "bixbix";
+
+    private static final String VERSION_F = "version";
+    private static final String ROUTE_F = "route";
+    private static final String SESSION_F = "session";
+    private static final String PROTOCOL_F = "prot";
+    private static final String TRACELEVEL_F = "tracelevel";
+    private static final String TRACE_F = "trace";
+    private static final String USERETRY_F = "useretry";
+    private static final String RETRY_F = "retry";
+    private static final String RETRYDELAY_F = "retrydelay";
+    private static final String TIMEREMAINING_F = "timeleft";
+    private static final String ERRORS_F = "errors";
+    private static final String SERVICE_F = "service";
+    private static final String CODE_F = "code";
+    private static final String BLOB_F = "msg";
+    private static final String MSG_F = "msg";
+    private static final String MESSAGES_F = "messages";
+    private static final String REPLIES_F = "replies";
+
+    private final Compressor compressor = new Compressor(CompressionType.LZ4, 3, 0.90, 1024);
+    private final RPCSendAdapter fallback;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Map<RPCTarget, Batch> pending = new HashMap<>();
+    private final Set<String> unsupported = ConcurrentHashMap.newKeySet();
+    private final ScheduledThreadPoolExecutor timer =
+            new ScheduledThreadPoolExecutor(1, ThreadFactoryFactory.getDaemonThreadFactory("mbus.batch"));
+    private RPCNetwork net = null;
+    private String clientIdent = "client";
+    private String serverIdent = "server";
+
+    /**
+     * Creates a batching send adapter.
+     *
+     * @param fallback     The adapter used for messages that can not be batched.
+     * @param maxBatchSize The max number of messages in a single request.
+     * @param lingerSecs   The max number of seconds to hold back an incomplete batch.
+     */
+    public RPCSendBatch(RPCSendAdapter fallback, int maxBatchSize, double lingerSecs) {
+        this.fallback = fallback;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = (long)(lingerSecs * TimeUnit.SECONDS.toNanos(1));
+        timer.setRemoveOnCancelPolicy(true); // message timeouts are cancelled when their replies arrive
+    }
+
+    @Override
+    public void attach(RPCNetwork net) {
+        this.net = net;
+        String prefix = net.getIdentity().getServicePrefix();
+        if (prefix != null && prefix.length() > 0) {
+            clientIdent = "'" + prefix + "'";
+            serverIdent = clientIdent;
+        }
+        Method method = new Method(METHOD_NAME, METHOD_PARAMS, METHOD_RETURN, this);
+        method.methodDesc("Send a batch of message bus requests and get all their replies back.");
+        method.paramDesc(0, "header_encoding", "Encoding type of header.")
+                .paramDesc(1, "header_decoded_size", "Number of bytes after header decoding.")
+                .paramDesc(2, "header_payload", "Slime encoded header payload.")
+                .paramDesc(3, "body_encoding", "Encoding type of body.")
+                .paramDesc(4, "body_decoded_size", "Number of bytes after body decoding.")
+                .paramDesc(5, "body_payload", "Slime encoded body payload.");
+        method.returnDesc(0, "header_encoding", "Encoding type of header.")
+                .returnDesc(1, "header_decoded_size", "Number of bytes after header decoding.")
+                .returnDesc(2, "header_payload", "Slime encoded header payload.")
+                .returnDesc(3, "body_encoding", "Encoding type of body.")
+                .returnDesc(4, "body_decoded_size", "Number of bytes after body decoding.")
+                .returnDesc(5, "body_payload", "Slime encoded body payload.");
+        net.getSupervisor().addMethod(method);
+    }
+
+    @Override
+    public void send(RoutingNode recipient, Version version, byte[] payload, long timeRemaining) {
+        RPCServiceAddress address = (RPCServiceAddress)recipient.getServiceAddress();
+        Route route = new Route(recipient.getRoute());
+        if (maxBatchSize <= 1 || route.removeHop(0).getIgnoreResult() ||
+            unsupported.contains(address.getConnectionSpec().toString()))
+        {
+            fallback.send(recipient, version, payload, timeRemaining);
+            return;
+        }
+        Entry entry = new Entry(recipient, version, route, payload, timeRemaining);
+        RPCTarget target = address.getTarget();
+        Batch full = null;
+        synchronized (this) {
+            Batch batch = pending.get(target);
+            if (batch == null) {
+                batch = new Batch(target, address.getConnectionSpec().toString());
+                pending.put(target, batch);
+                long linger = Math.min(lingerNanos, TimeUnit.MILLISECONDS.toNanos(timeRemaining) / 2);
+                if ( ! timer.isShutdown()) {
+                    Batch lingering = batch;
+                    batch.lingerTask = timer.schedule(() -> flush(lingering), linger, TimeUnit.NANOSECONDS);
+                }
+            }
+            batch.entries.add(entry);
+            if (batch.entries.size() >= maxBatchSize || batch.lingerTask == null) {
+                pending.remove(target);
+                full = batch;
+            }
+        }
+        if (full != null) {
+            if (full.lingerTask != null) {
+                full.lingerTask.cancel(false);
+            }
+            sendBatch(full);
+        }
+    }
+
+    /**
+     * Sends all incomplete batches immediately and stops holding back messages. This is called when the network
+     * is shut down.
+     */
+    void destroy() {
+        List<Batch> batches;
+        synchronized (this) {
+            timer.shutdownNow();
+            batches = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        for (Batch batch : batches) {
+            sendBatch(batch);
+        }
+    }
+
+    private void flush(Batch batch) {
+        synchronized (this) {
+            if (pending.get(batch.target) != batch) {
+                return; // already sent
+            }
+            pending.remove(batch.target);
+        }
+        sendBatch(batch);
+    }
+
+    private void sendBatch(Batch batch) {
+        Slime slime = new Slime();
+        Cursor messages = slime.setObject().setArray(MESSAGES_F);
+        long maxTimeRemaining = 0;
+        for (Entry entry : batch.entries) {
+            long timeRemaining = entry.msg.getTimeRemainingNow();
+            if (timeRemaining <= 0) {
+                deliverError(entry, new Error(ErrorCode.TIMEOUT, "Aborting transmission because zero time remains."));
+                continue;
+            }
+            maxTimeRemaining = Math.max(maxTimeRemaining, timeRemaining);
+            Cursor m = messages.addObject();
+            m.setString(VERSION_F, entry.version.toString());
+            m.setString(ROUTE_F, entry.route.toString());
+            m.setString(SESSION_F, entry.address.getSessionName());
+            m.setString(PROTOCOL_F, entry.msg.getProtocol().toString());
+            m.setBool(USERETRY_F, entry.msg.getRetryEnabled());
+            m.setLong(RETRY_F, entry.msg.getRetry());
+            m.setLong(TIMEREMAINING_F, timeRemaining);
+            m.setLong(TRACELEVEL_F, entry.trace.getLevel());
+            m.setData(BLOB_F, entry.payload);
+            entry.payload = null; // allow garbage collection of the payload
+            batch.sent.add(entry);
+            scheduleTimeout(entry, timeRemaining);
+            if (entry.trace.shouldTrace(TraceLevel.SEND_RECEIVE)) {
+                entry.trace.trace(TraceLevel.SEND_RECEIVE,
+                        "Sending message (version " + entry.version + ") from " + clientIdent + " to '" +
+                                entry.address.getServiceName() + "' in a batch of " + batch.entries.size() +
+                                " with " + timeRemaining * 0.001 + " seconds timeout.");
+            }
+        }
+        if (batch.sent.isEmpty()) {
+            return;
+        }
+        Request req = new Request(METHOD_NAME);
+        Values v = req.parameters();
+        v.add(new Int8Value(CompressionType.NONE.getCode()));
+        v.add(new Int32Value(0));
+        v.add(new DataValue(new byte[0]));
+        Compressor.Compression compressionResult = compressor.compress(BinaryFormat.encode(slime));
+        v.add(new Int8Value(compressionResult.type().getCode()));
+        v.add(new Int32Value(compressionResult.uncompressedSize()));
+        v.add(new DataValue(compressionResult.data()));
+
+        batch.timeout = maxTimeRemaining * 0.001;
+        req.setContext(batch);
+        batch.target.getJRTTarget().invokeAsync(req, batch.timeout, this);
+        req.discardParameters(); // allow garbage collection of request parameters
+    }
+
+    /** Replies to the given entry with a timeout error when its time runs out, unless it is replied to before */
+    private void scheduleTimeout(Entry entry, long timeRemaining) {
+        synchronized (this) {
+            if (timer.isShutdown()) return;
+            entry.timeoutTask = timer.schedule(() -> expire(entry, timeRemaining), timeRemaining, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void expire(Entry entry, long timeout) {
+        if ( ! complete(entry)) return;
+        deliverError(entry, new Error(ErrorCode.TIMEOUT,
+                "A timeout occured while waiting for '" + entry.address.getServiceName() + "' (" +
+                        timeout * 0.001 + " seconds expired); the rest of its batch is still pending."));
+    }
+
+    /**
+     * Marks the given sent entry as replied to, and returns whether it was not already, in which case the caller
+     * must reply to it.
+     */
+    private static boolean complete(Entry entry) {
+        if (entry.completed.getAndSet(true)) return false;
+        ScheduledFuture<?> timeoutTask = entry.timeoutTask;
+        if (timeoutTask != null) {
+            timeoutTask.cancel(false);
+        }
+        return true;
+    }
+
+    @Override
+    public void handleRequestDone(Request req) {
+        net.getExecutor().execute(() -> doRequestDone(req));
+    }
+
+    private void doRequestDone(Request req) {
+        Batch batch = (Batch)req.getContext();
+        if ( ! req.checkReturnTypes(METHOD_RETURN)) {
+            if (req.errorCode() == com.yahoo.jrt.ErrorCode.NO_SUCH_METHOD) {
+                // The recipient does not know how to handle batches, send these messages one by one instead.
+                unsupported.add(batch.spec);
+                for (Entry entry : batch.sent) {
+                    if (complete(entry)) {
+                        resend(entry);
+                    }
+                }
+                return;
+            }
+            for (Entry entry : batch.sent) {
+                if (complete(entry)) {
+                    deliverError(entry, toError(req, entry.address.getServiceName(), batch.timeout));
+                }
+            }
+            return;
+        }
+        Values ret = req.returnValues();
+        CompressionType compression = CompressionType.valueOf(ret.get(3).asInt8());
+        byte[] slimeBytes = compressor.decompress(ret.get(5).asData(), compression, ret.get(4).asInt32());
+        Inspector replies = BinaryFormat.decode(slimeBytes).get().field(REPLIES_F);
+        for (int i = 0; i < batch.sent.size(); i++) {
+            Entry entry = batch.sent.get(i);
+            if ( ! complete(entry)) {
+                continue; // timed out while waiting for the rest of the batch
+            }
+            if (i >= replies.entries()) {
+                deliverError(entry, new Error(ErrorCode.NETWORK_ERROR,
+                        "A network error occured for '" + entry.address.getServiceName() + "'; " +
+                                "missing reply in batch response."));
+                continue;
+            }
+            Reply reply = createReply(replies.entry(i), entry.address.getServiceName(), entry.trace);
+            deliver(entry, reply);
+        }
+    }
+
+    private void resend(Entry entry) {
+        long timeRemaining = entry.msg.getTimeRemainingNow();
+        if (timeRemaining <= 0) {
+            deliverError(entry, new Error(ErrorCode.TIMEOUT, "Aborting transmission because zero time remains."));
+            return;
+        }
+        byte[] payload;
+        try {
+            payload = net.getOwner().getProtocol(entry.msg.getProtocol()).encode(entry.version, entry.msg);
+        } catch (RuntimeException e) {
+            deliverError(entry, new Error(ErrorCode.ENCODE_ERROR, e.toString()));
+            return;
+        }
+        fallback.send(entry.recipient, entry.version, payload, timeRemaining);
+    }
+
+    private static Error toError(Request req, String serviceName, double timeout) {
+        switch (req.errorCode()) {
+            case com.yahoo.jrt.ErrorCode.TIMEOUT:
+                return new Error(ErrorCode.TIMEOUT,
+                        "A timeout occured while waiting for '" + serviceName + "' (" +
+                                timeout + " seconds expired); " + req.errorMessage());
+            case com.yahoo.jrt.ErrorCode.CONNECTION:
+                return new Error(ErrorCode.CONNECTION_ERROR,
+                        "A connection error occured for '" + serviceName + "'; " + req.errorMessage());
+            default:
+                return new Error(ErrorCode.NETWORK_ERROR,
+                        "A network error occured for '" + serviceName + "'; " + req.errorMessage());
+        }
+    }
+
+    private Reply createReply(Inspector root, String serviceName, Trace trace) {
+        Version version = new Version(root.field(VERSION_F).asString());
+        byte[] payload = root.field(BLOB_F).asData();
+
+        Reply reply = null;
+        Error error = null;
+        if (payload.length > 0) {
+            Utf8Array protocolName = new Utf8Array(root.field(PROTOCOL_F).asUtf8());
+            Protocol protocol = net.getOwner().getProtocol(protocolName);
+            Routable routable = (protocol != null) ? protocol.decode(version, payload) : null;
+            if (protocol == null) {
+                error = new Error(ErrorCode.UNKNOWN_PROTOCOL,
+                        "Protocol '" + protocolName + "' is not known by " + clientIdent + ".");
+            } else if (routable == null) {
+                error = new Error(ErrorCode.DECODE_ERROR,
+                        "Protocol '" + protocol.getName() + "' failed to decode routable.");
+            } else if ( ! (routable instanceof Reply)) {
+                error = new Error(ErrorCode.DECODE_ERROR,
+                        "Payload decoded to a message when expecting a reply.");
+            } else {
+                reply = (Reply)routable;
+            }
+        }
+        if (reply == null) {
+            reply = new EmptyReply();
+        }
+        if (error != null) {
+            reply.addError(error);
+        }
+        reply.setRetryDelay(root.field(RETRYDELAY_F).asDouble());
+
+        Inspector errors = root.field(ERRORS_F);
+        for (int i = 0; i < errors.entries(); i++) {
+            Inspector e = errors.entry(i);
+            String service = e.field(SERVICE_F).asString();
+            reply.addError(new Error((int)e.field(CODE_F).asLong(), e.field(MSG_F).asString(),
+                    (service != null && service.length() > 0) ? service : serviceName));
+        }
+        if (trace.getLevel() > 0) {
+            trace.getRoot().addChild(TraceNode.decode(root.field(TRACE_F).asString()));
+        }
+        return reply;
+    }
+
+    private void deliverError(Entry entry, Error error) {
+        Reply reply = new EmptyReply();
+        reply.addError(error);
+        deliver(entry, reply);
+    }
+
+    private void deliver(Entry entry, Reply reply) {
+        if (entry.trace.shouldTrace(TraceLevel.SEND_RECEIVE)) {
+            entry.trace.trace(TraceLevel.SEND_RECEIVE,
+                    "Reply (type " + reply.getType() + ") received at " + clientIdent + ".");
+        }
+        reply.getTrace().swap(entry.trace);
+        net.getOwner().deliverReply(reply, entry.recipient);
+    }
+
+    @Override
+    public void invoke(Request request) {
+        request.detach();
+        net.getExecutor().execute(() -> doInvoke(request));
+    }
+
+    private void doInvoke(Request request) {
+        Values args = request.parameters();
+        CompressionType compression = CompressionType.valueOf(args.get(3).asInt8());
+        byte[] slimeBytes = compressor.decompress(args.get(5).asData(), compression, args.get(4).asInt32());
+        request.discardParameters(); // allow garbage collection of request parameters
+
+        Inspector messages = BinaryFormat.decode(slimeBytes).get().field(MESSAGES_F);
+        Response response = new Response(request, messages.entries());
+        if (messages.entries() == 0) {
+            returnResponse(response);
+            return;
+        }
+        for (int i = 0; i < messages.entries(); i++) {
+            doInvoke(response, i, messages.entry(i));
+        }
+    }
+
+    private void doInvoke(Response response, int index, Inspector root) {
+        Version version = new Version(root.field(VERSION_F).asString());
+        Utf8Array protocolName = new Utf8Array(Utf8.toBytes(root.field(PROTOCOL_F).asString()));
+        int traceLevel = (int)root.field(TRACELEVEL_F).asLong();
+        ReplyContext ctx = new ReplyContext(response, index, version);
+
+        // Make sure that the owner understands the protocol.
+        Protocol protocol = net.getOwner().getProtocol(protocolName);
+        if (protocol == null) {
+            replyError(ctx, traceLevel,
+                    new Error(ErrorCode.UNKNOWN_PROTOCOL,
+                            "Protocol '" + protocolName + "' is not known by " + serverIdent + "."));
+            return;
+        }
+        Routable routable = protocol.decode(version, root.field(BLOB_F).asData());
+        if (routable == null) {
+            replyError(ctx, traceLevel,
+                    new Error(ErrorCode.DECODE_ERROR,
+                            "Protocol '" + protocol.getName() + "' failed to decode routable."));
+            return;
+        }
+        if (routable instanceof Reply) {
+            replyError(ctx, traceLevel,
+                    new Error(ErrorCode.DECODE_ERROR,
+                            "Payload decoded to a reply when expecting a message."));
+            return;
+        }
+        Message msg = (Message)routable;
+        String route = root.field(ROUTE_F).asString();
+        String session = root.field(SESSION_F).asString();
+        if (route != null && route.length() > 0) {
+            msg.setRoute(net.getRoute(route));
+        }
+        msg.setContext(ctx);
+        msg.pushHandler(this);
+        msg.setRetryEnabled(root.field(USERETRY_F).asBool());
+        msg.setRetry((int)root.field(RETRY_F).asLong());
+        msg.setTimeReceivedNow();
+        msg.setTimeRemaining(root.field(TIMEREMAINING_F).asLong());
+        msg.getTrace().setLevel(traceLevel);
+        if (msg.getTrace().shouldTrace(TraceLevel.SEND_RECEIVE)) {
+            msg.getTrace().trace(TraceLevel.SEND_RECEIVE,
+                    "Message (type " + msg.getType() + ") received at " + serverIdent + " for session '" + session + "'.");
+        }
+        net.getOwner().deliverMessage(msg, session);
+    }
+
+    @Override
+    public void handleReply(Reply reply) {
+        ReplyContext ctx = (ReplyContext)reply.getContext();
+        reply.setContext(null);
+
+        // Add trace information.
+        if (reply.getTrace().shouldTrace(TraceLevel.SEND_RECEIVE)) {
+            reply.getTrace().trace(TraceLevel.SEND_RECEIVE,
+                    "Sending reply (version " + ctx.version + ") from " + serverIdent + ".");
+        }
+
+        // Encode the reply and return the request once all messages in the batch are replied to.
+        byte[] payload = new byte[0];
+        if (reply.getType() != 0) {
+            Protocol protocol = net.getOwner().getProtocol(reply.getProtocol());
+            if (protocol != null) {
+                payload = protocol.encode(ctx.version, reply);
+            }
+            if (payload == null || payload.length == 0) {
+                reply.addError(new Error(ErrorCode.ENCODE_ERROR,
+                        "An error occured while encoding the reply."));
+            }
+        }
+        if (ctx.response.setReply(ctx.index, reply, ctx.version, payload)) {
+            returnResponse(ctx.response);
+        }
+    }
+
+    private void returnResponse(Response response) {
+        Values ret = response.request.returnValues();
+        ret.add(new Int8Value(CompressionType.NONE.getCode()));
+        ret.add(new Int32Value(0));
+        ret.add(new DataValue(new byte[0]));
+
+        Slime slime = new Slime();
+        Cursor replies = slime.setObject().setArray(REPLIES_F);
+        for (int i = 0; i < response.replies.length; i++) {
+            Reply reply = response.replies[i];
+            Cursor root = replies.addObject();
+            root.setString(VERSION_F, response.versions[i].toString());
+            root.setDouble(RETRYDELAY_F, reply.getRetryDelay());
+            root.setString(PROTOCOL_F, reply.getProtocol().toString());
+            root.setData(BLOB_F, response.payloads[i]);
+            if (reply.getTrace().getLevel() > 0) {
+                root.setString(TRACE_F, reply.getTrace().getRoot().encode());
+            }
+            if (reply.getNumErrors() > 0) {
+                Cursor array = root.setArray(ERRORS_F);
+                for (int j = 0; j < reply.getNumErrors(); j++) {
+                    Cursor e = array.addObject();
+                    Error mbusE = reply.getError(j);
+                    e.setLong(CODE_F, mbusE.getCode());
+                    e.setString(MSG_F, mbusE.getMessage());
+                    if (mbusE.getService() != null) {
+                        e.setString(SERVICE_F, mbusE.getService());
+                    }
+                }
+            }
+        }
+        Compressor.Compression compressionResult = compressor.compress(BinaryFormat.encode(slime));
+        ret.add(new Int8Value(compressionResult.type().getCode()));
+        ret.add(new Int32Value(compressionResult.uncompressedSize()));
+        ret.add(new DataValue(compressionResult.data()));
+        response.request.returnRequest();
+    }
+
+    private void replyError(ReplyContext ctx, int traceLevel, Error err) {
+        Reply reply = new EmptyReply();
+        reply.setContext(ctx);
+        reply.getTrace().setLevel(traceLevel);
+        reply.addError(err);
+        handleReply(reply);
+    }
+
+    /** A message waiting to be sent, or waiting for its reply. */
+    private static class Entry {
+
+        final RoutingNode recipient;
+        final RPCServiceAddress address;
+        final Message msg;
+        final Version version;
+        final Route route;
+        final Trace trace;
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        byte[] payload;
+        volatile ScheduledFuture<?> timeoutTask = null;
+
+        Entry(RoutingNode recipient, Version version, Route route, byte[] payload, long timeRemaining) {
+            this.recipient = recipient;
+            this.address = (RPCServiceAddress)recipient.getServiceAddress();
+            this.msg = recipient.getMessage();
+            this.version = version;
+            this.route = route;
+            this.trace = new Trace(recipient.getTrace().getLevel());
+            this.payload = payload;
+        }
+    }
+
+    /** The messages collected for a single target. */
+    private static class Batch {
+
+        final RPCTarget target;
+        final String spec;
+        final List<Entry> entries = new ArrayList<>();
+        final List<Entry> sent = new ArrayList<>();
+        ScheduledFuture<?> lingerTask = null;
+        double timeout;
+
+        Batch(RPCTarget target, String spec) {
+            this.target = target;
+            this.spec = spec;
+        }
+    }
+
+    /** The replies collected for a received batch. */
+    private static class Response {
+
+        final Request request;
+        final Reply[] replies;
+        final Version[] versions;
+        final byte[][] payloads;
+        int pending;
+
+        Response(Request request, int size) {
+            this.request = request;
+            this.replies = new Reply[size];
+            this.versions = new Version[size];
+            this.payloads = new byte[size][];
+            this.pending = size;
+        }
+
+        /** Stores the reply at the given index, and returns whether this was the last reply to arrive. */
+        synchronized boolean setReply(int index, Reply reply, Version version, byte[] payload) {
+            replies[index] = reply;
+            versions[index] = version;
+            payloads[index] = payload;
+            return --pending == 0;
+        }
+    }
+
+    private static class ReplyContext {
+
+        final Response response;
+        final int index;
+        final Version version;
+
+        ReplyContext(Response response, int index, Version version) {
+            this.response = response;
+            this.index = index;
+            this.version = version;
+        }
+    }
+}
@@ -16,6 +16,11 @@ package com.yahoo.messagebus.routing;
  * </ul>
  * <p>
  * This class is pluggable per template point in the address of a hop.
+ * <p>
+ * A policy instance is shared by all messages routed through it. When the message bus runs more than one messenger
+ * thread (see {@link com.yahoo.messagebus.MessageBusParams#setNumMessengerThreads}), {@link #select} and
+ * {@link #merge} are called concurrently from several threads for different messages, so implementations
+ * must be thread safe. The merge of a message is always called after its select has returned.
  *
  * @author bratseth
  * @author Simon Thoresen
@@ -1,11 +1,19 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.messagebus;
 
+import com.yahoo.messagebus.test.SimpleMessage;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -95,6 +103,151 @@ public class MessengerTestCase {
         assertTrue(tryMessenger(msn));
     }
 
+    @Test
+    public void requireThatTasksWithSameKeyAreRunInOrder() throws InterruptedException {
+        Messenger msn = new Messenger(4);
+        msn.start();
+        int numKeys = 16;
+        int numTasks = 1000;
+        List<List<Integer>> executed = new ArrayList<>();
+        for (int key = 0; key < numKeys; ++key) {
+            executed.add(Collections.synchronizedList(new ArrayList<>()));
+        }
+        CountDownLatch done = new CountDownLatch(numKeys * numTasks);
+        for (int i = 0; i < numTasks; ++i) {
+            for (int key = 0; key < numKeys; ++key) {
+                int task = i;
+                List<Integer> list = executed.get(key);
+                msn.enqueue(new Messenger.Task() {
+                    @Override
+                    public void run() {
+                        list.add(task);
+                    }
+
+                    @Override
+                    public void destroy() {
+                        done.countDown();
+                    }
+                }, key);
+            }
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        for (List<Integer> list : executed) {
+            assertEquals(numTasks, list.size());
+            for (int i = 0; i < numTasks; ++i) {
+                assertEquals(i, list.get(i).intValue());
+            }
+        }
+        msn.destroy();
+    }
+
+    @Test
+    public void requireThatMessagesWithSameOrderKeyAreDeliveredInOrderRegardlessOfSequenceId() throws InterruptedException {
+        Messenger msn = new Messenger(4);
+        msn.start();
+        int numMessages = 1000;
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(numMessages);
+        MessageHandler handler = msg -> {
+            delivered.add(((SimpleMessage)msg).getValue());
+            done.countDown();
+        };
+        Object session = new Object();
+        for (int i = 0; i < numMessages; ++i) {
+            long sequenceId = i;
+            msn.deliverMessage(new SimpleMessage(String.valueOf(i)) {
+
+                @Override
+                public boolean hasSequenceId() {
+                    return true;
+                }
+
+                @Override
+                public long getSequenceId() {
+                    return sequenceId;
+                }
+            }, handler, session);
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        for (int i = 0; i < numMessages; ++i) {
+            assertEquals(String.valueOf(i), delivered.get(i));
+        }
+        msn.destroy();
+    }
+
+    @Test
+    public void requireThatTasksAreSpreadOverThreads() throws InterruptedException {
+        Messenger msn = new Messenger(4);
+        assertEquals(4, msn.getNumThreads());
+        msn.start();
+        Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+        for (int key = 0; key < 64; ++key) {
+            msn.enqueue(new Messenger.Task() {
+                @Override
+                public void run() {
+                    threads.add(Thread.currentThread().getName());
+                }
+
+                @Override
+                public void destroy() {
+
+                }
+            }, key);
+        }
+        msn.sync();
+        assertEquals(4, threads.size());
+        msn.destroy();
+    }
+
+    @Test
+    public void requireThatQueueDepthIsTracked() throws InterruptedException {
+        Messenger msn = new Messenger(2);
+        msn.start();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        msn.enqueue(new Messenger.Task() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocker.await(60, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+
+            @Override
+            public void destroy() {
+
+            }
+        });
+        assertTrue(started.await(60, TimeUnit.SECONDS));
+        MyTask last = new MyTask();
+        msn.enqueue(new MyTask());
+        msn.enqueue(last);
+        assertEquals(2, msn.getQueueDepth(0));
+        assertEquals(0, msn.getQueueDepth(1));
+        blocker.countDown();
+        assertTrue(last.destroyLatch.await(60, TimeUnit.SECONDS));
+        assertEquals(0, msn.getQueueDepth(0));
+        msn.destroy();
+    }
+
+    @Test
+    public void requireThatPendingTasksAreDestroyed() {
+        Messenger msn = new Messenger(3);
+        MyTask task = new MyTask();
+        msn.enqueue(task, 17);
+        assertTrue(msn.destroy());
+        assertEquals(1, task.runLatch.getCount());
+        assertEquals(0, task.destroyLatch.getCount());
+        assertFalse(msn.destroy());
+
+        MyTask late = new MyTask();
+        msn.enqueue(late);
+        assertEquals(0, late.destroyLatch.getCount());
+    }
+
     private static boolean tryMessenger(Messenger msn) {
         MyTask task = new MyTask();
         msn.enqueue(task);
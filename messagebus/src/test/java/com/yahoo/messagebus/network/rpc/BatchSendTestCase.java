@@ -0,0 +1,167 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.messagebus.network.rpc;
+
+import com.yahoo.component.Version;
+import com.yahoo.jrt.ListenFailedException;
+import com.yahoo.jrt.slobrok.server.Slobrok;
+import com.yahoo.messagebus.*;
+import com.yahoo.messagebus.network.Identity;
+import com.yahoo.messagebus.network.rpc.test.TestServer;
+import com.yahoo.messagebus.routing.Route;
+import com.yahoo.messagebus.test.Receptor;
+import com.yahoo.messagebus.test.SimpleMessage;
+import com.yahoo.messagebus.test.SimpleProtocol;
+import com.yahoo.messagebus.test.SimpleReply;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent
+ */
+public class BatchSendTestCase {
+
+    Slobrok slobrok;
+    TestServer srcServer, dstServer;
+    SourceSession srcSession;
+    DestinationSession dstSession;
+
+    @Before
+    public void setUp() throws ListenFailedException, UnknownHostException {
+        slobrok = new Slobrok();
+        dstServer = new TestServer(
+                new MessageBusParams().addProtocol(new SimpleProtocol()),
+                new RPCNetworkParams().setIdentity(new Identity("dst")).setSlobrokConfigId(TestServer.getSlobrokConfig(slobrok)));
+        dstSession = dstServer.mb.createDestinationSession(
+                new DestinationSessionParams().setName("session").setMessageHandler(new Receptor()));
+        srcServer = new TestServer(
+                new MessageBusParams().addProtocol(new SimpleProtocol()),
+                new RPCNetworkParams().setSlobrokConfigId(TestServer.getSlobrokConfig(slobrok))
+                                      .setMaxBatchSize(8).setBatchLingerSecs(0.01));
+        srcSession = srcServer.mb.createSourceSession(
+                new SourceSessionParams().setTimeout(600.0).setReplyHandler(new Receptor()));
+        assertTrue(srcServer.waitSlobrok("dst/session", 1));
+    }
+
+    @After
+    public void tearDown() {
+        slobrok.stop();
+        dstSession.destroy();
+        dstServer.destroy();
+        srcSession.destroy();
+        srcServer.destroy();
+    }
+
+    @Test
+    public void requireThatBatchAdapterIsSelectedWhenEnabled() {
+        assertTrue(srcServer.net.getSendAdapter(new Version(6,148)) instanceof RPCSendV1);
+        assertTrue(srcServer.net.getSendAdapter(new Version(6,149)) instanceof RPCSendBatch);
+        assertTrue(dstServer.net.getSendAdapter(new Version(6,149)) instanceof RPCSendV2);
+    }
+
+    @Test
+    public void requireThatBatchedMessagesGetTheirOwnReplies() {
+        int numMessages = 18; // two full batches and one which is sent when the linger time expires
+        for (int i = 0; i < numMessages; i++) {
+            assertTrue(srcSession.send(new SimpleMessage("msg" + i), Route.parse("dst/session")).isAccepted());
+        }
+        Receptor dstHandler = (Receptor)dstSession.getMessageHandler();
+        for (int i = 0; i < numMessages; i++) {
+            Message msg = dstHandler.getMessage(60);
+            assertNotNull(msg);
+            Reply reply = new SimpleReply("re:" + ((SimpleMessage)msg).getValue());
+            reply.swapState(msg);
+            dstSession.reply(reply);
+        }
+        Receptor srcHandler = (Receptor)srcSession.getReplyHandler();
+        Set<String> replies = new HashSet<>();
+        for (int i = 0; i < numMessages; i++) {
+            Reply reply = srcHandler.getReply(60);
+            assertNotNull(reply);
+            assertFalse(reply.hasErrors());
+            assertEquals("re:" + ((SimpleMessage)reply.getMessage()).getValue(), ((SimpleReply)reply).getValue());
+            replies.add(((SimpleReply)reply).getValue());
+        }
+        assertEquals(numMessages, replies.size());
+    }
+
+    @Test
+    public void requireThatErrorsAreReturnedPerMessage() {
+        assertTrue(srcSession.send(new SimpleMessage("foo"), Route.parse("dst/session")).isAccepted());
+        assertTrue(srcSession.send(new SimpleMessage("bar"), Route.parse("dst/session")).isAccepted());
+        Receptor dstHandler = (Receptor)dstSession.getMessageHandler();
+        for (int i = 0; i < 2; i++) {
+            Message msg = dstHandler.getMessage(60);
+            assertNotNull(msg);
+            Reply reply = new SimpleReply(((SimpleMessage)msg).getValue());
+            reply.swapState(msg);
+            if (((SimpleMessage)msg).getValue().equals("bar")) {
+                reply.addError(new com.yahoo.messagebus.Error(ErrorCode.APP_FATAL_ERROR, "bad bar"));
+            }
+            dstSession.reply(reply);
+        }
+        Receptor srcHandler = (Receptor)srcSession.getReplyHandler();
+        for (int i = 0; i < 2; i++) {
+            Reply reply = srcHandler.getReply(60);
+            assertNotNull(reply);
+            String value = ((SimpleMessage)reply.getMessage()).getValue();
+            assertEquals(value.equals("bar"), reply.hasErrors());
+        }
+    }
+
+    @Test
+    public void requireThatSlowMessageDoesNotHoldBackTimeoutOfOtherMessagesInItsBatch() throws ListenFailedException {
+        // A batch is only sent once it holds both messages
+        TestServer server = new TestServer(
+                new MessageBusParams().addProtocol(new SimpleProtocol()),
+                new RPCNetworkParams().setSlobrokConfigId(TestServer.getSlobrokConfig(slobrok))
+                                      .setMaxBatchSize(2).setBatchLingerSecs(60));
+        SourceSession session = server.mb.createSourceSession(
+                new SourceSessionParams().setTimeout(600.0).setReplyHandler(new Receptor()));
+        try {
+            assertTrue(server.waitSlobrok("dst/session", 1));
+            assertTrue(session.send(new SimpleMessage("slow"), Route.parse("dst/session")).isAccepted());
+            Message shortDeadline = new SimpleMessage("short");
+            shortDeadline.setTimeRemaining(1000);
+            assertTrue(session.send(shortDeadline, Route.parse("dst/session")).isAccepted());
+
+            Receptor dstHandler = (Receptor)dstSession.getMessageHandler();
+            Map<String, Message> received = new HashMap<>();
+            for (int i = 0; i < 2; i++) {
+                Message msg = dstHandler.getMessage(60);
+                assertNotNull(msg);
+                received.put(((SimpleMessage)msg).getValue(), msg);
+            }
+
+            // The short deadline message times out while the slow message in its batch is still pending
+            Receptor srcHandler = (Receptor)session.getReplyHandler();
+            Reply reply = srcHandler.getReply(60);
+            assertNotNull(reply);
+            assertEquals("short", ((SimpleMessage)reply.getMessage()).getValue());
+            assertEquals(ErrorCode.TIMEOUT, reply.getError(0).getCode());
+
+            for (String value : new String[] { "short", "slow" }) {
+                reply = new SimpleReply("re:" + value);
+                reply.swapState(received.get(value));
+                dstSession.reply(reply);
+            }
+            reply = srcHandler.getReply(60);
+            assertNotNull(reply);
+            assertFalse(reply.hasErrors());
+            assertEquals("re:slow", ((SimpleReply)reply).getValue());
+            assertNull("The late reply to the timed out message is discarded", srcHandler.getReply(1));
+        }
+        finally {
+            session.destroy();
+            server.destroy();
+        }
+    }
+}
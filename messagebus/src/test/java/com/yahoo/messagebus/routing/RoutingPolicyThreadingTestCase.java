@@ -0,0 +1,128 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.messagebus.routing;
+
+import com.yahoo.messagebus.DestinationSession;
+import com.yahoo.messagebus.DestinationSessionParams;
+import com.yahoo.messagebus.EmptyReply;
+import com.yahoo.messagebus.MessageBus;
+import com.yahoo.messagebus.MessageBusParams;
+import com.yahoo.messagebus.Reply;
+import com.yahoo.messagebus.SourceSession;
+import com.yahoo.messagebus.SourceSessionParams;
+import com.yahoo.messagebus.network.local.LocalNetwork;
+import com.yahoo.messagebus.network.local.LocalWire;
+import com.yahoo.messagebus.test.SimpleMessage;
+import com.yahoo.messagebus.test.SimpleProtocol;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a stateful routing policy, shared by all messages, sees consistent select and merge calls
+ * when the message bus runs several messenger threads.
+ *
+ * @author agent
+ */
+public class RoutingPolicyThreadingTestCase {
+
+    private static final int numSessions = 8;
+    private static final int messagesPerSession = 200;
+
+    @Test
+    public void requireThatStatefulPolicyIsConsistentWithMultipleMessengerThreads() throws InterruptedException {
+        LocalWire wire = new LocalWire();
+
+        MessageBus dstBus = new MessageBus(new LocalNetwork(wire),
+                                           new MessageBusParams().addProtocol(new SimpleProtocol()).setRetryPolicy(null));
+        AtomicReference<DestinationSession> dst = new AtomicReference<>();
+        dst.set(dstBus.createDestinationSession(new DestinationSessionParams().setMessageHandler(message -> {
+            Reply reply = new EmptyReply();
+            reply.swapState(message);
+            dst.get().reply(reply);
+        })));
+
+        CountingPolicy policy = new CountingPolicy(Route.parse(dst.get().getConnectionSpec()));
+        SimpleProtocol protocol = new SimpleProtocol();
+        protocol.addPolicyFactory("Counting", param -> policy);
+        MessageBus srcBus = new MessageBus(new LocalNetwork(wire),
+                                           new MessageBusParams().addProtocol(protocol)
+                                                                 .setRetryPolicy(null)
+                                                                 .setNumMessengerThreads(4));
+        BlockingQueue<Reply> replies = new LinkedBlockingQueue<>();
+        List<SourceSession> sources = new ArrayList<>();
+        for (int i = 0; i < numSessions; i++)
+            sources.add(srcBus.createSourceSession(new SourceSessionParams().setTimeout(600.0)
+                                                                            .setThrottlePolicy(null)
+                                                                            .setReplyHandler(replies::add)));
+
+        for (int i = 0; i < messagesPerSession; i++)
+            for (SourceSession source : sources)
+                assertTrue(source.send(new SimpleMessage("message " + i), Route.parse("[Counting]")).isAccepted());
+
+        for (int i = 0; i < numSessions * messagesPerSession; i++) {
+            Reply reply = replies.poll(60, TimeUnit.SECONDS);
+            assertNotNull("Reply " + i, reply);
+            assertFalse(reply.getTrace().toString(), reply.hasErrors());
+        }
+        synchronized (policy) {
+            assertEquals(numSessions * messagesPerSession, policy.selected);
+            assertEquals("Each message is merged exactly once", numSessions * messagesPerSession, policy.merged.size());
+        }
+        assertTrue("The policy is called from several threads", policy.threads.size() > 1);
+
+        for (SourceSession source : sources)
+            source.destroy();
+        srcBus.destroy();
+        dst.get().destroy();
+        dstBus.destroy();
+    }
+
+    /** A policy which numbers the messages it selects for, and records the numbers it merges */
+    private static class CountingPolicy implements RoutingPolicy {
+
+        final Route route;
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+        int selected = 0;
+        final Set<Integer> merged = new HashSet<>();
+
+        CountingPolicy(Route route) {
+            this.route = route;
+        }
+
+        @Override
+        public void select(RoutingContext context) {
+            threads.add(Thread.currentThread());
+            synchronized (this) {
+                context.setContext(selected++);
+            }
+            context.addChild(route);
+        }
+
+        @Override
+        public void merge(RoutingContext context) {
+            threads.add(Thread.currentThread());
+            synchronized (this) {
+                merged.add((Integer)context.getContext());
+            }
+            context.setReply(context.getChildIterator().removeReply());
+        }
+
+        @Override
+        public void destroy() { }
+
+    }
+
+}
@@ -94,6 +94,12 @@ public class CuratorDatabase {
 
     public Optional<byte[]> getData(Path path) { return getCache().getData(path); }
 
+    /** Returns the current change generation of this database, which is increased by every write transaction */
+    public long generation() { return getCache().generation(); }
+
+    /** Returns whether reads are served from a cache which is valid for as long as the generation is unchanged */
+    public boolean isCaching() { return useCache; }
+
     private CuratorDatabaseCache getCache() {
         CuratorDatabaseCache cache = this.cache.get();
         long currentCuratorGeneration = changeGenerationCounter.get();
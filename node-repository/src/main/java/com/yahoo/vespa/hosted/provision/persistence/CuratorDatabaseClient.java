@@ -24,11 +24,14 @@ import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -55,6 +58,9 @@ public class CuratorDatabaseClient {
 
     private final CuratorDatabase curatorDatabase;
 
+    /** The last snapshot of deserialized nodes, which is current if the database caches and is at its generation */
+    private final AtomicReference<NodeSnapshot> nodeSnapshot = new AtomicReference<>(NodeSnapshot.empty);
+
     private final Clock clock;
     
     private final Zone zone;
@@ -229,16 +235,9 @@ public class CuratorDatabaseClient {
      * If no states are given this returns all nodes.
      */
     public List<Node> getNodes(Node.State ... states) {
-        List<Node> nodes = new ArrayList<>();
         if (states.length == 0)
             states = Node.State.values();
-        for (Node.State state : states) {
-            for (String hostname : curatorDatabase.getChildren(toPath(state))) {
-                Optional<Node> node = getNode(hostname, state);
-                if (node.isPresent()) nodes.add(node.get()); // node might disappear between getChildren and getNode
-            }
-        }
-        return nodes;
+        return nodeSnapshot(states).nodes(states);
     }
 
     /** 
@@ -246,9 +245,14 @@ public class CuratorDatabaseClient {
      * If no states are given this returns all nodes.
      */
     public List<Node> getNodes(ApplicationId applicationId, Node.State ... states) {
-        List<Node> nodes = getNodes(states);
-        nodes.removeIf(node -> ! node.allocation().isPresent() || ! node.allocation().get().owner().equals(applicationId));
-        return nodes;
+        if (states.length == 0)
+            states = Node.State.values();
+        return nodeSnapshot(states).nodes(applicationId, states);
+    }
+
+    /** Returns all nodes having the given parent host, in any state */
+    public List<Node> getChildNodes(String parentHostname) {
+        return nodeSnapshot(Node.State.values()).childNodes(parentHostname, Node.State.values());
     }
 
     /** 
@@ -261,11 +265,45 @@ public class CuratorDatabaseClient {
         for (Node.State state : states) {
             Optional<byte[]> nodeData = curatorDatabase.getData(toPath(state, hostname));
             if (nodeData.isPresent())
-                return nodeData.map((data) -> nodeSerializer.fromJson(state, data));
+                return Optional.of(deserialize(state, hostname, nodeData.get(), nodeSnapshot.get()));
         }
         return Optional.empty();
     }
 
+    /**
+     * Returns a snapshot of the nodes which is current in the given states.
+     * If the database caches, the snapshot contains all nodes and is reused until the database changes.
+     * Otherwise the nodes in the given states are read on each call, but only deserialized if they have changed.
+     */
+    private NodeSnapshot nodeSnapshot(Node.State ... states) {
+        NodeSnapshot snapshot = nodeSnapshot.get();
+        long generation = curatorDatabase.generation();
+        if (curatorDatabase.isCaching()) {
+            if (snapshot.generation() == generation) return snapshot;
+            states = Node.State.values();
+        }
+
+        Map<Node.State, Map<String, NodeSnapshot.SerializedNode>> nodes = new EnumMap<>(Node.State.class);
+        for (Node.State state : states) {
+            Map<String, NodeSnapshot.SerializedNode> nodesInState = new LinkedHashMap<>();
+            for (String hostname : curatorDatabase.getChildren(toPath(state))) {
+                Optional<byte[]> nodeData = curatorDatabase.getData(toPath(state, hostname));
+                if ( ! nodeData.isPresent()) continue; // node might disappear between getChildren and getData
+                nodesInState.put(hostname, new NodeSnapshot.SerializedNode(deserialize(state, hostname, nodeData.get(), snapshot),
+                                                                           nodeData.get()));
+            }
+            nodes.put(state, nodesInState);
+        }
+        NodeSnapshot newSnapshot = snapshot.with(generation, nodes);
+        nodeSnapshot.compareAndSet(snapshot, newSnapshot); // otherwise another thread made a snapshot concurrently
+        return newSnapshot;
+    }
+
+    /** Returns the node of the given snapshot if it has the given serialized form, and deserializes it otherwise */
+    private Node deserialize(Node.State state, String hostname, byte[] data, NodeSnapshot snapshot) {
+        return snapshot.node(state, hostname, data).orElseGet(() -> nodeSerializer.fromJson(state, data));
+    }
+
     private Path toPath(Node.State nodeState) { return root.append(toDir(nodeState)); }
 
     private Path toPath(Node node) {
@@ -0,0 +1,124 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.hosted.provision.persistence;
+
+import com.yahoo.config.provision.ApplicationId;
+import com.yahoo.vespa.hosted.provision.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of the deserialized nodes of the curator database at some change generation,
+ * with indexes by owner application and parent host, such that lookups are proportional
+ * to the size of the result.
+ * <p>
+ * Snapshots of new generations are created from the previous snapshot, reusing the nodes whose serialized
+ * form is unchanged, such that only nodes which are changed are deserialized.
+ *
+ * @author agent
+ */
+class NodeSnapshot {
+
+    /** A snapshot of no nodes which is older than any generation */
+    static final NodeSnapshot empty = new NodeSnapshot(-1, new EnumMap<>(Node.State.class));
+
+    private final long generation;
+
+    /** The nodes in each state, with their serialized form, by hostname */
+    private final Map<Node.State, Map<String, SerializedNode>> nodes;
+
+    private final Map<ApplicationId, List<Node>> nodesByOwner = new HashMap<>();
+    private final Map<String, List<Node>> nodesByParent = new HashMap<>();
+
+    private NodeSnapshot(long generation, Map<Node.State, Map<String, SerializedNode>> nodes) {
+        this.generation = generation;
+        this.nodes = nodes;
+        for (Map<String, SerializedNode> nodesInState : nodes.values()) {
+            for (SerializedNode serializedNode : nodesInState.values()) {
+                Node node = serializedNode.node();
+                if (node.allocation().isPresent())
+                    nodesByOwner.computeIfAbsent(node.allocation().get().owner(), owner -> new ArrayList<>()).add(node);
+                if (node.parentHostname().isPresent())
+                    nodesByParent.computeIfAbsent(node.parentHostname().get(), parent -> new ArrayList<>()).add(node);
+            }
+        }
+    }
+
+    /** Returns the change generation of the curator database this is a snapshot of */
+    long generation() { return generation; }
+
+    /**
+     * Returns a new snapshot at the given generation, where the nodes of the states present in the given map
+     * are replaced by the given nodes, while the nodes of other states are kept.
+     *
+     * @param nodes the nodes to replace by, by hostname, of each state to replace
+     */
+    NodeSnapshot with(long generation, Map<Node.State, Map<String, SerializedNode>> nodes) {
+        Map<Node.State, Map<String, SerializedNode>> newNodes = new EnumMap<>(this.nodes);
+        for (Map.Entry<Node.State, Map<String, SerializedNode>> nodesInState : nodes.entrySet())
+            newNodes.put(nodesInState.getKey(), Collections.unmodifiableMap(nodesInState.getValue()));
+        return new NodeSnapshot(generation, newNodes);
+    }
+
+    /** Returns the node of this in the given state, if it has the given serialized form */
+    Optional<Node> node(Node.State state, String hostname, byte[] data) {
+        SerializedNode serializedNode = nodes.getOrDefault(state, Collections.emptyMap()).get(hostname);
+        if (serializedNode == null || ! Arrays.equals(serializedNode.data(), data)) return Optional.empty();
+        return Optional.of(serializedNode.node());
+    }
+
+    /** Returns a modifiable list of the nodes in the given states */
+    List<Node> nodes(Node.State ... states) {
+        List<Node> nodesInStates = new ArrayList<>();
+        for (Node.State state : states)
+            for (SerializedNode node : nodes.getOrDefault(state, Collections.emptyMap()).values())
+                nodesInStates.add(node.node());
+        return nodesInStates;
+    }
+
+    /** Returns a modifiable list of the nodes allocated to the given application which are in the given states */
+    List<Node> nodes(ApplicationId owner, Node.State ... states) {
+        return inStates(nodesByOwner.getOrDefault(owner, Collections.emptyList()), states);
+    }
+
+    /** Returns a modifiable list of the nodes having the given parent host which are in the given states */
+    List<Node> childNodes(String parentHostname, Node.State ... states) {
+        return inStates(nodesByParent.getOrDefault(parentHostname, Collections.emptyList()), states);
+    }
+
+    private List<Node> inStates(List<Node> nodes, Node.State ... states) {
+        Set<Node.State> stateSet = EnumSet.noneOf(Node.State.class);
+        stateSet.addAll(Arrays.asList(states));
+        List<Node> nodesInStates = new ArrayList<>(nodes.size());
+        for (Node node : nodes)
+            if (stateSet.contains(node.state()))
+                nodesInStates.add(node);
+        return nodesInStates;
+    }
+
+    /** A deserialized node and the data it was deserialized from */
+    static class SerializedNode {
+
+        private final Node node;
+        private final byte[] data;
+
+        SerializedNode(Node node, byte[] data) {
+            this.node = node;
+            this.data = data;
+        }
+
+        Node node() { return node; }
+
+        byte[] data() { return data; }
+
+    }
+
+}
@@ -1,23 +1,36 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.vespa.hosted.provision.persistence;
 
+import com.yahoo.component.Version;
 import com.yahoo.config.provision.ApplicationId;
 import com.yahoo.config.provision.ApplicationName;
+import com.yahoo.config.provision.ClusterMembership;
+import com.yahoo.config.provision.Environment;
+import com.yahoo.config.provision.Flavor;
 import com.yahoo.config.provision.InstanceName;
+import com.yahoo.config.provision.NodeFlavors;
 import com.yahoo.config.provision.NodeType;
+import com.yahoo.config.provision.RegionName;
+import com.yahoo.config.provision.SystemName;
 import com.yahoo.config.provision.TenantName;
 import com.yahoo.config.provision.Zone;
 import com.yahoo.vespa.curator.Curator;
 import com.yahoo.vespa.curator.Lock;
 import com.yahoo.vespa.curator.mock.MockCurator;
 import com.yahoo.vespa.hosted.provision.Node;
+import com.yahoo.vespa.hosted.provision.node.Agent;
 import com.yahoo.vespa.hosted.provision.provisioning.FlavorConfigBuilder;
 import org.junit.Test;
 
 import java.time.Clock;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author mpolden
@@ -39,6 +52,39 @@ public class CuratorDatabaseClientTest {
         assertEquals(NodeType.host, allocatedNodes.get(0).type());
     }
 
+    @Test
+    public void nodes_are_deserialized_once_and_looked_up_by_index() {
+        NodeFlavors flavors = FlavorConfigBuilder.createDummies("default");
+        CuratorDatabaseClient client = new CuratorDatabaseClient(flavors, new MockCurator(), Clock.systemUTC(),
+                                                                 new Zone(SystemName.cd, Environment.prod, RegionName.from("us-east")));
+        Flavor flavor = flavors.getFlavorOrThrow("default");
+        client.addNodes(Arrays.asList(node("host1", Optional.empty(), flavor, NodeType.host),
+                                      node("node1", Optional.of("host1"), flavor, NodeType.tenant),
+                                      node("node2", Optional.of("host1"), flavor, NodeType.tenant)));
+
+        assertEquals(3, client.getNodes(Node.State.provisioned).size());
+        Node host = client.getNode("host1").get();
+        assertSame(host, client.getNode("host1", Node.State.provisioned).get());
+        assertEquals(2, client.getChildNodes("host1").size());
+
+        ApplicationId app = ApplicationId.from(TenantName.from("testTenant"), ApplicationName.from("testApp"), InstanceName.from("testInstance"));
+        Node node1 = client.getNode("node1").get().allocate(app, ClusterMembership.from("container/test/0", Version.fromString("6.1")),
+                                                            Instant.now());
+        client.writeTo(Node.State.active, node1, Agent.system, Optional.empty());
+
+        assertSame("Unchanged nodes are not deserialized again", host, client.getNode("host1").get());
+        assertEquals(1, client.getNodes(app).size());
+        assertEquals(1, client.getNodes(app, Node.State.active).size());
+        assertEquals(0, client.getNodes(app, Node.State.reserved).size());
+        assertEquals(2, client.getNodes(Node.State.provisioned).size());
+        assertEquals(2, client.getChildNodes("host1").size());
+    }
+
+    private Node node(String hostname, Optional<String> parentHostname, Flavor flavor, NodeType type) {
+        return Node.create(hostname + "-id", Collections.singleton("127.0.0.1"), Collections.emptySet(),
+                           hostname, parentHostname, flavor, type);
+    }
+
     @Test
     public void locks_can_be_acquired_and_released() {
         ApplicationId app = ApplicationId.from(TenantName.from("testTenant"), ApplicationName.from("testApp"), InstanceName.from("testInstance"));
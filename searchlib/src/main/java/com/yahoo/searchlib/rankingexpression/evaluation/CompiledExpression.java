@@ -0,0 +1,61 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation;
+
+/**
+ * A ranking expression compiled to a tree of specialized nodes which evaluate directly on primitive doubles,
+ * without allocating any values. Instances are created by {@link ExpressionCompiler}, and must be evaluated
+ * using the context (or a clone of it) they were compiled with.
+ *
+ * <code>
+ * // Set up once
+ * RankingExpression expression = new RankingExpression(myExpressionString);
+ * DoubleOnlyArrayContext context = new DoubleOnlyArrayContext(expression);
+ * CompiledExpression compiled = new ExpressionCompiler().compile(expression, context);
+ *
+ * // Execute repeatedly
+ * context.put("featureName1", value1);
+ * ...
+ * compiled.evaluate(context);
+ * </code>
+ * <p>
+ * Instances are immutable and may be used by multiple threads at the same time, while each context
+ * must only be used by one thread at the time.
+ *
+ * @author agent
+ */
+public final class CompiledExpression {
+
+    private final String name;
+    private final Node root;
+
+    CompiledExpression(String name, Node root) {
+        this.name = name;
+        this.root = root;
+    }
+
+    /** Returns the name of the expression this was compiled from */
+    public String getName() { return name; }
+
+    /**
+     * Evaluates this using the values bound in the given context.
+     *
+     * @param context the context this was compiled with, or a clone of it
+     * @return the value of the expression
+     */
+    public double evaluate(AbstractArrayContext context) {
+        return root.evaluate(context.doubleValues());
+    }
+
+    @Override
+    public String toString() {
+        return "compiled ranking expression '" + name + "'";
+    }
+
+    /** A node of a compiled expression, which evaluates to a double from the values of an array context */
+    static abstract class Node {
+
+        abstract double evaluate(double[] values);
+
+    }
+
+}
@@ -0,0 +1,450 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.evaluation.CompiledExpression.Node;
+import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTForestNode;
+import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTNode;
+import com.yahoo.searchlib.rankingexpression.rule.ArithmeticNode;
+import com.yahoo.searchlib.rankingexpression.rule.ArithmeticOperator;
+import com.yahoo.searchlib.rankingexpression.rule.ComparisonNode;
+import com.yahoo.searchlib.rankingexpression.rule.ConstantNode;
+import com.yahoo.searchlib.rankingexpression.rule.EmbracedNode;
+import com.yahoo.searchlib.rankingexpression.rule.ExpressionNode;
+import com.yahoo.searchlib.rankingexpression.rule.Function;
+import com.yahoo.searchlib.rankingexpression.rule.FunctionNode;
+import com.yahoo.searchlib.rankingexpression.rule.IfNode;
+import com.yahoo.searchlib.rankingexpression.rule.NegativeNode;
+import com.yahoo.searchlib.rankingexpression.rule.ReferenceNode;
+import com.yahoo.searchlib.rankingexpression.rule.SetMembershipNode;
+import com.yahoo.searchlib.rankingexpression.rule.TruthOperator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>Compiles ranking expressions over double values into {@link CompiledExpression} instances, which evaluate
+ * on primitive doubles read directly from an array context, without allocating any values. Conditions on a single
+ * feature, as found in GBDT models, are compiled to specialized branch nodes, and sums of many terms (such as the
+ * trees of a forest) are evaluated in a loop rather than by recursion. Trees and forests which are already optimized
+ * by {@link ExpressionOptimizer} are unrolled back into branch nodes.</p>
+ *
+ * <p>Compilation preserves the evaluation order of the interpreted expression, such that compiled expressions
+ * return exactly the same values.</p>
+ *
+ * <p>Expressions containing values which are not doubles (such as tensors or strings), or features with arguments,
+ * cannot be compiled.</p>
+ *
+ * @author agent
+ */
+public class ExpressionCompiler {
+
+    /**
+     * Compiles an expression. This does not change the given expression.
+     *
+     * @param expression the expression to compile
+     * @param context a context created from the given expression, which is used to resolve feature indexes
+     * @return the compiled expression
+     * @throws IllegalArgumentException if the expression contains nodes which cannot be compiled
+     */
+    public CompiledExpression compile(RankingExpression expression, AbstractArrayContext context) {
+        return new CompiledExpression(expression.getName(), compile(expression.getRoot(), context));
+    }
+
+    private Node compile(ExpressionNode node, AbstractArrayContext context) {
+        if (node instanceof ConstantNode)
+            return new Constant(toDouble((ConstantNode)node));
+        if (node instanceof ReferenceNode)
+            return new Variable(indexOf((ReferenceNode)node, context));
+        if (node instanceof EmbracedNode)
+            return compile(((EmbracedNode)node).getValue(), context);
+        if (node instanceof NegativeNode)
+            return new Negate(compile(((NegativeNode)node).getValue(), context));
+        if (node instanceof ArithmeticNode)
+            return compileArithmetic((ArithmeticNode)node, context);
+        if (node instanceof FunctionNode)
+            return compileFunction((FunctionNode)node, context);
+        if (node instanceof ComparisonNode) {
+            ComparisonNode comparison = (ComparisonNode)node;
+            return new Compare(comparison.getOperator(),
+                               compile(comparison.getLeftCondition(), context),
+                               compile(comparison.getRightCondition(), context));
+        }
+        if (node instanceof SetMembershipNode) {
+            SetMembershipNode membership = (SetMembershipNode)node;
+            return new InSet(compile(membership.getTestValue(), context), toSet(membership.getSetValues()));
+        }
+        if (node instanceof IfNode)
+            return compileIf((IfNode)node, context);
+        if (node instanceof GBDTNode)
+            return compileTree(((GBDTNode)node).values(), 0);
+        if (node instanceof GBDTForestNode)
+            return compileForest(((GBDTForestNode)node).values());
+        throw new IllegalArgumentException("Cannot compile " + node.getClass().getSimpleName() + ": " + node);
+    }
+
+    /** Compiles with the same operator precedence and evaluation order as {@link ArithmeticNode#evaluate} */
+    private Node compileArithmetic(ArithmeticNode node, AbstractArrayContext context) {
+        Iterator<ExpressionNode> child = node.children().iterator();
+
+        Deque<Item> stack = new ArrayDeque<>();
+        stack.push(new Item(ArithmeticOperator.PLUS, compile(child.next(), context)));
+        for (Iterator<ArithmeticOperator> it = node.operators().iterator(); it.hasNext() && child.hasNext();) {
+            ArithmeticOperator op = it.next();
+            while (stack.peek().op.hasPrecedenceOver(op))
+                popStack(stack);
+            stack.push(new Item(op, compile(child.next(), context)));
+        }
+        while (stack.size() > 1)
+            popStack(stack);
+        return stack.getFirst().node;
+    }
+
+    private void popStack(Deque<Item> stack) {
+        Item rhs = stack.pop();
+        Item lhs = stack.peek();
+        lhs.node = binary(lhs.node, rhs.op, rhs.node);
+    }
+
+    private Node binary(Node left, ArithmeticOperator op, Node right) {
+        switch (op) {
+            case PLUS:
+                if (right instanceof Sum) // a + (b + (c + ...)) - keep as one right associative sum
+                    return ((Sum)right).prepend(left);
+                if (right instanceof Add)
+                    return new Sum(new Node[] { left, ((Add)right).left, ((Add)right).right });
+                return new Add(left, right);
+            case MINUS: return new Subtract(left, right);
+            case MULTIPLY: return new Multiply(left, right);
+            case DIVIDE: return new Divide(left, right);
+            default: throw new IllegalArgumentException("Cannot compile operator " + op);
+        }
+    }
+
+    private Node compileFunction(FunctionNode node, AbstractArrayContext context) {
+        Function function = node.getFunction();
+        List<ExpressionNode> arguments = node.children();
+        if (arguments.size() == 0)
+            return new Constant(function.evaluate(0, 0));
+        if (arguments.size() == 1)
+            return new Function1(function, compile(arguments.get(0), context));
+        return new Function2(function, compile(arguments.get(0), context), compile(arguments.get(1), context));
+    }
+
+    private Node compileIf(IfNode node, AbstractArrayContext context) {
+        Node trueNode = compile(node.getTrueExpression(), context);
+        Node falseNode = compile(node.getFalseExpression(), context);
+        ExpressionNode condition = node.getCondition();
+        if (condition instanceof ComparisonNode) {
+            ComparisonNode comparison = (ComparisonNode)condition;
+            if (comparison.getLeftCondition() instanceof ReferenceNode && isConstant(comparison.getRightCondition())) {
+                int index = indexOf((ReferenceNode)comparison.getLeftCondition(), context);
+                double value = toDouble(comparison.getRightCondition());
+                if (comparison.getOperator() == TruthOperator.SMALLER)
+                    return new IfSmaller(index, value, trueNode, falseNode);
+                if (comparison.getOperator() == TruthOperator.EQUAL)
+                    return new IfEqual(index, value, trueNode, falseNode);
+            }
+        }
+        else if (condition instanceof SetMembershipNode) {
+            SetMembershipNode membership = (SetMembershipNode)condition;
+            if (membership.getTestValue() instanceof ReferenceNode)
+                return new IfInSet(indexOf((ReferenceNode)membership.getTestValue(), context),
+                                   toSet(membership.getSetValues()), trueNode, falseNode);
+        }
+        return new If(compile(condition, context), trueNode, falseNode);
+    }
+
+    /** Unrolls a tree in the format of {@link GBDTNode} starting at the given offset into branch nodes */
+    private Node compileTree(double[] values, int pc) {
+        double nextValue = values[pc++];
+        if (nextValue < GBDTNode.MAX_LEAF_VALUE)
+            return new Constant(nextValue);
+
+        int offset = (int)nextValue - GBDTNode.MAX_LEAF_VALUE;
+        int index;
+        int kind;
+        double compareValue = 0;
+        double[] set = null;
+        if (offset < GBDTNode.MAX_VARIABLES) {
+            kind = 0;
+            index = offset;
+            compareValue = values[pc++];
+        }
+        else if (offset < GBDTNode.MAX_VARIABLES * 2) {
+            kind = 1;
+            index = offset - GBDTNode.MAX_VARIABLES;
+            compareValue = values[pc++];
+        }
+        else {
+            kind = 2;
+            index = offset - GBDTNode.MAX_VARIABLES * 2;
+            int setSize = (int)values[pc++];
+            set = new double[setSize];
+            System.arraycopy(values, pc, set, 0, setSize);
+            pc += setSize;
+        }
+        Node trueNode = compileTree(values, pc + 1);
+        Node falseNode = compileTree(values, pc + (int)values[pc]);
+        switch (kind) {
+            case 0: return new IfSmaller(index, compareValue, trueNode, falseNode);
+            case 1: return new IfEqual(index, compareValue, trueNode, falseNode);
+            default: return new IfInSet(index, set, trueNode, falseNode);
+        }
+    }
+
+    /** Unrolls a forest in the format of {@link GBDTForestNode} into branch nodes */
+    private Node compileForest(double[] values) {
+        List<Node> trees = new ArrayList<>();
+        int pc = 0;
+        while (pc < values.length) {
+            int nextTree = (int)values[pc++];
+            trees.add(compileTree(values, pc));
+            pc += nextTree;
+        }
+        return new Forest(trees.toArray(new Node[trees.size()]));
+    }
+
+    private int indexOf(ReferenceNode node, AbstractArrayContext context) {
+        String name = node.toString();
+        if ( ! context.names().contains(name))
+            throw new IllegalArgumentException("Feature '" + name + "' is not known to " + context +
+                                               ": The context must be created from the expression to compile");
+        return context.getIndex(name);
+    }
+
+    private boolean isConstant(ExpressionNode node) {
+        if (node instanceof ConstantNode)
+            return ((ConstantNode)node).getValue() instanceof DoubleCompatibleValue;
+        if (node instanceof NegativeNode)
+            return isConstant(((NegativeNode)node).getValue());
+        return false;
+    }
+
+    private double toDouble(ExpressionNode node) {
+        if (node instanceof NegativeNode)
+            return -toDouble(((NegativeNode)node).getValue());
+        if ( ! (node instanceof ConstantNode))
+            throw new IllegalArgumentException("Expected a constant, but got " + node);
+        Value value = ((ConstantNode)node).getValue();
+        if ( ! (value instanceof DoubleCompatibleValue))
+            throw new IllegalArgumentException("Cannot compile a constant of type " + value.getClass().getSimpleName() +
+                                               " (" + value + ")");
+        return value.asDouble();
+    }
+
+    /** Set values may also be strings, which are compared by their double representation as in GBDT optimization */
+    private double[] toSet(List<ExpressionNode> setValues) {
+        double[] set = new double[setValues.size()];
+        for (int i = 0; i < set.length; i++) {
+            ExpressionNode setValue = setValues.get(i);
+            if (setValue instanceof ConstantNode && ((ConstantNode)setValue).getValue() instanceof StringValue)
+                set[i] = ((ConstantNode)setValue).getValue().asDouble();
+            else
+                set[i] = toDouble(setValue);
+        }
+        return set;
+    }
+
+    private static boolean contains(double[] set, double value) {
+        for (double setValue : set)
+            if (setValue == value) return true;
+        return false;
+    }
+
+    private static class Item {
+
+        final ArithmeticOperator op;
+        Node node;
+
+        Item(ArithmeticOperator op, Node node) {
+            this.op = op;
+            this.node = node;
+        }
+
+    }
+
+    private static final class Constant extends Node {
+        private final double value;
+        Constant(double value) { this.value = value; }
+        @Override double evaluate(double[] values) { return value; }
+    }
+
+    private static final class Variable extends Node {
+        private final int index;
+        Variable(int index) { this.index = index; }
+        @Override double evaluate(double[] values) { return values[index]; }
+    }
+
+    private static final class Negate extends Node {
+        private final Node value;
+        Negate(Node value) { this.value = value; }
+        @Override double evaluate(double[] values) { return -value.evaluate(values); }
+    }
+
+    private static final class Add extends Node {
+        private final Node left, right;
+        Add(Node left, Node right) { this.left = left; this.right = right; }
+        @Override double evaluate(double[] values) { return left.evaluate(values) + right.evaluate(values); }
+    }
+
+    private static final class Subtract extends Node {
+        private final Node left, right;
+        Subtract(Node left, Node right) { this.left = left; this.right = right; }
+        @Override double evaluate(double[] values) { return left.evaluate(values) - right.evaluate(values); }
+    }
+
+    private static final class Multiply extends Node {
+        private final Node left, right;
+        Multiply(Node left, Node right) { this.left = left; this.right = right; }
+        @Override double evaluate(double[] values) { return left.evaluate(values) * right.evaluate(values); }
+    }
+
+    private static final class Divide extends Node {
+        private final Node left, right;
+        Divide(Node left, Node right) { this.left = left; this.right = right; }
+        @Override double evaluate(double[] values) { return left.evaluate(values) / right.evaluate(values); }
+    }
+
+    /** A right associative sum: terms[0] + (terms[1] + (... + terms[n-1])) */
+    private static final class Sum extends Node {
+
+        private final Node[] terms;
+
+        Sum(Node[] terms) { this.terms = terms; }
+
+        Sum prepend(Node term) {
+            Node[] newTerms = new Node[terms.length + 1];
+            newTerms[0] = term;
+            System.arraycopy(terms, 0, newTerms, 1, terms.length);
+            return new Sum(newTerms);
+        }
+
+        @Override
+        double evaluate(double[] values) {
+            double sum = terms[terms.length - 1].evaluate(values);
+            for (int i = terms.length - 2; i >= 0; i--)
+                sum = terms[i].evaluate(values) + sum;
+            return sum;
+        }
+
+    }
+
+    /** A left associative sum of trees, as evaluated by {@link GBDTForestNode} */
+    private static final class Forest extends Node {
+
+        private final Node[] trees;
+
+        Forest(Node[] trees) { this.trees = trees; }
+
+        @Override
+        double evaluate(double[] values) {
+            double sum = 0;
+            for (Node tree : trees)
+                sum += tree.evaluate(values);
+            return sum;
+        }
+
+    }
+
+    private static final class Function1 extends Node {
+        private final Function function;
+        private final Node argument;
+        Function1(Function function, Node argument) { this.function = function; this.argument = argument; }
+        @Override double evaluate(double[] values) { return function.evaluate(argument.evaluate(values), 0); }
+    }
+
+    private static final class Function2 extends Node {
+        private final Function function;
+        private final Node argument1, argument2;
+        Function2(Function function, Node argument1, Node argument2) {
+            this.function = function;
+            this.argument1 = argument1;
+            this.argument2 = argument2;
+        }
+        @Override double evaluate(double[] values) {
+            return function.evaluate(argument1.evaluate(values), argument2.evaluate(values));
+        }
+    }
+
+    private static final class Compare extends Node {
+        private final TruthOperator operator;
+        private final Node left, right;
+        Compare(TruthOperator operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+        @Override double evaluate(double[] values) {
+            return operator.evaluate(left.evaluate(values), right.evaluate(values)) ? 1 : 0;
+        }
+    }
+
+    private static final class InSet extends Node {
+        private final Node testValue;
+        private final double[] set;
+        InSet(Node testValue, double[] set) { this.testValue = testValue; this.set = set; }
+        @Override double evaluate(double[] values) { return contains(set, testValue.evaluate(values)) ? 1 : 0; }
+    }
+
+    private static final class If extends Node {
+        private final Node condition, trueNode, falseNode;
+        If(Node condition, Node trueNode, Node falseNode) {
+            this.condition = condition;
+            this.trueNode = trueNode;
+            this.falseNode = falseNode;
+        }
+        @Override double evaluate(double[] values) {
+            return condition.evaluate(values) != 0 ? trueNode.evaluate(values) : falseNode.evaluate(values);
+        }
+    }
+
+    private static final class IfSmaller extends Node {
+        private final int index;
+        private final double value;
+        private final Node trueNode, falseNode;
+        IfSmaller(int index, double value, Node trueNode, Node falseNode) {
+            this.index = index;
+            this.value = value;
+            this.trueNode = trueNode;
+            this.falseNode = falseNode;
+        }
+        @Override double evaluate(double[] values) {
+            return values[index] < value ? trueNode.evaluate(values) : falseNode.evaluate(values);
+        }
+    }
+
+    private static final class IfEqual extends Node {
+        private final int index;
+        private final double value;
+        private final Node trueNode, falseNode;
+        IfEqual(int index, double value, Node trueNode, Node falseNode) {
+            this.index = index;
+            this.value = value;
+            this.trueNode = trueNode;
+            this.falseNode = falseNode;
+        }
+        @Override double evaluate(double[] values) {
+            return values[index] == value ? trueNode.evaluate(values) : falseNode.evaluate(values);
+        }
+    }
+
+    private static final class IfInSet extends Node {
+        private final int index;
+        private final double[] set;
+        private final Node trueNode, falseNode;
+        IfInSet(int index, double[] set, Node trueNode, Node falseNode) {
+            this.index = index;
+            this.set = set;
+            this.trueNode = trueNode;
+            this.falseNode = falseNode;
+        }
+        @Override double evaluate(double[] values) {
+            return contains(set, values[index]) ? trueNode.evaluate(values) : falseNode.evaluate(values);
+        }
+    }
+
+}
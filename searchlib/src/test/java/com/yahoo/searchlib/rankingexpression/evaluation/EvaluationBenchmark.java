@@ -152,6 +152,44 @@ public class EvaluationBenchmark {
         double forestTotal=benchmark(forestOptimized,forestContext,iterations,"Forest optimized");
         assertEqualish(total,forestTotal);
         System.out.println("-----------------------------------------------------------------------------------------------------");
+
+        // Compiled...................
+        RankingExpression compiledExpression = new RankingExpression(gbdtString);
+        DoubleOnlyArrayContext compiledContext = new DoubleOnlyArrayContext(compiledExpression, true);
+        System.out.print("Compiling ... ");
+        CompiledExpression compiled = new ExpressionCompiler().compile(compiledExpression, compiledContext);
+        System.out.println("done");
+        double compiledTotal = benchmark(compiled, compiledContext, iterations, "Compiled");
+        assertEqualish(total, compiledTotal);
+        System.out.println("-----------------------------------------------------------------------------------------------------");
+    }
+
+    private double benchmark(CompiledExpression compiled, AbstractArrayContext context, int iterations, String description) {
+        oul("Running '" + description + "':");
+        out("   Warming up ...");
+        double total=0;
+        total+=benchmarkIterations(compiled,context,iterations/5);
+        oul("done");
+
+        out("   Running " + iterations + " of '" + description + "' ...");
+        long tStartTime=System.currentTimeMillis();
+        total+=benchmarkIterations(compiled,context,iterations);
+        long totalTime=System.currentTimeMillis()-tStartTime;
+        oul("done");
+        oul("   Total time running '" + description + "': " + totalTime + " ms (" + totalTime*1000/iterations + " microseconds/expression)");
+        return total;
+    }
+
+    private double benchmarkIterations(CompiledExpression compiled, AbstractArrayContext contextPrototype, int iterations) {
+        double total=0;
+        AbstractArrayContext context = contextPrototype.clone();
+        for (int i=0; i<iterations; i++) {
+            context.put("LW_NEWS_SEARCHES_RATIO",(double)i);
+            context.put("NEWS_USERS",(double)i/1000*1000);
+            context.put("catid",100300102);
+            total+=compiled.evaluate(context);
+        }
+        return total;
     }
 
     private double benchmark(RankingExpression gbdt, Context context, int iterations, String description) {
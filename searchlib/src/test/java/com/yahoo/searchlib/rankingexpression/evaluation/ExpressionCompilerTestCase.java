@@ -0,0 +1,89 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.parser.ParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that compiled expressions evaluate to exactly the same values as interpreted ones
+ *
+ * @author agent
+ */
+public class ExpressionCompilerTestCase {
+
+    private static final String gbdt =
+            "if (LW_NEWS_SEARCHES_RATIO < 1.72971, 0.0697159, if (LW_USERS < 0.10496, if (SEARCHES < 0.0329127, 0.151257, 0.117501), if (SUGG_OVERLAP < 18.5, 0.0897622, 0.0756903))) + \n" +
+            "if (LW_NEWS_SEARCHES_RATIO < 1.73156, if (NEWS_USERS < 0.0737993, -0.00481646, 0.00110018), if (LW_USERS < 0.0844616, 0.0488919, if (SUGG_OVERLAP < 32.5, 0.0136917, 9.85328E-4))) + \n" +
+            "if (LW_NEWS_SEARCHES_RATIO < 1.74451, -0.00298257, if (LW_USERS < 0.116207, if (SEARCHES < 0.0329127, 0.0676105, 0.0340198), if (NUM_WORDS < 1.5, -8.55514E-5, 0.0112406))) + \n" +
+            "if (LW_NEWS_SEARCHES_RATIO < 1.72995, if (NEWS_USERS < 0.0737993, -0.00407515, 0.00139088), if (LW_USERS == 0.0509035, 0.0439466, if (LW_USERS < 0.325818, 0.0187156, 0.00236949))) + \n" +
+            "if (NUM_WORDS in [1, 2, 3], 0.0123, if (SEARCHES in [0.5], -0.0456, 0.0789))";
+
+    @Test
+    public void testArithmetic() throws ParseException {
+        assertCompiles("1 + 2 * 3 - 4 / 5");
+        assertCompiles("a - b + c * a / b - c");
+        assertCompiles("a / b / c * a - b - c + a");
+        assertCompiles("(a + b) * (c - a) / -(b + 1)");
+        assertCompiles("a + b + c + a + b + c + 0.1 + 0.2 + 0.3");
+    }
+
+    @Test
+    public void testFunctions() throws ParseException {
+        assertCompiles("exp(a) + log(b + 2) + max(a, c) + pow(b, 2) + sigmoid(c) + fmod(a * 7, 3)");
+    }
+
+    @Test
+    public void testConditions() throws ParseException {
+        assertCompiles("if (a < 0.5, b, c)");
+        assertCompiles("if (a == 0.25, b, c)");
+        assertCompiles("if (a >= b, b, c) + if (b != c, 1, 2) + if (a <= -c, 3, 4)");
+        assertCompiles("if (a in [0.25, 0.5, 1], b, c) * if (a + b < c, 10, 100)");
+        assertCompiles("(a < b) + (b > c) * 2 + (a in [0.25, 2]) * 4");
+    }
+
+    @Test
+    public void testGBDT() throws ParseException {
+        assertCompiles(gbdt);
+    }
+
+    @Test
+    public void testOptimizedGBDT() throws ParseException {
+        RankingExpression expression = new RankingExpression(gbdt);
+        DoubleOnlyArrayContext context = new DoubleOnlyArrayContext(expression, true);
+        new ExpressionOptimizer().optimize(expression, context);
+        assertCompiles(expression, context);
+    }
+
+    @Test
+    public void testUnsupported() throws ParseException {
+        RankingExpression expression = new RankingExpression("a + \"foo\"");
+        try {
+            new ExpressionCompiler().compile(expression, new DoubleOnlyArrayContext(expression));
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private void assertCompiles(String expressionString) throws ParseException {
+        RankingExpression expression = new RankingExpression(expressionString);
+        assertCompiles(expression, new DoubleOnlyArrayContext(expression, true));
+    }
+
+    private void assertCompiles(RankingExpression expression, DoubleOnlyArrayContext context) {
+        CompiledExpression compiled = new ExpressionCompiler().compile(expression, context);
+        double[] bindings = { -1, 0, 0.0329127, 0.25, 0.5, 1, 1.5, 1.72971, 1.73, 2, 3, 18.5, 40 };
+        for (int i = 0; i < bindings.length; i++) {
+            int variable = 0;
+            for (String name : context.names())
+                context.put(name, bindings[(i + 3 * variable++) % bindings.length]);
+            assertEquals(expression.toString(),
+                         expression.evaluate(context).asDouble(), compiled.evaluate(context), 0);
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.metrics.simple;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A counter bound to a single point. Create a bound counter with
+ * {@link Counter#bind()} or {@link Counter#bind(Point)} once, and keep it for
+ * the life cycle of the component using it. Adding to a bound counter does not
+ * allocate anything, and does not involve the thread local buckets of the
+ * receiver, as the increments are recorded in a striped adder which is read
+ * by the aggregating thread.
+ *
+ * @author agent
+ */
+@Beta
+public final class BoundCounter {
+
+    private final Identifier identifier;
+    private final MetricSettings metricSettings;
+    private final LongAdder count = new LongAdder();
+
+    /** The total count at the last snapshot, only accessed by the aggregating thread */
+    private long countAtSnapshot = 0L;
+
+    BoundCounter(Identifier identifier, MetricSettings metricSettings) {
+        this.identifier = identifier;
+        this.metricSettings = metricSettings;
+    }
+
+    /**
+     * Increase this counter by 1.
+     */
+    public void add() {
+        count.increment();
+    }
+
+    /**
+     * Add to this counter.
+     *
+     * @param n the amount by which to increase this counter
+     */
+    public void add(long n) {
+        count.add(n);
+    }
+
+    Identifier getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Puts the increments since the last snapshot in the given bucket, if there are any.
+     * This must only be called by a single thread at the time.
+     */
+    void snapshot(Bucket bucket) {
+        long total = count.sum();
+        long increments = total - countAtSnapshot;
+        if (increments == 0) return;
+
+        countAtSnapshot = total;
+        UntypedMetric value = new UntypedMetric(metricSettings);
+        value.add(increments);
+        bucket.put(identifier, value);
+    }
+
+}
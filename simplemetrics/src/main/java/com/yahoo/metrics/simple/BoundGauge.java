@@ -0,0 +1,102 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.metrics.simple;
+
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.DoubleRecorder;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A gauge bound to a single point. Create a bound gauge with
+ * {@link Gauge#bind()} or {@link Gauge#bind(Point)} once, and keep it for the
+ * life cycle of the component using it. Sampling a bound gauge does not
+ * allocate anything, and does not involve the thread local buckets of the
+ * receiver, as samples are recorded in striped adders and accumulators, and
+ * a histogram recorder if the metric is a histogram, which are read by the
+ * aggregating thread.
+ *
+ * <p>
+ * As the aggregated values are read without stopping concurrent samplers, a
+ * sample which is recorded while a snapshot is taken may have its minimum and
+ * maximum attributed to a different snapshot than its count and sum.
+ * </p>
+ *
+ * @author agent
+ */
+@Beta
+public final class BoundGauge {
+
+    private final Identifier identifier;
+    private final MetricSettings metricSettings;
+
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+    private final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+    private final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+    private volatile double last = 0.0d;
+    private final DoubleRecorder histogram;
+
+    /** The totals at the last snapshot, only accessed by the aggregating thread */
+    private long countAtSnapshot = 0L;
+    private double sumAtSnapshot = 0.0d;
+
+    BoundGauge(Identifier identifier, MetricSettings metricSettings) {
+        this.identifier = identifier;
+        this.metricSettings = metricSettings;
+        if (metricSettings == null || !metricSettings.isHistogram()) {
+            histogram = null;
+        } else {
+            histogram = new DoubleRecorder(metricSettings.getSignificantdigits());
+        }
+    }
+
+    /**
+     * Record a sample.
+     *
+     * @param x
+     *            sample value
+     */
+    public void sample(double x) {
+        last = x;
+        max.accumulate(x);
+        min.accumulate(x);
+        sum.add(x);
+        if (histogram != null) {
+            histogram.recordValue(x);
+        }
+        count.increment();
+    }
+
+    Identifier getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Puts the samples recorded since the last snapshot in the given bucket, if there are any.
+     * This must only be called by a single thread at the time.
+     */
+    void snapshot(Bucket bucket) {
+        long totalCount = count.sum();
+        long samples = totalCount - countAtSnapshot;
+        if (samples == 0) return;
+
+        double totalSum = sum.sum();
+        double currentLast = last;
+        double currentMax = max.getThenReset();
+        double currentMin = min.getThenReset();
+        UntypedMetric value = new UntypedMetric(metricSettings);
+        value.putAggregate(samples,
+                           totalSum - sumAtSnapshot,
+                           Double.isInfinite(currentMin) ? currentLast : currentMin,
+                           Double.isInfinite(currentMax) ? currentLast : currentMax,
+                           currentLast,
+                           histogram != null ? histogram.getIntervalHistogram() : null);
+        countAtSnapshot = totalCount;
+        sumAtSnapshot = totalSum;
+        bucket.put(identifier, value);
+    }
+
+}
@@ -0,0 +1,43 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.metrics.simple;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The bound counters and gauges of a receiver. There is a single instance of
+ * each bound metric per identifier, so binding the same name and point again
+ * returns the handle already created.
+ *
+ * @author agent
+ */
+class BoundMetrics {
+
+    private final ConcurrentMap<Identifier, BoundCounter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Identifier, BoundGauge> gauges = new ConcurrentHashMap<>();
+
+    BoundCounter counter(Identifier identifier, MetricSettings metricSettings) {
+        return counters.computeIfAbsent(identifier, id -> new BoundCounter(id, metricSettings));
+    }
+
+    BoundGauge gauge(Identifier identifier, MetricSettings metricSettings) {
+        return gauges.computeIfAbsent(identifier, id -> new BoundGauge(id, metricSettings));
+    }
+
+    /**
+     * Returns a bucket containing what has been recorded in the bound metrics
+     * since the last snapshot. This only reads the bound metrics, the threads
+     * recording into them are never blocked.
+     */
+    synchronized Bucket snapshot() {
+        Bucket bucket = new Bucket();
+        for (BoundCounter counter : counters.values()) {
+            counter.snapshot(bucket);
+        }
+        for (BoundGauge gauge : gauges.values()) {
+            gauge.snapshot(bucket);
+        }
+        return bucket;
+    }
+
+}
@@ -60,6 +60,30 @@ public class Counter {
         metricReceiver.update(new Sample(new Measurement(Long.valueOf(n)), new Identifier(name, p), AssumedType.COUNTER));
     }
 
+    /**
+     * Bind this counter to the point it was declared with. Adding to the
+     * returned counter does not allocate, so for metrics updated on hot paths,
+     * bind once and keep the bound counter.
+     *
+     * @return a counter which adds to this metric at the default position
+     */
+    public BoundCounter bind() {
+        return bind(defaultPosition);
+    }
+
+    /**
+     * Bind this counter to the given point. Adding to the returned counter
+     * does not allocate, so for metrics updated on hot paths, bind once and
+     * keep the bound counter.
+     *
+     * @param p
+     *            the point in the metric space the returned counter adds to
+     * @return a counter which adds to this metric at the given point
+     */
+    public BoundCounter bind(Point p) {
+        return metricReceiver.bindCounter(name, p);
+    }
+
     /**
      * Create a PointBuilder with default dimension values as given when this
      * counter was declared.
@@ -48,6 +48,30 @@ public class Gauge {
         receiver.update(new Sample(new Measurement(Double.valueOf(x)), new Identifier(name, p), AssumedType.GAUGE));
     }
 
+    /**
+     * Bind this gauge to the position it was declared with. Sampling the
+     * returned gauge does not allocate, so for metrics updated on hot paths,
+     * bind once and keep the bound gauge.
+     *
+     * @return a gauge which samples this metric at the default position
+     */
+    public BoundGauge bind() {
+        return bind(defaultPosition);
+    }
+
+    /**
+     * Bind this gauge to the given position. Sampling the returned gauge does
+     * not allocate, so for metrics updated on hot paths, bind once and keep
+     * the bound gauge.
+     *
+     * @param p
+     *            position/dimension values for the samples of the returned gauge
+     * @return a gauge which samples this metric at the given position
+     */
+    public BoundGauge bind(Point p) {
+        return receiver.bindGauge(name, p);
+    }
+
     /**
      * Create a PointBuilder with the default dimension values reflecting those
      * given when this gauge was declared.
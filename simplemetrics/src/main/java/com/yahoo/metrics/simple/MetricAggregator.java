@@ -18,13 +18,14 @@ class MetricAggregator implements Runnable {
 
     private final ThreadLocalDirectory<Bucket, Sample> metricsCollection;
     private final AtomicReference<Bucket> currentSnapshot;
+    private final BoundMetrics boundMetrics;
     private int generation = 0;
     private final Bucket[] buffer;
     private long fromMillis;
     private final DimensionCache dimensions;
 
     MetricAggregator(ThreadLocalDirectory<Bucket, Sample> metricsCollection, AtomicReference<Bucket> currentSnapshot,
-            ManagerConfig settings) {
+            BoundMetrics boundMetrics, ManagerConfig settings) {
         if (settings.reportPeriodSeconds() < 10) {
             throw new IllegalArgumentException(
                     "Do not use this metrics implementation"
@@ -35,6 +36,7 @@ class MetricAggregator implements Runnable {
         fromMillis = System.currentTimeMillis();
         this.metricsCollection = metricsCollection;
         this.currentSnapshot = currentSnapshot;
+        this.boundMetrics = boundMetrics;
     }
 
     @Override
@@ -64,6 +66,7 @@ class MetricAggregator implements Runnable {
         for (Bucket b : buckets) {
             latest.merge(b, true);
         }
+        latest.merge(boundMetrics.snapshot(), true);
         buffer[bucketIndex] = latest;
         this.fromMillis = toMillis;
         return bucketToDelete;
@@ -23,6 +23,7 @@ public class MetricReceiver {
     public static final MetricReceiver nullImplementation = new NullReceiver();
     private final ThreadLocalDirectory<Bucket, Sample> metricsCollection;
     private final AtomicReference<Bucket> currentSnapshot;
+    private final BoundMetrics boundMetrics;
 
     // metricSettings is volatile for reading, the lock is for updates
     private final Object histogramDefinitionsLock = new Object();
@@ -49,6 +50,11 @@ public class MetricReceiver {
         public void add(long n, Point p) {
         }
 
+        @Override
+        public BoundCounter bind(Point p) {
+            return new BoundCounter(new Identifier(null, p), null);
+        }
+
         @Override
         public PointBuilder builder() {
             return super.builder();
@@ -68,6 +74,11 @@ public class MetricReceiver {
         public void sample(double x, Point p) {
         }
 
+        @Override
+        public BoundGauge bind(Point p) {
+            return new BoundGauge(new Identifier(null, p), null);
+        }
+
         @Override
         public PointBuilder builder() {
             return super.builder();
@@ -77,7 +88,7 @@ public class MetricReceiver {
     public static final class MockReceiver extends MetricReceiver {
         private final ThreadLocalDirectory<Bucket, Sample> collection;
         private MockReceiver(ThreadLocalDirectory<Bucket, Sample> collection) {
-            super(collection, null);
+            super(collection, null, new BoundMetrics());
             this.collection = collection;
         }
         public MockReceiver() {
@@ -89,6 +100,7 @@ public class MetricReceiver {
             for (Bucket b : collection.fetch()) {
                 merged.merge(b, true);
             }
+            merged.merge(getBoundMetrics().snapshot(), true);
             return merged;
         }
         /** utility method for testing */
@@ -131,6 +143,16 @@ public class MetricReceiver {
             return null;
         }
 
+        @Override
+        BoundCounter bindCounter(String name, Point p) {
+            return new NullCounter().bind(p);
+        }
+
+        @Override
+        BoundGauge bindGauge(String name, Point p) {
+            return new NullGauge().bind(p);
+        }
+
         @Override
         public PointBuilder pointBuilder() {
             return null;
@@ -152,8 +174,14 @@ public class MetricReceiver {
     }
 
     public MetricReceiver(ThreadLocalDirectory<Bucket, Sample> metricsCollection, AtomicReference<Bucket> currentSnapshot) {
+        this(metricsCollection, currentSnapshot, new BoundMetrics());
+    }
+
+    MetricReceiver(ThreadLocalDirectory<Bucket, Sample> metricsCollection, AtomicReference<Bucket> currentSnapshot,
+                   BoundMetrics boundMetrics) {
         this.metricsCollection = metricsCollection;
         this.currentSnapshot = currentSnapshot;
+        this.boundMetrics = boundMetrics;
         metricSettings = new ImmutableMap.Builder<String, MetricSettings>().build();
     }
 
@@ -258,6 +286,30 @@ public class MetricReceiver {
         return new Gauge(name, defaultDimensions, this);
     }
 
+    /**
+     * Returns the counter bound to the given name and point, creating it if
+     * this is the first time it is bound. Use {@link Counter#bind(Point)}.
+     */
+    BoundCounter bindCounter(String name, Point p) {
+        Identifier identifier = new Identifier(name, p);
+        return boundMetrics.counter(identifier, getMetricDefinition(identifier.getName()));
+    }
+
+    /**
+     * Returns the gauge bound to the given name and point, creating it if this
+     * is the first time it is bound. Histogram settings for the metric must be
+     * given when declaring the gauge, before it is bound. Use
+     * {@link Gauge#bind(Point)}.
+     */
+    BoundGauge bindGauge(String name, Point p) {
+        Identifier identifier = new Identifier(name, p);
+        return boundMetrics.gauge(identifier, getMetricDefinition(identifier.getName()));
+    }
+
+    BoundMetrics getBoundMetrics() {
+        return boundMetrics;
+    }
+
     /**
      * Create a PointBuilder instance with no default settings. PointBuilder
      * instances are not thread-safe.
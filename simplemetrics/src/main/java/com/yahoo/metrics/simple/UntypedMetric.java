@@ -38,8 +38,12 @@ public class UntypedMetric {
     }
 
     void add(Number x) {
+        add(x.longValue());
+    }
+
+    void add(long x) {
         outputFormat = AssumedType.COUNTER;
-        count += x.longValue();
+        count += x;
     }
 
     void put(Number x) {
@@ -60,6 +64,25 @@ public class UntypedMetric {
         ++count;
     }
 
+    /** Puts a number of gauge samples which are already aggregated, as by a {@link BoundGauge} */
+    void putAggregate(long count, double sum, double min, double max, double last, DoubleHistogram histogram) {
+        outputFormat = AssumedType.GAUGE;
+        current = last;
+        if (this.histogram != null && histogram != null) {
+            this.histogram.add(histogram);
+        }
+        if (this.count > 0) {
+            this.max = Math.max(max, this.max);
+            this.min = Math.min(min, this.min);
+            this.sum += sum;
+        } else {
+            this.max = max;
+            this.min = min;
+            this.sum = sum;
+        }
+        this.count += count;
+    }
+
     UntypedMetric pruneData() {
         UntypedMetric pruned = new UntypedMetric(null);
         pruned.outputFormat = this.outputFormat;
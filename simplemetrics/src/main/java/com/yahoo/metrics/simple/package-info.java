@@ -13,6 +13,9 @@
  * {@link com.yahoo.metrics.simple.MetricReceiver#declareGauge(String)},
  * {@link com.yahoo.metrics.simple.MetricReceiver#declareGauge(String, Point)}, or
  * {@link com.yahoo.metrics.simple.MetricReceiver#declareGauge(String, java.util.Optional, MetricSettings)}.
+ * Metrics which are updated on hot paths at a fixed point should be bound once
+ * to that point, as {@link com.yahoo.metrics.simple.BoundCounter} or
+ * {@link com.yahoo.metrics.simple.BoundGauge}, which do not allocate when updated.
  * </p>
  *
  * <p>
@@ -108,4 +108,27 @@ public class CounterTest {
         assertEquals(twoToThePowerOfFourtyeight, x.get(0).getValue().getCount());
     }
 
+    @Test
+    public final void testBind() throws InterruptedException {
+        final String metricName = "unitTestCounter";
+        Point p = receiver.pointBuilder().set("x", 2L).build();
+        Counter c = receiver.declareCounter(metricName, p);
+        BoundCounter bound = c.bind();
+        assertSame(bound, c.bind(p));
+        bound.add();
+        bound.add(5L);
+        c.add();
+        Bucket b = receiver.getSnapshot();
+        Map<Point, UntypedMetric> values = b.getMapForMetric(metricName);
+        assertEquals(1, values.size());
+        assertEquals(7L, values.get(p).getCount());
+        assertTrue(values.get(p).isCounter());
+
+        bound.add(3L);
+        b = receiver.getSnapshot();
+        assertEquals(3L, b.getMapForMetric(metricName).get(p).getCount());
+        b = receiver.getSnapshot();
+        assertTrue(b.getMapForMetric(metricName).isEmpty());
+    }
+
 }
@@ -8,6 +8,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
@@ -80,4 +81,30 @@ public class GaugeTest {
         assertEquals(Math.E, x.get(0).getValue().getLast(), 1e-15);
     }
 
+    @Test
+    public final void testBind() throws InterruptedException {
+        final String metricName = "unitTestGauge";
+        Gauge g = receiver.declareGauge(metricName, Optional.empty(), new MetricSettings.Builder().histogram(true).build());
+        BoundGauge bound = g.bind();
+        assertSame(bound, g.bind(null));
+        bound.sample(3.0d);
+        bound.sample(1.0d);
+        g.sample(5.0d);
+        bound.sample(2.0d);
+        Bucket b = receiver.getSnapshot();
+        UntypedMetric value = b.getMapForMetric(metricName).get(Point.emptyPoint());
+        assertEquals(4L, value.getCount());
+        assertEquals(11.0d, value.getSum(), 0.0d);
+        assertEquals(5.0d, value.getMax(), 0.0d);
+        assertEquals(2.0d, value.getLast(), 0.0d);
+        assertEquals(4L, value.getHistogram().getTotalCount());
+
+        bound.sample(7.0d);
+        value = receiver.getSnapshot().getMapForMetric(metricName).get(Point.emptyPoint());
+        assertEquals(1L, value.getCount());
+        assertEquals(7.0d, value.getSum(), 0.0d);
+        assertEquals(7.0d, value.getMax(), 0.0d);
+        assertEquals(1L, value.getHistogram().getTotalCount());
+    }
+
 }
@@ -18,6 +18,14 @@ public class Distribution {
     private int redundancy;
     private boolean distributorAutoOwnershipTransferOnWholeGroupDown = false;
     private ConfigSubscriber configSub;
+    /** Incremented on each reconfiguration, to invalidate ownership tables computed with the previous config */
+    private volatile int configGeneration = 0;
+    /** Reused by lookups, as they are frequent and fully reseed the generator */
+    private static final ThreadLocal<RandomGen> randomGens = ThreadLocal.withInitial(RandomGen::new);
+    /** Reused by lookups of ideal storage nodes, which are cleared after each use */
+    private static final ThreadLocal<List<ResultGroup>> resultGroupLists = ThreadLocal.withInitial(ArrayList::new);
+    /** The node of each type and configured index, reused as keys when looking up node states */
+    private Node[][] nodeKeys = createNodeKeys(-1);
 
     public Group getRootGroup() {
         return nodeGraph;
@@ -42,6 +50,7 @@ public class Distribution {
         public void configure(StorDistributionConfig config) {
             try{
                 Group root = null;
+                int maxIndex = -1;
                 for (int i=0; i<config.group().size(); ++i) {
                     StorDistributionConfig.Group cg = config.group().get(i);
                     int[] path = new int[0];
@@ -56,6 +65,7 @@ public class Distribution {
                         List<ConfiguredNode> nodes = new ArrayList<>();
                         for (StorDistributionConfig.Group.Nodes node : cg.nodes()) {
                             nodes.add(new ConfiguredNode(node.index(), node.retired()));
+                            maxIndex = Math.max(maxIndex, node.index());
                         }
                         group.setNodes(nodes);
                     } else {
@@ -79,10 +89,12 @@ public class Distribution {
                             + "\nminimum:\n" + config.toString());
                 }
                 root.calculateDistributionHashValues();
+                Distribution.this.nodeKeys = createNodeKeys(maxIndex);
                 Distribution.this.nodeGraph = root;
                 Distribution.this.redundancy = config.redundancy();
                 //Distribution.this.diskDistribution = config.disk_distribution();
                 distributorAutoOwnershipTransferOnWholeGroupDown = config.distributor_auto_ownership_transfer_on_whole_group_down();
+                configGeneration++;
             } catch (ParseException e) {
                 throw (IllegalStateException) new IllegalStateException("Failed to parse config").initCause(e);
             }
@@ -140,29 +152,33 @@ public class Distribution {
         return seed;
     }
 
-    private class ScoredGroup implements Comparable<ScoredGroup> {
-        Group group;
-        double score;
-
-        ScoredGroup(Group g, double score) { this.group = g; this.score = score; }
+    /** Returns a random generator of this thread seeded with the given seed, like a new RandomGen(seed) */
+    private static RandomGen randomGen(int seed) {
+        RandomGen random = randomGens.get();
+        random.setSeed(seed);
+        return random;
+    }
 
-        @Override
-        public int compareTo(ScoredGroup o) {
-            // Sorts by highest first.
-            return new Double(o.score).compareTo(score);
+    private static Node[][] createNodeKeys(int maxIndex) {
+        Node[][] nodeKeys = new Node[NodeType.values().length][maxIndex + 1];
+        for (NodeType type : NodeType.values()) {
+            for (int index = 0; index <= maxIndex; ++index) {
+                nodeKeys[type.ordinal()][index] = new Node(type, index);
+            }
         }
+        return nodeKeys;
     }
-    private class ScoredNode {
-        int index;
-        int reliability;
-        double score;
 
-        ScoredNode(int index, int reliability, double score) { this.index = index; this.reliability = reliability; this.score = score; }
+    /** Returns the node of the given type and index, which is only created if the index is not configured */
+    private Node nodeKey(NodeType type, int index) {
+        Node[] keys = nodeKeys[type.ordinal()];
+        return index < keys.length ? keys[index] : new Node(type, index);
     }
-    private static boolean allDistributorsDown(Group g, ClusterState clusterState) {
+
+    private boolean allDistributorsDown(Group g, ClusterState clusterState) {
         if (g.isLeafGroup()) {
             for (ConfiguredNode node : g.getNodes()) {
-                NodeState ns = clusterState.getNodeState(new Node(NodeType.DISTRIBUTOR, node.index()));
+                NodeState ns = clusterState.getNodeStateForReading(nodeKey(NodeType.DISTRIBUTOR, node.index()));
                 if (ns.getState().oneOf("ui")) return false;
             }
         } else {
@@ -175,9 +191,10 @@ public class Distribution {
     private Group getIdealDistributorGroup(BucketId bucket, ClusterState clusterState, Group parent, int redundancy) {
         if (parent.isLeafGroup()) return parent;
         int[] redundancyArray = parent.getDistribution().getRedundancyArray(redundancy);
-        TreeSet<ScoredGroup> results = new TreeSet<>();
-        int seed = getGroupSeed(bucket, clusterState, parent);
-        RandomGen random = new RandomGen(seed);
+        RandomGen random = randomGen(getGroupSeed(bucket, clusterState, parent));
+        // Pick the highest scored group (the first one on ties), skipping groups without distributors if requested
+        Group best = null;
+        double bestScore = 0;
         int currentIndex = 0;
         for(Group g : parent.getSubgroups().values()) {
             while (g.getIndex() < currentIndex++) random.nextDouble();
@@ -185,15 +202,13 @@ public class Distribution {
             if (Math.abs(g.getCapacity() - 1.0) > 0.0000001) {
                 score = Math.pow(score, 1.0 / g.getCapacity());
             }
-            results.add(new ScoredGroup(g, score));
-        }
-        if (distributorAutoOwnershipTransferOnWholeGroupDown) {
-            while (!results.isEmpty() && allDistributorsDown(results.first().group, clusterState)) {
-                results.remove(results.first());
-            }
+            if (best != null && score <= bestScore) continue;
+            if (distributorAutoOwnershipTransferOnWholeGroupDown && allDistributorsDown(g, clusterState)) continue;
+            best = g;
+            bestScore = score;
         }
-        if (results.isEmpty()) return null;
-        return getIdealDistributorGroup(bucket, clusterState, results.first().group, redundancyArray[0]);
+        if (best == null) return null;
+        return getIdealDistributorGroup(bucket, clusterState, best, redundancyArray[0]);
     }
     private class ResultGroup implements Comparable<ResultGroup> {
         Group group;
@@ -218,14 +233,13 @@ public class Distribution {
 
         int[] redundancyArray = parent.getDistribution().getRedundancyArray(redundancy);
 
-        List<ScoredGroup> tmpResults = new ArrayList<>();
-        for (int i = 0; i < redundancyArray.length; ++i) {
-            tmpResults.add(new ScoredGroup(null, 0.0));
-        }
+        // The best groups sorted by descending score, with null groups scored 0 to avoid checking the size
+        Group[] bestGroups = new Group[redundancyArray.length];
+        double[] bestScores = new double[redundancyArray.length];
 
         int seed = getGroupSeed(bucketId, clusterState, parent);
 
-        RandomGen random = new RandomGen(seed);
+        RandomGen random = randomGen(seed); // not used after recursing below
 
         int currentIndex = 0;
         Map<Integer, Group> subGroups = parent.getSubgroups();
@@ -241,15 +255,19 @@ public class Distribution {
                 score = Math.pow(score, 1.0 / group.getValue().getCapacity());
             }
 
-            if (score > tmpResults.get(tmpResults.size() - 1).score) {
-                tmpResults.add(new ScoredGroup(group.getValue(), score));
-                Collections.sort(tmpResults);
-                tmpResults.remove(tmpResults.size() - 1);
+            if (score > bestScores[bestScores.length - 1]) { // insert after any groups with the same score
+                int i = bestScores.length - 1;
+                for (; i > 0 && score > bestScores[i - 1]; --i) {
+                    bestGroups[i] = bestGroups[i - 1];
+                    bestScores[i] = bestScores[i - 1];
+                }
+                bestGroups[i] = group.getValue();
+                bestScores[i] = score;
             }
         }
 
-        for (int i = 0; i < tmpResults.size(); ++i) {
-            Group group = tmpResults.get(i).group;
+        for (int i = 0; i < bestGroups.length; ++i) {
+            Group group = bestGroups[i];
 
             if (group != null) {
                 getIdealGroups(bucketId, clusterState, group, redundancyArray[i], results);
@@ -314,35 +332,43 @@ public class Distribution {
         // If bucket is split less than distribution bit, we cannot distribute
         // it. Different nodes own various parts of the bucket.
         if (bucket.getUsedBits() < clusterState.getDistributionBitCount()) {
-            String msg = "Cannot get ideal state for bucket " + bucket + " using "
-                    + bucket.getUsedBits() + " bits when cluster uses "
-                    + clusterState.getDistributionBitCount() + " distribution bits.";
-            throw new TooFewBucketBitsInUseException(msg);
+            throw tooFewBucketBits(bucket, clusterState);
         }
 
         // Find what hierarchical groups we should have copies in
-        List<ResultGroup> groupDistribution = new ArrayList<>();
-
-        getIdealGroups(bucket, clusterState, nodeGraph, redundancy, groupDistribution);
+        List<ResultGroup> groupDistribution = resultGroupLists.get();
+        try {
+            getIdealGroups(bucket, clusterState, nodeGraph, redundancy, groupDistribution);
+            addIdealStorageNodes(clusterState, bucket, upStates, groupDistribution, resultNodes);
+        } finally {
+            groupDistribution.clear();
+        }
+        return resultNodes;
+    }
 
+    private void addIdealStorageNodes(ClusterState clusterState, BucketId bucket, String upStates,
+                                      List<ResultGroup> groupDistribution, List<Integer> resultNodes) {
         int seed = getStorageSeed(bucket, clusterState);
 
-        RandomGen random = new RandomGen(seed);
+        RandomGen random = randomGen(seed);
         int randomIndex = 0;
+        int[] resultIndexes = new int[0];
+        double[] resultScores = new double[0];
         for (ResultGroup group : groupDistribution) {
             int redundancy = group.redundancy;
             Collection<ConfiguredNode> nodes = group.group.getNodes();
 
-            // Create temporary place to hold results. Use double linked list
-            // for cheap access to back(). Stuff in redundancy fake entries to
-            // avoid needing to check size during iteration.
-            LinkedList<ScoredNode> tmpResults = new LinkedList<>();
-            for (int i = 0; i < redundancy; ++i) {
-                tmpResults.add(new ScoredNode(0, 0, 0.0));
+            // Create temporary place to hold results, sorted by descending score.
+            // Stuff in redundancy fake entries to avoid needing to check size during iteration.
+            if (resultIndexes.length < redundancy) {
+                resultIndexes = new int[redundancy];
+                resultScores = new double[redundancy];
             }
+            Arrays.fill(resultIndexes, 0, redundancy, 0);
+            Arrays.fill(resultScores, 0, redundancy, 0.0);
 
             for (ConfiguredNode configuredNode : nodes) {
-                NodeState nodeState = clusterState.getNodeState(new Node(NodeType.STORAGE, configuredNode.index()));
+                NodeState nodeState = clusterState.getNodeStateForReading(nodeKey(NodeType.STORAGE, configuredNode.index()));
                 if (!nodeState.getState().oneOf(upStates)) {
                     continue;
                 }
@@ -375,23 +401,21 @@ public class Distribution {
                 if (nodeState.getCapacity() != 1.0) {
                     score = Math.pow(score, 1.0 / nodeState.getCapacity());
                 }
-                if (score > tmpResults.getLast().score) {
-                    for (int i = 0; i < tmpResults.size(); ++i) {
-                        if (score > tmpResults.get(i).score) {
-                            tmpResults.add(i, new ScoredNode(configuredNode.index(), nodeState.getReliability(), score));
-                            break;
-                        }
+                if (score > resultScores[redundancy - 1]) {
+                    int i = redundancy - 1;
+                    for (; i > 0 && score > resultScores[i - 1]; --i) {
+                        resultIndexes[i] = resultIndexes[i - 1];
+                        resultScores[i] = resultScores[i - 1];
                     }
-                    tmpResults.removeLast();
+                    resultIndexes[i] = configuredNode.index();
+                    resultScores[i] = score;
                 }
             }
 
-            for (ScoredNode node : tmpResults) {
-                resultNodes.add(node.index);
+            for (int i = 0; i < redundancy; ++i) {
+                resultNodes.add(resultIndexes[i]);
             }
         }
-
-        return resultNodes;
     }
 
     public static class TooFewBucketBitsInUseException extends Exception {
@@ -404,20 +428,43 @@ public class Distribution {
             super(message);
         }
     }
+    static TooFewBucketBitsInUseException tooFewBucketBits(BucketId bucket, ClusterState state) {
+        return new TooFewBucketBitsInUseException("Cannot get ideal state for bucket " + bucket + " using " + bucket.getUsedBits()
+                + " bits when cluster uses " + state.getDistributionBitCount() + " distribution bits.");
+    }
+    static NoDistributorsAvailableException noDistributorsAvailable(String upStates) {
+        return new NoDistributorsAvailableException(
+                "No available distributors in any of the given upstates '" + upStates + "'.");
+    }
+
+    /** Returns the generation of the config of this, which is changed each time this is reconfigured */
+    int getConfigGeneration() { return configGeneration; }
+
+    /**
+     * Returns a table of the ideal distributor of each bucket in the given state, for repeated lookups.
+     * The table computes from a copy of the state, so later changes to the given instance have no effect on it.
+     */
+    public DistributorOwnershipTable createDistributorOwnershipTable(ClusterState state, String upStates) {
+        return new DistributorOwnershipTable(this, state, upStates);
+    }
+
     public int getIdealDistributorNode(ClusterState state, BucketId bucket, String upStates) throws TooFewBucketBitsInUseException, NoDistributorsAvailableException {
         if (bucket.getUsedBits() < state.getDistributionBitCount()) {
-            throw new TooFewBucketBitsInUseException("Cannot get ideal state for bucket " + bucket + " using " + bucket.getUsedBits()
-                    + " bits when cluster uses " + state.getDistributionBitCount() + " distribution bits.");
+            throw tooFewBucketBits(bucket, state);
         }
 
         Group idealGroup = getIdealDistributorGroup(bucket, state, nodeGraph, redundancy);
+        if (idealGroup == null) {
+            throw noDistributorsAvailable(upStates);
+        }
         int seed = getDistributorSeed(bucket, state);
-        RandomGen random = new RandomGen(seed);
+        RandomGen random = randomGen(seed);
         int randomIndex = 0;
         List<ConfiguredNode> configuredNodes = idealGroup.getNodes();
-        ScoredNode node = new ScoredNode(0, 0, 0);
+        int bestIndex = -1;
+        double bestScore = 0;
         for (ConfiguredNode configuredNode : configuredNodes) {
-            NodeState nodeState = state.getNodeState(new Node(NodeType.DISTRIBUTOR, configuredNode.index()));
+            NodeState nodeState = state.getNodeStateForReading(nodeKey(NodeType.DISTRIBUTOR, configuredNode.index()));
             if (!nodeState.getState().oneOf(upStates)) continue;
             if (configuredNode.index() != randomIndex) {
                 if (configuredNode.index() < randomIndex) {
@@ -434,16 +481,15 @@ public class Distribution {
             if (Math.abs(nodeState.getCapacity() - 1.0) > 0.0000001) {
                 score = Math.pow(score, 1.0 / nodeState.getCapacity());
             }
-            if (score > node.score) {
-                node = new ScoredNode(configuredNode.index(), 1, score);
+            if (score > bestScore) {
+                bestIndex = configuredNode.index();
+                bestScore = score;
             }
         }
-        if (node.reliability == 0) {
-            throw new NoDistributorsAvailableException(
-                    "No available distributors in any of the given upstates '"
-                    + upStates + "'.");
+        if (bestIndex < 0) {
+            throw noDistributorsAvailable(upStates);
         }
-        return node.index;
+        return bestIndex;
     }
     private boolean visitGroups(GroupVisitor visitor, Map<Integer, Group> groups) {
         for (Group g : groups.values()) {
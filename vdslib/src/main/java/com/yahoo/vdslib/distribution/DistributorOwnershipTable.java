@@ -0,0 +1,112 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vdslib.distribution;
+
+import com.yahoo.document.BucketId;
+import com.yahoo.vdslib.state.ClusterState;
+
+/**
+ * The ideal distributor of each superbucket in one cluster state, for repeated lookups against the same state.
+ * The ideal distributor of a bucket only depends on the bits of the bucket which are used for distribution,
+ * so owners are computed once per superbucket, on first lookup, and then read from a table.
+ * <p>
+ * The table is computed from a copy of the cluster state given on creation, so it is not affected by later
+ * changes to that instance. If the distribution is reconfigured, the table is cleared.
+ * If the state uses more than {@link #maxTableBits} distribution bits, owners are computed on each lookup.
+ * <p>
+ * This is thread-safe.
+ *
+ * @author agent
+ */
+public class DistributorOwnershipTable {
+
+    /** The max number of distribution bits for which owners are stored in a table */
+    public static final int maxTableBits = 16;
+
+    /** Table entry of a superbucket whose owner is not computed yet */
+    private static final int unknown = 0;
+
+    /** Table entry of a superbucket where no distributor is in any of the up states */
+    private static final int noDistributors = -1;
+
+    private final Distribution distribution;
+    private final ClusterState state;
+    private final String upStates;
+    private final int distributionBitMask;
+
+    private volatile Owners owners;
+
+    DistributorOwnershipTable(Distribution distribution, ClusterState state, String upStates) {
+        this.distribution = distribution;
+        this.state = state.clone();
+        this.upStates = upStates;
+        this.distributionBitMask = tableSize(this.state) - 1;
+        this.owners = new Owners(distribution.getConfigGeneration(), tableSize(this.state));
+    }
+
+    /** Returns the version of the cluster state this is computed from */
+    public int getClusterStateVersion() { return state.getVersion(); }
+
+    /** Returns the up states a distributor must be in to own buckets in this */
+    public String getUpStates() { return upStates; }
+
+    /**
+     * Returns the index of the ideal distributor of the given bucket.
+     * This returns the same as {@link Distribution#getIdealDistributorNode} with the state and up states of this.
+     */
+    public int getIdealDistributorNode(BucketId bucket) throws Distribution.TooFewBucketBitsInUseException,
+                                                               Distribution.NoDistributorsAvailableException {
+        Owners owners = currentOwners();
+        if (owners.table == null)
+            return distribution.getIdealDistributorNode(state, bucket, upStates);
+
+        if (bucket.getUsedBits() < state.getDistributionBitCount())
+            throw Distribution.tooFewBucketBits(bucket, state);
+        int superbucket = (int)bucket.getRawId() & distributionBitMask;
+        int entry = owners.table[superbucket];
+        if (entry == unknown) {
+            try {
+                entry = distribution.getIdealDistributorNode(state, bucket, upStates) + 1;
+            } catch (Distribution.NoDistributorsAvailableException e) {
+                entry = noDistributors;
+            }
+            owners.table[superbucket] = entry; // racing writers write the same value
+        }
+        if (entry == noDistributors)
+            throw Distribution.noDistributorsAvailable(upStates);
+        return entry - 1;
+    }
+
+    private Owners currentOwners() {
+        Owners owners = this.owners;
+        int configGeneration = distribution.getConfigGeneration();
+        if (owners.configGeneration != configGeneration) {
+            owners = new Owners(configGeneration, tableSize(state));
+            this.owners = owners;
+        }
+        return owners;
+    }
+
+    private static int tableSize(ClusterState state) {
+        return state.getDistributionBitCount() > maxTableBits ? 0 : 1 << state.getDistributionBitCount();
+    }
+
+    @Override
+    public String toString() {
+        return "distributor ownership table of cluster state version " + state.getVersion() +
+               " with up states '" + upStates + "'";
+    }
+
+    /** Owners of superbuckets, stored as node index + 1, computed with one configuration of the distribution */
+    private static class Owners {
+
+        final int configGeneration;
+        final int[] table;
+
+        Owners(int configGeneration, int size) {
+            this.configGeneration = configGeneration;
+            this.table = size == 0 ? null : new int[size];
+        }
+
+    }
+
+}
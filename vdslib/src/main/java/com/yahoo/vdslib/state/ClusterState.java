@@ -13,6 +13,8 @@ public class ClusterState implements Cloneable {
 
     private static final NodeState DEFAULT_STORAGE_UP_NODE_STATE = new NodeState(NodeType.STORAGE, State.UP);
     private static final NodeState DEFAULT_DISTRIBUTOR_UP_NODE_STATE = new NodeState(NodeType.DISTRIBUTOR, State.UP);
+    private static final NodeState DEFAULT_STORAGE_DOWN_NODE_STATE = new NodeState(NodeType.STORAGE, State.DOWN);
+    private static final NodeState DEFAULT_DISTRIBUTOR_DOWN_NODE_STATE = new NodeState(NodeType.DISTRIBUTOR, State.DOWN);
 
     private int version = 0;
     private State state = State.DOWN;
@@ -386,6 +388,17 @@ public class ClusterState implements Cloneable {
         return nodeStates.getOrDefault(node, new NodeState(node.getType(), State.UP));
     }
 
+    /**
+     * Returns the state of a node as {@link #getNodeState}, but without creating a new instance for nodes
+     * which are not known, for frequent lookups. The returned state must not be modified.
+     */
+    public NodeState getNodeStateForReading(Node node) {
+        if (node.getIndex() >= nodeCount.get(node.getType().ordinal()))
+            return node.getType() == NodeType.STORAGE ? DEFAULT_STORAGE_DOWN_NODE_STATE : DEFAULT_DISTRIBUTOR_DOWN_NODE_STATE;
+        NodeState nodeState = nodeStates.get(node);
+        return nodeState != null ? nodeState : defaultUpNodeState(node.getType());
+    }
+
     /**
      * Set the node state of the given node.
      *
@@ -65,11 +65,7 @@ public enum State {
     public boolean maySetWantedStateForThisNodeState(State s) { return (s.ordinal() <= ordinal()); }
 
     public boolean oneOf(String states) {
-        for (char c : states.toCharArray()) {
-            String s = "" + c;
-            if (s.equals(serializedAs)) return true;
-        }
-        return false;
+        return serializedAs.length() == 1 && states.indexOf(serializedAs.charAt(0)) >= 0;
     }
 
     @Override
@@ -4,7 +4,10 @@ package com.yahoo.vdslib.distribution;
 import com.yahoo.vespa.config.content.StorDistributionConfig;
 import com.yahoo.vdslib.state.ClusterState;
 import com.yahoo.document.BucketId;
+import com.yahoo.vdslib.state.Node;
+import com.yahoo.vdslib.state.NodeState;
 import com.yahoo.vdslib.state.NodeType;
+import com.yahoo.vdslib.state.State;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.StringWriter;
@@ -321,6 +324,45 @@ public class DistributionTestCase extends junit.framework.TestCase {
             test.recordResult(bucket).assertNodeCount(1);
         }
     }
+    public void testDistributorOwnershipTable() throws Exception {
+        Distribution distribution = new Distribution(new StorDistributionConfig(
+                buildHierarchicalConfig(6, 3, 1, "1|2|*", 3).distributor_auto_ownership_transfer_on_whole_group_down(true)));
+        ClusterState state = new ClusterState("version:7 bits:8 distributor:9 .1.s:d .2.s:d .4.s:m .7.s:r");
+        DistributorOwnershipTable table = distribution.createDistributorOwnershipTable(state, "uim");
+        assertEquals(7, table.getClusterStateVersion());
+        for (int i = 0; i < 2; ++i) { // second round reads the table
+            for (BucketId bucket : getTestBuckets(8)) {
+                assertEquals(bucket.toString(),
+                             distribution.getIdealDistributorNode(state, bucket, "uim"),
+                             table.getIdealDistributorNode(bucket));
+            }
+        }
+
+        // The table is not affected by changes to the state it was created from
+        ClusterState original = state.clone();
+        state.setNodeState(new Node(NodeType.DISTRIBUTOR, 0), new NodeState(NodeType.DISTRIBUTOR, State.DOWN));
+        state.setDistributionBits(10);
+        for (BucketId bucket : getTestBuckets(8)) {
+            assertEquals(distribution.getIdealDistributorNode(original, bucket, "uim"),
+                         table.getIdealDistributorNode(bucket));
+        }
+
+        try {
+            table.getIdealDistributorNode(new BucketId(4, 1));
+            fail("Expected exception");
+        } catch (Distribution.TooFewBucketBitsInUseException e) {
+            // expected
+        }
+        DistributorOwnershipTable allDown = distribution.createDistributorOwnershipTable(new ClusterState("bits:8 distributor:9"), "r");
+        for (int i = 0; i < 2; ++i) {
+            try {
+                allDown.getIdealDistributorNode(new BucketId(16, 1));
+                fail("Expected exception");
+            } catch (Distribution.NoDistributorsAvailableException e) {
+                // expected
+            }
+        }
+    }
     public void testDistributorNoGroupTakeover() throws Exception {
         test = new DistributionTestFactory("hierarchical-grouping-distributor-notakeover")
                 .setDistribution(buildHierarchicalConfig(6, 3, 1, "1|2|*", 3).distributor_auto_ownership_transfer_on_whole_group_down(false))
@@ -4,13 +4,19 @@ package com.yahoo.document.restapi;
 import com.yahoo.document.Document;
 import com.yahoo.document.DocumentId;
 import com.yahoo.document.json.JsonWriter;
+import com.yahoo.documentapi.AckToken;
 import com.yahoo.documentapi.DumpVisitorDataHandler;
+import com.yahoo.documentapi.messagebus.protocol.PutDocumentMessage;
+import com.yahoo.documentapi.messagebus.protocol.RemoveDocumentMessage;
+import com.yahoo.jdisc.handler.CompletionHandler;
+import com.yahoo.messagebus.Message;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.nio.charset.StandardCharsets;
 
 /**
- * Handling data from visit.
+ * Handling data from visit. Documents are either collected, or passed on to a sink as they arrive,
+ * in which case they are acked when the sink has passed them on.
  *
  * @author dybis
  */
@@ -22,6 +28,20 @@ class LocalDataVisitorHandler extends DumpVisitorDataHandler {
     private boolean isFirst = true;
     private final Object monitor = new Object();
 
+    /** The sink receiving documents as they arrive, or null to collect them */
+    private final OperationHandler.VisitSink sink;
+    private volatile boolean sinkFailed = false;
+
+    /** Creates a handler which collects all documents */
+    LocalDataVisitorHandler() {
+        this(null);
+    }
+
+    /** Creates a handler which passes documents to the given sink as they arrive */
+    LocalDataVisitorHandler(OperationHandler.VisitSink sink) {
+        this.sink = sink;
+    }
+
     String getErrors() {
         return errors.toString();
     }
@@ -30,17 +50,51 @@ class LocalDataVisitorHandler extends DumpVisitorDataHandler {
         return commaSeparatedJsonDocuments.toString();
     }
 
+    /** Returns whether the sink of this has failed, such that visiting should be aborted */
+    boolean sinkFailed() {
+        return sinkFailed;
+    }
+
     @Override
-    public void onDocument(Document document, long l) {
+    public void onMessage(Message message, AckToken token) {
+        if (sink == null) {
+            super.onMessage(message, token);
+            return;
+        }
+
+        byte[] json;
         try {
-            final String docJson = new String(JsonWriter.toByteArray(document), StandardCharsets.UTF_8.name());
+            if (message instanceof PutDocumentMessage)
+                json = JsonWriter.toByteArray(((PutDocumentMessage)message).getDocumentPut().getDocument());
+            else if (message instanceof RemoveDocumentMessage)
+                json = JsonWriter.documentRemove(((RemoveDocumentMessage)message).getDocumentId());
+            else
+                throw new UnsupportedOperationException("Received unsupported message " + message + " to local data visitor handler. This handler only accepts Put and Remove");
+        } catch (Exception e) {
             synchronized (monitor) {
-                if (!isFirst) {
-                    commaSeparatedJsonDocuments.append(",");
+                errors.append(ExceptionUtils.getStackTrace(e)).append("\n");
+            }
+            ack(token);
+            return;
+        }
+
+        synchronized (monitor) {
+            if ( ! sinkFailed) {
+                try {
+                    sink.documents(json, new AckingCompletionHandler(token));
+                    return;
+                } catch (RuntimeException e) {
+                    sinkFailed = true;
                 }
-                isFirst = false;
-                commaSeparatedJsonDocuments.append(docJson);
             }
+        }
+        ack(token); // visiting is being aborted
+    }
+
+    @Override
+    public void onDocument(Document document, long l) {
+        try {
+            add(JsonWriter.toByteArray(document));
         } catch (Exception e) {
             synchronized (monitor) {
                 errors.append(ExceptionUtils.getStackTrace(e)).append("\n");
@@ -52,14 +106,7 @@ class LocalDataVisitorHandler extends DumpVisitorDataHandler {
     @Override
     public void onRemove(DocumentId documentId) {
         try {
-            final String removeJson = new String(JsonWriter.documentRemove(documentId), StandardCharsets.UTF_8.name());
-            synchronized (monitor) {
-                if (!isFirst) {
-                    commaSeparatedJsonDocuments.append(",");
-                }
-                isFirst = false;
-                commaSeparatedJsonDocuments.append(removeJson);
-            }
+            add(JsonWriter.documentRemove(documentId));
         } catch (Exception e) {
             synchronized (monitor) {
                 errors.append(ExceptionUtils.getStackTrace(e)).append("\n");
@@ -67,4 +114,36 @@ class LocalDataVisitorHandler extends DumpVisitorDataHandler {
         }
     }
 
+    private void add(byte[] json) {
+        synchronized (monitor) {
+            if (!isFirst) {
+                commaSeparatedJsonDocuments.append(",");
+            }
+            isFirst = false;
+            commaSeparatedJsonDocuments.append(new String(json, StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Acks visited documents when the sink is done with them, and marks the sink as failed if it failed */
+    private class AckingCompletionHandler implements CompletionHandler {
+
+        private final AckToken token;
+
+        AckingCompletionHandler(AckToken token) {
+            this.token = token;
+        }
+
+        @Override
+        public void completed() {
+            ack(token);
+        }
+
+        @Override
+        public void failed(Throwable t) {
+            sinkFailed = true;
+            ack(token); // so that the content nodes are not left waiting while visiting is aborted
+        }
+
+    }
+
 }
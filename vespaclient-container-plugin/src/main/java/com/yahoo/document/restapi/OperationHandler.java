@@ -1,8 +1,11 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.document.restapi;
 
+import com.yahoo.jdisc.handler.CompletionHandler;
+import com.yahoo.jdisc.handler.FutureCompletion;
 import com.yahoo.vespaxmlparser.VespaXMLFeedReader;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
 /**
@@ -23,8 +26,37 @@ public interface OperationHandler {
         }
     }
 
+    /** Receiver of the documents of a streaming visit. This is called by one thread at the time. */
+    interface VisitSink {
+
+        /**
+         * Called with visited documents as they arrive, as one or more JSON objects separated by commas.
+         * This must not block. The given handler is notified when the documents are passed on, or could not be,
+         * which may happen after this returns, and in another thread. Visited documents are not acked until then,
+         * which slows down visiting to the speed of the sink.
+         * Throws a RuntimeException, without notifying the handler, if no more documents can be passed on.
+         */
+        void documents(byte[] json, CompletionHandler handler);
+
+    }
+
     VisitResult visit(RestUri restUri, String documentSelection,  Optional<String> cluster, Optional<String> continuation) throws RestApiException;
 
+    /**
+     * Visits as {@link #visit(RestUri, String, Optional, Optional)}, but passes the documents to the given sink
+     * as they arrive and returns when visiting is done, or no more documents can be passed to the sink.
+     * This default implementation passes all the documents of a regular visit at once.
+     *
+     * @return the continuation token to visit the remaining documents, or empty if all documents are visited
+     */
+    default Optional<String> visit(RestUri restUri, String documentSelection, Optional<String> cluster,
+                                   Optional<String> continuation, VisitSink sink) throws RestApiException {
+        VisitResult result = visit(restUri, documentSelection, cluster, continuation);
+        if ( ! result.documentsAsJsonList.isEmpty())
+            sink.documents(result.documentsAsJsonList.getBytes(StandardCharsets.UTF_8), new FutureCompletion());
+        return result.token;
+    }
+
     void put(RestUri restUri, VespaXMLFeedReader.Operation data, Optional<String> route) throws RestApiException;
 
     void update(RestUri restUri, VespaXMLFeedReader.Operation data, Optional<String> route) throws RestApiException;
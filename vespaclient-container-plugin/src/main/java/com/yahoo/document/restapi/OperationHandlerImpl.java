@@ -49,6 +49,7 @@ public class OperationHandlerImpl implements OperationHandler {
     }
 
     public static final int VISIT_TIMEOUT_MS = 120000;
+    private static final int SINK_CHECK_INTERVAL_MS = 100;
     private final DocumentAccess documentAccess;
     private final DocumentApiMetrics metricsHelper;
     private final ClusterEnumerator clusterEnumerator;
@@ -116,10 +117,34 @@ public class OperationHandlerImpl implements OperationHandler {
             Optional<String> continuation) throws RestApiException {
 
         VisitorParameters visitorParameters = createVisitorParameters(restUri, documentSelection, cluster, continuation);
+        LocalDataVisitorHandler localDataVisitorHandler = new LocalDataVisitorHandler();
+        Optional<String> continuationToken = visit(visitorParameters, localDataVisitorHandler, restUri);
+        return new VisitResult(continuationToken, localDataVisitorHandler.getCommaSeparatedJsonDocuments());
+    }
+
+    @Override
+    public Optional<String> visit(
+            RestUri restUri,
+            String documentSelection,
+            Optional<String> cluster,
+            Optional<String> continuation,
+            VisitSink sink) throws RestApiException {
+
+        VisitorParameters visitorParameters = createVisitorParameters(restUri, documentSelection, cluster, continuation);
+        // Visit everything in one go, in parallel, as documents are not held in memory
+        visitorParameters.setMaxFirstPassHits(-1);
+        visitorParameters.setMaxTotalHits(-1);
+        visitorParameters.setThrottlePolicy(null);
+        return visit(visitorParameters, new LocalDataVisitorHandler(sink), restUri);
+    }
+
+    private Optional<String> visit(
+            VisitorParameters visitorParameters,
+            LocalDataVisitorHandler localDataVisitorHandler,
+            RestUri restUri) throws RestApiException {
 
         VisitorControlHandler visitorControlHandler = new VisitorControlHandler();
         visitorParameters.setControlHandler(visitorControlHandler);
-        LocalDataVisitorHandler localDataVisitorHandler = new LocalDataVisitorHandler();
         visitorParameters.setLocalDataHandler(localDataVisitorHandler);
 
         final VisitorSession visitorSession;
@@ -152,12 +177,18 @@ public class OperationHandlerImpl implements OperationHandler {
         }
     }
 
-    private VisitResult doVisit(
+    private Optional<String> doVisit(
             VisitorControlHandler visitorControlHandler,
             LocalDataVisitorHandler localDataVisitorHandler,
             RestUri restUri) throws RestApiException {
         try {
-            visitorControlHandler.waitUntilDone(); // VisitorParameters' session timeout implicitly triggers timeout failures.
+            // VisitorParameters' session timeout implicitly triggers timeout failures.
+            while ( ! visitorControlHandler.waitUntilDone(SINK_CHECK_INTERVAL_MS)) {
+                if (localDataVisitorHandler.sinkFailed()) {
+                    visitorControlHandler.abort();
+                    visitorControlHandler.waitUntilDone();
+                }
+            }
             throwIfFatalVisitingError(visitorControlHandler, restUri);
         } catch (InterruptedException e) {
             throw new RestApiException(Response.createErrorResponse(500, ExceptionUtils.getStackTrace(e), restUri, RestUri.apiErrorCodes.INTERRUPTED));
@@ -170,7 +201,7 @@ public class OperationHandlerImpl implements OperationHandler {
             } else {
                 continuationToken = Optional.empty();
             }
-            return new VisitResult(continuationToken, localDataVisitorHandler.getCommaSeparatedJsonDocuments());
+            return continuationToken;
         }
         throw new RestApiException(Response.createErrorResponse(500, localDataVisitorHandler.getErrors(), restUri, RestUri.apiErrorCodes.UNSPECIFIED));
     }
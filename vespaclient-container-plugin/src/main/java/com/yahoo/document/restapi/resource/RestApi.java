@@ -52,6 +52,7 @@ public class RestApi extends LoggingRequestHandler {
     private static final String SELECTION = "selection";
     private static final String CLUSTER = "cluster";
     private static final String CONTINUATION = "continuation";
+    private static final String STREAM = "stream";
     private static final String APPLICATION_JSON = "application/json";
     private final OperationHandler operationHandler;
     private SingleDocumentParser singleDocumentParser;
@@ -234,6 +235,13 @@ public class RestApi extends LoggingRequestHandler {
         }
         Optional<String> cluster = Optional.ofNullable(request.getProperty(CLUSTER));
         Optional<String> continuation = Optional.ofNullable(request.getProperty(CONTINUATION));
+        if (request.getBooleanProperty(STREAM)) {
+            final String selection = documentSelection;
+            ObjectNode trailer = mapper.createObjectNode();
+            trailer.put(PATH_NAME, restUri.getRawPath());
+            return new StreamingVisitResponse(sink -> operationHandler.visit(restUri, selection, cluster, continuation, sink),
+                                              trailer);
+        }
         final OperationHandler.VisitResult visit = operationHandler.visit(restUri, documentSelection, cluster, continuation);
         final ObjectNode resultNode = mapper.createObjectNode();
         if (visit.token.isPresent()) {
@@ -0,0 +1,142 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.restapi.resource;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yahoo.container.jdisc.AsyncHttpResponse;
+import com.yahoo.document.restapi.OperationHandler;
+import com.yahoo.document.restapi.Response;
+import com.yahoo.document.restapi.RestApiException;
+import com.yahoo.jdisc.handler.CompletionHandler;
+import com.yahoo.jdisc.handler.ContentChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * A visit response which writes documents to the network as they are visited, instead of collecting them first.
+ * The JSON written is the same as that of a regular visit, except that the continuation token and path
+ * are written after the documents, as the token is only known when visiting is done.
+ * <p>
+ * Visited documents are not acked to the content nodes before they are written to the network, such that
+ * visiting proceeds at the speed of the client, without blocking any thread.
+ *
+ * @author agent
+ */
+class StreamingVisitResponse extends AsyncHttpResponse implements OperationHandler.VisitSink {
+
+    /** A visit which passes documents to the given sink and returns the continuation token */
+    interface Visit {
+        Optional<String> run(OperationHandler.VisitSink sink) throws RestApiException;
+    }
+
+    private static final byte[] documentsStart = "{\"documents\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] separator = ",".getBytes(StandardCharsets.UTF_8);
+
+    private final Visit visit;
+    private final ObjectNode trailer;
+
+    private final Object monitor = new Object();
+    private ContentChannel channel;
+    private boolean started = false;
+    private volatile Throwable failure = null;
+
+    /** Records the failure of a write, such that no more documents are accepted */
+    private final CompletionHandler failureRecorder = new CompletionHandler() {
+        @Override
+        public void completed() { }
+
+        @Override
+        public void failed(Throwable t) {
+            failure = t;
+        }
+    };
+
+    /**
+     * Creates a streaming visit response
+     *
+     * @param visit the visit to run when this is rendered
+     * @param trailer the fields to write after the documents, to which the continuation token is added if present
+     */
+    StreamingVisitResponse(Visit visit, ObjectNode trailer) {
+        super(200);
+        this.visit = visit;
+        this.trailer = trailer;
+    }
+
+    @Override
+    public String getContentType() { return "application/json"; }
+
+    @Override
+    public void render(OutputStream output, ContentChannel networkChannel, CompletionHandler handler) throws IOException {
+        this.channel = networkChannel;
+        try {
+            Optional<String> continuation = visit.run(this);
+            if (continuation.isPresent())
+                trailer.put("continuation", continuation.get());
+            writeEnd(trailer.toString());
+        }
+        catch (RestApiException e) {
+            synchronized (monitor) {
+                if (started) {
+                    writeEnd(renderToString(e.getResponse()));
+                }
+                else { // nothing is written yet, so we can respond with the error status
+                    setStatus(e.getResponse().getStatus());
+                    write(renderToString(e.getResponse()).getBytes(StandardCharsets.UTF_8), failureRecorder);
+                }
+            }
+        }
+        finally {
+            networkChannel.close(handler);
+        }
+    }
+
+    @Override
+    public void documents(byte[] json, CompletionHandler handler) {
+        synchronized (monitor) {
+            if (failure != null)
+                throw new UncheckedIOException(new IOException("Could not write the response", failure));
+            write(started ? separator : documentsStart, failureRecorder);
+            started = true;
+            write(json, new CompletionHandler() {
+                @Override
+                public void completed() {
+                    handler.completed();
+                }
+
+                @Override
+                public void failed(Throwable t) {
+                    failure = t;
+                    handler.failed(t);
+                }
+            });
+        }
+    }
+
+    /** Ends the document array, and writes the fields of the given JSON object after it */
+    private void writeEnd(String json) {
+        synchronized (monitor) {
+            if ( ! started)
+                write(documentsStart, failureRecorder);
+            started = true;
+            write(("]," + json.substring(1)).getBytes(StandardCharsets.UTF_8), failureRecorder);
+        }
+    }
+
+    /** Writes the given bytes to the network without waiting for them to be sent */
+    private void write(byte[] bytes, CompletionHandler handler) {
+        channel.write(ByteBuffer.wrap(bytes), handler);
+    }
+
+    private static String renderToString(Response response) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        response.render(buffer);
+        return buffer.toString(StandardCharsets.UTF_8.name());
+    }
+
+}
@@ -1,11 +1,20 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.document.restapi;
 
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentType;
+import com.yahoo.documentapi.AckToken;
 import com.yahoo.documentapi.DocumentAccess;
 import com.yahoo.documentapi.ProgressToken;
 import com.yahoo.documentapi.VisitorControlHandler;
 import com.yahoo.documentapi.VisitorParameters;
 import com.yahoo.documentapi.VisitorSession;
+import com.yahoo.documentapi.messagebus.protocol.PutDocumentMessage;
+import com.yahoo.documentapi.messagebus.protocol.RemoveDocumentMessage;
+import com.yahoo.jdisc.handler.CompletionHandler;
+import com.yahoo.messagebus.Message;
 import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.vdslib.VisitorStatistics;
 import com.yahoo.vespaclient.ClusterDef;
@@ -14,6 +23,7 @@ import org.junit.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -21,10 +31,15 @@ import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -96,14 +111,26 @@ public class OperationHandlerImplTest {
         AtomicReference<VisitorParameters> assignedParameters = new AtomicReference<>();
         VisitorControlHandler.CompletionCode completionCode = VisitorControlHandler.CompletionCode.SUCCESS;
         int bucketsVisited = 0;
+        VisitorSession visitorSession = mock(VisitorSession.class);
+        /** The messages passed to the local data handler before visiting is done */
+        List<Message> visitedMessages = new ArrayList<>();
+        /** Whether visiting is done when the session is created, or only when it is aborted */
+        boolean completeVisit = true;
 
         OperationHandlerImpl createHandler() throws Exception {
-            VisitorSession visitorSession = mock(VisitorSession.class);
+            doAnswer(a -> {
+                assignedParameters.get().getControlHandler().onDone(VisitorControlHandler.CompletionCode.ABORTED, "aborted");
+                return null;
+            }).when(visitorSession).abort();
             // Pre-bake an already completed session
             when(documentAccess.createVisitorSession(any(VisitorParameters.class))).thenAnswer(p -> {
                 VisitorParameters params = (VisitorParameters)p.getArguments()[0];
                 assignedParameters.set(params);
 
+                params.getLocalDataHandler().setSession(visitorSession);
+                for (int i = 0; i < visitedMessages.size(); i++)
+                    params.getLocalDataHandler().onMessage(visitedMessages.get(i), new AckToken(i));
+
                 VisitorStatistics statistics = new VisitorStatistics();
                 statistics.setBucketsVisited(bucketsVisited);
                 params.getControlHandler().onVisitorStatistics(statistics);
@@ -111,7 +138,8 @@ public class OperationHandlerImplTest {
                 ProgressToken progress = new ProgressToken();
                 params.getControlHandler().onProgress(progress);
 
-                params.getControlHandler().onDone(completionCode, "bork bork");
+                if (completeVisit)
+                    params.getControlHandler().onDone(completionCode, "bork bork");
                 return visitorSession;
             });
             OperationHandlerImpl.ClusterEnumerator clusterEnumerator = () -> Arrays.asList(new ClusterDef("foo", "configId"));
@@ -157,4 +185,100 @@ public class OperationHandlerImplTest {
 
         assertThat(fixture.assignedParameters.get().getSessionTimeoutMs(), is((long)OperationHandlerImpl.VISIT_TIMEOUT_MS));
     }
+
+    @Test
+    public void streaming_visit_passes_documents_to_sink_and_acks_them_when_completed() throws Exception {
+        OperationHandlerImplFixture fixture = new OperationHandlerImplFixture();
+        fixture.visitedMessages.add(putMessage("id:ns:music::1"));
+        fixture.visitedMessages.add(new RemoveDocumentMessage(new DocumentId("id:ns:music::2")));
+        OperationHandlerImpl handler = fixture.createHandler();
+
+        RecordingSink sink = new RecordingSink();
+        handler.visit(dummyVisitUri(), "", Optional.empty(), Optional.empty(), sink);
+
+        assertThat(sink.documents.size(), is(2));
+        assertThat(sink.documents.get(0), containsString("\"id\":\"id:ns:music::1\""));
+        assertThat(sink.documents.get(1), containsString("\"remove\":\"id:ns:music::2\""));
+        verify(fixture.visitorSession, never()).ack(any(AckToken.class));
+
+        sink.handlers.get(0).completed();
+        sink.handlers.get(1).completed();
+        verify(fixture.visitorSession, times(2)).ack(any(AckToken.class));
+        verify(fixture.visitorSession, never()).abort();
+
+        assertThat(fixture.assignedParameters.get().getMaxTotalHits(), is(-1L));
+        assertThat(fixture.assignedParameters.get().getThrottlePolicy(), is(nullValue()));
+    }
+
+    @Test
+    public void streaming_visit_is_aborted_when_sink_throws() throws Exception {
+        OperationHandlerImplFixture fixture = new OperationHandlerImplFixture();
+        fixture.completeVisit = false;
+        fixture.visitedMessages.add(putMessage("id:ns:music::1"));
+        fixture.visitedMessages.add(putMessage("id:ns:music::2"));
+        OperationHandlerImpl handler = fixture.createHandler();
+
+        RecordingSink sink = new RecordingSink();
+        sink.throwAfter = 0;
+        try {
+            handler.visit(dummyVisitUri(), "", Optional.empty(), Optional.empty(), sink);
+            fail("Expected exception");
+        } catch (RestApiException e) {
+            assertThat(renderRestApiExceptionAsString(e), containsString("ABORTED"));
+        }
+        verify(fixture.visitorSession).abort();
+        verify(fixture.visitorSession, times(2)).ack(any(AckToken.class));
+        assertThat(sink.documents.size(), is(0));
+    }
+
+    @Test
+    public void streaming_visit_is_aborted_when_client_goes_away_mid_stream() throws Exception {
+        OperationHandlerImplFixture fixture = new OperationHandlerImplFixture();
+        fixture.completeVisit = false;
+        fixture.visitedMessages.add(putMessage("id:ns:music::1"));
+        fixture.visitedMessages.add(putMessage("id:ns:music::2"));
+        OperationHandlerImpl handler = fixture.createHandler();
+
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void documents(byte[] json, CompletionHandler handler) {
+                super.documents(json, handler);
+                if (documents.size() == 1)
+                    handler.completed();
+                else
+                    handler.failed(new IOException("Connection reset by peer"));
+            }
+        };
+        try {
+            handler.visit(dummyVisitUri(), "", Optional.empty(), Optional.empty(), sink);
+            fail("Expected exception");
+        } catch (RestApiException e) {
+            assertThat(renderRestApiExceptionAsString(e), containsString("ABORTED"));
+        }
+        verify(fixture.visitorSession).abort();
+        verify(fixture.visitorSession, times(2)).ack(any(AckToken.class));
+        assertThat(sink.documents.size(), is(2));
+    }
+
+    private static PutDocumentMessage putMessage(String id) {
+        return new PutDocumentMessage(new DocumentPut(new Document(new DocumentType("music"), id)));
+    }
+
+    /** A sink which records the documents and handlers it receives, and throws after a given number of calls */
+    private static class RecordingSink implements OperationHandler.VisitSink {
+
+        final List<String> documents = new ArrayList<>();
+        final List<CompletionHandler> handlers = new ArrayList<>();
+        int throwAfter = Integer.MAX_VALUE;
+
+        @Override
+        public void documents(byte[] json, CompletionHandler handler) {
+            if (documents.size() >= throwAfter)
+                throw new IllegalStateException("Sink is closed");
+            documents.add(new String(json, StandardCharsets.UTF_8));
+            handlers.add(handler);
+        }
+
+    }
+
 }
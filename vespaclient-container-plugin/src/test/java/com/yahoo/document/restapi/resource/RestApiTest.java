@@ -270,6 +270,18 @@ public class RestApiTest {
         assertThat(rest, containsString(visit_response_part3));
     }
 
+    String visit_test_streaming_uri = "/document/v1/namespace/document-type/docid/?continuation=abc&stream=true";
+
+    @Test
+    public void testStreamingVisit() throws Exception {
+        Request request = new Request("http://localhost:" + getFirstListenPort() + visit_test_streaming_uri);
+        HttpGet get = new HttpGet(request.getUri());
+        String rest = doRest(get);
+        assertThat(rest, startsWith("{" + visit_response_part1 + ","));
+        assertThat(rest, containsString(visit_response_part2));
+        assertThat(rest, containsString(visit_response_part3));
+    }
+
     String visit_test_bad_uri = "/document/v1/namespace/document-type/group/abc?continuation=abc&selection=foo";
     String visit_test_bad_response = "Visiting does not support setting value for group/value in combination with expression";
 
@@ -0,0 +1,126 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.restapi.resource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yahoo.jdisc.handler.CompletionHandler;
+import com.yahoo.jdisc.handler.ContentChannel;
+import com.yahoo.jdisc.handler.FutureCompletion;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingVisitResponseTest {
+
+    @Test
+    public void documents_are_written_as_they_arrive_and_completed_when_sent() throws IOException {
+        RecordingChannel channel = new RecordingChannel();
+        FutureCompletion first = new FutureCompletion();
+        FutureCompletion second = new FutureCompletion();
+        StreamingVisitResponse response = new StreamingVisitResponse(sink -> {
+            sink.documents("{\"id\":\"1\"}".getBytes(StandardCharsets.UTF_8), first);
+            assertEquals("{\"documents\":[{\"id\":\"1\"}", channel.written());
+            sink.documents("{\"id\":\"2\"}".getBytes(StandardCharsets.UTF_8), second);
+            return Optional.of("token");
+        }, trailer());
+
+        response.render(new ByteArrayOutputStream(), channel, new FutureCompletion());
+
+        assertEquals("{\"documents\":[{\"id\":\"1\"},{\"id\":\"2\"}],\"path\":\"/document/v1/\",\"continuation\":\"token\"}",
+                     channel.written());
+        assertTrue(channel.closed);
+        assertFalse(first.isDone());
+        channel.complete();
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+    }
+
+    @Test
+    public void no_documents_are_accepted_after_the_client_goes_away() throws IOException {
+        RecordingChannel channel = new RecordingChannel();
+        List<Throwable> failures = new ArrayList<>();
+        StreamingVisitResponse response = new StreamingVisitResponse(sink -> {
+            sink.documents("{\"id\":\"1\"}".getBytes(StandardCharsets.UTF_8), new CompletionHandler() {
+                @Override
+                public void completed() {
+                    fail("Expected failure");
+                }
+
+                @Override
+                public void failed(Throwable t) {
+                    failures.add(t);
+                }
+            });
+            channel.fail(new IOException("Connection reset by peer"));
+            try {
+                sink.documents("{\"id\":\"2\"}".getBytes(StandardCharsets.UTF_8), new FutureCompletion());
+                fail("Expected exception");
+            }
+            catch (UncheckedIOException expected) {
+                assertEquals("Connection reset by peer", expected.getCause().getCause().getMessage());
+            }
+            return Optional.empty();
+        }, trailer());
+
+        response.render(new ByteArrayOutputStream(), channel, new FutureCompletion());
+
+        assertEquals(1, failures.size());
+        assertTrue(channel.closed);
+    }
+
+    private static ObjectNode trailer() {
+        ObjectNode trailer = new ObjectMapper().createObjectNode();
+        trailer.put("path", "/document/v1/");
+        return trailer;
+    }
+
+    /** A channel which records what is written, and completes or fails writes when told to */
+    private static class RecordingChannel implements ContentChannel {
+
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private final List<CompletionHandler> pending = new ArrayList<>();
+        boolean closed = false;
+
+        @Override
+        public void write(ByteBuffer buffer, CompletionHandler handler) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            written.write(bytes, 0, bytes.length);
+            pending.add(handler);
+        }
+
+        @Override
+        public void close(CompletionHandler handler) {
+            closed = true;
+            handler.completed();
+        }
+
+        String written() {
+            return new String(written.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        void complete() {
+            pending.forEach(CompletionHandler::completed);
+            pending.clear();
+        }
+
+        void fail(Throwable t) {
+            pending.forEach(handler -> handler.failed(t));
+            pending.clear();
+        }
+
+    }
+
+}
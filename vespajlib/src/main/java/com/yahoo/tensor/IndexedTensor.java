@@ -16,7 +16,8 @@ import java.util.Optional;
 import java.util.Set;
 
 /**
- * An indexed (dense) tensor backed by a double array.
+ * An indexed (dense) tensor backed by a double array, or a float array if it is built with
+ * {@link Builder#ofFloats}.
  *
  * @author bratseth
  */
@@ -29,19 +30,31 @@ public class IndexedTensor implements Tensor {
     /** The sizes of the dimensions of this in the order of the dimensions of the type */
     private final DimensionSizes dimensionSizes;
     
+    /** The cell values, or null if this stores float cells */
     private final double[] values;
-    
+
+    /** The cell values if this stores float cells, null otherwise */
+    private final float[] floatValues;
+
     private IndexedTensor(TensorType type, DimensionSizes dimensionSizes, double[] values) {
+        this(type, dimensionSizes, values, null);
+    }
+
+    private IndexedTensor(TensorType type, DimensionSizes dimensionSizes, double[] values, float[] floatValues) {
         this.type = type;
         this.dimensionSizes = dimensionSizes;
         this.values = values;
+        this.floatValues = floatValues;
     }
 
     @Override
     public int size() {
-        return values.length;
+        return values != null ? values.length : floatValues.length;
     }
 
+    /** Returns true if the cells of this are stored as floats rather than doubles */
+    public boolean hasFloatCells() { return floatValues != null; }
+
     /**
      * Returns an iterator over the cells of this. 
      * Cells are returned in order of increasing indexes in each dimension, increasing 
@@ -103,7 +116,7 @@ public class IndexedTensor implements Tensor {
      * @throws IndexOutOfBoundsException if any of the indexes are out of bound or a wrong number of indexes are given
      */
     public double get(int ... indexes) {
-        return values[toValueIndex(indexes, dimensionSizes)];
+        return get(toValueIndex(indexes, dimensionSizes));
     }
 
     /** Returns the value at this address, or NaN if there is no value at this address */
@@ -111,14 +124,27 @@ public class IndexedTensor implements Tensor {
     public double get(TensorAddress address) {
         // optimize for fast lookup within bounds:
         try {
-            return values[toValueIndex(address, dimensionSizes)];
+            return get(toValueIndex(address, dimensionSizes));
         }
         catch (IndexOutOfBoundsException e) {
             return Double.NaN;
         }
     }
 
-    private double get(int valueIndex) { return values[valueIndex]; }
+    private double get(int valueIndex) {
+        return values != null ? values[valueIndex] : floatValues[valueIndex];
+    }
+
+    /**
+     * Returns the value at the given index in the internal layout of the cells of this.
+     * Cells are laid out in the order returned by the cell iterator, so the index of a cell is the sum
+     * of each index in its address multiplied by the product of the sizes of the dimensions after it.
+     * This requires knowledge of the internal layout of cells in this implementation, and should therefore
+     * probably not be used (but when it can be used it is fast).
+     *
+     * @throws IndexOutOfBoundsException if the index is not smaller than the size of this
+     */
+    public double getByDirectIndex(int index) { return get(index); }
     
     private static int toValueIndex(int[] indexes, DimensionSizes sizes) {
         if (indexes.length == 1) return indexes[0]; // for speed
@@ -156,19 +182,27 @@ public class IndexedTensor implements Tensor {
     @Override
     public Map<TensorAddress, Double> cells() {
         if (dimensionSizes.dimensions() == 0)
-            return Collections.singletonMap(TensorAddress.of(), values[0]);
+            return Collections.singletonMap(TensorAddress.of(), get(0));
         
         ImmutableMap.Builder<TensorAddress, Double> builder = new ImmutableMap.Builder<>();
-        Indexes indexes = Indexes.of(dimensionSizes, dimensionSizes, values.length);
-        for (int i = 0; i < values.length; i++) {
+        Indexes indexes = Indexes.of(dimensionSizes, dimensionSizes, size());
+        for (int i = 0; i < size(); i++) {
             indexes.next();
-            builder.put(indexes.toAddress(), values[i]);
+            builder.put(indexes.toAddress(), get(i));
         }
         return builder.build();
     }
     
     @Override
-    public int hashCode() { return Arrays.hashCode(values); }
+    public int hashCode() {
+        if (values != null) return Arrays.hashCode(values);
+
+        // The same as the hash of the equal double array
+        int hashCode = 1;
+        for (float value : floatValues)
+            hashCode = 31 * hashCode + Double.hashCode(value);
+        return hashCode;
+    }
 
     @Override
     public String toString() { return Tensor.toStandardString(this); }
@@ -215,6 +249,30 @@ public class IndexedTensor implements Tensor {
             return new BoundBuilder(type, sizes);
         }
 
+        /**
+         * Creates a builder of a tensor which stores its cells as floats rather than doubles, using half the memory
+         * at the cost of precision. Values are converted to float when they are set in the builder.
+         *
+         * @throws IllegalArgumentException if the type does not specify the size of all its dimensions
+         */
+        public static BoundBuilder ofFloats(TensorType type) {
+            if ( ! type.dimensions().stream().allMatch(d -> d instanceof TensorType.IndexedBoundDimension))
+                throw new IllegalArgumentException("Float cells require the size of all dimensions to be known, " +
+                                                   "but got " + type);
+            return ofFloats(type, BoundBuilder.dimensionSizesOf(type));
+        }
+
+        /**
+         * Creates a builder of a tensor which stores its cells as floats rather than doubles, with the given
+         * dimension size information. The sizes must agree with the type as in {@link #of(TensorType, DimensionSizes)}.
+         */
+        public static BoundBuilder ofFloats(TensorType type, DimensionSizes sizes) {
+            BoundBuilder builder = (BoundBuilder)of(type, sizes);
+            builder.floatValues = new float[builder.values.length];
+            builder.values = null;
+            return builder;
+        }
+
         public abstract Builder cell(double value, int ... indexes);
 
         @Override
@@ -225,17 +283,19 @@ public class IndexedTensor implements Tensor {
 
     }
     
-    /** A bound builder can create the double array directly */
+    /** A bound builder can create the double (or float) array directly */
     public static class BoundBuilder extends Builder {
 
         private DimensionSizes sizes;
         private double[] values;
+        private float[] floatValues;
 
         private BoundBuilder(TensorType type) {
             this(type, dimensionSizesOf(type));
         }
 
-        static DimensionSizes dimensionSizesOf(TensorType type) {
+        /** Returns the sizes given by the given type, which must specify the size of all its dimensions */
+        public static DimensionSizes dimensionSizesOf(TensorType type) {
             DimensionSizes.Builder b = new DimensionSizes.Builder(type.dimensions().size());
             for (int i = 0; i < type.dimensions().size(); i++)
                 b.set(i, type.dimensions().get(i).size().get());
@@ -252,7 +312,7 @@ public class IndexedTensor implements Tensor {
         
         @Override
         public BoundBuilder cell(double value, int ... indexes) {
-            values[toValueIndex(indexes, sizes)] = value;
+            cellByDirectIndex(toValueIndex(indexes, sizes), value);
             return this;
         }
         
@@ -263,16 +323,17 @@ public class IndexedTensor implements Tensor {
 
         @Override
         public Builder cell(TensorAddress address, double value) {
-            values[toValueIndex(address, sizes)] = value;
+            cellByDirectIndex(toValueIndex(address, sizes), value);
             return this;
         }
 
         @Override
         public IndexedTensor build() {
-            IndexedTensor tensor = new IndexedTensor(type, sizes, values);
+            IndexedTensor tensor = new IndexedTensor(type, sizes, values, floatValues);
             // prevent further modification
             sizes = null;
             values = null;
+            floatValues = null;
             return tensor;
         }
 
@@ -280,7 +341,7 @@ public class IndexedTensor implements Tensor {
         public Builder cell(Cell cell, double value) {
             int directIndex = cell.getDirectIndex();
             if (directIndex >= 0) // optimization
-                values[directIndex] = value;
+                cellByDirectIndex(directIndex, value);
             else
                 super.cell(cell, value);
             return this;
@@ -292,9 +353,15 @@ public class IndexedTensor implements Tensor {
          * probably not be used (but when it can be used it is fast).
          */
         public void cellByDirectIndex(int index, double value) {
-            values[index] = value;
+            if (values != null)
+                values[index] = value;
+            else
+                floatValues[index] = (float)value;
         }
 
+        /** Returns whether this builds a tensor storing its cells as floats */
+        public boolean hasFloatCells() { return floatValues != null; }
+
     }
 
     /**
@@ -427,7 +494,7 @@ public class IndexedTensor implements Tensor {
     private final class CellIterator implements Iterator<Cell> {
 
         private int count = 0;
-        private final Indexes indexes = Indexes.of(dimensionSizes, dimensionSizes, values.length);
+        private final Indexes indexes = Indexes.of(dimensionSizes, dimensionSizes, size());
         private final LazyCell reusedCell = new LazyCell(indexes, Double.NaN);
 
         @Override
@@ -452,13 +519,13 @@ public class IndexedTensor implements Tensor {
 
         @Override
         public boolean hasNext() {
-            return count < values.length;
+            return count < size();
         }
 
         @Override
         public Double next() {
             try {
-                return values[count++];
+                return get(count++);
             }
             catch (IndexOutOfBoundsException e) {
                 throw new NoSuchElementException("No element at position " + count);
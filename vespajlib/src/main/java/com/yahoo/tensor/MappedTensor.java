@@ -4,11 +4,16 @@ package com.yahoo.tensor;
 import com.google.common.annotations.Beta;
 import com.google.common.collect.ImmutableMap;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
- * A sparse implementation of a tensor backed by a Map of cells to values.
+ * A sparse implementation of a tensor backed by a hash table of cells.
+ * Each distinct label is stored once per dimension in a label dictionary, and the address of each cell
+ * is stored as the indexes of its labels in those dictionaries, packed into a single int array.
+ * Cell values are stored in a double array, and cells are iterated in the order they were added.
  *
  * @author bratseth
  */
@@ -17,34 +22,113 @@ public class MappedTensor implements Tensor {
 
     private final TensorType type;
 
-    private final ImmutableMap<TensorAddress, Double> cells;
+    /** The distinct labels of each dimension */
+    private final Labels[] labels;
+
+    /** The label index of each dimension of each cell, for one cell after the other */
+    private final int[] labelIndexes;
+
+    private final double[] values;
+
+    /** An open addressing hash table from the label indexes of a cell to the cell index + 1, or 0 if empty */
+    private final int[] cellTable;
 
     /** Creates a sparse tensor. The cell addresses must match the type. */
-    private MappedTensor(TensorType type, Map<TensorAddress, Double> cells) {
+    private MappedTensor(TensorType type, Labels[] labels, int[] labelIndexes, double[] values) {
         this.type = type;
-        this.cells = ImmutableMap.copyOf(cells);
+        this.labels = labels;
+        this.labelIndexes = labelIndexes;
+        this.values = values;
+        this.cellTable = new int[tableCapacity(values.length)];
+        for (int cell = 0; cell < values.length; cell++) {
+            int slot = slotOf(labelIndexes, cell * labels.length);
+            if (cellTable[slot] != 0)
+                throw new IllegalArgumentException("Multiple cells with address " + new CellAddress(cell).toString(type) +
+                                                   " in " + type);
+            cellTable[slot] = cell + 1;
+        }
     }
 
     @Override
     public TensorType type() { return type; }
-    
+
     @Override
-    public int size() { return cells.size(); }
+    public int size() { return values.length; }
 
     @Override
-    public double get(TensorAddress address) { return cells.getOrDefault(address, Double.NaN); }
+    public double get(TensorAddress address) {
+        if (address.size() != labels.length) return Double.NaN;
+
+        int[] addressIndexes = new int[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            addressIndexes[i] = labels[i].indexOf(address.label(i));
+            if (addressIndexes[i] < 0) return Double.NaN;
+        }
+        int cell = indexOfCell(addressIndexes);
+        return cell < 0 ? Double.NaN : values[cell];
+    }
+
+    /**
+     * Returns the index in the internal layout of this of the cell having the given label index
+     * in each dimension, or -1 if there is no such cell.
+     */
+    public int indexOfCell(int[] labelIndexes) {
+        return cellTable[slotOf(labelIndexes, 0)] - 1;
+    }
+
+    /** Returns the number of distinct labels in the given dimension of this */
+    public int labelCount(int dimensionIndex) { return labels[dimensionIndex].size(); }
+
+    /** Returns the label at the given index in the given dimension */
+    public String label(int dimensionIndex, int labelIndex) { return labels[dimensionIndex].get(labelIndex); }
+
+    /** Returns the index of the given label in the given dimension, or -1 if no cell in this has that label */
+    public int indexOfLabel(int dimensionIndex, String label) { return labels[dimensionIndex].indexOf(label); }
+
+    /**
+     * Returns the index of the label in the given dimension of the cell at the given index in the internal
+     * layout of this, which is the order the cells are iterated in.
+     * This requires knowledge of the internal layout of cells in this implementation, and should therefore
+     * probably not be used (but when it can be used it is fast).
+     */
+    public int labelIndex(int cellIndex, int dimensionIndex) {
+        return labelIndexes[cellIndex * labels.length + dimensionIndex];
+    }
+
+    /**
+     * Returns the value of the cell at the given index in the internal layout of this,
+     * which is the order the cells are iterated in.
+     * This requires knowledge of the internal layout of cells in this implementation, and should therefore
+     * probably not be used (but when it can be used it is fast).
+     */
+    public double getByDirectIndex(int cellIndex) { return values[cellIndex]; }
 
     @Override
-    public Iterator<Cell> cellIterator() { return new CellIteratorAdaptor(cells.entrySet().iterator()); }
+    public Iterator<Cell> cellIterator() { return new CellIterator(); }
 
     @Override
-    public Iterator<Double> valueIterator() { return cells.values().iterator(); }
+    public Iterator<Double> valueIterator() { return new ValueIterator(); }
 
     @Override
-    public Map<TensorAddress, Double> cells() { return cells; }
+    public Map<TensorAddress, Double> cells() {
+        ImmutableMap.Builder<TensorAddress, Double> builder = new ImmutableMap.Builder<>();
+        for (int cell = 0; cell < values.length; cell++)
+            builder.put(new CellAddress(cell), values[cell]);
+        return builder.build();
+    }
 
+    /** Returns the same hash code as the map returned by cells() */
     @Override
-    public int hashCode() { return cells.hashCode(); }
+    public int hashCode() {
+        int hashCode = 0;
+        for (int cell = 0; cell < values.length; cell++) {
+            int addressHashCode = 1;
+            for (int i = 0; i < labels.length; i++)
+                addressHashCode = 31 * addressHashCode + label(i, labelIndex(cell, i)).hashCode();
+            hashCode += addressHashCode ^ Double.hashCode(values[cell]);
+        }
+        return hashCode;
+    }
 
     @Override
     public String toString() { return Tensor.toStandardString(this); }
@@ -55,17 +139,59 @@ public class MappedTensor implements Tensor {
         return Tensor.equals(this, ((Tensor)other));
     }
 
+    /** Returns the slot in the cell table of the cell with the label indexes starting at the given offset */
+    private int slotOf(int[] addressIndexes, int offset) {
+        int mask = cellTable.length - 1;
+        int slot = hash(addressIndexes, offset, labels.length) & mask;
+        while (cellTable[slot] != 0 && ! hasLabelIndexes(cellTable[slot] - 1, addressIndexes, offset))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private boolean hasLabelIndexes(int cell, int[] addressIndexes, int offset) {
+        for (int i = 0; i < labels.length; i++)
+            if (labelIndexes[cell * labels.length + i] != addressIndexes[offset + i]) return false;
+        return true;
+    }
+
+    private static int hash(int[] values, int offset, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + values[offset + i];
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /** Returns the smallest power of two which is at least twice the given size */
+    private static int tableCapacity(int size) {
+        return Math.max(2, Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1);
+    }
+
     public static class Builder implements Tensor.Builder {
-    
+
         private final TensorType type;
-        private final ImmutableMap.Builder<TensorAddress, Double> cells = new ImmutableMap.Builder<>();
-    
-        public static Builder of(TensorType type) { return new Builder(type); }
+        private final Labels[] labels;
+        private int[] labelIndexes;
+        private double[] values;
+        private int size = 0;
+
+        /** Whether the labels of this are shared with a tensor built from this, and must be copied before changing */
+        private boolean labelsShared = false;
 
-        private Builder(TensorType type) {
+        public static Builder of(TensorType type) { return new Builder(type, 16); }
+
+        /** Returns a builder with room for the given number of cells before growing */
+        public static Builder of(TensorType type, int expectedSize) { return new Builder(type, expectedSize); }
+
+        private Builder(TensorType type, int expectedSize) {
             this.type = type;
+            this.labels = new Labels[type.dimensions().size()];
+            for (int i = 0; i < labels.length; i++)
+                labels[i] = new Labels(Math.max(1, expectedSize));
+            this.values = new double[Math.max(1, expectedSize)];
+            this.labelIndexes = new int[values.length * labels.length];
         }
-        
+
         public CellBuilder cell() {
             return new CellBuilder(type, this);
         }
@@ -75,38 +201,200 @@ public class MappedTensor implements Tensor {
 
         @Override
         public Builder cell(TensorAddress address, double value) {
-            cells.put(address, value);
+            if (address.size() != labels.length)
+                throw new IllegalArgumentException("Address " + address + " does not match " + type);
+            ensureCapacity();
+            for (int i = 0; i < labels.length; i++)
+                labelIndexes[size * labels.length + i] = labels[i].add(address.label(i));
+            values[size++] = value;
+            return this;
+        }
+
+        /**
+         * Adds a cell with the given labels, one for each dimension in the order of the dimensions of the type.
+         * This is faster than adding a cell by address. The label array is not retained by this.
+         *
+         * @return this for chaining
+         */
+        public Builder cell(String[] labels, double value) {
+            if (labels.length != this.labels.length)
+                throw new IllegalArgumentException("Labels " + Arrays.toString(labels) + " does not match " + type);
+            ensureCapacity();
+            for (int i = 0; i < labels.length; i++)
+                labelIndexes[size * labels.length + i] = this.labels[i].add(labels[i]);
+            values[size++] = value;
             return this;
         }
 
         @Override
         public Builder cell(double value, int... labels) {
-            cells.put(TensorAddress.of(labels), value);
-            return this;
+            return cell(TensorAddress.of(labels), value);
+        }
+
+        private void ensureCapacity() {
+            if (labelsShared) {
+                for (int i = 0; i < labels.length; i++)
+                    labels[i] = labels[i].copy();
+                labelsShared = false;
+            }
+            if (size < values.length) return;
+            values = Arrays.copyOf(values, values.length * 2);
+            labelIndexes = Arrays.copyOf(labelIndexes, values.length * labels.length);
         }
 
         @Override
         public MappedTensor build() {
-            return new MappedTensor(type, cells.build());
+            Labels[] tensorLabels = new Labels[labels.length];
+            for (int i = 0; i < labels.length; i++)
+                tensorLabels[i] = labels[i].trimmed();
+            labelsShared = true;
+            return new MappedTensor(type, tensorLabels,
+                                    Arrays.copyOf(labelIndexes, size * labels.length), Arrays.copyOf(values, size));
         }
-    
+
     }
 
-    private static class CellIteratorAdaptor implements Iterator<Cell> {
+    /** The distinct labels of a dimension, with a hash index from label to label index */
+    private static final class Labels {
+
+        private String[] labels;
+        private int size = 0;
+
+        /** An open addressing hash table of label index + 1, 0 for empty */
+        private int[] table;
 
-        private final Iterator<Map.Entry<TensorAddress, Double>> adaptedIterator;
-        
-        private CellIteratorAdaptor(Iterator<Map.Entry<TensorAddress, Double>> adaptedIterator) {
-            this.adaptedIterator = adaptedIterator;
+        Labels(int expectedSize) {
+            this(new String[expectedSize], new int[tableCapacity(expectedSize)], 0);
         }
-        
+
+        private Labels(String[] labels, int[] table, int size) {
+            this.labels = labels;
+            this.table = table;
+            this.size = size;
+        }
+
+        int size() { return size; }
+
+        String get(int index) { return labels[index]; }
+
+        /** Returns the index of the given label, or -1 if it is not present */
+        int indexOf(String label) {
+            return table[slotOf(label)] - 1;
+        }
+
+        /** Returns the index of the given label, adding it if it is not present */
+        int add(String label) {
+            int slot = slotOf(label);
+            if (table[slot] != 0) return table[slot] - 1;
+
+            if (size == labels.length)
+                labels = Arrays.copyOf(labels, Math.max(1, size * 2));
+            labels[size] = label;
+            table[slot] = ++size;
+            if (size * 2 > table.length)
+                rehash(table.length * 2);
+            return size - 1;
+        }
+
+        /** Returns a copy of this which can be modified independently */
+        Labels copy() {
+            return new Labels(Arrays.copyOf(labels, labels.length), Arrays.copyOf(table, table.length), size);
+        }
+
+        /** Returns a copy of this without room for more labels, which shares the hash table of this */
+        Labels trimmed() {
+            return new Labels(size == labels.length ? labels : Arrays.copyOf(labels, size), table, size);
+        }
+
+        private int slotOf(String label) {
+            int mask = table.length - 1;
+            int hash = label.hashCode() * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (table[slot] != 0 && ! labels[table[slot] - 1].equals(label))
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        private void rehash(int capacity) {
+            table = new int[capacity];
+            for (int i = 0; i < size; i++)
+                table[slotOf(labels[i])] = i + 1;
+        }
+
+    }
+
+    /** The address of a cell in this, which looks up its labels when needed */
+    private final class CellAddress extends TensorAddress {
+
+        private final int cell;
+
+        private CellAddress(int cell) {
+            this.cell = cell;
+        }
+
+        @Override
+        public int size() { return labels.length; }
+
         @Override
-        public boolean hasNext() { return adaptedIterator.hasNext(); }
+        public String label(int i) { return MappedTensor.this.label(i, labelIndex(cell, i)); }
+
+        @Override
+        public int intLabel(int i) {
+            try {
+                return Integer.parseInt(label(i));
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected an int label in " + this + " at position " + i);
+            }
+        }
+
+        @Override
+        public TensorAddress withLabel(int index, int label) {
+            String[] labels = new String[size()];
+            for (int i = 0; i < labels.length; i++)
+                labels[i] = label(i);
+            labels[index] = String.valueOf(label);
+            return TensorAddress.of(labels);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder("[");
+            for (int i = 0; i < size(); i++)
+                b.append(i > 0 ? ", " : "").append(label(i));
+            return b.append("]").toString();
+        }
+
+    }
+
+    private final class CellIterator implements Iterator<Cell> {
+
+        private int cell = 0;
+
+        @Override
+        public boolean hasNext() { return cell < values.length; }
 
         @Override
         public Cell next() {
-            Map.Entry<TensorAddress, Double> entry = adaptedIterator.next();
-            return new Cell(entry.getKey(), entry.getValue()); 
+            if ( ! hasNext()) throw new NoSuchElementException("No cell at " + cell);
+            Cell next = new Cell(new CellAddress(cell), values[cell]);
+            cell++;
+            return next;
+        }
+
+    }
+
+    private final class ValueIterator implements Iterator<Double> {
+
+        private int cell = 0;
+
+        @Override
+        public boolean hasNext() { return cell < values.length; }
+
+        @Override
+        public Double next() {
+            if ( ! hasNext()) throw new NoSuchElementException("No element at position " + cell);
+            return values[cell++];
         }
 
     }
@@ -0,0 +1,278 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.yahoo.tensor.DimensionSizes;
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Join and reduce implementations for indexed tensors which work directly on the cell values using
+ * stride arithmetic, instead of through cell iterators, tensor addresses and boxed values.
+ * Cells are visited in the same order as by the general implementations in {@link Join} and {@link Reduce},
+ * so the results are identical to theirs, with the exception that a join which is reduced in the same pass
+ * does not round the intermediate values to float when the arguments have float cells.
+ *
+ * @author agent
+ */
+final class IndexedKernels {
+
+    private IndexedKernels() {}
+
+    /** Returns whether the given tensors can be joined by {@link #join} into a tensor of the given type and sizes */
+    static boolean canJoin(IndexedTensor a, IndexedTensor b, TensorType joinedType, DimensionSizes joinedSizes) {
+        return a.size() > 0 && b.size() > 0 && hasTypeSizes(joinedType, joinedSizes);
+    }
+
+    /** Returns whether the given tensor can be reduced by {@link #reduce} into a tensor of the given type */
+    static boolean canReduce(IndexedTensor argument, TensorType reducedType) {
+        return argument.size() > 0 && hasTypeSizes(reducedType, sizesIn(reducedType, argument.type(), argument.dimensionSizes()));
+    }
+
+    /**
+     * Returns whether the sizes of the bound dimensions of the given type are the same as the given sizes,
+     * such that a tensor of this type has the same cells whether or not the sizes are given explicitly
+     */
+    private static boolean hasTypeSizes(TensorType type, DimensionSizes sizes) {
+        for (int i = 0; i < sizes.dimensions(); i++) {
+            Optional<Integer> size = type.dimensions().get(i).size();
+            if (size.isPresent() && size.get() != sizes.size(i)) return false;
+        }
+        return true;
+    }
+
+    /** Joins the cells of a and b which have the same labels in the dimensions they share */
+    static Tensor join(IndexedTensor a, IndexedTensor b, TensorType joinedType, DimensionSizes joinedSizes,
+                       DoubleBinaryOperator combinator) {
+        IndexedTensor.BoundBuilder builder = builder(joinedType, joinedSizes, a.hasFloatCells() && b.hasFloatCells());
+        int[] sizes = toArray(joinedSizes);
+        int[] aStrides = strides(a.type(), a.dimensionSizes(), joinedType);
+        int[] bStrides = strides(b.type(), b.dimensionSizes(), joinedType);
+        int innerSize = innerSize(sizes);
+        int aInnerStride = innerStride(aStrides);
+        int bInnerStride = innerStride(bStrides);
+        iterate(sizes, aStrides, bStrides, strides(joinedType, joinedSizes, joinedType), (aOffset, bOffset, offset) -> {
+            for (int i = 0; i < innerSize; i++)
+                builder.cellByDirectIndex(offset + i,
+                                          combinator.applyAsDouble(a.getByDirectIndex(aOffset + i * aInnerStride),
+                                                                   b.getByDirectIndex(bOffset + i * bInnerStride)));
+        });
+        return builder.build();
+    }
+
+    /** Reduces the given tensor to the given type, which must contain a subset of its dimensions */
+    static Tensor reduce(IndexedTensor argument, TensorType reducedType, Reduce.Aggregator aggregator) {
+        int[] sizes = toArray(argument.dimensionSizes());
+        int[] strides = strides(argument.type(), argument.dimensionSizes(), argument.type());
+        int innerSize = innerSize(sizes);
+        int innerStride = innerStride(strides);
+        Aggregation aggregation = new Aggregation(argument.type(), argument.dimensionSizes(), reducedType, aggregator);
+        double[] aggregated = aggregation.values;
+        iterate(sizes, strides, new int[sizes.length], aggregation.strides, (offset, unused, aggregatedOffset) -> {
+            if (aggregation.innerStride == 0) {
+                double value = aggregated[aggregatedOffset];
+                for (int i = 0; i < innerSize; i++)
+                    value = aggregate(aggregator, value, argument.getByDirectIndex(offset + i * innerStride));
+                aggregated[aggregatedOffset] = value;
+            }
+            else {
+                for (int i = 0; i < innerSize; i++) {
+                    int index = aggregatedOffset + i * aggregation.innerStride;
+                    aggregated[index] = aggregate(aggregator, aggregated[index], argument.getByDirectIndex(offset + i * innerStride));
+                }
+            }
+        });
+        return aggregation.build(argument.hasFloatCells());
+    }
+
+    /**
+     * Joins a and b and reduces the result to the given type in a single pass,
+     * without creating the joined tensor
+     */
+    static Tensor joinAndReduce(IndexedTensor a, IndexedTensor b, TensorType joinedType, DimensionSizes joinedSizes,
+                                DoubleBinaryOperator combinator, TensorType reducedType, Reduce.Aggregator aggregator) {
+        int[] sizes = toArray(joinedSizes);
+        int[] aStrides = strides(a.type(), a.dimensionSizes(), joinedType);
+        int[] bStrides = strides(b.type(), b.dimensionSizes(), joinedType);
+        int innerSize = innerSize(sizes);
+        int aInnerStride = innerStride(aStrides);
+        int bInnerStride = innerStride(bStrides);
+        Aggregation aggregation = new Aggregation(joinedType, joinedSizes, reducedType, aggregator);
+        double[] aggregated = aggregation.values;
+        iterate(sizes, aStrides, bStrides, aggregation.strides, (aOffset, bOffset, aggregatedOffset) -> {
+            if (aggregation.innerStride == 0) {
+                double value = aggregated[aggregatedOffset];
+                for (int i = 0; i < innerSize; i++)
+                    value = aggregate(aggregator, value,
+                                      combinator.applyAsDouble(a.getByDirectIndex(aOffset + i * aInnerStride),
+                                                               b.getByDirectIndex(bOffset + i * bInnerStride)));
+                aggregated[aggregatedOffset] = value;
+            }
+            else {
+                for (int i = 0; i < innerSize; i++) {
+                    int index = aggregatedOffset + i * aggregation.innerStride;
+                    aggregated[index] = aggregate(aggregator, aggregated[index],
+                                                  combinator.applyAsDouble(a.getByDirectIndex(aOffset + i * aInnerStride),
+                                                                           b.getByDirectIndex(bOffset + i * bInnerStride)));
+                }
+            }
+        });
+        return aggregation.build(a.hasFloatCells() && b.hasFloatCells());
+    }
+
+    /**
+     * Iterates over all the cells of a space of the given sizes in row-major order (last dimension fastest),
+     * calling the given run once for each run of cells along the last dimension.
+     * The offsets passed to the run are the sums of the index in each dimension times the stride
+     * of that dimension, for each of the three sets of strides given.
+     */
+    private static void iterate(int[] sizes, int[] aStrides, int[] bStrides, int[] cStrides, Run run) {
+        int outerDimensions = sizes.length - 1;
+        int[] indexes = new int[sizes.length];
+        int aOffset = 0, bOffset = 0, cOffset = 0;
+        while (true) {
+            run.apply(aOffset, bOffset, cOffset);
+
+            int dimension = outerDimensions - 1;
+            for (; dimension >= 0; dimension--) { // increment the outer dimensions to the next run
+                aOffset += aStrides[dimension];
+                bOffset += bStrides[dimension];
+                cOffset += cStrides[dimension];
+                if (++indexes[dimension] < sizes[dimension]) break;
+                aOffset -= aStrides[dimension] * sizes[dimension];
+                bOffset -= bStrides[dimension] * sizes[dimension];
+                cOffset -= cStrides[dimension] * sizes[dimension];
+                indexes[dimension] = 0;
+            }
+            if (dimension < 0) return;
+        }
+    }
+
+    /**
+     * Returns the stride of each dimension of the given space type in the cells of a tensor of the given type
+     * and sizes, or 0 for dimensions not present in the tensor
+     */
+    private static int[] strides(TensorType type, DimensionSizes sizes, TensorType spaceType) {
+        int[] strides = new int[spaceType.dimensions().size()];
+        for (int i = 0; i < strides.length; i++) {
+            Optional<Integer> index = type.indexOfDimension(spaceType.dimensions().get(i).name());
+            if ( ! index.isPresent()) continue;
+
+            int stride = 1;
+            for (int j = index.get() + 1; j < sizes.dimensions(); j++)
+                stride *= sizes.size(j);
+            strides[i] = stride;
+        }
+        return strides;
+    }
+
+    /** Returns the number of cells in each run along the last dimension */
+    private static int innerSize(int[] sizes) {
+        return sizes.length == 0 ? 1 : sizes[sizes.length - 1];
+    }
+
+    private static int innerStride(int[] strides) {
+        return strides.length == 0 ? 0 : strides[strides.length - 1];
+    }
+
+    private static int[] toArray(DimensionSizes sizes) {
+        int[] array = new int[sizes.dimensions()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = sizes.size(i);
+        return array;
+    }
+
+    /** Returns the sizes of the dimensions of the given type, taken from the given sizes of a superspace */
+    private static DimensionSizes sizesIn(TensorType type, TensorType spaceType, DimensionSizes spaceSizes) {
+        DimensionSizes.Builder builder = new DimensionSizes.Builder(type.dimensions().size());
+        for (int i = 0; i < builder.dimensions(); i++)
+            builder.set(i, spaceSizes.size(spaceType.indexOfDimension(type.dimensions().get(i).name()).get()));
+        return builder.build();
+    }
+
+    private static IndexedTensor.BoundBuilder builder(TensorType type, DimensionSizes sizes, boolean floatCells) {
+        if (floatCells)
+            return IndexedTensor.Builder.ofFloats(type, sizes);
+        else
+            return (IndexedTensor.BoundBuilder)IndexedTensor.Builder.of(type, sizes);
+    }
+
+    private static double aggregate(Reduce.Aggregator aggregator, double aggregated, double value) {
+        switch (aggregator) {
+            case avg : return aggregated + value; // divided by the count when done
+            case count : return aggregated + 1;
+            case prod : return aggregated * value;
+            case sum : return aggregated + value;
+            case max : return value > aggregated ? value : aggregated;
+            case min : return value < aggregated ? value : aggregated;
+            default: throw new UnsupportedOperationException("Aggregator " + aggregator + " is not implemented");
+        }
+    }
+
+    /** Called with the offsets of the first cell of each run along the last dimension */
+    @FunctionalInterface
+    private interface Run {
+
+        void apply(int aOffset, int bOffset, int cOffset);
+
+    }
+
+    /** The cells values of a reduced tensor while aggregating */
+    private static final class Aggregation {
+
+        private final TensorType type;
+        private final DimensionSizes sizes;
+        private final Reduce.Aggregator aggregator;
+
+        /** The aggregated values in the order of the cells of the reduced tensor */
+        final double[] values;
+
+        /** The strides of each dimension of the space reduced into these values, 0 for those which are reduced */
+        final int[] strides;
+        final int innerStride;
+
+        /** The number of values aggregated into each cell */
+        private final int count;
+
+        Aggregation(TensorType spaceType, DimensionSizes spaceSizes, TensorType type, Reduce.Aggregator aggregator) {
+            this.type = type;
+            this.sizes = sizesIn(type, spaceType, spaceSizes);
+            this.aggregator = aggregator;
+            this.values = new double[sizes.totalSize()];
+            Arrays.fill(values, initialValue(aggregator));
+            this.strides = strides(type, sizes, spaceType);
+            this.innerStride = innerStride(strides);
+            this.count = spaceSizes.totalSize() / values.length;
+        }
+
+        private static double initialValue(Reduce.Aggregator aggregator) {
+            switch (aggregator) {
+                case prod : return 1.0;
+                case max : return Double.MIN_VALUE;
+                case min : return Double.MAX_VALUE;
+                default: return 0.0;
+            }
+        }
+
+        Tensor build(boolean floatCells) {
+            if (aggregator == Reduce.Aggregator.avg) {
+                for (int i = 0; i < values.length; i++)
+                    values[i] = values[i] / count;
+            }
+
+            if (type.dimensions().isEmpty())
+                return Tensor.Builder.of(TensorType.empty).cell(values[0]).build();
+
+            IndexedTensor.BoundBuilder builder = builder(type, sizes, floatCells);
+            for (int i = 0; i < values.length; i++)
+                builder.cellByDirectIndex(i, values[i]);
+            return builder.build();
+        }
+
+    }
+
+}
@@ -6,6 +6,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import com.yahoo.tensor.DimensionSizes;
 import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.MappedTensor;
 import com.yahoo.tensor.PartialAddress;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorAddress;
@@ -13,6 +14,7 @@ import com.yahoo.tensor.TensorType;
 import com.yahoo.tensor.evaluation.EvaluationContext;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -72,11 +74,20 @@ public class Join extends PrimitiveTensorFunction {
 
     @Override
     public Tensor evaluate(EvaluationContext context) {
-        Tensor a = argumentA.evaluate(context);
-        Tensor b = argumentB.evaluate(context);
-        TensorType joinedType = new TensorType.Builder(a.type(), b.type()).build();
+        return evaluate(argumentA.evaluate(context), argumentB.evaluate(context));
+    }
+
+    /** Returns the join of the two given tensors, which are the values of the arguments of this */
+    Tensor evaluate(Tensor a, Tensor b) {
+        TensorType joinedType = joinedType(a, b);
 
         // Choose join algorithm
+        if (a instanceof IndexedTensor && b instanceof IndexedTensor) {
+            DimensionSizes joinedSizes = joinedSize(joinedType, (IndexedTensor)a, (IndexedTensor)b);
+            if (IndexedKernels.canJoin((IndexedTensor)a, (IndexedTensor)b, joinedType, joinedSizes))
+                return IndexedKernels.join((IndexedTensor)a, (IndexedTensor)b, joinedType, joinedSizes, combinator);
+        }
+
         if (hasSingleIndexedDimension(a) && hasSingleIndexedDimension(b) && a.type().dimensions().get(0).name().equals(b.type().dimensions().get(0).name()))
             return indexedVectorJoin((IndexedTensor)a, (IndexedTensor)b, joinedType);
         else if (joinedType.dimensions().size() == a.type().dimensions().size() && joinedType.dimensions().size() == b.type().dimensions().size())
@@ -89,6 +100,10 @@ public class Join extends PrimitiveTensorFunction {
             return generalJoin(a, b, joinedType);
     }
     
+    static TensorType joinedType(Tensor a, Tensor b) {
+        return new TensorType.Builder(a.type(), b.type()).build();
+    }
+
     private boolean hasSingleIndexedDimension(Tensor tensor) {
         return tensor.type().dimensions().size() == 1 && tensor.type().dimensions().get(0).isIndexed();
     }
@@ -105,6 +120,9 @@ public class Join extends PrimitiveTensorFunction {
 
     /** When both tensors have the same dimensions, at most one cell matches a cell in the other tensor */
     private Tensor singleSpaceJoin(Tensor a, Tensor b, TensorType joinedType) {
+        if (a instanceof MappedTensor && b instanceof MappedTensor)
+            return mappedSingleSpaceJoin((MappedTensor)a, (MappedTensor)b, joinedType);
+
         Tensor.Builder builder = Tensor.Builder.of(joinedType);
         for (Iterator<Tensor.Cell> i = a.cellIterator(); i.hasNext(); ) {
             Map.Entry<TensorAddress, Double> aCell = i.next();
@@ -115,6 +133,36 @@ public class Join extends PrimitiveTensorFunction {
         return builder.build();
     }
     
+    /** Single space join of two mapped tensors, which works on the label indexes of cells rather than their addresses */
+    private Tensor mappedSingleSpaceJoin(MappedTensor a, MappedTensor b, TensorType joinedType) {
+        int dimensions = joinedType.dimensions().size(); // the same dimensions in the same order in a, b and joined
+        int[][] aToBLabelIndexes = new int[dimensions][];
+        for (int i = 0; i < dimensions; i++) {
+            aToBLabelIndexes[i] = new int[a.labelCount(i)];
+            for (int label = 0; label < aToBLabelIndexes[i].length; label++)
+                aToBLabelIndexes[i][label] = b.indexOfLabel(i, a.label(i, label));
+        }
+
+        MappedTensor.Builder builder = MappedTensor.Builder.of(joinedType, Math.min(a.size(), b.size()));
+        int[] bLabelIndexes = new int[dimensions];
+        String[] labels = new String[dimensions];
+        for (int aCell = 0; aCell < a.size(); aCell++) {
+            int bCell = 0;
+            for (int i = 0; i < dimensions && bCell >= 0; i++) {
+                bLabelIndexes[i] = aToBLabelIndexes[i][a.labelIndex(aCell, i)];
+                if (bLabelIndexes[i] < 0) bCell = -1;
+            }
+            if (bCell >= 0)
+                bCell = b.indexOfCell(bLabelIndexes);
+            if (bCell < 0) continue; // no match
+
+            for (int i = 0; i < dimensions; i++)
+                labels[i] = a.label(i, a.labelIndex(aCell, i));
+            builder.cell(labels, combinator.applyAsDouble(a.getByDirectIndex(aCell), b.getByDirectIndex(bCell)));
+        }
+        return builder.build();
+    }
+
     /** Join a tensor into a superspace */
     private Tensor subspaceJoin(Tensor subspace, Tensor superspace, TensorType joinedType, boolean reversedArgumentOrder) {
         if (subspace instanceof IndexedTensor && superspace instanceof IndexedTensor)
@@ -162,7 +210,7 @@ public class Join extends PrimitiveTensorFunction {
         }
     }
 
-    private DimensionSizes joinedSize(TensorType joinedType, IndexedTensor a, IndexedTensor b) {
+    static DimensionSizes joinedSize(TensorType joinedType, IndexedTensor a, IndexedTensor b) {
         DimensionSizes.Builder builder = new DimensionSizes.Builder(joinedType.dimensions().size());
         for (int i = 0; i < builder.dimensions(); i++) {
             String dimensionName = joinedType.dimensions().get(i).name();
@@ -295,6 +343,11 @@ public class Join extends PrimitiveTensorFunction {
             return mappedGeneralJoin(a, b, joinedType); // fallback
         }
 
+        if (a instanceof MappedTensor && b instanceof MappedTensor) {
+            Tensor result = mappedTensorHashJoin((MappedTensor)a, (MappedTensor)b, joinedType, commonDimensionType);
+            if (result != null) return result;
+        }
+
         boolean swapTensors = a.size() > b.size();
         if (swapTensors) {
             Tensor temp = a;
@@ -336,6 +389,76 @@ public class Join extends PrimitiveTensorFunction {
         return builder.build();
     }
 
+    /**
+     * Hash join of two mapped tensors which works on the label indexes of the cells rather than their addresses.
+     * The cells of the smaller tensor are indexed by their labels in the common dimensions, encoded as a key
+     * from the indexes of the same labels in the larger tensor.
+     *
+     * @return the joined tensor, or null if the number of common labels is too large to encode as a key
+     */
+    private Tensor mappedTensorHashJoin(MappedTensor a, MappedTensor b, TensorType joinedType, TensorType commonType) {
+        boolean swapTensors = a.size() > b.size();
+        if (swapTensors) {
+            MappedTensor temp = a;
+            a = b;
+            b = temp;
+        }
+
+        int[] aIndexesOfCommon = mapIndexes(commonType, a.type());
+        int[] bIndexesOfCommon = mapIndexes(commonType, b.type());
+        int[] aIndexesInJoined = mapIndexes(a.type(), joinedType);
+        int[] bIndexesInJoined = mapIndexes(b.type(), joinedType);
+
+        // The keys are mixed radix numbers of the label indexes in b of the common dimensions
+        long[] radixes = new long[commonType.dimensions().size()];
+        long radix = 1;
+        for (int i = radixes.length - 1; i >= 0; i--) {
+            radixes[i] = radix;
+            int labelCount = b.labelCount(bIndexesOfCommon[i]);
+            if (labelCount > 0 && radix > Long.MAX_VALUE / labelCount) return null;
+            radix *= labelCount;
+        }
+
+        // Map the labels of a in the common dimensions to label indexes in b (or -1 if not in b)
+        int[][] aToBLabelIndexes = new int[radixes.length][];
+        for (int i = 0; i < radixes.length; i++) {
+            aToBLabelIndexes[i] = new int[a.labelCount(aIndexesOfCommon[i])];
+            for (int label = 0; label < aToBLabelIndexes[i].length; label++)
+                aToBLabelIndexes[i][label] = b.indexOfLabel(bIndexesOfCommon[i], a.label(aIndexesOfCommon[i], label));
+        }
+
+        // Iterate once through the smaller tensor and index its cells by key
+        CellsByKey aCellsByKey = new CellsByKey(a.size());
+        for (int aCell = 0; aCell < a.size(); aCell++) {
+            long key = 0;
+            for (int i = 0; i < radixes.length && key >= 0; i++) {
+                int bLabelIndex = aToBLabelIndexes[i][a.labelIndex(aCell, aIndexesOfCommon[i])];
+                key = bLabelIndex < 0 ? -1 : key + bLabelIndex * radixes[i];
+            }
+            if (key >= 0) // otherwise there are no matching cells in b
+                aCellsByKey.add(key, aCell);
+        }
+
+        // Iterate once through the larger tensor and use the index to find joinable cells
+        MappedTensor.Builder builder = MappedTensor.Builder.of(joinedType);
+        String[] joinedLabels = new String[joinedType.dimensions().size()];
+        for (int bCell = 0; bCell < b.size(); bCell++) {
+            long key = 0;
+            for (int i = 0; i < radixes.length; i++)
+                key += b.labelIndex(bCell, bIndexesOfCommon[i]) * radixes[i];
+            for (int aCell = aCellsByKey.first(key); aCell >= 0; aCell = aCellsByKey.next(aCell)) {
+                for (int i = 0; i < aIndexesInJoined.length; i++)
+                    joinedLabels[aIndexesInJoined[i]] = a.label(i, a.labelIndex(aCell, i));
+                for (int i = 0; i < bIndexesInJoined.length; i++)
+                    joinedLabels[bIndexesInJoined[i]] = b.label(i, b.labelIndex(bCell, i));
+                double combinedValue = swapTensors ?
+                        combinator.applyAsDouble(b.getByDirectIndex(bCell), a.getByDirectIndex(aCell)) :
+                        combinator.applyAsDouble(a.getByDirectIndex(aCell), b.getByDirectIndex(bCell));
+                builder.cell(joinedLabels, combinedValue);
+            }
+        }
+        return builder.build();
+    }
 
     /**
      * Returns the an array having one entry in order for each dimension of fromType
@@ -405,4 +528,51 @@ public class Join extends PrimitiveTensorFunction {
 
     }
 
+    /** A multimap from keys to cell indexes, returning the cells of each key in the order they were added */
+    private static final class CellsByKey {
+
+        private final long[] keys;
+        private final int[] firstCells;
+        private final int[] lastCells;
+        private final int[] nextCells;
+
+        CellsByKey(int cells) {
+            int capacity = Math.max(2, Integer.highestOneBit(Math.max(1, cells) * 2 - 1) << 1);
+            keys = new long[capacity];
+            firstCells = new int[capacity];
+            lastCells = new int[capacity];
+            nextCells = new int[cells];
+            Arrays.fill(firstCells, -1);
+        }
+
+        void add(long key, int cell) {
+            int slot = slotOf(key);
+            nextCells[cell] = -1;
+            if (firstCells[slot] < 0) {
+                keys[slot] = key;
+                firstCells[slot] = cell;
+            }
+            else {
+                nextCells[lastCells[slot]] = cell;
+            }
+            lastCells[slot] = cell;
+        }
+
+        /** Returns the first cell added with this key, or -1 if none */
+        int first(long key) { return firstCells[slotOf(key)]; }
+
+        /** Returns the cell added with the same key after the given cell, or -1 if none */
+        int next(int cell) { return nextCells[cell]; }
+
+        private int slotOf(long key) {
+            int mask = keys.length - 1;
+            long hash = key * 0x9E3779B97F4A7C15L;
+            int slot = (int)(hash ^ (hash >>> 32)) & mask;
+            while (firstCells[slot] >= 0 && keys[slot] != key)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+    }
+
 }
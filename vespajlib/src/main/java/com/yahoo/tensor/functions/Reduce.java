@@ -3,6 +3,7 @@ package com.yahoo.tensor.functions;
 
 import com.google.common.annotations.Beta;
 import com.google.common.collect.ImmutableList;
+import com.yahoo.tensor.DimensionSizes;
 import com.yahoo.tensor.IndexedTensor;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorAddress;
@@ -92,11 +93,32 @@ public class Reduce extends PrimitiveTensorFunction {
 
     @Override
     public Tensor evaluate(EvaluationContext context) {
-        Tensor argument = this.argument.evaluate(context);
+        if (argument instanceof Join) { // join and reduce indexed tensors in one pass if possible
+            Join join = (Join)argument;
+            Tensor a = join.argumentA().evaluate(context);
+            Tensor b = join.argumentB().evaluate(context);
+            if (a instanceof IndexedTensor && b instanceof IndexedTensor) {
+                TensorType joinedType = Join.joinedType(a, b);
+                DimensionSizes joinedSizes = Join.joinedSize(joinedType, (IndexedTensor)a, (IndexedTensor)b);
+                if (joinedType.dimensionNames().containsAll(dimensions) &&
+                    IndexedKernels.canJoin((IndexedTensor)a, (IndexedTensor)b, joinedType, joinedSizes))
+                    return IndexedKernels.joinAndReduce((IndexedTensor)a, (IndexedTensor)b, joinedType, joinedSizes,
+                                                        join.combinator(), reducedType(joinedType), aggregator);
+            }
+            return evaluate(join.evaluate(a, b));
+        }
+        return evaluate(argument.evaluate(context));
+    }
+
+    private Tensor evaluate(Tensor argument) {
         if ( ! dimensions.isEmpty() && ! argument.type().dimensionNames().containsAll(dimensions))
             throw new IllegalArgumentException("Cannot reduce " + argument + " over dimensions " + 
                                                dimensions + ": Not all those dimensions are present in this tensor");
 
+        TensorType reducedType = reducedType(argument.type());
+        if (argument instanceof IndexedTensor && IndexedKernels.canReduce((IndexedTensor)argument, reducedType))
+            return IndexedKernels.reduce((IndexedTensor)argument, reducedType, aggregator);
+
         // Special case: Reduce all
         if (dimensions.isEmpty() || dimensions.size() == argument.type().dimensions().size())
             if (argument.type().dimensions().size() == 1 && argument instanceof IndexedTensor)
@@ -104,13 +126,6 @@ public class Reduce extends PrimitiveTensorFunction {
             else
                 return reduceAllGeneral(argument);
         
-        // Reduce type
-        TensorType.Builder builder = new TensorType.Builder();
-        for (TensorType.Dimension dimension : argument.type().dimensions())
-            if ( ! dimensions.contains(dimension.name())) // keep
-                builder.dimension(dimension);
-        TensorType reducedType = builder.build();
-        
         // Reduce cells
         Map<TensorAddress, ValueAggregator> aggregatingCells = new HashMap<>();
         for (Iterator<Tensor.Cell> i = argument.cellIterator(); i.hasNext(); ) {
@@ -126,6 +141,17 @@ public class Reduce extends PrimitiveTensorFunction {
         return reducedBuilder.build();
     }
     
+    /** Returns the type resulting from reducing a tensor of the given type */
+    private TensorType reducedType(TensorType argumentType) {
+        if (dimensions.isEmpty()) return TensorType.empty;
+
+        TensorType.Builder builder = new TensorType.Builder();
+        for (TensorType.Dimension dimension : argumentType.dimensions())
+            if ( ! dimensions.contains(dimension.name())) // keep
+                builder.dimension(dimension);
+        return builder.build();
+    }
+
     private TensorAddress reduceDimensions(TensorAddress address, TensorType argumentType, TensorType reducedType) {
         Set<Integer> indexesToRemove = new HashSet<>();
         for (String dimensionToRemove : this.dimensions)
@@ -39,6 +39,11 @@ class SparseBinaryFormat implements BinaryFormat {
     }
 
     private void encodeCells(GrowableByteBuffer buffer, Tensor tensor) {
+        if (tensor instanceof MappedTensor) {
+            encodeCells(buffer, (MappedTensor)tensor);
+            return;
+        }
+
         buffer.putInt1_4Bytes(tensor.size());
         for (Iterator<Tensor.Cell> i = tensor.cellIterator(); i.hasNext(); ) {
             Map.Entry<TensorAddress, Double> cell = i.next();
@@ -47,6 +52,27 @@ class SparseBinaryFormat implements BinaryFormat {
         }
     }
 
+    /** Encodes the cells of a mapped tensor, converting each distinct label to utf8 only once */
+    private void encodeCells(GrowableByteBuffer buffer, MappedTensor tensor) {
+        int dimensions = tensor.type().dimensions().size();
+        byte[][][] utf8Labels = new byte[dimensions][][];
+        for (int i = 0; i < dimensions; i++)
+            utf8Labels[i] = new byte[tensor.labelCount(i)][];
+
+        buffer.putInt1_4Bytes(tensor.size());
+        for (int cell = 0; cell < tensor.size(); cell++) {
+            for (int i = 0; i < dimensions; i++) {
+                int labelIndex = tensor.labelIndex(cell, i);
+                byte[] label = utf8Labels[i][labelIndex];
+                if (label == null)
+                    label = utf8Labels[i][labelIndex] = Utf8.toBytes(tensor.label(i, labelIndex));
+                buffer.putInt1_4Bytes(label.length);
+                buffer.put(label);
+            }
+            buffer.putDouble(tensor.getByDirectIndex(cell));
+        }
+    }
+
     private void encodeAddress(GrowableByteBuffer buffer, TensorAddress address) {
         for (int i = 0; i < address.size(); i++)
             buffer.putUtf8String(address.label(i));
@@ -79,6 +105,11 @@ class SparseBinaryFormat implements BinaryFormat {
     }
 
     private void decodeCells(GrowableByteBuffer buffer, Tensor.Builder builder, TensorType type) {
+        if (builder instanceof MappedTensor.Builder) {
+            decodeCells(buffer, (MappedTensor.Builder)builder, type);
+            return;
+        }
+
         int numCells = buffer.getInt1_4Bytes();
         for (int i = 0; i < numCells; ++i) {
             Tensor.Builder.CellBuilder cellBuilder = builder.cell();
@@ -87,6 +118,21 @@ class SparseBinaryFormat implements BinaryFormat {
         }
     }
 
+    /** Decodes cells directly into a mapped tensor builder without creating addresses */
+    private void decodeCells(GrowableByteBuffer buffer, MappedTensor.Builder builder, TensorType type) {
+        int numCells = buffer.getInt1_4Bytes();
+        String[] labels = new String[type.dimensions().size()];
+        for (int i = 0; i < numCells; ++i) {
+            for (int j = 0; j < labels.length; j++) {
+                labels[j] = buffer.getUtf8String();
+                if (labels[j].isEmpty())
+                    throw new IllegalArgumentException("Missing a value for dimension " +
+                                                       type.dimensions().get(j).name() + " for " + type);
+            }
+            builder.cell(labels, buffer.getDouble());
+        }
+    }
+
     private void decodeAddress(GrowableByteBuffer buffer, Tensor.Builder.CellBuilder builder, TensorType type) {
         for (TensorType.Dimension dimension : type.dimensions()) {
             String label = buffer.getUtf8String();
@@ -0,0 +1,77 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor;
+
+import com.yahoo.tensor.functions.Reduce;
+
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Microbenchmark of operations on dense tensors of various shapes.
+ *
+ * @author agent
+ */
+public class IndexedTensorFunctionBenchmark {
+
+    private final static Random random = new Random();
+
+    /** Returns the average time in milliseconds spent in the given operation */
+    private double benchmark(int iterations, Tensor a, Tensor b, Function<Tensor[], Tensor> operation) {
+        Tensor[] arguments = new Tensor[] { a, b };
+        run(Math.max(iterations / 10, 10), arguments, operation); // warmup
+        System.gc();
+        long startTime = System.nanoTime();
+        run(iterations, arguments, operation);
+        long totalTime = System.nanoTime() - startTime;
+        return totalTime / 1000000.0 / iterations;
+    }
+
+    private double run(int iterations, Tensor[] arguments, Function<Tensor[], Tensor> operation) {
+        double result = 0;
+        for (int i = 0; i < iterations; i++)
+            result += operation.apply(arguments).size();
+        return result;
+    }
+
+    private static Tensor tensor(String type, boolean floatCells) {
+        TensorType tensorType = TensorType.fromSpec(type);
+        DimensionSizes sizes = IndexedTensor.BoundBuilder.dimensionSizesOf(tensorType);
+        IndexedTensor.BoundBuilder builder = floatCells ? IndexedTensor.Builder.ofFloats(tensorType)
+                                                        : (IndexedTensor.BoundBuilder)IndexedTensor.Builder.of(tensorType);
+        for (int i = 0; i < sizes.totalSize(); i++)
+            builder.cellByDirectIndex(i, random.nextDouble());
+        return builder.build();
+    }
+
+    private static void benchmarkAll(boolean floatCells) {
+        String cells = floatCells ? "float " : "double";
+        IndexedTensorFunctionBenchmark b = new IndexedTensorFunctionBenchmark();
+        double time;
+
+        Tensor vector1 = tensor("tensor(x[300])", floatCells);
+        Tensor vector2 = tensor("tensor(x[300])", floatCells);
+        Tensor matrix = tensor("tensor(i[100],x[300])", floatCells);
+        Tensor left = tensor("tensor(i[64],k[64])", floatCells);
+        Tensor right = tensor("tensor(j[64],k[64])", floatCells);
+        Tensor column = tensor("tensor(i[100])", floatCells);
+
+        time = b.benchmark(50000, vector1, vector2, t -> t[0].multiply(t[1]).reduce(Reduce.Aggregator.sum));
+        System.out.printf("%s vector dot product,      time per op: %8.4f ms\n", cells, time);
+        time = b.benchmark(5000, matrix, vector1, t -> t[0].matmul(t[1], "x"));
+        System.out.printf("%s matrix-vector product,   time per op: %8.4f ms\n", cells, time);
+        time = b.benchmark(500, left, right, t -> t[0].matmul(t[1], "k"));
+        System.out.printf("%s matrix-matrix product,   time per op: %8.4f ms\n", cells, time);
+        time = b.benchmark(5000, matrix, vector1, t -> t[0].add(t[1]));
+        System.out.printf("%s matrix-vector broadcast, time per op: %8.4f ms\n", cells, time);
+        time = b.benchmark(5000, column, vector1, t -> t[0].multiply(t[1]));
+        System.out.printf("%s outer product,           time per op: %8.4f ms\n", cells, time);
+        time = b.benchmark(5000, matrix, null, t -> t[0].reduce(Reduce.Aggregator.max, "i"));
+        System.out.printf("%s reduce one dimension,    time per op: %8.4f ms\n", cells, time);
+    }
+
+    public static void main(String[] args) {
+        benchmarkAll(false);
+        benchmarkAll(true);
+    }
+
+}
@@ -5,6 +5,7 @@ import com.google.common.collect.Sets;
 import junit.framework.TestCase;
 import org.junit.Test;
 
+import java.util.Iterator;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
@@ -52,4 +53,48 @@ public class MappedTensorTestCase {
         assertEquals("{{x:0,y:0}:1.0,{x:1,y:0}:2.0}", tensor.toString());
     }
 
+    @Test
+    public void testLookup() {
+        Tensor tensor = Tensor.from("tensor(x{},y{}):{{x:a,y:b}:1.0,{x:b,y:a}:2.0,{x:a,y:a}:3.0}");
+        assertEquals(1.0, tensor.get(TensorAddress.of(new String[] {"a", "b"})), 0);
+        assertEquals(2.0, tensor.get(TensorAddress.of(new String[] {"b", "a"})), 0);
+        assertEquals(3.0, tensor.get(TensorAddress.of(new String[] {"a", "a"})), 0);
+        assertTrue(Double.isNaN(tensor.get(TensorAddress.of(new String[] {"b", "b"}))));
+        assertTrue(Double.isNaN(tensor.get(TensorAddress.of(new String[] {"a", "c"}))));
+        assertTrue(Double.isNaN(tensor.get(TensorAddress.of(new String[] {"a"}))));
+        assertEquals(tensor.cells().hashCode(), tensor.hashCode());
+    }
+
+    @Test
+    public void testManyCells() {
+        TensorType type = new TensorType.Builder().mapped("x").mapped("y").build();
+        MappedTensor.Builder builder = MappedTensor.Builder.of(type);
+        for (int i = 0; i < 1000; i++)
+            builder.cell(new String[] { "x" + (i % 100), "y" + i }, i);
+        MappedTensor tensor = builder.build();
+
+        assertEquals(1000, tensor.size());
+        assertEquals(100, tensor.labelCount(0));
+        assertEquals(1000, tensor.labelCount(1));
+        int i = 0;
+        for (Iterator<Tensor.Cell> cells = tensor.cellIterator(); cells.hasNext(); i++) { // in insertion order
+            Tensor.Cell cell = cells.next();
+            assertEquals(TensorAddress.of(new String[] { "x" + (i % 100), "y" + i }), cell.getKey());
+            assertEquals(i, cell.getValue(), 0);
+            assertEquals(i, tensor.get(cell.getKey()), 0);
+        }
+        assertEquals(tensor, Tensor.from(tensor.toString()));
+    }
+
+    @Test
+    public void testDuplicateCells() {
+        try {
+            Tensor.from("tensor(x{}):{{x:a}:1.0,{x:b}:2.0,{x:a}:3.0}");
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException expected) {
+            assertEquals("Multiple cells with address {x:a} in tensor(x{})", expected.getMessage());
+        }
+    }
+
 }
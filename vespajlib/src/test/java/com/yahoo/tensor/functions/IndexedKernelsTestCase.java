@@ -0,0 +1,151 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that joining and reducing indexed tensors produce the same cells as doing the same
+ * with the general implementations working on mapped tensors.
+ *
+ * @author agent
+ */
+public class IndexedKernelsTestCase {
+
+    @Test
+    public void testJoin() {
+        assertJoin("tensor(x[3])", "tensor(x[3])");
+        assertJoin("tensor(x[])", "tensor(x[2])");
+        assertJoin("tensor(x[2],y[3])", "tensor(y[3])");
+        assertJoin("tensor(y[3])", "tensor(x[2],y[3])");
+        assertJoin("tensor(x[2])", "tensor(y[3])");
+        assertJoin("tensor(x[2],y[3])", "tensor(y[3],z[4])");
+        assertJoin("tensor(x[4],z[2])", "tensor(y[3],z[2])");
+        assertJoin("tensor()", "tensor(x[2],y[3])");
+        assertJoin("tensor()", "tensor()");
+    }
+
+    @Test
+    public void testReduce() {
+        for (Reduce.Aggregator aggregator : Reduce.Aggregator.values()) {
+            assertReduce("tensor(x[3])", aggregator);
+            assertReduce("tensor(x[3])", aggregator, "x");
+            assertReduce("tensor(x[2],y[3],z[4])", aggregator);
+            assertReduce("tensor(x[2],y[3],z[4])", aggregator, "x");
+            assertReduce("tensor(x[2],y[3],z[4])", aggregator, "y");
+            assertReduce("tensor(x[2],y[3],z[4])", aggregator, "z");
+            assertReduce("tensor(x[2],y[3],z[4])", aggregator, "x", "z");
+            assertReduce("tensor(x[],y[3],z[4])", aggregator, "y", "z");
+        }
+    }
+
+    @Test
+    public void testJoinAndReduce() {
+        assertJoinAndReduce("tensor(x[3])", "tensor(x[3])", Reduce.Aggregator.sum);
+        assertJoinAndReduce("tensor(x[2],y[3])", "tensor(y[3])", Reduce.Aggregator.sum, "y");
+        assertJoinAndReduce("tensor(i[2],k[3])", "tensor(j[4],k[3])", Reduce.Aggregator.sum, "k");
+        assertJoinAndReduce("tensor(i[2],k[3])", "tensor(j[4],k[3])", Reduce.Aggregator.max, "i", "k");
+        assertJoinAndReduce("tensor(i[2],k[3])", "tensor(j[4],k[3])", Reduce.Aggregator.avg, "j");
+    }
+
+    @Test
+    public void testMatmul() {
+        Tensor a = tensor("tensor(i[2],k[3])", false);
+        Tensor b = tensor("tensor(j[4],k[3])", false);
+        assertEquals(mapped(a).matmul(mapped(b), "k").cells(), a.matmul(b, "k").cells());
+    }
+
+    @Test
+    public void testFloatCells() {
+        Tensor floats = tensor("tensor(x[2],y[3])", true);
+        Tensor doubles = tensor("tensor(x[2],y[3])", false);
+        assertTrue(((IndexedTensor)floats).hasFloatCells());
+        assertFalse(((IndexedTensor)doubles).hasFloatCells());
+        assertEquals(doubles, floats);
+        assertEquals(doubles.hashCode(), floats.hashCode());
+
+        assertEquals(doubles.multiply(doubles), floats.multiply(floats));
+        assertTrue(((IndexedTensor)floats.multiply(floats)).hasFloatCells());
+        assertFalse(((IndexedTensor)floats.multiply(doubles)).hasFloatCells());
+        assertEquals(doubles.sum(Arrays.asList("y")), floats.sum(Arrays.asList("y")));
+        assertTrue(((IndexedTensor)floats.sum(Arrays.asList("y"))).hasFloatCells());
+        assertEquals(0.5f, IndexedTensor.Builder.ofFloats(TensorType.fromSpec("tensor(x[1])")).cell(0.5, 0).build().get(0), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFloatCellsRequiresBoundType() {
+        IndexedTensor.Builder.ofFloats(TensorType.fromSpec("tensor(x[])"));
+    }
+
+    private void assertJoin(String typeA, String typeB) {
+        Tensor a = tensor(typeA, false);
+        Tensor b = tensor(typeB, false);
+        assertEquals(mapped(a).join(mapped(b), ScalarFunctions.divide()).cells(),
+                     a.join(b, ScalarFunctions.divide()).cells());
+    }
+
+    private void assertReduce(String type, Reduce.Aggregator aggregator, String ... dimensions) {
+        Tensor tensor = tensor(type, false);
+        assertEquals(aggregator + " over " + Arrays.toString(dimensions),
+                     mapped(tensor).reduce(aggregator, dimensions).cells(),
+                     tensor.reduce(aggregator, dimensions).cells());
+    }
+
+    private void assertJoinAndReduce(String typeA, String typeB, Reduce.Aggregator aggregator, String ... dimensions) {
+        Tensor a = tensor(typeA, false);
+        Tensor b = tensor(typeB, false);
+        Tensor expected = mapped(a).join(mapped(b), ScalarFunctions.multiply()).reduce(aggregator, dimensions);
+        Tensor fused = new Reduce(new Join(new ConstantTensor(a), new ConstantTensor(b), ScalarFunctions.multiply()),
+                                  aggregator, Arrays.asList(dimensions)).evaluate();
+        assertEquals(expected.cells(), fused.cells());
+    }
+
+    /** Returns an indexed tensor having integer values which are exact regardless of the order they are summed in */
+    private Tensor tensor(String typeSpec, boolean floatCells) {
+        TensorType type = TensorType.fromSpec(typeSpec);
+        Tensor.Builder builder = floatCells ? IndexedTensor.Builder.ofFloats(type) : Tensor.Builder.of(type);
+        for (Iterator<Tensor.Cell> i = Tensor.generate(boundType(type), this::value).cellIterator(); i.hasNext(); ) {
+            Tensor.Cell cell = i.next();
+            builder.cell(cell.getKey(), cell.getValue());
+        }
+        return builder.build();
+    }
+
+    /** Returns the given type with size 3 for unbound dimensions */
+    private TensorType boundType(TensorType type) {
+        TensorType.Builder builder = new TensorType.Builder();
+        for (TensorType.Dimension dimension : type.dimensions())
+            builder.indexed(dimension.name(), dimension.size().orElse(3));
+        return builder.build();
+    }
+
+    private double value(List<Integer> indexes) {
+        double value = 1;
+        for (int i = 0; i < indexes.size(); i++)
+            value += (indexes.get(i) + 1) * (i % 2 == 0 ? 3 : -2);
+        return value;
+    }
+
+    private Tensor mapped(Tensor tensor) {
+        TensorType.Builder typeBuilder = new TensorType.Builder();
+        for (String dimension : tensor.type().dimensionNames())
+            typeBuilder.mapped(dimension);
+        Tensor.Builder builder = Tensor.Builder.of(typeBuilder.build());
+        for (Iterator<Tensor.Cell> i = tensor.cellIterator(); i.hasNext(); ) {
+            Tensor.Cell cell = i.next();
+            builder.cell(cell.getKey(), cell.getValue());
+        }
+        return builder.build();
+    }
+
+}
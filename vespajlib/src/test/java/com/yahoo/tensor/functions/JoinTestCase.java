@@ -46,4 +46,14 @@ public class JoinTestCase {
                              .divide(Tensor.from("tensor(y[],z[]):{ {y:0,z:0}:2, {y:1,z:0}:4, {y:2,z:0}:6 }")));
     }
     
+    @Test
+    public void testMappedHashJoin() {
+        assertEquals(Tensor.from("tensor(x{},y{},z{}):{ {x:a,y:0,z:p}:3, {x:a,y:0,z:q}:6, {x:b,y:1,z:p}:20 }"),
+                     Tensor.from("tensor(x{},y{}):{ {x:a,y:0}:3, {x:b,y:1}:4, {x:c,y:2}:5 }")
+                           .multiply(Tensor.from("tensor(y{},z{}):{ {y:0,z:p}:1, {y:0,z:q}:2, {y:1,z:p}:5, {y:3,z:p}:7 }")));
+        assertEquals(Tensor.from("tensor(x{},y{}):{ {x:a,y:0}:2, {x:a,y:1}:4 }"),
+                     Tensor.from("tensor(x{},y{}):{ {x:a,y:0}:4, {x:a,y:1}:8, {x:b,y:0}:16 }")
+                           .divide(Tensor.from("tensor(x{}):{ {x:a}:2, {x:c}:4 }")));
+    }
+
 }